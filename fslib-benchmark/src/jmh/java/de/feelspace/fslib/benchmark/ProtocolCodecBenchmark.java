@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import de.feelspace.fslib.protocol.BatteryStatusPacket;
+import de.feelspace.fslib.protocol.BeltPacketEncoder;
+import de.feelspace.fslib.protocol.OrientationPacket;
+import de.feelspace.fslib.protocol.PacketBufferPool;
+import de.feelspace.fslib.protocol.ParameterNotificationPacket;
+
+/**
+ * Throughput of the encoding and decoding of belt packets. The allocation rate per operation is
+ * reported by the GC profiler configured in the build ('gc.alloc.rate.norm').
+ *
+ * Run with: ./gradlew :fslib-benchmark:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProtocolCodecBenchmark {
+
+    // Orientation value, changed at each operation to avoid constant folding
+    private int orientation = 0;
+
+    // Packets to decode
+    private byte[] orientationPacket;
+    private byte[] batteryPacket;
+    private byte[] parameterPacket;
+
+    // Tone pattern
+    private int[] frequencies;
+    private int[] durations;
+
+    // Buffers for the encoding without allocation
+    private final byte[] buffer = new byte[PacketBufferPool.MAX_PACKET_SIZE];
+    private final PacketBufferPool bufferPool = new PacketBufferPool();
+
+    // Decoders
+    private final OrientationPacket orientationDecoder = new OrientationPacket();
+    private final BatteryStatusPacket batteryDecoder = new BatteryStatusPacket();
+    private final ParameterNotificationPacket parameterDecoder = new ParameterNotificationPacket();
+
+    @Setup
+    public void setup() {
+        orientationPacket = new byte[] {
+                0x00, 0x5A, 0x00, 0x5A, 0x00, 0x02, 0x00, (byte) 0xFE, (byte) 0xFF, 0x05, 0x00,
+                0x03, 0x03, 0x03, 0x03, 0x00};
+        batteryPacket = new byte[] {
+                0x01, (byte) 0x80, 0x50, 0x10, 0x27, 0x6A, (byte) 0xFF, (byte) 0x74, 0x0E,
+                0x00, 0x19, 0x00, 0x50, 0x01, (byte) 0x80, 0x50};
+        parameterPacket = new byte[] {0x10, 0x01, 0x2D, 0x00};
+        frequencies = new int[] {32, 64, 96, 128};
+        durations = new int[] {10, 20, 10, 20};
+    }
+
+    @Benchmark
+    public byte[] encodeChannelConfiguration() {
+        orientation = (orientation + 1) % 360;
+        return BeltPacketEncoder.encodeChannelConfiguration(1, (byte) 1, 50, (byte) 2,
+                orientation, 0, 1000, 0, false, false);
+    }
+
+    @Benchmark
+    public byte[] encodePulse() {
+        orientation = (orientation + 1) % 360;
+        return BeltPacketEncoder.encodePulse(1, (byte) 2, orientation, 50, 100, 2, 0, 250,
+                1000, (byte) 0, false, false);
+    }
+
+    @Benchmark
+    public int encodeChannelConfigurationIntoBuffer() {
+        orientation = (orientation + 1) % 360;
+        return BeltPacketEncoder.encodeChannelConfiguration(buffer, 0, 1, (byte) 1, 50, (byte) 2,
+                orientation, 0, 1000, 0, false, false);
+    }
+
+    @Benchmark
+    public int encodePulseIntoBuffer() {
+        orientation = (orientation + 1) % 360;
+        return BeltPacketEncoder.encodePulse(buffer, 0, 1, (byte) 2, orientation, 50, 100, 2, 0,
+                250, 1000, (byte) 0, false, false);
+    }
+
+    @Benchmark
+    public int encodeChannelConfigurationIntoPooledBuffer() {
+        orientation = (orientation + 1) % 360;
+        byte[] packet = bufferPool.acquire(BeltPacketEncoder.CHANNEL_CONFIGURATION_PACKET_SIZE);
+        int size = BeltPacketEncoder.encodeChannelConfiguration(packet, 0, 1, (byte) 1, 50,
+                (byte) 2, orientation, 0, 1000, 0, false, false);
+        bufferPool.release(packet);
+        return size;
+    }
+
+    @Benchmark
+    public byte[] encodeTonePattern() {
+        return BeltPacketEncoder.encodeTonePattern(frequencies.length, frequencies, durations);
+    }
+
+    @Benchmark
+    public void decodeOrientation(Blackhole blackhole) {
+        orientationDecoder.decode(orientationPacket);
+        blackhole.consume(orientationDecoder.getBeltHeading());
+        blackhole.consume(orientationDecoder.getAccuracy());
+    }
+
+    @Benchmark
+    public void decodeBatteryStatus(Blackhole blackhole) {
+        batteryDecoder.decode(batteryPacket);
+        blackhole.consume(batteryDecoder.getLevel());
+        blackhole.consume(batteryDecoder.getTteTtf());
+    }
+
+    @Benchmark
+    public int decodeParameterNotification() {
+        parameterDecoder.decode(parameterPacket);
+        return parameterDecoder.getValue();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Decoder of the battery status packets of the belt.
+ *
+ * The fields of the last decoded packet are kept in primitive values, the same decoder can be
+ * used for successive packets.
+ */
+public class BatteryStatusPacket {
+
+    /** Minimum size of a battery status packet. */
+    public static final int PACKET_SIZE = 9;
+
+    /** Maximum number of extra readings. */
+    public static final int MAX_EXTRA_COUNT = 6;
+
+    // Fields of the last decoded packet
+    private byte powerStatus;
+    private float level;
+    private float tteTtf;
+    private final float[] extra = new float[MAX_EXTRA_COUNT];
+    private int extraCount;
+
+    /**
+     * Decodes a battery status packet.
+     *
+     * @param packet The packet.
+     * @return <code>true</code> if the packet has been decoded, <code>false</code> if it is
+     * malformed.
+     */
+    public boolean decode(@Nullable byte[] packet) {
+        if (packet == null || packet.length < PACKET_SIZE) {
+            return false;
+        }
+        powerStatus = packet[0];
+        level = ((float)(packet[2] & 0xFF)) + (((float)(packet[1] & 0xFF)) / 256.f);
+        tteTtf = ((float)(((packet[4] & 0xFF) << 8) | (packet[3] & 0xFF)))*5.625f;
+        extra[0] = (float) ((packet[6] << 8) | (packet[5] & 0xFF)); // int16 mA
+        extra[1] = (float) (((packet[8]  & 0xFF) << 8) | (packet[7] & 0xFF)); // uint16 mV
+        extraCount = 2;
+        if (packet.length >= 11) {
+            extra[2] = (float) ((packet[10] << 8) | (packet[9] & 0xFF)); // int16 dC
+            extra[2] /= 256.f;
+            extraCount = 3;
+        }
+        if (packet.length >= 13) {
+            extra[3] = (float) (((packet[12]  & 0xFF) << 8) | (packet[11] & 0xFF)); // uint16 %C
+            extra[3] /= 256.f;
+            extraCount = 4;
+        }
+        if (packet.length >= 14) {
+            // VS-L power status
+            extra[4] = (float) packet[13];
+            extraCount = 5;
+        }
+        if (packet.length >= 16) {
+            // VS-L charge level
+            extra[5] = ((float)(packet[15] & 0xFF)) + (((float)(packet[14] & 0xFF)) / 256.f);
+            extraCount = 6;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of the power status.
+     * @return the value of the power status.
+     */
+    public byte getPowerStatus() {
+        return powerStatus;
+    }
+
+    /**
+     * Returns the battery level.
+     * @return the battery level in percent.
+     */
+    public float getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the time to empty or time to full.
+     * @return the time to empty or time to full in seconds.
+     */
+    public float getTteTtf() {
+        return tteTtf;
+    }
+
+    /**
+     * Returns the number of extra readings in the last packet.
+     * @return the number of extra readings.
+     */
+    public int getExtraCount() {
+        return extraCount;
+    }
+
+    /**
+     * Returns an extra reading.
+     *
+     * @param index The index of the extra reading.
+     * @return the extra reading.
+     */
+    public float getExtra(int index) {
+        return extra[index];
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Encoding of the command packets of the belt.
+ *
+ * The arguments are not checked, the commands of the library validate the values before encoding.
+ */
+public final class BeltPacketEncoder {
+
+    /** Size of a channel configuration packet. */
+    public static final int CHANNEL_CONFIGURATION_PACKET_SIZE = 18;
+
+    /** Size of a pulse command packet. */
+    public static final int PULSE_PACKET_SIZE = 17;
+
+    /** Command ID of pulse commands. */
+    public static final byte PULSE_COMMAND_ID = (byte) 0x40;
+
+    /** Command ID of tone pattern commands. */
+    public static final byte TONE_PATTERN_COMMAND_ID = (byte) 0x01;
+
+    private BeltPacketEncoder() {
+    }
+
+    /**
+     * Encodes a channel configuration command.
+     *
+     * @param channelIndex The channel index.
+     * @param vibrationPattern The value of the vibration pattern.
+     * @param intensity The intensity.
+     * @param orientationType The value of the orientation type.
+     * @param orientationValue The orientation value.
+     * @param iterations The number of iterations.
+     * @param periodMs The period of the pattern in milliseconds.
+     * @param initialTimerValueMs The initial value of the pattern timer in milliseconds.
+     * @param exclusiveChannel <code>true</code> for an exclusive channel.
+     * @param clearOtherChannels <code>true</code> to clear the other channels.
+     * @return the packet of the command.
+     */
+    public static @NonNull byte[] encodeChannelConfiguration(
+            int channelIndex, byte vibrationPattern, int intensity, byte orientationType,
+            int orientationValue, int iterations, int periodMs, int initialTimerValueMs,
+            boolean exclusiveChannel, boolean clearOtherChannels) {
+        byte[] packet = new byte[CHANNEL_CONFIGURATION_PACKET_SIZE];
+        encodeChannelConfiguration(packet, 0, channelIndex, vibrationPattern, intensity,
+                orientationType, orientationValue, iterations, periodMs, initialTimerValueMs,
+                exclusiveChannel, clearOtherChannels);
+        return packet;
+    }
+
+    /**
+     * Encodes a channel configuration command into a buffer. See
+     * {@link #encodeChannelConfiguration(int, byte, int, byte, int, int, int, int, boolean, boolean)}.
+     *
+     * @param buffer The buffer, with at least {@link #CHANNEL_CONFIGURATION_PACKET_SIZE} bytes
+     *               from the offset.
+     * @param offset The offset of the packet in the buffer.
+     * @return the size of the packet.
+     */
+    public static int encodeChannelConfiguration(
+            @NonNull byte[] buffer, int offset,
+            int channelIndex, byte vibrationPattern, int intensity, byte orientationType,
+            int orientationValue, int iterations, int periodMs, int initialTimerValueMs,
+            boolean exclusiveChannel, boolean clearOtherChannels) {
+        buffer[offset] = (byte) channelIndex;
+        buffer[offset+1] = vibrationPattern;
+        buffer[offset+2] = (byte) (intensity & 0xFF);
+        buffer[offset+3] = (byte) ((intensity >> 8) & 0xFF);
+        buffer[offset+4] = (byte) 0x00;
+        buffer[offset+5] = (byte) 0x00;
+        buffer[offset+6] = orientationType;
+        buffer[offset+7] = (byte) (orientationValue & 0xFF);
+        buffer[offset+8] = (byte) ((orientationValue >> 8) & 0xFF);
+        buffer[offset+9] = (byte) 0x00;
+        buffer[offset+10] = (byte) 0x00;
+        buffer[offset+11] = (byte) iterations;
+        buffer[offset+12] = (byte) (periodMs & 0xFF);
+        buffer[offset+13] = (byte) ((periodMs >> 8) & 0xFF);
+        buffer[offset+14] = (byte) (initialTimerValueMs & 0xFF);
+        buffer[offset+15] = (byte) ((initialTimerValueMs >> 8) & 0xFF);
+        buffer[offset+16] = (byte) ((exclusiveChannel)?(0x01):(0x00));
+        buffer[offset+17] = (byte) ((clearOtherChannels)?(0x01):(0x00));
+        return CHANNEL_CONFIGURATION_PACKET_SIZE;
+    }
+
+    /**
+     * Encodes a pulse command.
+     *
+     * @param channelIndex The channel index.
+     * @param orientationType The value of the orientation type.
+     * @param orientationValue The orientation value.
+     * @param intensity The intensity.
+     * @param onDurationMs The duration of a pulse in milliseconds.
+     * @param pulseIterations The number of pulses in a pattern.
+     * @param patternIterations The number of iterations of the pattern.
+     * @param pulsePeriodMs The period of pulses in milliseconds.
+     * @param patternPeriodMs The period of the pattern in milliseconds.
+     * @param resetProgressOption The value of the reset progress option.
+     * @param exclusiveChannel <code>true</code> for an exclusive channel.
+     * @param clearOtherChannels <code>true</code> to clear the other channels.
+     * @return the packet of the command.
+     */
+    public static @NonNull byte[] encodePulse(
+            int channelIndex, byte orientationType, int orientationValue, int intensity,
+            int onDurationMs, int pulseIterations, int patternIterations, int pulsePeriodMs,
+            int patternPeriodMs, byte resetProgressOption, boolean exclusiveChannel,
+            boolean clearOtherChannels) {
+        byte[] packet = new byte[PULSE_PACKET_SIZE];
+        encodePulse(packet, 0, channelIndex, orientationType, orientationValue, intensity,
+                onDurationMs, pulseIterations, patternIterations, pulsePeriodMs, patternPeriodMs,
+                resetProgressOption, exclusiveChannel, clearOtherChannels);
+        return packet;
+    }
+
+    /**
+     * Encodes a pulse command into a buffer. See
+     * {@link #encodePulse(int, byte, int, int, int, int, int, int, int, byte, boolean, boolean)}.
+     *
+     * @param buffer The buffer, with at least {@link #PULSE_PACKET_SIZE} bytes from the offset.
+     * @param offset The offset of the packet in the buffer.
+     * @return the size of the packet.
+     */
+    public static int encodePulse(
+            @NonNull byte[] buffer, int offset,
+            int channelIndex, byte orientationType, int orientationValue, int intensity,
+            int onDurationMs, int pulseIterations, int patternIterations, int pulsePeriodMs,
+            int patternPeriodMs, byte resetProgressOption, boolean exclusiveChannel,
+            boolean clearOtherChannels) {
+        buffer[offset] = PULSE_COMMAND_ID;
+        buffer[offset+1] = (byte) channelIndex;
+        buffer[offset+2] = orientationType;
+        buffer[offset+3] = (byte) (orientationValue & 0xFF);
+        buffer[offset+4] = (byte) ((orientationValue >> 8) & 0xFF);
+        buffer[offset+5] = (byte) intensity;
+        buffer[offset+6] = (byte) (onDurationMs & 0xFF);
+        buffer[offset+7] = (byte) ((onDurationMs >> 8) & 0xFF);
+        buffer[offset+8] = (byte) pulseIterations;
+        buffer[offset+9] = (byte) (patternIterations & 0xFF);
+        buffer[offset+10] = (byte) (pulsePeriodMs & 0xFF);
+        buffer[offset+11] = (byte) ((pulsePeriodMs >> 8) & 0xFF);
+        buffer[offset+12] = (byte) (patternPeriodMs & 0xFF);
+        buffer[offset+13] = (byte) ((patternPeriodMs >> 8) & 0xFF);
+        buffer[offset+14] = resetProgressOption;
+        buffer[offset+15] = (byte) ((exclusiveChannel)?(0x01):(0x00));
+        buffer[offset+16] = (byte) ((clearOtherChannels)?(0x01):(0x00));
+        return PULSE_PACKET_SIZE;
+    }
+
+    /**
+     * Encodes a buzzer tone pattern command.
+     *
+     * @param steps The number of steps.
+     * @param frequenciesKHzQ5 The frequencies of steps in kHz with a Q-point at 5 bits.
+     * @param durationsCs The durations of steps in centiseconds.
+     * @return the packet of the command.
+     */
+    public static @NonNull byte[] encodeTonePattern(int steps, @NonNull int[] frequenciesKHzQ5,
+                                                    @NonNull int[] durationsCs) {
+        byte[] packet = new byte[2+2*steps];
+        packet[0] = TONE_PATTERN_COMMAND_ID;
+        packet[1] = (byte) steps;
+        for (int i=0; i<steps; i++) {
+            packet[i+2] = (byte) frequenciesKHzQ5[i];
+        }
+        for (int i=0; i<steps; i++) {
+            packet[i+2+steps] = (byte) durationsCs[i];
+        }
+        return packet;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Codec of an integer parameter value on one or two bytes, little-endian, with a range of legal
+ * values.
+ */
+public class IntegerParameterCodec implements ParameterCodec {
+
+    // Size and signedness of the value
+    private final int size;
+    private final boolean signed;
+
+    // Range of legal values
+    private final int minValue;
+    private final int maxValue;
+
+    /**
+     * Constructor.
+     *
+     * @param size The size of the value in bytes, 1 or 2.
+     * @param signed <code>true</code> if the value is signed.
+     * @param minValue The minimum legal value.
+     * @param maxValue The maximum legal value.
+     * @throws IllegalArgumentException If the size is not 1 or 2, or the range is empty.
+     */
+    public IntegerParameterCodec(int size, boolean signed, int minValue, int maxValue) {
+        if (size != 1 && size != 2) {
+            throw new IllegalArgumentException("The size of the value must be 1 or 2.");
+        }
+        if (minValue > maxValue) {
+            throw new IllegalArgumentException("Empty range of values.");
+        }
+        this.size = size;
+        this.signed = signed;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    /**
+     * Returns a codec of an unsigned value on one byte.
+     *
+     * @param minValue The minimum legal value.
+     * @param maxValue The maximum legal value.
+     * @return the codec.
+     */
+    public static @NonNull IntegerParameterCodec uint8(int minValue, int maxValue) {
+        return new IntegerParameterCodec(1, false, minValue, maxValue);
+    }
+
+    /**
+     * Returns a codec of a signed value on one byte.
+     *
+     * @param minValue The minimum legal value.
+     * @param maxValue The maximum legal value.
+     * @return the codec.
+     */
+    public static @NonNull IntegerParameterCodec int8(int minValue, int maxValue) {
+        return new IntegerParameterCodec(1, true, minValue, maxValue);
+    }
+
+    /**
+     * Returns a codec of a signed value on two bytes.
+     *
+     * @param minValue The minimum legal value.
+     * @param maxValue The maximum legal value.
+     * @return the codec.
+     */
+    public static @NonNull IntegerParameterCodec int16(int minValue, int maxValue) {
+        return new IntegerParameterCodec(2, true, minValue, maxValue);
+    }
+
+    @Override
+    public int getValueSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isLegalValue(int value) {
+        return value >= minValue && value <= maxValue;
+    }
+
+    @Override
+    public int decode(@NonNull byte[] buffer, int offset) {
+        if (size == 1) {
+            return (signed)?(buffer[offset]):(0xFF & buffer[offset]);
+        }
+        int msb = (signed)?(buffer[offset+1]):(0xFF & buffer[offset+1]);
+        return (msb << 8) | (0xFF & buffer[offset]);
+    }
+
+    @Override
+    public void encode(int value, @NonNull byte[] buffer, int offset) {
+        buffer[offset] = (byte) (value & 0xFF);
+        if (size == 2) {
+            buffer[offset+1] = (byte) ((value >> 8) & 0xFF);
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Decoder of the orientation data notifications of the belt.
+ *
+ * The fields of the last decoded packet are kept in primitive values, the same decoder can be
+ * used for successive packets.
+ */
+public class OrientationPacket {
+
+    /** Minimum size of an orientation packet. */
+    public static final int PACKET_SIZE = 16;
+
+    // Fields of the last decoded packet
+    private int sourceId;
+    private int beltHeading;
+    private int controlBoxHeading;
+    private int controlBoxRoll;
+    private int controlBoxPitch;
+    private int accuracy;
+    private int magnetometerStatus;
+    private int accelerometerStatus;
+    private int gyroscopeStatus;
+    private int fusionStatus;
+    private boolean inaccurateOrientation;
+
+    /**
+     * Decodes an orientation packet.
+     *
+     * @param value The packet.
+     * @return <code>true</code> if the packet has been decoded, <code>false</code> if it is
+     * malformed.
+     */
+    public boolean decode(@Nullable byte[] value) {
+        if (value == null || value.length < PACKET_SIZE) {
+            return false;
+        }
+        sourceId = (value[0] & 0xFF);
+        beltHeading = (((int) value[2]) << 8) | (0xFF & value[1]);
+        controlBoxHeading = (((int) value[4]) << 8) | (0xFF & value[3]);
+        controlBoxRoll = (((int) value[6]) << 8) | (0xFF & value[5]);
+        controlBoxPitch = (((int) value[8]) << 8) | (0xFF & value[7]);
+        accuracy = (((int) value[10]) << 8) | (0xFF & value[9]);
+        magnetometerStatus = value[11];
+        accelerometerStatus = value[12];
+        gyroscopeStatus = value[13];
+        fusionStatus = value[14];
+        inaccurateOrientation = (value[15]!=0);
+        return true;
+    }
+
+    /**
+     * Returns the ID of the orientation source.
+     * @return the source ID.
+     */
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * Returns the heading of the belt, adjusted with the heading offset.
+     * @return the heading of the belt in degrees.
+     */
+    public int getBeltHeading() {
+        return beltHeading;
+    }
+
+    /**
+     * Returns the heading of the control box.
+     * @return the heading of the control box in degrees.
+     */
+    public int getControlBoxHeading() {
+        return controlBoxHeading;
+    }
+
+    /**
+     * Returns the roll of the control box.
+     * @return the roll of the control box in degrees.
+     */
+    public int getControlBoxRoll() {
+        return controlBoxRoll;
+    }
+
+    /**
+     * Returns the pitch of the control box.
+     * @return the pitch of the control box in degrees.
+     */
+    public int getControlBoxPitch() {
+        return controlBoxPitch;
+    }
+
+    /**
+     * Returns the accuracy of the orientation.
+     * @return the accuracy in degrees.
+     */
+    public int getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Returns the status of the magnetometer.
+     * @return the status of the magnetometer.
+     */
+    public int getMagnetometerStatus() {
+        return magnetometerStatus;
+    }
+
+    /**
+     * Returns the status of the accelerometer.
+     * @return the status of the accelerometer.
+     */
+    public int getAccelerometerStatus() {
+        return accelerometerStatus;
+    }
+
+    /**
+     * Returns the status of the gyroscope.
+     * @return the status of the gyroscope.
+     */
+    public int getGyroscopeStatus() {
+        return gyroscopeStatus;
+    }
+
+    /**
+     * Returns the status of the fusion.
+     * @return the status of the fusion.
+     */
+    public int getFusionStatus() {
+        return fusionStatus;
+    }
+
+    /**
+     * Returns <code>true</code> if the orientation is flagged as inaccurate.
+     * @return <code>true</code> if the orientation is inaccurate.
+     */
+    public boolean isOrientationInaccurate() {
+        return inaccurateOrientation;
+    }
+
+}
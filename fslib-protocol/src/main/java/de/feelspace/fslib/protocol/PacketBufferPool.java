@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Pool of packet buffers, to encode commands without allocating a new array for each packet.
+ *
+ * Buffers are pooled by exact size, so that a buffer can be written to a characteristic without
+ * copy. A buffer acquired from the pool must be released once the packet has been sent and must
+ * not be used after its release. The pool is thread-safe.
+ */
+public class PacketBufferPool {
+
+    /** Maximum size of a pooled buffer, i.e. the maximum size of an ATT write with default MTU. */
+    public static final int MAX_PACKET_SIZE = 20;
+
+    /** Default number of free buffers kept per packet size. */
+    public static final int DEFAULT_BUFFERS_PER_SIZE = 16;
+
+    // Free buffers per size
+    private final byte[][][] freeBuffers;
+    private final int[] freeCount;
+
+    // Number of buffers allocated by the pool
+    private long allocationCount = 0;
+
+    /**
+     * Constructor with {@link #DEFAULT_BUFFERS_PER_SIZE} buffers per size.
+     */
+    public PacketBufferPool() {
+        this(DEFAULT_BUFFERS_PER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param buffersPerSize The maximum number of free buffers kept per packet size.
+     * @throws IllegalArgumentException If the number of buffers is not positive.
+     */
+    public PacketBufferPool(int buffersPerSize) {
+        if (buffersPerSize <= 0) {
+            throw new IllegalArgumentException("The number of buffers must be positive.");
+        }
+        freeBuffers = new byte[MAX_PACKET_SIZE+1][buffersPerSize][];
+        freeCount = new int[MAX_PACKET_SIZE+1];
+    }
+
+    /**
+     * Returns a buffer of the given size. The content of the buffer is undefined.
+     *
+     * Buffers larger than {@link #MAX_PACKET_SIZE} are not pooled and always allocated.
+     *
+     * @param size The size of the buffer.
+     * @return a buffer of the given size.
+     * @throws IllegalArgumentException If the size is negative.
+     */
+    public @NonNull byte[] acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative buffer size.");
+        }
+        synchronized (this) {
+            if (size <= MAX_PACKET_SIZE && freeCount[size] > 0) {
+                int index = --freeCount[size];
+                byte[] buffer = freeBuffers[size][index];
+                freeBuffers[size][index] = null;
+                return buffer;
+            }
+            allocationCount++;
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that cannot be pooled are ignored.
+     *
+     * @param buffer The buffer to release.
+     */
+    public void release(@Nullable byte[] buffer) {
+        if (buffer == null || buffer.length > MAX_PACKET_SIZE) {
+            return;
+        }
+        synchronized (this) {
+            int size = buffer.length;
+            if (freeCount[size] < freeBuffers[size].length) {
+                freeBuffers[size][freeCount[size]++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buffers allocated by the pool since its creation.
+     *
+     * @return the number of buffers allocated.
+     */
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Codec of the value of a belt parameter.
+ *
+ * The value is encoded after the command and parameter ID in parameter requests and
+ * notifications. Codecs are registered in a {@link ParameterNotificationPacket} to decode new
+ * parameters without changing the decoder.
+ */
+public interface ParameterCodec {
+
+    /**
+     * Returns the size of the encoded value.
+     *
+     * @return the size of the value in bytes.
+     */
+    int getValueSize();
+
+    /**
+     * Checks if a value is legal for the parameter.
+     *
+     * @param value The value to check.
+     * @return <code>true</code> if the value is legal.
+     */
+    boolean isLegalValue(int value);
+
+    /**
+     * Decodes a value. The buffer must contain at least {@link #getValueSize()} bytes from the
+     * offset.
+     *
+     * @param buffer The buffer.
+     * @param offset The offset of the value in the buffer.
+     * @return the decoded value.
+     */
+    int decode(@NonNull byte[] buffer, int offset);
+
+    /**
+     * Encodes a value. The buffer must contain at least {@link #getValueSize()} bytes from the
+     * offset.
+     *
+     * @param value The value to encode.
+     * @param buffer The buffer.
+     * @param offset The offset of the value in the buffer.
+     */
+    void encode(int value, @NonNull byte[] buffer, int offset);
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Decoder of the packets of the parameter notification characteristic of the belt.
+ *
+ * A parameter notification starts with the command (0x01 for a belt parameter, 0x10 for a
+ * parameter value) and the parameter ID, followed by the value. The type and codec of the value
+ * are looked up in a table indexed by command and parameter ID, additional parameters can be
+ * registered with {@link #registerParameter(int, int, int, ParameterCodec)}. The type and value
+ * of the last decoded packet are kept, the same decoder can be used for successive packets.
+ */
+public class ParameterNotificationPacket {
+
+    /** Command of the belt parameter notifications. */
+    public static final int COMMAND_BELT_PARAMETER = 0x01;
+
+    /** Command of the parameter value notifications. */
+    public static final int COMMAND_PARAMETER_VALUE = 0x10;
+
+    /** Malformed packet. */
+    public static final int TYPE_MALFORMED = -1;
+
+    /** Unknown parameter. */
+    public static final int TYPE_UNKNOWN = 0;
+
+    /** Belt mode, the value is the value of the mode. */
+    public static final int TYPE_MODE = 1;
+
+    /** Default vibration intensity in range [0-100]. */
+    public static final int TYPE_DEFAULT_INTENSITY = 2;
+
+    /** Heading offset in degrees. */
+    public static final int TYPE_HEADING_OFFSET = 3;
+
+    /** Bluetooth name, not decoded. */
+    public static final int TYPE_BLUETOOTH_NAME = 4;
+
+    /** Buzzer active flag, not decoded. */
+    public static final int TYPE_BUZZER_ACTIVE = 5;
+
+    /** Accuracy signal state in range [0-3]. */
+    public static final int TYPE_ACCURACY_SIGNAL_STATE = 6;
+
+    /** Maximum value of a parameter type. */
+    public static final int MAX_TYPE = 255;
+
+    // Types and codecs by command and parameter ID, null rows for unknown commands
+    private final int[][] types = new int[256][];
+    private final ParameterCodec[][] codecs = new ParameterCodec[256][];
+
+    // Type and value of the last decoded packet
+    private int type = TYPE_UNKNOWN;
+    private int value;
+
+    /**
+     * Constructor with the parameters of the belt protocol.
+     */
+    public ParameterNotificationPacket() {
+        registerParameter(COMMAND_BELT_PARAMETER, 0x01, TYPE_MODE,
+                IntegerParameterCodec.int8(Byte.MIN_VALUE, Byte.MAX_VALUE));
+        registerParameter(COMMAND_BELT_PARAMETER, 0x02, TYPE_DEFAULT_INTENSITY,
+                IntegerParameterCodec.uint8(0, 100));
+        registerParameter(COMMAND_BELT_PARAMETER, 0x03, TYPE_HEADING_OFFSET,
+                IntegerParameterCodec.int16(Short.MIN_VALUE, Short.MAX_VALUE));
+        registerParameter(COMMAND_BELT_PARAMETER, 0x04, TYPE_BLUETOOTH_NAME, null);
+        registerParameter(COMMAND_PARAMETER_VALUE, 0x00, TYPE_DEFAULT_INTENSITY,
+                IntegerParameterCodec.uint8(0, 100));
+        registerParameter(COMMAND_PARAMETER_VALUE, 0x01, TYPE_HEADING_OFFSET,
+                IntegerParameterCodec.int16(Short.MIN_VALUE, Short.MAX_VALUE));
+        registerParameter(COMMAND_PARAMETER_VALUE, 0x02, TYPE_BUZZER_ACTIVE, null);
+        registerParameter(COMMAND_PARAMETER_VALUE, 0x03, TYPE_ACCURACY_SIGNAL_STATE,
+                IntegerParameterCodec.uint8(0, 3));
+    }
+
+    /**
+     * Registers the type and codec of a parameter, replacing any previous registration for the
+     * same command and parameter ID.
+     *
+     * @param command The command of the notification in range [0-255].
+     * @param parameterId The parameter ID in range [0-255].
+     * @param type The type of the parameter in range [1-{@link #MAX_TYPE}].
+     * @param codec The codec of the value, or <code>null</code> if the value is not decoded.
+     * @throws IllegalArgumentException If an argument is out of range.
+     */
+    public void registerParameter(int command, int parameterId, int type,
+                                  @Nullable ParameterCodec codec) {
+        if (command < 0 || command > 255 || parameterId < 0 || parameterId > 255) {
+            throw new IllegalArgumentException("Command or parameter ID out of range.");
+        }
+        if (type <= TYPE_UNKNOWN || type > MAX_TYPE) {
+            throw new IllegalArgumentException("Parameter type out of range.");
+        }
+        if (types[command] == null) {
+            types[command] = new int[256];
+            codecs[command] = new ParameterCodec[256];
+        }
+        types[command][parameterId] = type;
+        codecs[command][parameterId] = codec;
+    }
+
+    /**
+     * Decodes a parameter notification.
+     *
+     * @param packet The packet.
+     * @return the type of the parameter, {@link #TYPE_MALFORMED} if the packet is malformed, or
+     * {@link #TYPE_UNKNOWN} if the parameter is unknown.
+     */
+    public int decode(@Nullable byte[] packet) {
+        value = 0;
+        if (packet == null || packet.length < 2) {
+            type = TYPE_MALFORMED;
+            return type;
+        }
+        int[] commandTypes = types[0xFF & packet[0]];
+        if (commandTypes == null || commandTypes[0xFF & packet[1]] == TYPE_UNKNOWN) {
+            type = TYPE_UNKNOWN;
+            return type;
+        }
+        type = commandTypes[0xFF & packet[1]];
+        ParameterCodec codec = codecs[0xFF & packet[0]][0xFF & packet[1]];
+        if (codec != null) {
+            if (packet.length < 2+codec.getValueSize()) {
+                type = TYPE_MALFORMED;
+                return type;
+            }
+            int decoded = codec.decode(packet, 2);
+            if (!codec.isLegalValue(decoded)) {
+                type = TYPE_MALFORMED;
+                return type;
+            }
+            value = decoded;
+        }
+        return type;
+    }
+
+    /**
+     * Returns the type of the last decoded packet.
+     * @return the type of the last decoded packet.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns the value of the last decoded packet.
+     * @return the value of the parameter.
+     */
+    public int getValue() {
+        return value;
+    }
+
+}
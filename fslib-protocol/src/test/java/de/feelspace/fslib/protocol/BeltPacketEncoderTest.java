@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the encoding of belt commands.
+ */
+public class BeltPacketEncoderTest {
+
+    private static int readUint16(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset+1] & 0xFF) << 8);
+    }
+
+    @Test
+    public void channelConfiguration_fieldsDecodedBack() {
+        byte[] packet = BeltPacketEncoder.encodeChannelConfiguration(2, (byte) 0x03, 650,
+                (byte) 0x01, 359, 5, 1500, 250, true, false);
+        assertEquals(BeltPacketEncoder.CHANNEL_CONFIGURATION_PACKET_SIZE, packet.length);
+        assertEquals(2, packet[0]);
+        assertEquals(0x03, packet[1]);
+        assertEquals(650, readUint16(packet, 2));
+        assertEquals(0, readUint16(packet, 4));
+        assertEquals(0x01, packet[6]);
+        assertEquals(359, readUint16(packet, 7));
+        assertEquals(0, readUint16(packet, 9));
+        assertEquals(5, packet[11]);
+        assertEquals(1500, readUint16(packet, 12));
+        assertEquals(250, readUint16(packet, 14));
+        assertEquals(1, packet[16]);
+        assertEquals(0, packet[17]);
+    }
+
+    @Test
+    public void channelConfiguration_pooledBufferSameAsAllocated() {
+        byte[] expected = BeltPacketEncoder.encodeChannelConfiguration(1, (byte) 0x00, 50,
+                (byte) 0x02, 90, 0, 500, 0, false, true);
+        PacketBufferPool pool = new PacketBufferPool();
+        byte[] buffer = pool.acquire(BeltPacketEncoder.CHANNEL_CONFIGURATION_PACKET_SIZE);
+        // Content of a previous packet is overwritten
+        Arrays.fill(buffer, (byte) 0x7F);
+        assertEquals(BeltPacketEncoder.CHANNEL_CONFIGURATION_PACKET_SIZE,
+                BeltPacketEncoder.encodeChannelConfiguration(buffer, 0, 1, (byte) 0x00, 50,
+                        (byte) 0x02, 90, 0, 500, 0, false, true));
+        assertArrayEquals(expected, buffer);
+    }
+
+    @Test
+    public void pulse_fieldsDecodedBackAtOffset() {
+        byte[] buffer = new byte[BeltPacketEncoder.PULSE_PACKET_SIZE + 3];
+        assertEquals(BeltPacketEncoder.PULSE_PACKET_SIZE, BeltPacketEncoder.encodePulse(buffer,
+                3, 4, (byte) 0x01, 270, 80, 120, 3, 2, 300, 2000, (byte) 0x01, false, true));
+        assertEquals(0, buffer[0]);
+        assertEquals(BeltPacketEncoder.PULSE_COMMAND_ID, buffer[3]);
+        assertEquals(4, buffer[4]);
+        assertEquals(0x01, buffer[5]);
+        assertEquals(270, readUint16(buffer, 6));
+        assertEquals(80, buffer[8]);
+        assertEquals(120, readUint16(buffer, 9));
+        assertEquals(3, buffer[11]);
+        assertEquals(2, buffer[12]);
+        assertEquals(300, readUint16(buffer, 13));
+        assertEquals(2000, readUint16(buffer, 15));
+        assertEquals(0x01, buffer[17]);
+        assertEquals(0, buffer[18]);
+        assertEquals(1, buffer[19]);
+        assertArrayEquals(BeltPacketEncoder.encodePulse(4, (byte) 0x01, 270, 80, 120, 3, 2, 300,
+                2000, (byte) 0x01, false, true), Arrays.copyOfRange(buffer, 3, buffer.length));
+    }
+
+    @Test
+    public void tonePattern_frequenciesThenDurations() {
+        byte[] packet = BeltPacketEncoder.encodeTonePattern(2, new int[] {100, 120},
+                new int[] {10, 20});
+        assertArrayEquals(new byte[] {BeltPacketEncoder.TONE_PATTERN_COMMAND_ID, 2, 100, 120,
+                10, 20}, packet);
+    }
+
+}
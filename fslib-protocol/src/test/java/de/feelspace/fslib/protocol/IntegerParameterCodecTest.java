@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the codec of integer parameter values.
+ */
+public class IntegerParameterCodecTest {
+
+    private static void assertRoundTrip(ParameterCodec codec, int value) {
+        byte[] buffer = new byte[codec.getValueSize() + 2];
+        codec.encode(value, buffer, 2);
+        assertEquals(value, codec.decode(buffer, 2));
+    }
+
+    @Test
+    public void uint8_roundTripAndByteOrder() {
+        IntegerParameterCodec codec = IntegerParameterCodec.uint8(0, 255);
+        assertEquals(1, codec.getValueSize());
+        assertRoundTrip(codec, 0);
+        assertRoundTrip(codec, 100);
+        assertRoundTrip(codec, 255);
+        assertEquals(200, codec.decode(new byte[] {(byte) 0xC8}, 0));
+    }
+
+    @Test
+    public void int8_roundTripNegativeValues() {
+        IntegerParameterCodec codec = IntegerParameterCodec.int8(Byte.MIN_VALUE, Byte.MAX_VALUE);
+        assertEquals(1, codec.getValueSize());
+        assertRoundTrip(codec, -128);
+        assertRoundTrip(codec, -1);
+        assertRoundTrip(codec, 127);
+        assertEquals(-56, codec.decode(new byte[] {(byte) 0xC8}, 0));
+    }
+
+    @Test
+    public void int16_roundTripLittleEndian() {
+        IntegerParameterCodec codec = IntegerParameterCodec.int16(Short.MIN_VALUE,
+                Short.MAX_VALUE);
+        assertEquals(2, codec.getValueSize());
+        assertRoundTrip(codec, Short.MIN_VALUE);
+        assertRoundTrip(codec, -1);
+        assertRoundTrip(codec, 359);
+        assertRoundTrip(codec, Short.MAX_VALUE);
+        byte[] buffer = new byte[2];
+        codec.encode(0x0167, buffer, 0);
+        assertArrayEquals(new byte[] {0x67, 0x01}, buffer);
+        assertEquals(-2, codec.decode(new byte[] {(byte) 0xFE, (byte) 0xFF}, 0));
+    }
+
+    @Test
+    public void unsignedTwoBytes_decodedPositive() {
+        IntegerParameterCodec codec = new IntegerParameterCodec(2, false, 0, 0xFFFF);
+        assertEquals(0xFFFE, codec.decode(new byte[] {(byte) 0xFE, (byte) 0xFF}, 0));
+        assertRoundTrip(codec, 0xFFFF);
+    }
+
+    @Test
+    public void legalValue_boundsInclusive() {
+        // Heading offset
+        IntegerParameterCodec codec = IntegerParameterCodec.int16(0, 359);
+        assertTrue(codec.isLegalValue(0));
+        assertTrue(codec.isLegalValue(359));
+        assertFalse(codec.isLegalValue(360));
+        assertFalse(codec.isLegalValue(-1));
+        // Accuracy signal state
+        codec = IntegerParameterCodec.uint8(0, 3);
+        assertTrue(codec.isLegalValue(3));
+        assertFalse(codec.isLegalValue(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_illegalSizeRejected() {
+        new IntegerParameterCodec(3, false, 0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_emptyRangeRejected() {
+        IntegerParameterCodec.uint8(10, 9);
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the pool of packet buffers.
+ */
+public class PacketBufferPoolTest {
+
+    @Test
+    public void acquire_returnsBufferOfExactSize() {
+        PacketBufferPool pool = new PacketBufferPool();
+        assertEquals(18, pool.acquire(18).length);
+        assertEquals(0, pool.acquire(0).length);
+        assertEquals(2, pool.getAllocationCount());
+    }
+
+    @Test
+    public void release_bufferReusedForSameSizeOnly() {
+        PacketBufferPool pool = new PacketBufferPool();
+        byte[] buffer = pool.acquire(18);
+        pool.release(buffer);
+        // Another size is allocated
+        byte[] other = pool.acquire(17);
+        assertNotSame(buffer, other);
+        assertEquals(2, pool.getAllocationCount());
+        // Same size is reused
+        assertSame(buffer, pool.acquire(18));
+        assertEquals(2, pool.getAllocationCount());
+        // The pool is empty for this size
+        assertNotSame(buffer, pool.acquire(18));
+        assertEquals(3, pool.getAllocationCount());
+    }
+
+    @Test
+    public void release_freeBuffersBoundedPerSize() {
+        PacketBufferPool pool = new PacketBufferPool(2);
+        byte[] first = pool.acquire(4);
+        byte[] second = pool.acquire(4);
+        byte[] third = pool.acquire(4);
+        pool.release(first);
+        pool.release(second);
+        // Dropped, the pool is full for this size
+        pool.release(third);
+        assertEquals(3, pool.getAllocationCount());
+        assertSame(second, pool.acquire(4));
+        assertSame(first, pool.acquire(4));
+        pool.acquire(4);
+        assertEquals(4, pool.getAllocationCount());
+    }
+
+    @Test
+    public void largeBuffer_notPooled() {
+        PacketBufferPool pool = new PacketBufferPool();
+        byte[] buffer = pool.acquire(PacketBufferPool.MAX_PACKET_SIZE + 1);
+        assertEquals(PacketBufferPool.MAX_PACKET_SIZE + 1, buffer.length);
+        pool.release(buffer);
+        assertNotSame(buffer, pool.acquire(PacketBufferPool.MAX_PACKET_SIZE + 1));
+        assertEquals(2, pool.getAllocationCount());
+        // Ignored
+        pool.release(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acquire_negativeSizeRejected() {
+        new PacketBufferPool().acquire(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noBufferRejected() {
+        new PacketBufferPool(0);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib.protocol;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the decoding of parameter notifications.
+ */
+public class ParameterNotificationPacketTest {
+
+    private static byte[] packet(int command, int parameterId, int... value) {
+        byte[] packet = new byte[2 + value.length];
+        packet[0] = (byte) command;
+        packet[1] = (byte) parameterId;
+        for (int i=0; i<value.length; i++) {
+            packet[2+i] = (byte) value[i];
+        }
+        return packet;
+    }
+
+    @Test
+    public void beltParameters_decodedByType() {
+        ParameterNotificationPacket decoder = new ParameterNotificationPacket();
+        assertEquals(ParameterNotificationPacket.TYPE_MODE, decoder.decode(packet(0x01, 0x01, 2)));
+        assertEquals(2, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_DEFAULT_INTENSITY,
+                decoder.decode(packet(0x01, 0x02, 50)));
+        assertEquals(50, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_HEADING_OFFSET,
+                decoder.decode(packet(0x01, 0x03, 0x67, 0x01)));
+        assertEquals(359, decoder.getValue());
+        // Value not decoded
+        assertEquals(ParameterNotificationPacket.TYPE_BLUETOOTH_NAME,
+                decoder.decode(packet(0x01, 0x04, 'b', 'e', 'l', 't')));
+        assertEquals(0, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_BLUETOOTH_NAME, decoder.getType());
+    }
+
+    @Test
+    public void parameterValues_decodedByType() {
+        ParameterNotificationPacket decoder = new ParameterNotificationPacket();
+        assertEquals(ParameterNotificationPacket.TYPE_DEFAULT_INTENSITY,
+                decoder.decode(packet(0x10, 0x00, 100)));
+        assertEquals(100, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_HEADING_OFFSET,
+                decoder.decode(packet(0x10, 0x01, 45, 0)));
+        assertEquals(45, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_BUZZER_ACTIVE,
+                decoder.decode(packet(0x10, 0x02, 1)));
+        assertEquals(ParameterNotificationPacket.TYPE_ACCURACY_SIGNAL_STATE,
+                decoder.decode(packet(0x10, 0x03, 3)));
+        assertEquals(3, decoder.getValue());
+    }
+
+    @Test
+    public void unknownParameter_unknownType() {
+        ParameterNotificationPacket decoder = new ParameterNotificationPacket();
+        assertEquals(ParameterNotificationPacket.TYPE_UNKNOWN,
+                decoder.decode(packet(0x02, 0x01, 1)));
+        assertEquals(ParameterNotificationPacket.TYPE_UNKNOWN,
+                decoder.decode(packet(0x10, 0x7F, 1)));
+        assertEquals(0, decoder.getValue());
+    }
+
+    @Test
+    public void malformedPacket_malformedType() {
+        ParameterNotificationPacket decoder = new ParameterNotificationPacket();
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED, decoder.decode(null));
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED,
+                decoder.decode(new byte[] {0x01}));
+        // Value too short
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED,
+                decoder.decode(packet(0x01, 0x03, 0x67)));
+        // Value out of range
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED,
+                decoder.decode(packet(0x01, 0x02, 101)));
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED,
+                decoder.decode(packet(0x10, 0x03, 4)));
+        assertEquals(0, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED, decoder.getType());
+    }
+
+    @Test
+    public void registeredParameter_decodedWithCodec() {
+        ParameterNotificationPacket decoder = new ParameterNotificationPacket();
+        decoder.registerParameter(0x10, 0x20, 42, IntegerParameterCodec.int8(-10, 10));
+        assertEquals(42, decoder.decode(packet(0x10, 0x20, -5)));
+        assertEquals(-5, decoder.getValue());
+        assertEquals(ParameterNotificationPacket.TYPE_MALFORMED,
+                decoder.decode(packet(0x10, 0x20, 11)));
+        // Replaced registration
+        decoder.registerParameter(0x10, 0x03, 43, null);
+        assertEquals(43, decoder.decode(packet(0x10, 0x03, 4)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerParameter_unknownTypeRejected() {
+        new ParameterNotificationPacket().registerParameter(0x10, 0x20,
+                ParameterNotificationPacket.TYPE_UNKNOWN, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerParameter_commandOutOfRangeRejected() {
+        new ParameterNotificationPacket().registerParameter(256, 0x20, 42, null);
+    }
+
+}
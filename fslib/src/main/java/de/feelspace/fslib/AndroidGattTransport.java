@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * GATT transport of the Android Bluetooth stack.
+ */
+@SuppressLint("MissingPermission")
+public class AndroidGattTransport extends BluetoothGattCallback implements GattTransport {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    /** Factory of Android GATT transports. */
+    public static final Factory FACTORY = AndroidGattTransport::connect;
+
+    // Callback for GATT events
+    private final @NonNull Callback callback;
+
+    // Device and GATT client of the Android stack
+    private final @NonNull BluetoothDevice device;
+    private volatile @Nullable BluetoothGatt gatt;
+
+    /**
+     * Creates a transport.
+     *
+     * @param device The device.
+     * @param callback The callback for GATT events.
+     */
+    private AndroidGattTransport(@NonNull BluetoothDevice device, @NonNull Callback callback) {
+        this.device = device;
+        this.callback = callback;
+    }
+
+    /**
+     * Starts a connection with the Android Bluetooth stack.
+     *
+     * @param context The context.
+     * @param device The device to connect to.
+     * @param autoConnect <code>true</code> to connect as soon as the device is available.
+     * @param callback The callback for GATT events.
+     * @param handler The handler on which the callback is called.
+     * @return the transport of the connection, or <code>null</code> if the connection cannot be
+     * started.
+     */
+    private static @Nullable GattTransport connect(@NonNull Context context,
+                                                   @NonNull BluetoothDevice device,
+                                                   boolean autoConnect,
+                                                   @NonNull Callback callback,
+                                                   @NonNull Handler handler) {
+        AndroidGattTransport transport = new AndroidGattTransport(device, callback);
+        BluetoothGatt gatt = device.connectGatt(context, autoConnect, transport,
+                BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M, handler);
+        if (gatt == null) {
+            // Yep, 'connectGatt' can return 'null' but it is not documented
+            return null;
+        }
+        transport.gatt = gatt;
+        return transport;
+    }
+
+    /**
+     * Returns the GATT client of the Android stack.
+     * @return the GATT client.
+     */
+    public @Nullable BluetoothGatt getBluetoothGatt() {
+        return gatt;
+    }
+
+    @Override
+    public @NonNull BluetoothDevice getDevice() {
+        return device;
+    }
+
+    @Override
+    public void disconnect() {
+        BluetoothGatt g = gatt;
+        if (g != null) {
+            g.disconnect();
+        }
+    }
+
+    @Override
+    public void close() {
+        BluetoothGatt g = gatt;
+        if (g != null) {
+            g.close();
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        BluetoothGatt g = gatt;
+        return g != null && g.discoverServices();
+    }
+
+    @Override
+    public @NonNull List<BluetoothGattService> getServices() {
+        BluetoothGatt g = gatt;
+        if (g == null) {
+            return new ArrayList<>();
+        }
+        return g.getServices();
+    }
+
+    @Override
+    public @Nullable BluetoothGattService getService(@NonNull UUID uuid) {
+        BluetoothGatt g = gatt;
+        return (g == null)?(null):(g.getService(uuid));
+    }
+
+    @Override
+    public boolean readCharacteristic(@NonNull BluetoothGattCharacteristic characteristic) {
+        BluetoothGatt g = gatt;
+        return g != null && g.readCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean writeCharacteristic(@NonNull BluetoothGattCharacteristic characteristic) {
+        BluetoothGatt g = gatt;
+        return g != null && g.writeCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean writeDescriptor(@NonNull BluetoothGattDescriptor descriptor) {
+        BluetoothGatt g = gatt;
+        return g != null && g.writeDescriptor(descriptor);
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(
+            @NonNull BluetoothGattCharacteristic characteristic, boolean enable) {
+        BluetoothGatt g = gatt;
+        return g != null && g.setCharacteristicNotification(characteristic, enable);
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        BluetoothGatt g = gatt;
+        return g != null && g.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int connectionPriority) {
+        BluetoothGatt g = gatt;
+        return g != null && g.requestConnectionPriority(connectionPriority);
+    }
+
+    @Override
+    public boolean refresh() {
+        // From: https://stackoverflow.com/a/50745997/8477032
+        BluetoothGatt g = gatt;
+        if (g == null) {
+            return false;
+        }
+        try {
+            final Method refresh = g.getClass().getMethod("refresh");
+            refresh.invoke(g);
+            return true;
+        } catch (Exception e) {
+            Log.w(DEBUG_TAG, "AndroidGattTransport: Unable to clear GATT cache.");
+            return false;
+        }
+    }
+
+    @Override
+    public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+        callback.onConnectionStateChange(this, status, newState);
+    }
+
+    @Override
+    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+        callback.onServicesDiscovered(this, status);
+    }
+
+    @Override
+    public void onCharacteristicRead(BluetoothGatt gatt,
+                                     BluetoothGattCharacteristic characteristic, int status) {
+        callback.onCharacteristicRead(this, characteristic, characteristic.getValue(), status);
+    }
+
+    @Override
+    public void onCharacteristicWrite(BluetoothGatt gatt,
+                                      BluetoothGattCharacteristic characteristic, int status) {
+        callback.onCharacteristicWrite(this, characteristic, status);
+    }
+
+    @Override
+    public void onCharacteristicChanged(BluetoothGatt gatt,
+                                        BluetoothGattCharacteristic characteristic) {
+        callback.onCharacteristicChanged(this, characteristic, characteristic.getValue());
+    }
+
+    @Override
+    public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor,
+                                 int status) {
+        callback.onDescriptorRead(this, descriptor, status);
+    }
+
+    @Override
+    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor,
+                                  int status) {
+        callback.onDescriptorWrite(this, descriptor, status);
+    }
+
+    @Override
+    public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
+        callback.onReliableWriteCompleted(this, status);
+    }
+
+    @Override
+    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+        callback.onMtuChanged(this, mtu, status);
+    }
+}
@@ -11,6 +11,8 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import androidx.annotation.NonNull;
 
+import de.feelspace.fslib.protocol.BatteryStatusPacket;
+
 /**
  * Battery status information.
  */
@@ -43,29 +45,15 @@ public class BeltBatteryStatus implements Parcelable {
      * @throws IllegalArgumentException if the packet is malformed.
      */
     protected BeltBatteryStatus(byte[] packet) throws IllegalArgumentException {
-        if (packet == null || packet.length < 9) {
+        BatteryStatusPacket decoder = new BatteryStatusPacket();
+        if (!decoder.decode(packet)) {
             throw new IllegalArgumentException("Malformed battery status packet to create object.");
         }
-        powerStatus = PowerStatus.fromValue(packet[0], PowerStatus.UNKNOWN);
-        level = ((float)(packet[2] & 0xFF)) + (((float)(packet[1] & 0xFF)) / 256.f);
-        tteTtf = ((float)(((packet[4] & 0xFF) << 8) | (packet[3] & 0xFF)))*5.625f;
-        extraProperties[0] = (float) ((packet[6] << 8) | (packet[5] & 0xFF)); // int16 mA
-        extraProperties[1] = (float) (((packet[8]  & 0xFF) << 8) | (packet[7] & 0xFF)); // uint16 mV
-        if (packet.length >= 11) {
-            extraProperties[2] = (float) ((packet[10] << 8) | (packet[9] & 0xFF)); // int16 dC
-            extraProperties[2] /= 256.f;
-        }
-        if (packet.length >= 13) {
-            extraProperties[3] = (float) (((packet[12]  & 0xFF) << 8) | (packet[11] & 0xFF)); // uint16 %C
-            extraProperties[3] /= 256.f;
-        }
-        if (packet.length >= 14) {
-            // VS-L power status
-            extraProperties[4] = (float) packet[13];
-        }
-        if (packet.length >= 16) {
-            // VS-L charge level
-            extraProperties[5] = ((float)(packet[15] & 0xFF)) + (((float)(packet[14] & 0xFF)) / 256.f);
+        powerStatus = PowerStatus.fromValue(decoder.getPowerStatus(), PowerStatus.UNKNOWN);
+        level = decoder.getLevel();
+        tteTtf = decoder.getTteTtf();
+        for (int i = 0; i < decoder.getExtraCount(); i++) {
+            extraProperties[i] = decoder.getExtra(i);
         }
     }
 
@@ -37,6 +37,17 @@ public enum BeltButton {
      */
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final BeltButton[] ITEMS_BY_VALUE = new BeltButton[256];
+
+    static {
+        for (BeltButton item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -62,12 +73,7 @@ public enum BeltButton {
      * correspond to any item.
      */
     static BeltButton fromValue(byte v) {
-        for (BeltButton item: BeltButton.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return null;
+        return ITEMS_BY_VALUE[v & 0xFF];
     }
 
 
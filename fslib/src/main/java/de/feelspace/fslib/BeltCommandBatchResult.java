@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Result of a batch of GATT operations, with the result of each step.
+ */
+public class BeltCommandBatchResult {
+
+    /**
+     * Results of the steps, in order.
+     */
+    private final @NonNull BeltCommandResult[] stepResults;
+
+    /**
+     * Creates the result of a batch.
+     *
+     * @param stepResults The results of the steps.
+     */
+    BeltCommandBatchResult(@NonNull BeltCommandResult[] stepResults) {
+        this.stepResults = stepResults;
+    }
+
+    /**
+     * Returns <code>true</code> if all steps of the batch are successful.
+     * @return <code>true</code> if all steps of the batch are successful.
+     */
+    public boolean isSuccess() {
+        for (BeltCommandResult result: stepResults) {
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of steps.
+     * @return the number of steps.
+     */
+    public int getStepCount() {
+        return stepResults.length;
+    }
+
+    /**
+     * Returns the result of a step.
+     * @param index The index of the step.
+     * @return the result of the step.
+     */
+    public @NonNull BeltCommandResult getStepResult(int index) {
+        return stepResults[index];
+    }
+
+    /**
+     * Returns the index of the first failed step.
+     * @return the index of the first failed step, or -1 if all steps are successful.
+     */
+    public int getFirstFailedStep() {
+        for (int i = 0; i < stepResults.length; i++) {
+            if (!stepResults[i].isSuccess()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the latency of the batch, from queuing to the completion of the last step.
+     * @return the latency of the batch in milliseconds, or <code>null</code> if the batch has not
+     * been queued.
+     */
+    public @Nullable Float getLatencyMs() {
+        long queued = 0;
+        long completed = 0;
+        for (BeltCommandResult result: stepResults) {
+            if (result.getQueuedTimeNano() != 0 &&
+                    (queued == 0 || result.getQueuedTimeNano() < queued)) {
+                queued = result.getQueuedTimeNano();
+            }
+            if (result.getCompletionTimeNano() > completed) {
+                completed = result.getCompletionTimeNano();
+            }
+        }
+        if (queued == 0) {
+            return null;
+        }
+        return (completed - queued) / 1000000f;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BeltCommandBatchResult{" +
+                "success=" + isSuccess() +
+                ", latencyMs=" + getLatencyMs() +
+                ", stepResults=" + Arrays.toString(stepResults) +
+                '}';
+    }
+}
@@ -293,6 +293,55 @@ public interface BeltCommandInterface {
      */
     BeltOrientation getOrientation();
 
+    /**
+     * Returns the history of the last orientation notifications of the belt, from the oldest to
+     * the most recent. The history is cleared on disconnection. To obtain the orientation of the
+     * belt the notifications must be activated using
+     * {@link BeltCommandInterface#setOrientationNotificationsActive(boolean)}.
+     *
+     * @return the orientation history.
+     */
+    OrientationHistory getOrientationHistory();
+
+    /**
+     * Enables or disables the prediction of the heading for vibrations at an angle. When enabled,
+     * the angle of {@link #vibrateAtAngle(float, Integer, BeltVibrationSignal, Integer, Boolean)}
+     * and {@link #pulseAtAngle(float, int, int, Integer, Integer, Integer, Boolean)} is
+     * considered relative to the heading of the last orientation notification, and is corrected
+     * by the rotation of the belt predicted until the command reaches the motors. The rotation is
+     * estimated from the orientation notifications, which must be activated using
+     * {@link BeltCommandInterface#setOrientationNotificationsActive(boolean)}, and the latency
+     * from the measured round-trip time of commands. The prediction is disabled by default.
+     *
+     * @param enabled <code>true</code> to enable the heading prediction.
+     */
+    void setHeadingPredictionEnabled(boolean enabled);
+
+    /**
+     * Returns <code>true</code> if the heading prediction is enabled for vibrations at an angle.
+     *
+     * @return <code>true</code> if the heading prediction is enabled.
+     */
+    boolean isHeadingPredictionEnabled();
+
+    /**
+     * Returns the estimator of the heading and angular velocity of the belt, updated with the
+     * orientation notifications.
+     *
+     * @return the heading rate estimator.
+     */
+    HeadingRateEstimator getHeadingRateEstimator();
+
+    /**
+     * Returns the heading of the belt predicted at the time a command sent now reaches the
+     * motors. Apps that compute the angle of vibrations from a bearing can use this heading
+     * instead of the heading of {@link #getOrientation()}.
+     *
+     * @return the predicted heading in range [0-360[, or <code>Float.NaN</code> if no orientation
+     * has been received.
+     */
+    float getPredictedBeltHeading();
+
     /**
      * Sets the state of orientation notifications.
      *
@@ -312,6 +361,24 @@ public interface BeltCommandInterface {
      */
     boolean areOrientationNotificationsActive();
 
+    /**
+     * Sets the low latency mode. In low latency mode, the connection uses short connection
+     * intervals to reduce the latency of commands, e.g. during navigation. Short connection
+     * intervals are also used when the orientation notifications are active. Otherwise, the
+     * connection uses balanced parameters, or low power parameters when the belt is in standby or
+     * pause mode.
+     *
+     * @param lowLatency <code>true</code> to activate the low latency mode.
+     */
+    void setLowLatencyMode(boolean lowLatency);
+
+    /**
+     * Returns <code>true</code> if the low latency mode is active.
+     *
+     * @return <code>true</code> if the low latency mode is active.
+     */
+    boolean isLowLatencyMode();
+
     /**
      * Plays a sound on the belt buzzer.
      *
@@ -335,6 +402,21 @@ public interface BeltCommandInterface {
      */
     void removeCommandListener(BeltCommandListener listener);
 
+    /**
+     * Adds a listener to the orientation notifications. The orientation is notified with a reused
+     * snapshot, without allocation for each notification.
+     *
+     * @param listener the listener to add.
+     */
+    void addOrientationListener(BeltOrientationListener listener);
+
+    /**
+     * Removes a listener from the orientation notifications.
+     *
+     * @param listener the listener to remove.
+     */
+    void removeOrientationListener(BeltOrientationListener listener);
+
     /**
      * Enables or disables the vibration signal for inaccurate compass.
      *
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Result of an asynchronous belt command.
+ *
+ * A command is successful when its write has been acknowledged by the belt (or accepted by the
+ * Android stack for writes without response), and for requests, when the expected notification
+ * has been received. The times are given in nanoseconds on the clock of the GATT controller,
+ * {@link System#nanoTime()} unless another clock has been given to the controller.
+ */
+public class BeltCommandResult {
+
+    /**
+     * State of the command.
+     */
+    private final @NonNull GattOperationState state;
+
+    /**
+     * Times the command has been queued, started and completed.
+     */
+    private final long queuedTimeNano;
+    private final long startTimeNano;
+    private final long completionTimeNano;
+
+    /**
+     * Value notified in response to a request.
+     */
+    private final @Nullable byte[] notifiedValue;
+
+    /**
+     * Creates the result of a command that has not been queued.
+     *
+     * @param clock The clock of the GATT controller.
+     */
+    BeltCommandResult(@NonNull MonotonicClock clock) {
+        state = GattOperationState.STATE_FAILED;
+        queuedTimeNano = 0;
+        startTimeNano = 0;
+        completionTimeNano = clock.nanoTime();
+        notifiedValue = null;
+    }
+
+    /**
+     * Creates the result of a completed operation.
+     *
+     * @param operation The completed operation.
+     */
+    BeltCommandResult(@NonNull GattOperation operation) {
+        state = operation.getState();
+        queuedTimeNano = operation.getQueuedTimeNano();
+        startTimeNano = operation.getStartTimeNano();
+        completionTimeNano = operation.getCompletionTimeNano();
+        if (operation instanceof GattOperationRequest) {
+            byte[] value = ((GattOperationRequest) operation).getNotifiedValue();
+            notifiedValue = (value == null)?(null):(Arrays.copyOf(value, value.length));
+        } else {
+            notifiedValue = null;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the command has been successfully executed.
+     * @return <code>true</code> if the command has been successfully executed.
+     */
+    public boolean isSuccess() {
+        return state == GattOperationState.STATE_SUCCESS;
+    }
+
+    /**
+     * Returns <code>true</code> if the command has timed out.
+     * @return <code>true</code> if the command has timed out.
+     */
+    public boolean isTimedOut() {
+        return state == GattOperationState.STATE_TIMED_OUT;
+    }
+
+    /**
+     * Returns <code>true</code> if the command has been replaced in queue by a more recent command
+     * before being sent.
+     * @return <code>true</code> if the command has been superseded.
+     */
+    public boolean isSuperseded() {
+        return state == GattOperationState.STATE_SUPERSEDED;
+    }
+
+    /**
+     * Returns the time the command has been queued.
+     * @return the time the command has been queued in nanoseconds, or 0 if the command has not
+     * been queued.
+     */
+    public long getQueuedTimeNano() {
+        return queuedTimeNano;
+    }
+
+    /**
+     * Returns the time the command has been sent.
+     * @return the time the command has been sent in nanoseconds, or 0 if the command has not been
+     * sent.
+     */
+    public long getStartTimeNano() {
+        return startTimeNano;
+    }
+
+    /**
+     * Returns the time the command has been completed.
+     * @return the time the command has been completed in nanoseconds.
+     */
+    public long getCompletionTimeNano() {
+        return completionTimeNano;
+    }
+
+    /**
+     * Returns the latency of the command, from queuing to completion.
+     * @return the latency of the command in milliseconds, or <code>null</code> if the command has
+     * not been queued.
+     */
+    public @Nullable Float getLatencyMs() {
+        if (queuedTimeNano == 0) {
+            return null;
+        }
+        return (completionTimeNano - queuedTimeNano) / 1000000f;
+    }
+
+    /**
+     * Returns the round-trip time of the command, from sending to completion.
+     * @return the round-trip time of the command in milliseconds, or <code>null</code> if the
+     * command has not been sent.
+     */
+    public @Nullable Float getRoundTripTimeMs() {
+        if (startTimeNano == 0) {
+            return null;
+        }
+        return (completionTimeNano - startTimeNano) / 1000000f;
+    }
+
+    /**
+     * Returns the value notified by the belt in response to a request.
+     * @return the notified value, or <code>null</code> if the command is not a request or no
+     * notification has been received.
+     */
+    public @Nullable byte[] getNotifiedValue() {
+        return notifiedValue;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "BeltCommandResult{" +
+                "state=" + state +
+                ", latencyMs=" + getLatencyMs() +
+                ", roundTripTimeMs=" + getRoundTripTimeMs() +
+                ", notifiedValue=" + Arrays.toString(notifiedValue) +
+                '}';
+    }
+}
@@ -8,6 +8,7 @@
 
 package de.feelspace.fslib;
 
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
@@ -17,8 +18,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import de.feelspace.fslib.protocol.OrientationPacket;
+import de.feelspace.fslib.protocol.PacketBufferPool;
+import de.feelspace.fslib.protocol.ParameterCodec;
+import de.feelspace.fslib.protocol.ParameterNotificationPacket;
 
 /**
  * Implementation of the communication interface.
@@ -43,10 +52,26 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     private @Nullable HandshakeCallback handshakeCallback;
 
     /**
-     * Flag for ongoing handshake.
+     * Flag for ongoing handshake, until the belt is ready for vibration commands.
      */
     private boolean handshakeStarted = false;
 
+    /**
+     * Flag for the last steps of the handshake that are completed in background when the belt is
+     * already ready for vibration commands.
+     */
+    private boolean handshakeBackground = false;
+
+    /**
+     * Number of started handshakes, to ignore the completion of an obsolete handshake.
+     */
+    private int handshakeCount = 0;
+
+    /**
+     * Flag for low latency mode.
+     */
+    private volatile boolean lowLatencyMode = false;
+
     /** Service UUID advertised by a belt. */
     protected static final UUID ADVERTISED_SERVICE_UUID =
             UUID.fromString("65333333-A115-11E2-9E9A-0800200CA100");
@@ -71,6 +96,12 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     public static final UUID VIBRATION_COMMAND_CHAR_UUID =
             UUID.fromString("0000FE03-0000-1000-8000-00805F9B34FB");
     private @Nullable BluetoothGattCharacteristic vibrationCommandChar;
+    private boolean vibrationCommandPipeliningEnabled = false;
+
+    // Pulse command reused by the pulse methods, the command is its own lock
+    private final @NonNull PulseCommand reusablePulse = new PulseCommand(0,
+            OrientationType.ANGLE, 0, 0, 0, 0, 0, 0, 0,
+            ResetProgressOption.RESET_PROGRESS_ON_DIFFERENT_PERIOD, false, false);
 
     /** Button press notification characteristic UUID. */
     private static final UUID BUTTON_PRESS_NOTIFICATION_CHAR_UUID =
@@ -139,9 +170,46 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     private Integer defaultIntensity = null;
     private Integer beltFirmwareVersion = null;
     private BeltBatteryStatus beltBatteryStatus = null;
+    /**
+     * Parameters received from the belt since the start of the handshake. The handshake is
+     * completed only when all parameters have been received.
+     */
+    private boolean beltModeReceived = false;
+    private boolean defaultIntensityReceived = false;
+    private boolean firmwareVersionReceived = false;
+    /**
+     * Flag for a belt mode from the profile cache, not yet confirmed by the belt. The cached mode
+     * of a known belt is sufficient for the handshake to be ready, and is corrected by the mode
+     * request of the handshake.
+     */
+    private boolean beltModeFromCache = false;
     private BeltOrientation beltOrientation = null;
+    // Note: The orientation object is only created when requested or for command listeners
+    private final @NonNull OrientationSnapshot orientationSnapshot = new OrientationSnapshot();
+    private boolean orientationAvailable = false;
+    private long orientationSequenceNumber = 0;
+    private final @NonNull OrientationHistory orientationHistory =
+            new OrientationHistory(OrientationHistory.DEFAULT_CAPACITY);
+
+    // Estimation of the rotation and prediction of the heading at the time of vibration
+    private final @NonNull HeadingRateEstimator headingRateEstimator = new HeadingRateEstimator();
+    private volatile boolean headingPredictionEnabled = false;
+    // Round-trip time used for the prediction before the first measure
+    private static final long DEFAULT_PREDICTION_RTT_MS = 30;
     private @NonNull HashMap<BeltParameter, Object> parameterValues = new HashMap<>();
 
+    // Decoders, only used by the GATT callback
+    private final @NonNull OrientationPacket orientationDecoder = new OrientationPacket();
+    private final @NonNull ParameterNotificationPacket parameterDecoder =
+            new ParameterNotificationPacket();
+
+    // Notification handlers by characteristic, replaced when the characteristics are retrieved
+    private volatile @NonNull IdentityHashMap<BluetoothGattCharacteristic, NotificationHandler>
+            notificationHandlers = new IdentityHashMap<>();
+
+    // Cache of belt profiles with the last parameters of known belts
+    private volatile @Nullable BeltProfileCache profileCache;
+
     /* Static packet */
 
     // Keep-alive acknowledgment packet
@@ -153,9 +221,18 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     // Request default intensity packet
     private static final byte[] REQUEST_DEFAULT_INTENSITY_PACKET = new byte[] {0x01, 0x02};
 
+    /* Request IDs */
+
+    // Parameter value request
+    private static final int PARAMETER_VALUE_REQUEST_ID = 0x10;
+
     /** Command listeners */
     private @NonNull ArrayList<BeltCommandListener> commandListeners = new ArrayList<>();
 
+    /** Orientation listeners, copied on write to be notified without copy */
+    private volatile @NonNull BeltOrientationListener[] orientationListeners =
+            new BeltOrientationListener[0];
+
     /** Communication listeners */
     private @NonNull ArrayList<BeltCommunicationListener> communicationListeners =
             new ArrayList<>();
@@ -167,6 +244,23 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     BeltCommunicationController(@NonNull GattController gattController) {
         this.gattController = gattController;
         gattController.addGattEventListener(this);
+        // Register the codecs of the parameters
+        for (BeltParameter parameter: BeltParameter.values()) {
+            parameterDecoder.registerParameter(
+                    ParameterNotificationPacket.COMMAND_PARAMETER_VALUE, parameter.getValue(),
+                    parameter.getNotificationType(), parameter.getCodec());
+        }
+    }
+
+    /**
+     * Sets the cache of belt profiles. The last parameters of a known belt are used as initial
+     * values so that the handshake can complete once the notifications are registered, the
+     * parameters are then refreshed by the handshake.
+     *
+     * @param profileCache The profile cache, or <code>null</code> to disable the cache.
+     */
+    void setProfileCache(@Nullable BeltProfileCache profileCache) {
+        this.profileCache = profileCache;
     }
 
     /**
@@ -185,69 +279,156 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
      * @param handshakeCallback the callback for handshake completion.
      */
     protected void startHandshake(@NonNull HandshakeCallback handshakeCallback) {
-        this.handshakeCallback = handshakeCallback;
-        handshakeStarted = true;
+        final int handshakeId;
+        synchronized (this) {
+            this.handshakeCallback = handshakeCallback;
+            handshakeStarted = true;
+            handshakeBackground = false;
+            handshakeId = ++handshakeCount;
+            beltModeReceived = false;
+            defaultIntensityReceived = false;
+            firmwareVersionReceived = false;
+            beltModeFromCache = false;
+        }
         // First retrieve characteristics
         if (!retrieveGattCharacteristics()) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot start handshake " +
                     "with incomplete GATT profile.");
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+            completeHandshake(handshakeId, false);
             return;
         }
-        // Handshake with notification registrations and parameter requests
-        // Notification registrations:
-        // 1st -> KeepAlive
-        // 2nd -> ButtonPress
-        // 3rd -> ParameterNotification
-        // 4th -> BatteryStatus
-        // Initial parameter requests:
-        // 1st -> Mode
-        // 2nd -> Intensity
-        // 3rd -> Firmware (read characteristic, no notification)
-        // Handshake finished when firmware version is read
+        // Handshake with notification registrations and parameter requests, submitted as one
+        // batch of operations. The requests are pipelined, the next step starts when the request
+        // is written without waiting for the response.
+        // Ready for vibration commands:
+        // 1st -> KeepAlive notification registration
+        // 2nd -> ParameterNotification notification registration
+        // 3rd -> Mode request
+        // Completed in background:
+        // 4th -> ButtonPress notification registration
+        // 5th -> BatteryStatus notification registration
+        // 6th -> Intensity request
+        // 7th -> Firmware (read characteristic, no notification)
+        // Handshake finished when all values are received, or failed when a step fails
         if (gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+            completeHandshake(handshakeId, false);
             return;
         }
-        // Notifications
-        if (!gattController.setCharacteristicNotificationIndication(keepAliveChar, true, false)) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        // Initial mode from the profile of a known belt
+        seedModeFromCache();
+        GattOperationBatch handshake = new GattOperationBatch(GattOperationPriority.CONTROL)
+                .setCharacteristicNotificationIndication(keepAliveChar, true, false)
+                .setCharacteristicNotificationIndication(parameterNotificationChar, true, false)
+                .request(parameterRequestChar, parameterNotificationChar,
+                        REQUEST_BELT_MODE_PACKET, REQUEST_BELT_MODE_PACKET, null,
+                        PARAMETER_VALUE_REQUEST_ID)
+                .setCharacteristicNotificationIndication(buttonPressNotificationChar, true, false)
+                .setCharacteristicNotificationIndication(batteryStatusChar, true, false)
+                .request(parameterRequestChar, parameterNotificationChar,
+                        REQUEST_DEFAULT_INTENSITY_PACKET, REQUEST_DEFAULT_INTENSITY_PACKET, null,
+                        PARAMETER_VALUE_REQUEST_ID)
+                .readCharacteristic(firmwareInfoChar);
+        gattController.submitBatch(handshake).thenAccept(result -> {
+            if (DEBUG) Log.i(DEBUG_TAG, "BeltCommunicationController: Handshake batch " +
+                    "completed. " + result.toString());
+            if (!result.isSuccess()) {
+                Log.e(DEBUG_TAG, "BeltCommunicationController: Handshake failed at step " +
+                        result.getFirstFailedStep() + ".");
+                completeHandshake(handshakeId, false);
+            } else {
+                saveParametersInCache();
+            }
+        });
+    }
+
+    /**
+     * Sets the unknown mode to the last mode of the belt from the profile cache, so that the
+     * handshake of a known belt is ready without waiting for the response of the mode request.
+     * Only the profile of a belt with a known firmware version, i.e. of a previous completed
+     * handshake, is used. The other parameters are not set before they are received.
+     */
+    private synchronized void seedModeFromCache() {
+        BeltProfileCache cache = profileCache;
+        BluetoothDevice device = gattController.getDevice();
+        if (cache == null || device == null) {
             return;
         }
-        if (!gattController.setCharacteristicNotificationIndication(
-                buttonPressNotificationChar, true, false)) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        BeltProfileCache.Profile profile = cache.get(device.getAddress());
+        if (profile == null) {
             return;
         }
-        if (!gattController.setCharacteristicNotificationIndication(parameterNotificationChar,
-                true, false)) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        if (profile.firmwareVersion == null || profile.mode == null ||
+                beltModeReceived || beltMode != BeltMode.UNKNOWN) {
             return;
         }
-        if (!gattController.setCharacteristicNotificationIndication(batteryStatusChar, true, false)) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        if (DEBUG) Log.i(DEBUG_TAG, "BeltCommunicationController: Initial mode from " +
+                "cached profile.");
+        beltMode = profile.mode;
+        beltModeFromCache = true;
+    }
+
+    /**
+     * Saves the current parameters of the belt in the profile cache.
+     */
+    private void saveParametersInCache() {
+        BeltProfileCache cache = profileCache;
+        BluetoothDevice device = gattController.getDevice();
+        if (cache == null || device == null) {
             return;
         }
-        // Parameter requests
-        if(!requestBeltMode()) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
-            return;
+        cache.updateParameters(device.getAddress(), beltFirmwareVersion, beltMode,
+                defaultIntensity);
+    }
+
+    /**
+     * Checks if the ongoing handshake is ready or completed, and notifies the handshake callback.
+     */
+    private void checkHandshakeCompletion() {
+        HandshakeCallback callback;
+        boolean ready = false;
+        boolean completed = false;
+        synchronized (this) {
+            callback = handshakeCallback;
+            if (handshakeStarted && isHandshakeReady()) {
+                handshakeStarted = false;
+                handshakeBackground = true;
+                ready = true;
+            }
+            if (handshakeBackground && isHandshakeCompleted()) {
+                handshakeBackground = false;
+                completed = true;
+            }
         }
-        if (!requestDefaultIntensity()) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        if (callback == null) {
             return;
         }
-        if (!requestBeltFirmwareVersion()) {
-            handshakeStarted = false;
-            this.handshakeCallback.onHandshakeCompleted(false);
+        if (ready) {
+            callback.onHandshakeReady();
+        }
+        if (completed) {
+            // End of link tuning stage
+            updateConnectionPriority();
+            callback.onHandshakeCompleted(true);
+        }
+    }
+
+    /**
+     * Terminates a handshake and notifies the handshake callback.
+     *
+     * @param handshakeId The identifier of the handshake.
+     * @param success <code>true</code> if the handshake is successful.
+     */
+    private void completeHandshake(int handshakeId, boolean success) {
+        HandshakeCallback callback = null;
+        synchronized (this) {
+            if ((handshakeStarted || handshakeBackground) && handshakeId == handshakeCount) {
+                handshakeStarted = false;
+                handshakeBackground = false;
+                callback = handshakeCallback;
+            }
+        }
+        if (callback != null) {
+            callback.onHandshakeCompleted(success);
         }
     }
 
@@ -256,6 +437,12 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
      */
     interface HandshakeCallback {
 
+        /**
+         * Callback method when the belt is ready for vibration commands. The handshake continues
+         * in background until {@link #onHandshakeCompleted(boolean)} is called.
+         */
+        void onHandshakeReady();
+
         /**
          * Callback method for the completion of the handshake.
          * @param success <code>true</code> if the handshake is successful.
@@ -263,6 +450,18 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         void onHandshakeCompleted(boolean success);
     }
 
+    /**
+     * Handler of the notifications of a characteristic.
+     */
+    private interface NotificationHandler {
+
+        /**
+         * Called when a notification is received.
+         * @param value The notified value.
+         */
+        void onNotification(@Nullable byte[] value);
+    }
+
     /**
      * Retrieves the GATT characteristics from newly connected GATT server.
      * @return <code>true</code> if all characteristics were retrieved, <code>false</code> if
@@ -299,6 +498,15 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     "in GATT profile.");
             return false;
         }
+        // Dispatch table of notifications
+        IdentityHashMap<BluetoothGattCharacteristic, NotificationHandler> handlers =
+                new IdentityHashMap<>();
+        handlers.put(keepAliveChar, this::onKeepAliveNotified);
+        handlers.put(buttonPressNotificationChar, this::onButtonPressNotified);
+        handlers.put(parameterNotificationChar, this::onParameterNotified);
+        handlers.put(orientationDataChar, this::onOrientationNotified);
+        handlers.put(batteryStatusChar, this::onBatteryStatusNotified);
+        notificationHandlers = handlers;
         debugInputChar = gattController.getCharacteristic(DEBUG_SERVICE_UUID, DEBUG_INPUT_CHAR_UUID);
         debugOutputChar = gattController.getCharacteristic(DEBUG_SERVICE_UUID, DEBUG_OUTPUT_CHAR_UUID);
         if (debugInputChar == null || debugOutputChar == null) {
@@ -309,31 +517,6 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         return true;
     }
 
-    /**
-     * Sends a request to obtain the mode of the belt.
-     * @return <code>true</code> if the request has been successfully placed in operation queue.
-     */
-    private boolean requestBeltMode() {
-        return gattController.writeCharacteristic(parameterRequestChar, REQUEST_BELT_MODE_PACKET);
-    }
-
-    /**
-     * Sends a request to obtain the default vibration intensity.
-     * @return <code>true</code> if the request has been successfully placed in operation queue.
-     */
-    private boolean requestDefaultIntensity() {
-        return gattController.writeCharacteristic(parameterRequestChar,
-                REQUEST_DEFAULT_INTENSITY_PACKET);
-    }
-
-    /**
-     * Sends a request to obtain the firmware version of the belt.
-     * @return <code>true</code> if the request has been successfully placed in operation queue.
-     */
-    private boolean requestBeltFirmwareVersion() {
-        return gattController.readCharacteristic(firmwareInfoChar);
-    }
-
     @Override
     public Integer getFirmwareVersion() {
         return beltFirmwareVersion;
@@ -341,6 +524,29 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
 
     @Override
     public boolean requestParameterValue(BeltParameter beltParameter) {
+        return requestParameterValue(beltParameter, null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<BeltCommandResult> requestParameterValueAsync(
+            BeltParameter beltParameter) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!requestParameterValue(beltParameter, future)) {
+            future.complete(new BeltCommandResult(gattController.getClock()));
+        }
+        return future;
+    }
+
+    /**
+     * Sends a parameter value request.
+     * @param beltParameter The parameter to request.
+     * @param future The future to complete when the parameter value is notified, or
+     *               <code>null</code> to not wait for the notification.
+     * @return <code>true</code> if the request has been successfully placed in operation queue.
+     */
+    private boolean requestParameterValue(
+            @Nullable BeltParameter beltParameter,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
         if (beltParameter == null) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot send a parameter request " +
                     "for null parameter.");
@@ -357,6 +563,11 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 (byte) 0x01,                // Parameter count
                 beltParameter.getValue()
         };
+        if (future != null) {
+            return gattController.queueRequest(parameterRequestChar, parameterNotificationChar,
+                    packet, new byte[] {0x10, beltParameter.getValue()}, null,
+                    PARAMETER_VALUE_REQUEST_ID, GattOperationPriority.PARAMETER, future);
+        }
         return gattController.writeCharacteristic(parameterRequestChar, packet);
     }
 
@@ -381,54 +592,20 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     "when disconnected.");
             return false;
         }
-        byte[] packet = null;
-        switch (beltParameter) {
-
-            case HEADING_OFFSET:
-                if (!(parameterValue instanceof Integer)) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: The parameter value " +
-                            "for heading offset must be an Integer.");
-                    return false;
-                }
-                int offset = (Integer) parameterValue;
-                if (offset < 0 || offset >= 360) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: The parameter value " +
-                            "for heading offset must be in range [0-359].");
-                    return false;
-                }
-                // Create packet
-                packet = new byte[] {
-                        (byte) 0x11,                // Command
-                        (byte) 0x01,                // Parameter ID
-                        (byte) ((persistent)?(0x01):(0x00)),  // Store on EEPROM
-                        (byte) (offset & 0xFF),     // LSB
-                        (byte) ((offset >> 8) & 0xFF)   // MSB
-                };
-                break;
-
-            case ACCURACY_SIGNAL_STATE:
-                // Check value
-                if (!(parameterValue instanceof Integer)) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: The parameter value " +
-                            "for accuracy signal state must be an Integer.");
-                    return false;
-                }
-                int signalState = (Integer) parameterValue;
-                if (signalState < 0 || signalState > 3) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: The parameter value " +
-                            "for accuracy signal state must be in range [0-3].");
-                    return false;
-                }
-                // Create packet
-                packet = new byte[] {
-                        (byte) 0x11,                // Command
-                        (byte) 0x03,                // Parameter ID
-                        (byte) ((persistent)?(0x01):(0x00)),  // Store on EEPROM
-                        (byte) signalState          // Value
-                };
-                break;
-
+        // Check value
+        ParameterCodec codec = beltParameter.getCodec();
+        if (!(parameterValue instanceof Integer) ||
+                !codec.isLegalValue((Integer) parameterValue)) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal value for parameter " +
+                    beltParameter + ".");
+            return false;
         }
+        // Create packet
+        byte[] packet = new byte[3+codec.getValueSize()];
+        packet[0] = (byte) 0x11;                    // Command
+        packet[1] = beltParameter.getValue();       // Parameter ID
+        packet[2] = (byte) ((persistent)?(0x01):(0x00));  // Store on EEPROM
+        codec.encode((Integer) parameterValue, packet, 3);
         return gattController.writeCharacteristic(parameterRequestChar, packet);
     }
 
@@ -462,11 +639,33 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     "command when not connected.");
             return false;
         }
-        return gattController.writeCharacteristic(buzzerLedCommandChar, tonePattern.getPacket());
+        return gattController.writeCharacteristic(buzzerLedCommandChar, tonePattern.getPacket(),
+                false, GattOperationPriority.BULK);
     }
 
     @Override
     public boolean sendPulseCommand(@Nullable PulseCommand command) {
+        return sendPulseCommand(command, null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<BeltCommandResult> sendPulseCommandAsync(
+            @Nullable PulseCommand command) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!sendPulseCommand(command, future)) {
+            future.complete(new BeltCommandResult(gattController.getClock()));
+        }
+        return future;
+    }
+
+    /**
+     * Sends a pulse command.
+     * @param command The command to send.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean sendPulseCommand(@Nullable PulseCommand command,
+                                     @Nullable CompletableFuture<BeltCommandResult> future) {
         if (command == null) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot send a null pulse " +
                     "command.");
@@ -478,11 +677,33 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     "when not connected.");
             return false;
         }
-        return gattController.writeCharacteristic(vibrationCommandChar, command.getPacket());
+        return writePulseCommand(command, future);
     }
 
     @Override
     public boolean sendChannelConfigurationCommand(@Nullable ChannelConfigurationCommand command) {
+        return sendChannelConfigurationCommand(command, null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<BeltCommandResult> sendChannelConfigurationCommandAsync(
+            @Nullable ChannelConfigurationCommand command) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!sendChannelConfigurationCommand(command, future)) {
+            future.complete(new BeltCommandResult(gattController.getClock()));
+        }
+        return future;
+    }
+
+    /**
+     * Sends a channel configuration command.
+     * @param command The command to send.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean sendChannelConfigurationCommand(
+            @Nullable ChannelConfigurationCommand command,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
         if (command == null) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot send a null channel " +
                     "configuration command.");
@@ -494,7 +715,7 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     "when not connected.");
             return false;
         }
-        return gattController.writeCharacteristic(vibrationCommandChar, command.getPacket());
+        return writeChannelConfigurationCommand(command, future);
     }
 
     @Override
@@ -514,9 +735,140 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 (byte) 0x20,        // System signal request
                 signal.getValue()
         };
-        return gattController.writeCharacteristic(vibrationCommandChar, packet);
+        return writeVibrationCommand(packet);
+    }
+
+
+    @Override
+    public void setVibrationCommandPipeliningEnabled(boolean enabled) {
+        vibrationCommandPipeliningEnabled = enabled;
+    }
+
+    @Override
+    public boolean isVibrationCommandPipeliningEnabled() {
+        return vibrationCommandPipeliningEnabled;
+    }
+
+    /**
+     * Writes a command on the vibration command characteristic, with or without response
+     * depending on the pipelining mode.
+     * @param packet The command packet.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeVibrationCommand(@NonNull byte[] packet) {
+        return writeVibrationCommand(packet, false, GattOperationPriority.VIBRATION);
+    }
+
+    /**
+     * Writes a command on the vibration command characteristic, with or without response
+     * depending on the pipelining mode.
+     * @param packet The command packet.
+     * @param coalescable <code>true</code> if the command can replace a queued command with the
+     *                    same first byte.
+     * @param priority The priority class of the command.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeVibrationCommand(@NonNull byte[] packet, boolean coalescable,
+                                          @NonNull GattOperationPriority priority) {
+        return writeVibrationCommand(packet, coalescable, priority, null);
     }
 
+    /**
+     * Writes a command on the vibration command characteristic, with or without response
+     * depending on the pipelining mode.
+     * @param packet The command packet.
+     * @param coalescable <code>true</code> if the command can replace a queued command with the
+     *                    same first byte.
+     * @param priority The priority class of the command.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeVibrationCommand(@NonNull byte[] packet, boolean coalescable,
+                                          @NonNull GattOperationPriority priority,
+                                          @Nullable CompletableFuture<BeltCommandResult> future) {
+        return gattController.queueWrite(vibrationCommandChar, packet,
+                vibrationCommandPipeliningEnabled, coalescable, priority, future);
+    }
+
+    /**
+     * Writes a channel configuration command. A command that is still in queue for the same
+     * channel is replaced by the new one, so that the belt always receives the latest
+     * configuration. Commands that clear other channels are never coalesced.
+     * @param command The channel configuration command.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeChannelConfigurationCommand(
+            @NonNull ChannelConfigurationCommand command) {
+        return writeChannelConfigurationCommand(command, null);
+    }
+
+    /**
+     * Writes a channel configuration command. See
+     * {@link #writeChannelConfigurationCommand(ChannelConfigurationCommand)}.
+     * @param command The channel configuration command.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeChannelConfigurationCommand(
+            @NonNull ChannelConfigurationCommand command,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
+        byte[] packet = gattController.getPacketBufferPool().acquire(
+                ChannelConfigurationCommand.PACKET_SIZE);
+        command.encode(packet, 0);
+        return gattController.queuePooledWrite(vibrationCommandChar, packet,
+                vibrationCommandPipeliningEnabled, !command.isClearingOtherChannels(),
+                GattOperationPriority.VIBRATION, future);
+    }
+
+    /**
+     * Writes the precomputed channel configuration packet of a signal. See
+     * {@link SignalPacketTemplates}.
+     * @param signal The signal.
+     * @param channelIndex The channel index.
+     * @param intensity The intensity, already checked.
+     * @param orientationType The type of orientation, or <code>null</code> for a non-directional
+     *                        signal.
+     * @param orientation The orientation value of a directional signal.
+     * @param stopOtherChannels <code>true</code> to clear the other channels.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writeSignalPacket(
+            @NonNull BeltVibrationSignal signal, int channelIndex, int intensity,
+            @Nullable OrientationType orientationType, int orientation,
+            boolean stopOtherChannels) {
+        PacketBufferPool pool = gattController.getPacketBufferPool();
+        byte[] packet = pool.acquire(ChannelConfigurationCommand.PACKET_SIZE);
+        int size = (orientationType == null)?
+                (SignalPacketTemplates.encode(signal, packet, 0, channelIndex, intensity,
+                        stopOtherChannels)):
+                (SignalPacketTemplates.encode(signal, packet, 0, channelIndex, intensity,
+                        orientationType, orientation, stopOtherChannels));
+        if (size < 0) {
+            pool.release(packet);
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal argument for " +
+                    "vibration command.");
+            return false;
+        }
+        return gattController.queuePooledWrite(vibrationCommandChar, packet,
+                vibrationCommandPipeliningEnabled, !stopOtherChannels,
+                GattOperationPriority.VIBRATION, null);
+    }
+
+    /**
+     * Writes a pulse command in a pooled buffer.
+     * @param command The pulse command.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean writePulseCommand(
+            @NonNull PulseCommand command,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
+        byte[] packet = gattController.getPacketBufferPool().acquire(PulseCommand.PACKET_SIZE);
+        command.encode(packet, 0);
+        return gattController.queuePooledWrite(vibrationCommandChar, packet,
+                vibrationCommandPipeliningEnabled, false, GattOperationPriority.VIBRATION,
+                future);
+    }
 
     @Override
     public void addCommandListener(@Nullable BeltCommandListener listener) {
@@ -534,6 +886,41 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         }
     }
 
+    @Override
+    public void addOrientationListener(@Nullable BeltOrientationListener listener) {
+        synchronized (this) {
+            if (listener == null) {
+                return;
+            }
+            for (BeltOrientationListener l: orientationListeners) {
+                if (l == listener) {
+                    return;
+                }
+            }
+            BeltOrientationListener[] listeners =
+                    Arrays.copyOf(orientationListeners, orientationListeners.length+1);
+            listeners[listeners.length-1] = listener;
+            orientationListeners = listeners;
+        }
+    }
+
+    @Override
+    public void removeOrientationListener(@Nullable BeltOrientationListener listener) {
+        synchronized (this) {
+            for (int i=0; i<orientationListeners.length; i++) {
+                if (orientationListeners[i] == listener) {
+                    BeltOrientationListener[] listeners =
+                            new BeltOrientationListener[orientationListeners.length-1];
+                    System.arraycopy(orientationListeners, 0, listeners, 0, i);
+                    System.arraycopy(orientationListeners, i+1, listeners, i,
+                            listeners.length-i);
+                    orientationListeners = listeners;
+                    return;
+                }
+            }
+        }
+    }
+
     @Override
     public void addCommunicationListener(@Nullable BeltCommunicationListener listener) {
         synchronized (this) {
@@ -560,6 +947,7 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 return;
             }
             beltFirmwareVersion = version;
+            firmwareVersionReceived = true;
         }
     }
 
@@ -586,18 +974,22 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
      * Sets the belt mode and notifies listeners that the belt mode has changed.
      */
     private void setBeltMode(@NonNull BeltMode mode) {
-        ArrayList<BeltCommandListener> targets;
+        ArrayList<BeltCommandListener> targets = null;
         synchronized (this) {
+            beltModeReceived = true;
             if (beltMode == mode) {
                 return;
             }
             beltMode = mode;
-            if (commandListeners.isEmpty() ||
-                    gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED ||
-                    handshakeStarted) {
-                return;
+            if (!commandListeners.isEmpty() &&
+                    gattController.getConnectionState() == GattConnectionState.GATT_CONNECTED &&
+                    !handshakeStarted) {
+                targets = new ArrayList<>(commandListeners);
             }
-            targets = new ArrayList<>(commandListeners);
+        }
+        updateConnectionPriority();
+        if (targets == null) {
+            return;
         }
         for (BeltCommandListener l: targets) {
             l.onBeltModeChanged(mode);
@@ -614,6 +1006,7 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 return;
             }
             beltMode = event.getSubsequentMode();
+            beltModeReceived = true;
             if (commandListeners.isEmpty() || handshakeStarted) {
                 return;
             }
@@ -632,6 +1025,9 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         ArrayList<BeltCommandListener> targets;
         synchronized (this) {
             defaultIntensity = intensity;
+            if (intensity != null) {
+                defaultIntensityReceived = true;
+            }
             if (commandListeners.isEmpty() ||
                     gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED ||
                     intensity == null || handshakeStarted) {
@@ -645,21 +1041,50 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     }
 
     /**
-     * Updates the orientation and notifies listeners that the belt orientation has been updated.
+     * Updates the orientation from a decoded packet and notifies listeners that the belt
+     * orientation has been updated. This method MUST only be called from the GATT callback.
      */
-    private void setOrientation(@Nullable BeltOrientation orientation) {
+    private void setOrientation(@NonNull OrientationPacket packet) {
+        long timestampNano = gattController.getClock().nanoTime();
         ArrayList<BeltCommandListener> targets;
+        BeltOrientation orientation;
+        BeltOrientationListener[] orientationTargets = orientationListeners;
         synchronized (this) {
-            beltOrientation = orientation;
-            if (commandListeners.isEmpty() ||
-                    gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED ||
-                    orientation == null || handshakeStarted) {
+            orientationSnapshot.set(packet, timestampNano, orientationSequenceNumber++);
+            orientationAvailable = true;
+            orientationHistory.add(orientationSnapshot);
+            headingRateEstimator.update(timestampNano, orientationSnapshot.getBeltHeading());
+            beltOrientation = null;
+            if (gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED ||
+                    handshakeStarted) {
                 return;
             }
-            targets = new ArrayList<>(commandListeners);
+            // Note: Command listeners that are orientation listeners are not notified twice
+            targets = null;
+            for (BeltCommandListener l: commandListeners) {
+                if (!(l instanceof BeltOrientationListener)) {
+                    if (targets == null) {
+                        targets = new ArrayList<>(commandListeners.size());
+                    }
+                    targets.add(l);
+                }
+            }
+            if (targets == null) {
+                orientation = null;
+            } else {
+                beltOrientation = orientationSnapshot.toBeltOrientation();
+                orientation = beltOrientation;
+            }
         }
-        for (BeltCommandListener l: targets) {
-            l.onBeltOrientationUpdated(orientation);
+        // Note: The snapshot is only modified by the GATT callback, it can be read outside the
+        // synchronization block
+        for (BeltOrientationListener l: orientationTargets) {
+            l.onBeltOrientationNotified(orientationSnapshot);
+        }
+        if (targets != null) {
+            for (BeltCommandListener l: targets) {
+                l.onBeltOrientationUpdated(orientation);
+            }
         }
     }
 
@@ -792,149 +1217,12 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             }
         }
 
-        try {
-            switch (vibration) {
-                case CONTINUOUS:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.CONTINUOUS,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    500,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case NAVIGATION:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.CONTINUOUS,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    500,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case APPROACHING_DESTINATION:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_SHORT_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    500,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case TURN_ONGOING:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    750,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case DIRECTION_NOTIFICATION:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.CONTINUOUS,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    1,
-                                    1000,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case NEXT_WAYPOINT_LONG_DISTANCE:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    3000,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case NEXT_WAYPOINT_MEDIUM_DISTANCE:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    1500,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case NEXT_WAYPOINT_SHORT_DISTANCE:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    1000,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case NEXT_WAYPOINT_AREA_REACHED:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    orientationType,
-                                    orientation,
-                                    0,
-                                    750,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case DESTINATION_REACHED_REPEATED:
-                case DESTINATION_REACHED_SINGLE:
-                case OPERATION_WARNING:
-                case CRITICAL_WARNING:
-                case BATTERY_LEVEL:
-                    // Non-directional signal, unreachable
-                    return false;
-            }
-        } catch (Exception e) {
-            Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal argument for " +
-                    "vibration command.", e);
-            return false;
+        // Compensate the rotation of the user until the command reaches the motors
+        if (orientationType == OrientationType.ANGLE && headingPredictionEnabled) {
+            orientation = compensateRotation(orientation);
         }
-        // Unreachable
-        return false;
+        return writeSignalPacket(vibration, channelIndex, intensity, orientationType,
+                orientation, stopOtherChannels);
     }
 
     @Override
@@ -1014,22 +1302,27 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             }
         }
 
+        // Compensate the rotation of the user until the command reaches the motors
+        if (orientationType == OrientationType.ANGLE && headingPredictionEnabled) {
+            orientation = compensateRotation(orientation);
+        }
         try {
-            return gattController.writeCharacteristic(vibrationCommandChar,
-                    new PulseCommand(
-                            channelIndex,
-                            orientationType,
-                            orientation,
-                            intensity,
-                            onDurationMs,
-                            1,
-                            iterations,
-                            periodMs,
-                            periodMs,
-                            ResetProgressOption.RESET_PROGRESS_ON_DIFFERENT_PERIOD,
-                            false,
-                            stopOtherChannels
-                    ).getPacket());
+            synchronized (reusablePulse) {
+                reusablePulse.set(
+                        channelIndex,
+                        orientationType,
+                        orientation,
+                        intensity,
+                        onDurationMs,
+                        1,
+                        iterations,
+                        periodMs,
+                        periodMs,
+                        ResetProgressOption.RESET_PROGRESS_ON_DIFFERENT_PERIOD,
+                        false,
+                        stopOtherChannels);
+                return writePulseCommand(reusablePulse, null);
+            }
         } catch (Exception e) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal argument for " +
                     "vibration command.", e);
@@ -1093,94 +1386,33 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             }
         }
 
-        try {
-            switch (vibration) {
-                case CONTINUOUS:
-                case NAVIGATION:
-                case APPROACHING_DESTINATION:
-                case TURN_ONGOING:
-                case DIRECTION_NOTIFICATION:
-                case NEXT_WAYPOINT_LONG_DISTANCE:
-                case NEXT_WAYPOINT_MEDIUM_DISTANCE:
-                case NEXT_WAYPOINT_SHORT_DISTANCE:
-                case NEXT_WAYPOINT_AREA_REACHED:
-                    // Directional signals, unreachable
-                    return false;
-                case DESTINATION_REACHED_REPEATED:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.DESTINATION_REACHED,
-                                    intensity,
-                                    OrientationType.VIBROMOTOR_INDEX,
-                                    0,
-                                    0,
-                                    5000,
-                                    0,
-                                    false,
-                                    stopOtherChannels
-                            ).getPacket());
-                case DESTINATION_REACHED_SINGLE:
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.DESTINATION_REACHED,
-                                    intensity,
-                                    OrientationType.VIBROMOTOR_INDEX,
-                                    0,
-                                    1,
-                                    2500,
-                                    0,
-                                    true,
-                                    stopOtherChannels
-                            ).getPacket());
-                case OPERATION_WARNING:
-                    // Note: exclusive channel is true because firmware 43 only support 4
-                    // simultaneous vibration.
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.WARNING,
-                                    intensity,
-                                    OrientationType.VIBROMOTOR_INDEX,
-                                    0,
-                                    2,
-                                    500,
-                                    0,
-                                    true,
-                                    stopOtherChannels
-                            ).getPacket());
-                case CRITICAL_WARNING:
-                    // Note: exclusive channel is true because firmware 43 only support 4
-                    // simultaneous vibration.
-                    return gattController.writeCharacteristic(vibrationCommandChar,
-                            new ChannelConfigurationCommand(
-                                    channelIndex,
-                                    BeltVibrationPattern.SINGLE_LONG_PULSE,
-                                    intensity,
-                                    OrientationType.BINARY_MASK,
-                                    0b0001000100010001,
-                                    3,
-                                    700,
-                                    0,
-                                    true,
-                                    stopOtherChannels
-                            ).getPacket());
-                case BATTERY_LEVEL:
-                    // System signal, unreachable
-                    return false;
-            }
-        } catch (Exception e) {
-            Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal argument for " +
-                    "vibration command.", e);
-            return false;
-        }
-        // Unreachable
-        return false;
+        return writeSignalPacket(vibration, channelIndex, intensity, null, 0,
+                stopOtherChannels);
     }
 
     @Override
     public boolean stopVibration(int... channelIndex) {
+        return stopVibration(null, channelIndex);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<BeltCommandResult> stopVibrationAsync(int... channelIndex) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!stopVibration(future, channelIndex)) {
+            future.complete(new BeltCommandResult(gattController.getClock()));
+        }
+        return future;
+    }
+
+    /**
+     * Stops the vibration. When several channels are given, the future is completed with the
+     * result of the last stop command.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @param channelIndex The channels to stop, or none to stop all channels.
+     * @return <code>true</code> if the commands have been successfully placed in operation queue.
+     */
+    private boolean stopVibration(@Nullable CompletableFuture<BeltCommandResult> future,
+                                  int... channelIndex) {
         if (gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED ||
                 vibrationCommandChar == null) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot send a stop command " +
@@ -1198,20 +1430,23 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                     (byte) 0x30,
                     (byte) 0xFF     // Stop all channels
             };
-            return gattController.writeCharacteristic(vibrationCommandChar, packet);
+            return writeVibrationCommand(packet, false, GattOperationPriority.STOP, future);
         } else {
             // Stop specific channels (up to 6)
             boolean success = true;
             byte[] packet = new byte[channelIndex.length+1];
             packet[0] = (byte) 0x30;                        // Stop channel command ID
-            for (int channel: channelIndex) {
+            for (int i = 0; i < channelIndex.length; i++) {
+                int channel = channelIndex[i];
                 if (channel < 0 || channel > 6) {
                     Log.e(DEBUG_TAG, "BeltCommunicationController: Channel index out of " +
                             "range for stop command.");
                     success = false;
                 } else {
                     packet[1] = (byte) channel;
-                    success &= gattController.writeCharacteristic(vibrationCommandChar, packet);
+                    success &= writeVibrationCommand(packet, false,
+                            GattOperationPriority.STOP,
+                            (i == channelIndex.length-1)?(future):(null));
                 }
             }
             return success;
@@ -1220,6 +1455,26 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
 
     @Override
     public boolean changeMode(BeltMode mode) {
+        return changeMode(mode, null);
+    }
+
+    @Override
+    public @NonNull CompletableFuture<BeltCommandResult> changeModeAsync(BeltMode mode) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!changeMode(mode, future)) {
+            future.complete(new BeltCommandResult(gattController.getClock()));
+        }
+        return future;
+    }
+
+    /**
+     * Changes the mode of the belt.
+     * @param mode The mode to set.
+     * @param future The future to complete with the result of the command, or <code>null</code>.
+     * @return <code>true</code> if the command has been successfully placed in operation queue.
+     */
+    private boolean changeMode(@Nullable BeltMode mode,
+                               @Nullable CompletableFuture<BeltCommandResult> future) {
         if (mode == null) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Cannot change the mode to null.");
             return false;
@@ -1240,7 +1495,9 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 (byte) 0x81,            // Change mode parameter
                 mode.getValue(),        // Value to set
                 (byte) 0x00};
-        return gattController.writeCharacteristic(parameterRequestChar, packet);
+        // Control priority so that subsequent commands are not sent before the mode change
+        return gattController.queueWrite(parameterRequestChar, packet, false, false,
+                GattOperationPriority.CONTROL, future);
     }
 
     @NonNull
@@ -1287,7 +1544,67 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     @Nullable
     @Override
     public BeltOrientation getOrientation() {
-        return beltOrientation;
+        synchronized (this) {
+            if (beltOrientation == null && orientationAvailable) {
+                beltOrientation = orientationSnapshot.toBeltOrientation();
+            }
+            return beltOrientation;
+        }
+    }
+
+    @Override
+    public @NonNull OrientationHistory getOrientationHistory() {
+        return orientationHistory;
+    }
+
+    @Override
+    public void setHeadingPredictionEnabled(boolean enabled) {
+        headingPredictionEnabled = enabled;
+    }
+
+    @Override
+    public boolean isHeadingPredictionEnabled() {
+        return headingPredictionEnabled;
+    }
+
+    @Override
+    public @NonNull HeadingRateEstimator getHeadingRateEstimator() {
+        return headingRateEstimator;
+    }
+
+    @Override
+    public float getPredictedBeltHeading() {
+        return headingRateEstimator.predictHeading(getPredictedVibrationTimeNano());
+    }
+
+    /**
+     * Returns the time at which the heading of the last orientation notification must be
+     * extrapolated for a command sent now. The last notification has been measured half a
+     * round-trip before its reception, and the command reaches the motors half a round-trip after
+     * it is sent, so that the heading is extrapolated one round-trip after the reception time
+     * scale of notifications.
+     *
+     * @return the time of the prediction in nanoseconds.
+     */
+    private long getPredictedVibrationTimeNano() {
+        long rttNano = gattController.getSmoothedWriteRttNano();
+        if (rttNano <= 0) {
+            rttNano = DEFAULT_PREDICTION_RTT_MS * 1_000_000L;
+        }
+        return gattController.getClock().nanoTime() + rttNano;
+    }
+
+    /**
+     * Compensates a vibration angle, relative to the belt, for the rotation of the belt predicted
+     * between the last orientation notification and the time the command reaches the motors.
+     *
+     * @param angle The angle computed with the heading of the last orientation notification.
+     * @return the compensated angle.
+     */
+    private int compensateRotation(int angle) {
+        // Note: A clockwise rotation of the belt moves a fixed direction counterclockwise
+        return angle - Math.round(headingRateEstimator.predictRotation(
+                getPredictedVibrationTimeNano()));
     }
 
     @Override
@@ -1300,6 +1617,39 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         return orientationDataNotificationsActive;
     }
 
+    @Override
+    public void setLowLatencyMode(boolean lowLatency) {
+        lowLatencyMode = lowLatency;
+        updateConnectionPriority();
+    }
+
+    @Override
+    public boolean isLowLatencyMode() {
+        return lowLatencyMode;
+    }
+
+    /**
+     * Sets the connection priority according to the workload. The connection priority is not
+     * changed during the handshake.
+     */
+    private void updateConnectionPriority() {
+        GattConnectionPriority priority;
+        synchronized (this) {
+            if (handshakeStarted || handshakeBackground ||
+                    gattController.getConnectionState() != GattConnectionState.GATT_CONNECTED) {
+                return;
+            }
+            if (lowLatencyMode || orientationDataNotificationsActive) {
+                priority = GattConnectionPriority.HIGH;
+            } else if (beltMode == BeltMode.STANDBY || beltMode == BeltMode.PAUSE) {
+                priority = GattConnectionPriority.LOW_POWER;
+            } else {
+                priority = GattConnectionPriority.BALANCED;
+            }
+        }
+        gattController.setConnectionPriority(priority);
+    }
+
     @Override
     public boolean playSound(BeltSound sound) {
         if (sound == null) {
@@ -1308,7 +1658,7 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         }
         try {
             return gattController.writeCharacteristic(buzzerLedCommandChar,
-                    sound.getPacket());
+                    sound.getPacket(), false, GattOperationPriority.BULK);
         } catch (Exception e) {
             Log.e(DEBUG_TAG, "BeltCommunicationController: Illegal sound argument.");
             return false;
@@ -1334,14 +1684,26 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             case GATT_DISCONNECTED:
                 // Clear handshake flag
                 handshakeStarted = false;
+                handshakeBackground = false;
+                // Keep last parameters for the next connection
+                saveParametersInCache();
                 // Clear parameters values
                 beltMode = BeltMode.UNKNOWN;
                 defaultIntensity = null;
                 beltFirmwareVersion = null;
                 beltBatteryStatus = null;
+                beltModeReceived = false;
+                defaultIntensityReceived = false;
+                firmwareVersionReceived = false;
+                beltModeFromCache = false;
                 beltOrientation = null;
+                orientationAvailable = false;
+                orientationSequenceNumber = 0;
+                orientationHistory.clear();
+                headingRateEstimator.reset();
                 parameterValues.clear();
                 // Clear GATT references
+                notificationHandlers = new IdentityHashMap<>();
                 firmwareInfoChar = null;
                 keepAliveChar = null;
                 vibrationCommandChar = null;
@@ -1378,12 +1740,23 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             case GATT_RECONNECTING:
                 // Clear handshake flag
                 handshakeStarted = false;
+                handshakeBackground = false;
+                // Keep last parameters for the reconnection
+                saveParametersInCache();
                 // Clear parameters
                 beltMode = BeltMode.UNKNOWN;
                 defaultIntensity = null;
                 beltFirmwareVersion = null;
                 beltBatteryStatus = null;
+                beltModeReceived = false;
+                defaultIntensityReceived = false;
+                firmwareVersionReceived = false;
+                beltModeFromCache = false;
                 beltOrientation = null;
+                orientationAvailable = false;
+                orientationSequenceNumber = 0;
+                orientationHistory.clear();
+                headingRateEstimator.reset();
                 parameterValues.clear();
                 break;
         }
@@ -1416,10 +1789,13 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
                 sensorParamNotificationsActive = enable;
             } else if (characteristic == orientationDataChar) {
                 orientationDataNotificationsActive = enable;
+                updateConnectionPriority();
             } else if (characteristic == debugOutputChar) {
                 debugOutputNotificationsActive = enable;
             }
         }
+        // Check for handshake completion with parameters from the profile cache
+        checkHandshakeCompletion();
     }
 
     @Override
@@ -1447,14 +1823,7 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
             }
         }
         // Check for handshake completion that should end with firmware reading
-        if (handshakeStarted) {
-            if (isHandshakeCompleted()) {
-                handshakeStarted = false;
-                if (handshakeCallback != null) {
-                    handshakeCallback.onHandshakeCompleted(true);
-                }
-            }
-        }
+        checkHandshakeCompletion();
     }
 
     @Override
@@ -1466,139 +1835,128 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
     @Override
     public void onCharacteristicChanged(@Nullable BluetoothGattCharacteristic characteristic,
                                         @Nullable byte[] value) {
-        if (characteristic == keepAliveChar) {
-            // Retrieve mode
-            BeltMode currentMode = null;
-            if (value != null && value.length >= 2) {
-                currentMode = BeltMode.fromValue(value[1]);
-                if (currentMode != null) {
-                    setBeltMode(currentMode);
-                }
-            }
-            if (currentMode == null) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
-                        "on keep-alive characteristic.");
-            }
-            // Acknowledge keep-alive
-            if (!gattController.writeCharacteristic(keepAliveChar, KEEP_ALIVE_PACKET)) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Unable to send keep-alive " +
-                        "acknowledgment.");
-            }
+        if (characteristic == null) {
+            return;
+        }
+        NotificationHandler handler = notificationHandlers.get(characteristic);
+        if (handler != null) {
+            handler.onNotification(value);
+        }
+    }
 
-        } else if (characteristic == buttonPressNotificationChar) {
-            if (value == null || value.length < 5) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
-                        "on button press notification characteristic.");
-                return;
-            }
-            BeltMode previousMode = BeltMode.fromValue(value[3]);
-            BeltMode subsequentMode = BeltMode.fromValue(value[4]);
-            BeltButton button = BeltButton.fromValue(value[0]);
-            if (previousMode == null || subsequentMode == null || button == null) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
-                        "on button press notification characteristic.");
-                return;
-            }
-            notifyButtonPressed(new BeltButtonPressEvent(button, previousMode, subsequentMode));
-            if (subsequentMode == BeltMode.STANDBY) {
-                gattController.disconnect();
+    /**
+     * Handles a keep-alive notification.
+     * @param value The notified value.
+     */
+    private void onKeepAliveNotified(@Nullable byte[] value) {
+        // Retrieve mode
+        BeltMode currentMode = null;
+        if (value != null && value.length >= 2) {
+            currentMode = BeltMode.fromValue(value[1]);
+            if (currentMode != null) {
+                setBeltMode(currentMode);
             }
+        }
+        if (currentMode == null) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
+                    "on keep-alive characteristic.");
+        }
+        // Acknowledge keep-alive
+        BluetoothGattCharacteristic keepAliveChar = this.keepAliveChar;
+        if (keepAliveChar == null || !gattController.writeCharacteristic(keepAliveChar,
+                KEEP_ALIVE_PACKET, false, GattOperationPriority.CONTROL)) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Unable to send keep-alive " +
+                    "acknowledgment.");
+        }
+    }
 
+    /**
+     * Handles a button press notification.
+     * @param value The notified value.
+     */
+    private void onButtonPressNotified(@Nullable byte[] value) {
+        if (value == null || value.length < 5) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
+                    "on button press notification characteristic.");
+            return;
+        }
+        BeltMode previousMode = BeltMode.fromValue(value[3]);
+        BeltMode subsequentMode = BeltMode.fromValue(value[4]);
+        BeltButton button = BeltButton.fromValue(value[0]);
+        if (previousMode == null || subsequentMode == null || button == null) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
+                    "on button press notification characteristic.");
+            return;
+        }
+        notifyButtonPressed(new BeltButtonPressEvent(button, previousMode, subsequentMode));
+        if (subsequentMode == BeltMode.STANDBY) {
+            gattController.disconnect();
+        }
+    }
 
-        } else if (characteristic == parameterNotificationChar) {
-            if (value == null || value.length < 2) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
-                        "on parameter notification characteristic.");
-                return;
-            }
-            if (value[0]==0x01 && value[1]==0x01) {
-                // Belt mode
-                if (value.length < 3) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
-                    return;
-                }
-                BeltMode mode = BeltMode.fromValue(value[2]);
+    /**
+     * Handles a parameter notification.
+     * @param value The notified value.
+     */
+    private void onParameterNotified(@Nullable byte[] value) {
+        ParameterNotificationPacket parameter = parameterDecoder;
+        int type = parameter.decode(value);
+        switch (type) {
+            case ParameterNotificationPacket.TYPE_MODE:
+                BeltMode mode = BeltMode.fromValue((byte) parameter.getValue());
                 if (mode == null) {
                     Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
                             "received on parameter notification characteristic.");
                 } else {
                     setBeltMode(mode);
+                    checkHandshakeCompletion();
                 }
-            } else if ((value[0]==0x01 && value[1]==0x02) ||
-                    (value[0]==0x10 && value[1]==0x00)) {
-                // Default vibration intensity
-                if (value.length < 3) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
-                    return;
-                }
-                int intensity = value[2];
-                if (intensity < 0 || intensity > 100) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
+                break;
+            case ParameterNotificationPacket.TYPE_DEFAULT_INTENSITY:
+                setDefaultIntensity(parameter.getValue());
+                checkHandshakeCompletion();
+                break;
+            case ParameterNotificationPacket.TYPE_MALFORMED:
+                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
+                        "on parameter notification characteristic.");
+                break;
+            case ParameterNotificationPacket.TYPE_UNKNOWN:
+                break;
+            default:
+                BeltParameter beltParameter = BeltParameter.fromNotificationType(type);
+                if (beltParameter == null) {
+                    Log.w(DEBUG_TAG, "BeltCommunicationController: Parameter not supported.");
                 } else {
-                    setDefaultIntensity(intensity);
-                }
-            } else if ((value[0]==0x01 && value[1]==0x03) ||
-                    (value[0]==0x10 && value[1]==0x01)) {
-                // Heading offset
-                if (value.length < 4) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
-                }
-                Integer offset = ((((int) value[3]) << 8) | (0xFF & value[2]));
-                setParameterValue(BeltParameter.HEADING_OFFSET, offset);
-            } else if (value[0]==0x01 && value[1]==0x04) {
-                // Bluetooth name
-                Log.w(DEBUG_TAG, "BeltCommunicationController: Parameter not supported.");
-            } else if (value[0]==0x10 && value[1]==0x02) {
-                // Buzzer active
-                Log.w(DEBUG_TAG, "BeltCommunicationController: Parameter not supported.");
-            } else if (value[0]==0x10 && value[1]==0x03) {
-                // Accuracy signal state
-                if (value.length < 3) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
-                }
-                Integer state = (0xFF & value[2]);
-                if (state < 0 || state > 3) {
-                    Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet " +
-                            "received on parameter notification characteristic.");
+                    setParameterValue(beltParameter, parameter.getValue());
                 }
-                setParameterValue(BeltParameter.ACCURACY_SIGNAL_STATE, state);
-            }
+                break;
+        }
+    }
 
-        } else if (characteristic == orientationDataChar) {
-            if (value == null || value.length < 16) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
-                        "on orientation data characteristic.");
-                return;
-            }
-            int id = (value[0] & 0xFF);
-            int beltHeading = (((int) value[2]) << 8) | (0xFF & value[1]);
-            int heading = (((int) value[4]) << 8) | (0xFF & value[3]);
-            int roll = (((int) value[6]) << 8) | (0xFF & value[5]);
-            int pitch = (((int) value[8]) << 8) | (0xFF & value[7]);
-            int accuracy = (((int) value[10]) << 8) | (0xFF & value[9]);
-            int magStatus = value[11];
-            int accelStatus = value[12];
-            int gyroStatus = value[13];
-            int fusionStatus = value[14];
-            boolean inaccurate = (value[15]!=0);
-            setOrientation(new BeltOrientation(
-                    id, beltHeading, heading, roll, pitch, accuracy, magStatus, accelStatus,
-                    gyroStatus, fusionStatus, inaccurate
-            ));
-
-        } else if (characteristic == batteryStatusChar) {
-            try {
-                setBatteryStatus(new BeltBatteryStatus(value));
-            } catch (Exception e) {
-                Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet read on " +
-                                "battery status characteristic",
-                        e);
-            }
+    /**
+     * Handles an orientation notification.
+     * @param value The notified value.
+     */
+    private void onOrientationNotified(@Nullable byte[] value) {
+        if (!orientationDecoder.decode(value)) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet received " +
+                    "on orientation data characteristic.");
+            return;
+        }
+        setOrientation(orientationDecoder);
+    }
+
+    /**
+     * Handles a battery status notification.
+     * @param value The notified value.
+     */
+    private void onBatteryStatusNotified(@Nullable byte[] value) {
+        try {
+            setBatteryStatus(new BeltBatteryStatus(value));
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "BeltCommunicationController: Malformed packet read on " +
+                            "battery status characteristic",
+                    e);
         }
     }
 
@@ -1609,7 +1967,19 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
 
     @Override
     public void onMtuChanged(int mtu, boolean success) {
-        // MTU request not used.
+        if (DEBUG) Log.i(DEBUG_TAG, "BeltCommunicationController: MTU " + mtu +
+                ((success)?(" negotiated."):(" not negotiated.")));
+    }
+
+    /**
+     * Checks if the belt is ready for vibration commands: the keep-alive and parameter
+     * notifications are registered and the mode of the belt has been received, or is known from
+     * the profile cache.
+     * @return <code>true</code> if the belt is ready for vibration commands.
+     */
+    private boolean isHandshakeReady() {
+        return keepAliveNotificationsActive && parameterNotificationsActive &&
+                vibrationCommandChar != null && (beltModeReceived || beltModeFromCache);
     }
 
     /**
@@ -1630,14 +2000,14 @@ public class BeltCommunicationController implements BeltCommunicationInterface,
         if (!batteryStatusNotificationsActive) {
             return false;
         }
-        // Check parameters
-        if (beltMode == BeltMode.UNKNOWN) {
+        // Check parameters received, not only the initial mode from the profile cache
+        if (!beltModeReceived) {
             return false;
         }
-        if (defaultIntensity == null) {
+        if (!defaultIntensityReceived) {
             return false;
         }
-        if (beltFirmwareVersion == null) {
+        if (!firmwareVersionReceived) {
             return false;
         }
         return true;
@@ -7,6 +7,8 @@
  */
 package de.feelspace.fslib;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The belt communication interface provides advanced methods for sending instructions to the belt
  * and receiving notifications. For most application it is recommended to only use the
@@ -120,6 +122,83 @@ public interface BeltCommunicationInterface extends BeltCommandInterface {
      */
     boolean startSystemSignal(BeltSystemSignal signal);
 
+    /**
+     * Enables or disables the pipelining of vibration commands. When pipelining is enabled,
+     * vibration commands are written without response and several commands can be in flight at
+     * once. This increases the rate of vibration commands and reduces the latency between the
+     * command and the vibration, but the delivery of a command is no more acknowledged by the belt.
+     *
+     * Pipelining is disabled by default. It is recommended for applications that continuously
+     * update the vibration direction, e.g. for navigation.
+     *
+     * Note: The Android Bluetooth stack rejects a write of a GATT client until the callback of
+     * the previous write, so the effective pipeline depth on Android is 1. With pipelining, a
+     * command waits for the Android stack to take over the previous command, but not for the
+     * acknowledgment of the belt.
+     *
+     * @param enabled <code>true</code> to enable pipelining, <code>false</code> to disable it.
+     */
+    void setVibrationCommandPipeliningEnabled(boolean enabled);
+
+    /**
+     * Returns <code>true</code> if the pipelining of vibration commands is enabled.
+     *
+     * @return <code>true</code> if the pipelining of vibration commands is enabled.
+     */
+    boolean isVibrationCommandPipeliningEnabled();
+
+    /**
+     * Sends a channel configuration command to the belt and returns a future completed with the
+     * result of the command.
+     *
+     * The future is completed when the command is acknowledged by the belt, or when the command
+     * fails, times out, or is superseded by a more recent command for the same channel. The future
+     * is never completed exceptionally, and the result provides the latency of the command.
+     *
+     * @param command The command to send.
+     * @return the future result of the command.
+     */
+    CompletableFuture<BeltCommandResult> sendChannelConfigurationCommandAsync(
+            ChannelConfigurationCommand command);
+
+    /**
+     * Sends a pulse command to the belt and returns a future completed with the result of the
+     * command. See {@link #sendPulseCommand(PulseCommand)} and
+     * {@link #sendChannelConfigurationCommandAsync(ChannelConfigurationCommand)}.
+     *
+     * @param command The command to send.
+     * @return the future result of the command.
+     */
+    CompletableFuture<BeltCommandResult> sendPulseCommandAsync(PulseCommand command);
+
+    /**
+     * Stops the vibration and returns a future completed with the result of the command. See
+     * {@link BeltCommandInterface#stopVibration(int...)}. When several channels are given, the
+     * future is completed with the result of the last stop command.
+     *
+     * @param channelIndex The channels to stop, or none to stop all channels.
+     * @return the future result of the command.
+     */
+    CompletableFuture<BeltCommandResult> stopVibrationAsync(int... channelIndex);
+
+    /**
+     * Changes the mode of the belt and returns a future completed with the result of the command.
+     * See {@link BeltCommandInterface#changeMode(BeltMode)}.
+     *
+     * @param mode The mode to set.
+     * @return the future result of the command.
+     */
+    CompletableFuture<BeltCommandResult> changeModeAsync(BeltMode mode);
+
+    /**
+     * Requests the value of a parameter and returns a future completed when the value is notified
+     * by the belt. The notified packet is available in the result.
+     *
+     * @param beltParameter The parameter to request.
+     * @return the future result of the request.
+     */
+    CompletableFuture<BeltCommandResult> requestParameterValueAsync(BeltParameter beltParameter);
+
     /**
      * Adds a listener to belt notifications.
      *
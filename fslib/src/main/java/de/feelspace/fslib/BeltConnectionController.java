@@ -55,6 +55,11 @@ class BeltConnectionController extends BeltConnectionInterface implements
      */
     private final @NonNull ScheduledThreadPoolExecutor executor;
 
+    /**
+     * Timer wheel shared by the timeouts of the connection.
+     */
+    private final @NonNull TimerWheel timerWheel;
+
     /**
      * Flag for pending connect.
      */
@@ -73,10 +78,14 @@ class BeltConnectionController extends BeltConnectionInterface implements
         this.applicationContext = applicationContext;
         executor = new ScheduledThreadPoolExecutor(1);
         executor.setRemoveOnCancelPolicy(true);
-        gattController = new GattController(executor);
+        timerWheel = new TimerWheel(executor);
+        gattController = new GattController(executor, timerWheel);
         gattController.addGattEventListener(this);
         communicationController = new BeltCommunicationController(gattController);
-        scanner = new BluetoothScanner(executor,this);
+        BeltProfileCache profileCache = new BeltProfileCache(applicationContext);
+        gattController.setProfileCache(profileCache);
+        communicationController.setProfileCache(profileCache);
+        scanner = new BluetoothScanner(timerWheel, this);
     }
 
     @Override
@@ -144,10 +153,24 @@ class BeltConnectionController extends BeltConnectionInterface implements
         notifyState();
     }
 
+    @Override
+    public void setReconnectionPolicy(@NonNull ReconnectionPolicy policy) {
+        gattController.setReconnectionPolicy(policy);
+    }
+
+    @Override
+    public @NonNull ReconnectionPolicy getReconnectionPolicy() {
+        return gattController.getReconnectionPolicy();
+    }
+
     @Override protected @NonNull ScheduledThreadPoolExecutor getExecutor() {
         return executor;
     }
 
+    @Override protected @NonNull TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
     @Override
     public BeltCommandInterface getCommandInterface() {
         return communicationController;
@@ -160,6 +183,7 @@ class BeltConnectionController extends BeltConnectionInterface implements
 
     @Override
     public void onGattConnectionStateChange(GattConnectionState gattState) {
+        recordGattConnectionState(gattState);
         boolean handshake = false;
         boolean notify = false;
         synchronized (this) {
@@ -347,9 +371,41 @@ class BeltConnectionController extends BeltConnectionInterface implements
         notifyScanFailed();
     }
 
+    @Override
+    public void onHandshakeReady() {
+        BluetoothDevice device;
+        synchronized (this) {
+            if (state != BeltConnectionState.STATE_HANDSHAKE) {
+                // Ignore if not handshake ongoing
+                return;
+            }
+            device = gattController.getDevice();
+            if (device == null) {
+                // Should not happen, checked on completion
+                return;
+            }
+            // Ready for vibration commands, the handshake continues in background
+            saveDeviceAddress(applicationContext, device);
+            state = BeltConnectionState.STATE_CONNECTED;
+        }
+        notifyState();
+    }
+
     @Override
     public void onHandshakeCompleted(boolean success) {
         BluetoothDevice device;
+        boolean backgroundFailure = false;
+        synchronized (this) {
+            if (state == BeltConnectionState.STATE_CONNECTED) {
+                // Handshake completed in background
+                backgroundFailure = !success;
+            }
+        }
+        if (backgroundFailure) {
+            Log.e(DEBUG_TAG, "BeltConnectionController: Handshake failed in background.");
+            gattController.reconnect();
+            return;
+        }
         synchronized (this) {
             if (state != BeltConnectionState.STATE_HANDSHAKE) {
                 // Ignore if not handshake ongoing
@@ -35,6 +35,10 @@ public abstract class BeltConnectionInterface {
     // State change listeners
     protected final ArrayList<BeltConnectionListener> listeners = new ArrayList<>();
 
+    // Timing of connection phases
+    private final @NonNull ConnectionTimingRecorder connectionTiming =
+            new ConnectionTimingRecorder();
+
     /**
      * Preference key for the last connected device address.
      */
@@ -88,6 +92,21 @@ public abstract class BeltConnectionInterface {
      */
     public abstract void disconnect();
 
+    /**
+     * Sets the policy for reconnection attempts after a connection loss, e.g.
+     * {@link ReconnectionPolicy#createUnlimitedPolicy()} for navigation sessions.
+     *
+     * @param policy The reconnection policy.
+     */
+    public abstract void setReconnectionPolicy(@NonNull ReconnectionPolicy policy);
+
+    /**
+     * Returns the policy for reconnection attempts after a connection loss.
+     *
+     * @return the reconnection policy.
+     */
+    public abstract @NonNull ReconnectionPolicy getReconnectionPolicy();
+
     /**
      * Returns the state of the connection.
      *
@@ -103,6 +122,7 @@ public abstract class BeltConnectionInterface {
     protected void notifyState() {
         if (DEBUG) Log.i(DEBUG_TAG, "BeltConnectionInterface: Connection state changed to " +
                 state.toString());
+        connectionTiming.onBeltConnectionStateChanged(state);
         ArrayList<BeltConnectionListener> targets;
         synchronized (this) {
             if (listeners.isEmpty()) {
@@ -115,6 +135,15 @@ public abstract class BeltConnectionInterface {
         }
     }
 
+    /**
+     * Records a transition of the GATT connection state for the timing of connection phases.
+     *
+     * @param gattState The new GATT connection state.
+     */
+    protected void recordGattConnectionState(@NonNull GattConnectionState gattState) {
+        connectionTiming.onGattConnectionStateChanged(gattState);
+    }
+
     /**
      * Notifies listeners that the connection has been lost.
      */
@@ -245,6 +274,13 @@ public abstract class BeltConnectionInterface {
      */
     protected abstract @NonNull ScheduledThreadPoolExecutor getExecutor();
 
+    /**
+     * Returns the timer wheel for timeouts and other delayed tasks related to this connection.
+     *
+     * @return the timer wheel for timeouts and other delayed tasks related to this connection.
+     */
+    protected abstract @NonNull TimerWheel getTimerWheel();
+
     /**
      * Adds a listener for connection events.
      *
@@ -269,6 +305,41 @@ public abstract class BeltConnectionInterface {
         }
     }
 
+    /**
+     * Returns a snapshot of the timing of connection phases, with the histograms of the duration
+     * of each phase since the creation of the connection interface or the last reset.
+     *
+     * @return a snapshot of the timing of connection phases.
+     */
+    public @NonNull ConnectionTimingSnapshot getConnectionTimingSnapshot() {
+        return connectionTiming.getSnapshot();
+    }
+
+    /**
+     * Clears the histograms of the timing of connection phases.
+     */
+    public void resetConnectionTiming() {
+        connectionTiming.reset();
+    }
+
+    /**
+     * Adds a listener for the timing of connection phases.
+     *
+     * @param listener the listener to add.
+     */
+    public void addConnectionTimingListener(ConnectionTimingListener listener) {
+        connectionTiming.addListener(listener);
+    }
+
+    /**
+     * Removes a listener for the timing of connection phases.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeConnectionTimingListener(ConnectionTimingListener listener) {
+        connectionTiming.removeListener(listener);
+    }
+
     /**
      * Returns the command interface for this connection. The command interface provides a simple
      * way to control the belt mode and vibration.
@@ -48,7 +48,8 @@ public enum BeltConnectionState {
     STATE_HANDSHAKE(),
 
     /**
-     * Connected to a belt.
+     * Connected to a belt and ready for vibration commands. The default intensity, battery status
+     * and firmware version may still be retrieved in background just after the connection.
      */
     STATE_CONNECTED();
 
@@ -61,6 +61,17 @@ public enum BeltMode {
     // Value of the item
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final BeltMode[] ITEMS_BY_VALUE = new BeltMode[256];
+
+    static {
+        for (BeltMode item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -86,12 +97,7 @@ public enum BeltMode {
      * correspond to any item.
      */
     static @Nullable BeltMode fromValue(byte v) {
-        for (BeltMode item: BeltMode.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return null;
+        return ITEMS_BY_VALUE[v & 0xFF];
     }
 
 
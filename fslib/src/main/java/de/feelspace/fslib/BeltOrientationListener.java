@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Interface to listen to the orientation notifications of the belt without allocation.
+ *
+ * Unlike {@link BeltCommandListener#onBeltOrientationUpdated(BeltOrientation)}, the orientation is
+ * notified with a snapshot that is reused for all notifications. A {@link BeltCommandListener}
+ * that implements this interface is not notified with
+ * {@link BeltCommandListener#onBeltOrientationUpdated(BeltOrientation)}, it must be registered
+ * with {@link BeltCommandInterface#addOrientationListener(BeltOrientationListener)} to receive the
+ * orientation.
+ */
+public interface BeltOrientationListener {
+
+    /**
+     * Called when a notification of the belt's orientation has been received.
+     *
+     * IMPORTANT: The snapshot is reused and only valid during the callback. Use
+     * {@link OrientationSnapshot#copyTo(OrientationSnapshot)} or
+     * {@link OrientationSnapshot#toBeltOrientation()} to keep the orientation.
+     *
+     * @param orientation The notified orientation.
+     */
+    void onBeltOrientationNotified(@NonNull OrientationSnapshot orientation);
+
+}
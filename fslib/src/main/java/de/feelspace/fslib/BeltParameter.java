@@ -8,8 +8,19 @@
 
 package de.feelspace.fslib;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import de.feelspace.fslib.protocol.IntegerParameterCodec;
+import de.feelspace.fslib.protocol.ParameterCodec;
+import de.feelspace.fslib.protocol.ParameterNotificationPacket;
+
 /**
  * Advanced parameters of the belt.
+ *
+ * Each parameter supplies the codec of its value and the type of its notifications. The codecs
+ * are registered in the parameter notification decoder of the communication controller, a new
+ * parameter only requires a new item.
  */
 public enum BeltParameter {
 
@@ -21,7 +32,8 @@ public enum BeltParameter {
      * nor to change how the belt is worn. It is only to compensate the fact that the waist of the
      * user is not round.
      */
-    HEADING_OFFSET((byte)1),
+    HEADING_OFFSET((byte)1, ParameterNotificationPacket.TYPE_HEADING_OFFSET,
+            IntegerParameterCodec.int16(0, 359)),
 
     /**
      * Parameter that determines in which mode the compass accuracy signal is enabled. The default
@@ -33,17 +45,48 @@ public enum BeltParameter {
      *     <li>3 to signal inaccurate compass in both compass and app modes.</li>
      * </ul>
      */
-    ACCURACY_SIGNAL_STATE((byte)3);
+    ACCURACY_SIGNAL_STATE((byte)3, ParameterNotificationPacket.TYPE_ACCURACY_SIGNAL_STATE,
+            IntegerParameterCodec.uint8(0, 3));
 
     // Value of the item
     private byte value;
 
+    // Type of the notifications and codec of the value
+    private int notificationType;
+    private ParameterCodec codec;
+
+    // Items by notification type
+    private static final BeltParameter[] ITEMS_BY_NOTIFICATION_TYPE =
+            new BeltParameter[ParameterNotificationPacket.MAX_TYPE+1];
+    static {
+        for (BeltParameter item: values()) {
+            ITEMS_BY_NOTIFICATION_TYPE[item.notificationType] = item;
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
+     * @param notificationType The type of the parameter notifications.
+     * @param codec The codec of the parameter value.
      */
-    BeltParameter(byte v) {
+    BeltParameter(byte v, int notificationType, @NonNull ParameterCodec codec) {
         value = v;
+        this.notificationType = notificationType;
+        this.codec = codec;
+    }
+
+    /**
+     * Returns the parameter of a notification type.
+     *
+     * @param notificationType The notification type.
+     * @return the parameter, or <code>null</code> if the type is not a parameter type.
+     */
+    static @Nullable BeltParameter fromNotificationType(int notificationType) {
+        if (notificationType < 0 || notificationType >= ITEMS_BY_NOTIFICATION_TYPE.length) {
+            return null;
+        }
+        return ITEMS_BY_NOTIFICATION_TYPE[notificationType];
     }
 
     /**
@@ -54,4 +97,22 @@ public enum BeltParameter {
     byte getValue() {
         return value;
     }
+
+    /**
+     * Returns the type of the parameter notifications.
+     *
+     * @return the notification type.
+     */
+    int getNotificationType() {
+        return notificationType;
+    }
+
+    /**
+     * Returns the codec of the parameter value.
+     *
+     * @return the codec of the parameter value.
+     */
+    @NonNull ParameterCodec getCodec() {
+        return codec;
+    }
 }
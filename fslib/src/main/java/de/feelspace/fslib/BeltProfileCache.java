@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Persistent cache of the GATT profile and last parameters of known belts, by device address.
+ *
+ * The profile of a belt (services and characteristics) is used to shorten the service discovery
+ * of a belt that has already been connected. The last mode of the belt is used as initial mode of
+ * the handshake, which is then ready as soon as the notifications are registered; the mode is
+ * corrected by the mode request of the handshake. The handshake is completed only when the
+ * parameters (firmware version, mode and default intensity) have been received from the belt.
+ */
+class BeltProfileCache {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    /** Name of the shared preferences of the cache. */
+    static final String PREFERENCES_NAME = "de.feelspace.fslib.BeltProfileCache";
+
+    // Key prefix of profiles and version of the format
+    private static final String KEY_PREFIX_PROFILE = "profile_";
+    private static final String FORMAT_VERSION = "1";
+
+    /**
+     * Cached profile of a belt.
+     */
+    static class Profile {
+        final @NonNull String address;
+        final @NonNull List<UUID> serviceUuids;
+        final @NonNull List<UUID> characteristicUuids;
+        final @Nullable Integer firmwareVersion;
+        final @Nullable BeltMode mode;
+        final @Nullable Integer defaultIntensity;
+        final long updateTimeMillis;
+
+        Profile(@NonNull String address,
+                @NonNull List<UUID> serviceUuids,
+                @NonNull List<UUID> characteristicUuids,
+                @Nullable Integer firmwareVersion,
+                @Nullable BeltMode mode,
+                @Nullable Integer defaultIntensity,
+                long updateTimeMillis) {
+            this.address = address;
+            this.serviceUuids = serviceUuids;
+            this.characteristicUuids = characteristicUuids;
+            this.firmwareVersion = firmwareVersion;
+            this.mode = mode;
+            this.defaultIntensity = defaultIntensity;
+            this.updateTimeMillis = updateTimeMillis;
+        }
+    }
+
+    // Shared preferences
+    private final @Nullable SharedPreferences preferences;
+
+    // Profiles in memory, loaded on first access
+    private final @NonNull HashMap<String, Profile> profiles = new HashMap<>();
+
+    /**
+     * Creates the cache.
+     *
+     * @param applicationContext The application context to access shared preferences.
+     */
+    BeltProfileCache(@NonNull Context applicationContext) {
+        SharedPreferences pref = null;
+        try {
+            pref = applicationContext.getSharedPreferences(PREFERENCES_NAME,
+                    Context.MODE_PRIVATE);
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "BeltProfileCache: Unable to open shared preferences.", e);
+        }
+        preferences = pref;
+    }
+
+    /**
+     * Returns the cached profile of a belt.
+     *
+     * @param address The address of the belt.
+     * @return the cached profile, or <code>null</code> if the belt is not known.
+     */
+    synchronized @Nullable Profile get(@Nullable String address) {
+        if (address == null) {
+            return null;
+        }
+        if (profiles.containsKey(address)) {
+            return profiles.get(address);
+        }
+        Profile profile = null;
+        if (preferences != null) {
+            profile = decode(address, preferences.getString(KEY_PREFIX_PROFILE + address, null));
+        }
+        profiles.put(address, profile);
+        return profile;
+    }
+
+    /**
+     * Updates the GATT profile of a belt after a successful service discovery.
+     *
+     * @param address The address of the belt.
+     * @param gatt The GATT transport with discovered services.
+     */
+    synchronized void updateServices(@NonNull String address, @NonNull GattTransport gatt) {
+        ArrayList<UUID> services = new ArrayList<>();
+        ArrayList<UUID> characteristics = new ArrayList<>();
+        try {
+            for (BluetoothGattService service: gatt.getServices()) {
+                services.add(service.getUuid());
+                for (BluetoothGattCharacteristic characteristic: service.getCharacteristics()) {
+                    characteristics.add(characteristic.getUuid());
+                }
+            }
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "BeltProfileCache: Unable to read the GATT profile.", e);
+            return;
+        }
+        Profile previous = get(address);
+        if (previous != null && previous.serviceUuids.equals(services) &&
+                previous.characteristicUuids.equals(characteristics)) {
+            // No change
+            return;
+        }
+        put(new Profile(address, services, characteristics,
+                (previous == null)?(null):(previous.firmwareVersion),
+                (previous == null)?(null):(previous.mode),
+                (previous == null)?(null):(previous.defaultIntensity),
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Updates the last parameters of a belt. The GATT profile of the belt must be in cache.
+     *
+     * @param address The address of the belt.
+     * @param firmwareVersion The firmware version.
+     * @param mode The mode.
+     * @param defaultIntensity The default intensity.
+     */
+    synchronized void updateParameters(@NonNull String address,
+                                       @Nullable Integer firmwareVersion,
+                                       @Nullable BeltMode mode,
+                                       @Nullable Integer defaultIntensity) {
+        Profile previous = get(address);
+        if (previous == null) {
+            return;
+        }
+        if (mode == BeltMode.UNKNOWN) {
+            mode = null;
+        }
+        put(new Profile(address, previous.serviceUuids, previous.characteristicUuids,
+                (firmwareVersion == null)?(previous.firmwareVersion):(firmwareVersion),
+                (mode == null)?(previous.mode):(mode),
+                (defaultIntensity == null)?(previous.defaultIntensity):(defaultIntensity),
+                System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the profile of a belt, e.g. when the service discovery fails.
+     *
+     * @param address The address of the belt.
+     */
+    synchronized void remove(@NonNull String address) {
+        profiles.put(address, null);
+        if (preferences != null) {
+            preferences.edit().remove(KEY_PREFIX_PROFILE + address).apply();
+        }
+    }
+
+    /**
+     * Stores a profile.
+     *
+     * @param profile The profile to store.
+     */
+    private void put(@NonNull Profile profile) {
+        profiles.put(profile.address, profile);
+        if (preferences != null) {
+            preferences.edit().putString(KEY_PREFIX_PROFILE + profile.address,
+                    encode(profile)).apply();
+        }
+    }
+
+    /**
+     * Encodes a profile as a string:
+     * <code>version;firmware;mode;intensity;time;service,...;characteristic,...</code>
+     *
+     * @param profile The profile.
+     * @return the encoded profile.
+     */
+    private static @NonNull String encode(@NonNull Profile profile) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append(';');
+        if (profile.firmwareVersion != null) {
+            sb.append(profile.firmwareVersion);
+        }
+        sb.append(';');
+        if (profile.mode != null) {
+            sb.append(profile.mode.getValue() & 0xFF);
+        }
+        sb.append(';');
+        if (profile.defaultIntensity != null) {
+            sb.append(profile.defaultIntensity);
+        }
+        sb.append(';').append(profile.updateTimeMillis).append(';');
+        appendUuids(sb, profile.serviceUuids);
+        sb.append(';');
+        appendUuids(sb, profile.characteristicUuids);
+        return sb.toString();
+    }
+
+    /**
+     * Appends a comma-separated list of UUIDs.
+     */
+    private static void appendUuids(@NonNull StringBuilder sb, @NonNull List<UUID> uuids) {
+        for (int i = 0; i < uuids.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(uuids.get(i).toString());
+        }
+    }
+
+    /**
+     * Decodes a profile.
+     *
+     * @param address The address of the belt.
+     * @param encoded The encoded profile.
+     * @return the profile, or <code>null</code> if the encoded profile is missing or invalid.
+     */
+    private static @Nullable Profile decode(@NonNull String address, @Nullable String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            String[] fields = encoded.split(";", -1);
+            if (fields.length != 7 || !FORMAT_VERSION.equals(fields[0])) {
+                return null;
+            }
+            Integer firmwareVersion = (fields[1].isEmpty())?(null):(Integer.valueOf(fields[1]));
+            BeltMode mode = (fields[2].isEmpty())?(null):
+                    (BeltMode.fromValue((byte) Integer.parseInt(fields[2])));
+            Integer intensity = (fields[3].isEmpty())?(null):(Integer.valueOf(fields[3]));
+            long time = Long.parseLong(fields[4]);
+            return new Profile(address, parseUuids(fields[5]), parseUuids(fields[6]),
+                    firmwareVersion, mode, intensity, time);
+        } catch (Exception e) {
+            Log.w(DEBUG_TAG, "BeltProfileCache: Invalid cached profile.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of UUIDs.
+     */
+    private static @NonNull List<UUID> parseUuids(@NonNull String list) {
+        ArrayList<UUID> uuids = new ArrayList<>();
+        if (!list.isEmpty()) {
+            for (String uuid: list.split(",")) {
+                uuids.add(UUID.fromString(uuid));
+            }
+        }
+        return uuids;
+    }
+
+}
@@ -97,6 +97,10 @@ public enum BeltSound {
      */
     private BuzzerTonePattern tone;
 
+    /**
+     * The command packet of the sound, encoded once.
+     */
+    private final byte[] packet;
 
     /**
      * Constructor.
@@ -104,6 +108,7 @@ public enum BeltSound {
      */
     BeltSound(BuzzerTonePattern tone) {
         this.tone = tone;
+        this.packet = tone.getPacket();
     }
 
     /**
@@ -115,10 +120,10 @@ public enum BeltSound {
     }
 
     /**
-     * Returns the command packet for this sound.
+     * Returns the command packet for this sound. The packet is shared and must not be modified.
      * @return the command packet.
      */
     protected byte[] getPacket() {
-        return tone.getPacket();
+        return packet;
     }
 }
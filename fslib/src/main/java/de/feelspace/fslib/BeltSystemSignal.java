@@ -33,6 +33,17 @@ public enum BeltSystemSignal {
      */
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final BeltSystemSignal[] ITEMS_BY_VALUE = new BeltSystemSignal[256];
+
+    static {
+        for (BeltSystemSignal item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -58,12 +69,7 @@ public enum BeltSystemSignal {
      * correspond to any item.
      */
     static BeltSystemSignal fromValue(byte v) {
-        for (BeltSystemSignal item: BeltSystemSignal.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return null;
+        return ITEMS_BY_VALUE[v & 0xFF];
     }
 
 
@@ -43,6 +43,17 @@ public enum BeltVibrationPattern {
     // Value of the item
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final BeltVibrationPattern[] ITEMS_BY_VALUE = new BeltVibrationPattern[256];
+
+    static {
+        for (BeltVibrationPattern item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     // Indicates that the pattern is based on binary mask
     private boolean isBinaryMask;
 
@@ -72,12 +83,8 @@ public enum BeltVibrationPattern {
      * @return The item corresponding to the value or the default item.
      */
     static BeltVibrationPattern fromValue(byte v, BeltVibrationPattern defaultItem) {
-        for (BeltVibrationPattern item: BeltVibrationPattern.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return defaultItem;
+        BeltVibrationPattern item = ITEMS_BY_VALUE[v & 0xFF];
+        return (item == null)?(defaultItem):(item);
     }
 
 
@@ -10,7 +10,6 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import java.util.Objects;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -26,8 +25,8 @@ public class BluetoothPairingManager {
     private final BluetoothPairingManager.BluetoothPairingDelegate callback;
 
     // Scan timeout (not null when scanning)
-    private ScheduledFuture<?> pairingTimeoutTask;
-    private final ScheduledThreadPoolExecutor executor;
+    private TimerWheel.Timeout pairingTimeoutTask;
+    private final TimerWheel timerWheel;
     private static final long DEFAULT_PAIRING_TIMEOUT_MS = 30000;
 
     // Context for broadcast receiver
@@ -49,9 +48,19 @@ public class BluetoothPairingManager {
     public BluetoothPairingManager(@NonNull Context applicationContext,
                                    @NonNull ScheduledThreadPoolExecutor executor,
                                    @NonNull BluetoothPairingManager.BluetoothPairingDelegate callback) {
+        this(applicationContext, new TimerWheel(executor), callback);
+    }
+
+    /**
+     * Constructor with a shared timer wheel for the pairing timeout.
+     * @param callback The callback for returning results of pairing.
+     */
+    BluetoothPairingManager(@NonNull Context applicationContext,
+                            @NonNull TimerWheel timerWheel,
+                            @NonNull BluetoothPairingManager.BluetoothPairingDelegate callback) {
         this.context = applicationContext;
         this.callback = callback;
-        this.executor = executor;
+        this.timerWheel = timerWheel;
         pairingListener = new PairingStatusBroadcastReceiver();
     }
 
@@ -62,7 +71,7 @@ public class BluetoothPairingManager {
             this.pairing = false;
             // Cancel previous timeout task
             if (pairingTimeoutTask != null) {
-                pairingTimeoutTask.cancel(true);
+                pairingTimeoutTask.cancel();
                 pairingTimeoutTask = null;
             }
             // Check pairing state
@@ -77,7 +86,7 @@ public class BluetoothPairingManager {
                 // Start timeout
                 if (!failed) {
                     try {
-                        pairingTimeoutTask = executor.schedule(
+                        pairingTimeoutTask = timerWheel.schedule(
                                 () -> {
                                     boolean notifyFailure;
                                     synchronized (BluetoothPairingManager.this) {
@@ -103,7 +112,7 @@ public class BluetoothPairingManager {
                     failed = true;
                 }
                 try {
-                    pairingTimeoutTask = executor.schedule(
+                    pairingTimeoutTask = timerWheel.schedule(
                             () -> {
                                 boolean notifyFailure;
                                 synchronized (BluetoothPairingManager.this) {
@@ -187,7 +196,7 @@ public class BluetoothPairingManager {
                                 pairing = false;
                                 // Cancel timeout task
                                 if (pairingTimeoutTask != null) {
-                                    pairingTimeoutTask.cancel(true);
+                                    pairingTimeoutTask.cancel();
                                     pairingTimeoutTask = null;
                                 }
                             }
@@ -199,7 +208,7 @@ public class BluetoothPairingManager {
                                 pairing = false;
                                 // Cancel timeout task
                                 if (pairingTimeoutTask != null) {
-                                    pairingTimeoutTask.cancel(true);
+                                    pairingTimeoutTask.cancel();
                                     pairingTimeoutTask = null;
                                 }
                             }
@@ -19,7 +19,6 @@ import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -41,8 +40,8 @@ class BluetoothScanner {
     private final BluetoothScannerDelegate callback;
 
     // Scan timeout (not null when scanning)
-    private ScheduledFuture<?> scanTimeoutTask;
-    private final ScheduledThreadPoolExecutor executor;
+    private TimerWheel.Timeout scanTimeoutTask;
+    private final TimerWheel timerWheel;
     private static final long DEFAULT_SCAN_TIMEOUT_MS = 5000;
 
     // BLE scanners
@@ -62,8 +61,16 @@ class BluetoothScanner {
      */
     public BluetoothScanner(@NonNull ScheduledThreadPoolExecutor executor,
             @NonNull BluetoothScannerDelegate callback) {
+        this(new TimerWheel(executor), callback);
+    }
+
+    /**
+     * Constructor with a shared timer wheel for the scan timeout.
+     * @param callback The callback for returning results of scan.
+     */
+    BluetoothScanner(@NonNull TimerWheel timerWheel, @NonNull BluetoothScannerDelegate callback) {
         this.callback = callback;
-        this.executor = executor;
+        this.timerWheel = timerWheel;
     }
 
     /**
@@ -74,7 +81,7 @@ class BluetoothScanner {
         synchronized (this) {
             // Cancel previous timeout task
             if (scanTimeoutTask != null) {
-                scanTimeoutTask.cancel(true);
+                scanTimeoutTask.cancel();
                 scanTimeoutTask = null;
             }
             // Retrieve BLE adapter
@@ -119,7 +126,7 @@ class BluetoothScanner {
             // Start timeout task
             if (!failed) {
                 try {
-                    scanTimeoutTask = executor.schedule(
+                    scanTimeoutTask = timerWheel.schedule(
                             () -> {
                                 synchronized (BluetoothScanner.this) {
                                     scanTimeoutTask = null;
@@ -177,7 +184,7 @@ class BluetoothScanner {
             }
             // Cancel timeout task
             if (scanTimeoutTask != null) {
-                scanTimeoutTask.cancel(true);
+                scanTimeoutTask.cancel();
                 scanTimeoutTask = null;
             }
             // Clear list of belts found
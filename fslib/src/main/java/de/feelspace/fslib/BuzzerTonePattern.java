@@ -9,6 +9,8 @@ package de.feelspace.fslib;
 
 import androidx.annotation.NonNull;
 
+import de.feelspace.fslib.protocol.BeltPacketEncoder;
+
 /**
  * Describes a buzzer tone pattern to be played by the belt.
  */
@@ -64,15 +66,6 @@ public class BuzzerTonePattern {
      * @return the command packet for this tone pattern.
      */
     public byte[] getPacket() {
-        byte[] packet = new byte[2+2*steps];
-        packet[0] = 0x01;
-        packet[1] = (byte) steps;
-        for (int i=0; i<steps; i++) {
-            packet[i+2] = (byte) frequenciesKHzQ5[i];
-        }
-        for (int i=0; i<steps; i++) {
-            packet[i+2+steps] = (byte) durationsCs[i];
-        }
-        return packet;
+        return BeltPacketEncoder.encodeTonePattern(steps, frequenciesKHzQ5, durationsCs);
     }
 }
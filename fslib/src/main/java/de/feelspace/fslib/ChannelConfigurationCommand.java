@@ -8,11 +8,16 @@
 
 package de.feelspace.fslib;
 
+import de.feelspace.fslib.protocol.BeltPacketEncoder;
+
 /**
  * Belt channel configuration.
  */
 public class ChannelConfigurationCommand {
 
+    /** Size of the packet of the command. */
+    public static final int PACKET_SIZE = BeltPacketEncoder.CHANNEL_CONFIGURATION_PACKET_SIZE;
+
     // Channel index
     private int channelIndex;
 
@@ -53,7 +58,22 @@ public class ChannelConfigurationCommand {
             OrientationType orientationType, int orientationValue, int iterations,
             int periodMs, int initialTimerValueMs, boolean exclusiveChannel,
             boolean clearOtherChannels) {
+        set(channelIndex, vibrationPattern, intensity, orientationType, orientationValue,
+                iterations, periodMs, initialTimerValueMs, exclusiveChannel, clearOtherChannels);
+    }
 
+    /**
+     * Changes the values of the command. A command object can be reused with this method to avoid
+     * an allocation for each command.
+     *
+     * @throws IllegalArgumentException If an argument has illegal value. The command is not
+     * changed in that case.
+     */
+    public void set(
+            int channelIndex, BeltVibrationPattern vibrationPattern, int intensity,
+            OrientationType orientationType, int orientationValue, int iterations,
+            int periodMs, int initialTimerValueMs, boolean exclusiveChannel,
+            boolean clearOtherChannels) {
         if (channelIndex < 0 || channelIndex > 5) {
             throw new IllegalArgumentException("Channel index must be in range [0-5].");
         }
@@ -66,25 +86,10 @@ public class ChannelConfigurationCommand {
         if (orientationType == OrientationType.BINARY_MASK && vibrationPattern.isBinaryMask()) {
             throw new IllegalArgumentException("Incompatible orientation type and pattern.");
         }
-        switch (orientationType) {
-            case BINARY_MASK:
-                if (orientationValue > 0xFFFF || Integer.bitCount(orientationValue) > 6) {
-                    throw new IllegalArgumentException("Illegal orientation value.");
-                }
-                break;
-            case VIBROMOTOR_INDEX:
-                if (orientationValue < 0 || orientationValue > 16) {
-                    throw new IllegalArgumentException("Illegal orientation value.");
-                }
-                break;
-            case ANGLE:
-            case BEARING:
-                orientationValue = orientationValue%360;
-                if (orientationValue < 0) {
-                    orientationValue += 360;
-                }
-                break;
+        if (!isLegalOrientation(orientationType, orientationValue)) {
+            throw new IllegalArgumentException("Illegal orientation value.");
         }
+        orientationValue = normalizeOrientation(orientationType, orientationValue);
         if (intensity < 0 || (intensity>100 &&
                 intensity!=BeltCommunicationInterface.DEFAULT_INTENSITY_CODE)) {
             throw new IllegalArgumentException("Illegal intensity value.");
@@ -113,32 +118,75 @@ public class ChannelConfigurationCommand {
         this.clearOtherChannels = clearOtherChannels;
     }
 
+    /**
+     * Returns <code>true</code> if the orientation value is legal for the orientation type.
+     *
+     * @param orientationType The orientation type.
+     * @param orientationValue The orientation value.
+     * @return <code>true</code> if the orientation value is legal.
+     */
+    static boolean isLegalOrientation(OrientationType orientationType, int orientationValue) {
+        switch (orientationType) {
+            case BINARY_MASK:
+                return orientationValue <= 0xFFFF && Integer.bitCount(orientationValue) <= 6;
+            case VIBROMOTOR_INDEX:
+                return orientationValue >= 0 && orientationValue <= 16;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Returns the orientation value to encode, i.e. angles and bearings in range [0-359].
+     *
+     * @param orientationType The orientation type.
+     * @param orientationValue The legal orientation value.
+     * @return the orientation value to encode.
+     */
+    static int normalizeOrientation(OrientationType orientationType, int orientationValue) {
+        if (orientationType == OrientationType.ANGLE ||
+                orientationType == OrientationType.BEARING) {
+            orientationValue = orientationValue%360;
+            if (orientationValue < 0) {
+                orientationValue += 360;
+            }
+        }
+        return orientationValue;
+    }
+
+    /**
+     * Returns <code>true</code> if the command clears the other channels.
+     *
+     * @return <code>true</code> if the command clears the other channels.
+     */
+    boolean isClearingOtherChannels() {
+        return clearOtherChannels;
+    }
+
     /**
      * Returns the packet for this channel configuration command.
      *
      * @return the packet for this command.
      */
     public byte[] getPacket() {
-        return new byte[] {
-                (byte) channelIndex,
-                vibrationPattern.getValue(),
-                (byte) (intensity & 0xFF),
-                (byte) ((intensity >> 8) & 0xFF),
-                (byte) 0x00,
-                (byte) 0x00,
-                orientationType.getValue(),
-                (byte) (orientationValue & 0xFF),
-                (byte) ((orientationValue >> 8) & 0xFF),
-                (byte) 0x00,
-                (byte) 0x00,
-                (byte) iterations,
-                (byte) (periodMs & 0xFF),
-                (byte) ((periodMs >> 8) & 0xFF),
-                (byte) (initialTimerValueMs & 0xFF),
-                (byte) ((initialTimerValueMs >> 8) & 0xFF),
-                (byte) ((exclusiveChannel)?(0x01):(0x00)),
-                (byte) ((clearOtherChannels)?(0x01):(0x00))
-        };
+        return BeltPacketEncoder.encodeChannelConfiguration(channelIndex,
+                vibrationPattern.getValue(), intensity, orientationType.getValue(),
+                orientationValue, iterations, periodMs, initialTimerValueMs, exclusiveChannel,
+                clearOtherChannels);
+    }
+
+    /**
+     * Encodes the packet of this command into a buffer.
+     *
+     * @param buffer The buffer, with at least {@link #PACKET_SIZE} bytes from the offset.
+     * @param offset The offset of the packet in the buffer.
+     * @return the size of the packet.
+     */
+    public int encode(byte[] buffer, int offset) {
+        return BeltPacketEncoder.encodeChannelConfiguration(buffer, offset, channelIndex,
+                vibrationPattern.getValue(), intensity, orientationType.getValue(),
+                orientationValue, iterations, periodMs, initialTimerValueMs, exclusiveChannel,
+                clearOtherChannels);
     }
 
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram of the durations of a connection phase.
+ *
+ * The durations are counted in buckets with fixed upper bounds from 10 milliseconds to 1 minute,
+ * plus one bucket for longer durations. The exact minimum, maximum and mean durations are also
+ * kept. Histograms returned by the library are snapshots and are not updated.
+ */
+public class ConnectionPhaseHistogram {
+
+    // Upper bounds of the buckets in milliseconds, the last bucket has no bound
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = new long[] {
+            10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000};
+
+    // Count per bucket
+    private final @NonNull long[] bucketCounts;
+
+    // Statistics
+    private long count = 0;
+    private long totalNano = 0;
+    private long minNano = Long.MAX_VALUE;
+    private long maxNano = 0;
+
+    /**
+     * Creates an empty histogram.
+     */
+    ConnectionPhaseHistogram() {
+        bucketCounts = new long[BUCKET_UPPER_BOUNDS_MS.length + 1];
+    }
+
+    /**
+     * Creates a copy of a histogram.
+     *
+     * @param histogram The histogram to copy.
+     */
+    ConnectionPhaseHistogram(@NonNull ConnectionPhaseHistogram histogram) {
+        bucketCounts = histogram.bucketCounts.clone();
+        count = histogram.count;
+        totalNano = histogram.totalNano;
+        minNano = histogram.minNano;
+        maxNano = histogram.maxNano;
+    }
+
+    /**
+     * Adds a duration to the histogram.
+     *
+     * @param durationNano The duration in nanoseconds.
+     */
+    void record(long durationNano) {
+        if (durationNano < 0) {
+            durationNano = 0;
+        }
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(durationNano);
+        int bucket = 0;
+        while (bucket < BUCKET_UPPER_BOUNDS_MS.length &&
+                durationMs >= BUCKET_UPPER_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket]++;
+        count++;
+        totalNano += durationNano;
+        if (durationNano < minNano) {
+            minNano = durationNano;
+        }
+        if (durationNano > maxNano) {
+            maxNano = durationNano;
+        }
+    }
+
+    /**
+     * Returns the number of buckets.
+     * @return the number of buckets.
+     */
+    public static int getBucketCount() {
+        return BUCKET_UPPER_BOUNDS_MS.length + 1;
+    }
+
+    /**
+     * Returns the exclusive upper bound of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return the upper bound in milliseconds, or <code>Long.MAX_VALUE</code> for the last bucket.
+     * @throws IndexOutOfBoundsException If the index is not valid.
+     */
+    public static long getBucketUpperBoundMs(int bucket) throws IndexOutOfBoundsException {
+        if (bucket < 0 || bucket > BUCKET_UPPER_BOUNDS_MS.length) {
+            throw new IndexOutOfBoundsException("Invalid bucket index.");
+        }
+        return (bucket == BUCKET_UPPER_BOUNDS_MS.length)?
+                (Long.MAX_VALUE):(BUCKET_UPPER_BOUNDS_MS[bucket]);
+    }
+
+    /**
+     * Returns the number of durations in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return the number of durations in the bucket.
+     * @throws IndexOutOfBoundsException If the index is not valid.
+     */
+    public long getBucketValue(int bucket) throws IndexOutOfBoundsException {
+        return bucketCounts[bucket];
+    }
+
+    /**
+     * Returns the number of durations.
+     * @return the number of durations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the minimum duration.
+     * @return the minimum duration in milliseconds, or 0 if the histogram is empty.
+     */
+    public long getMinMs() {
+        return (count == 0)?(0):(TimeUnit.NANOSECONDS.toMillis(minNano));
+    }
+
+    /**
+     * Returns the maximum duration.
+     * @return the maximum duration in milliseconds, or 0 if the histogram is empty.
+     */
+    public long getMaxMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNano);
+    }
+
+    /**
+     * Returns the mean duration.
+     * @return the mean duration in milliseconds, or 0 if the histogram is empty.
+     */
+    public float getMeanMs() {
+        return (count == 0)?(0.f):(totalNano / (count * 1000000.f));
+    }
+
+    /**
+     * Returns an estimation of a percentile of the durations, as the upper bound of the bucket
+     * that contains the percentile, limited to the maximum duration.
+     *
+     * @param percentile The percentile in [0, 100].
+     * @return the estimated percentile in milliseconds, or 0 if the histogram is empty.
+     */
+    public long getPercentileMs(float percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.max(0.f, Math.min(100.f, percentile)) / 100.f * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+            cumulated += bucketCounts[i];
+            if (cumulated >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS_MS[i], getMaxMs());
+            }
+        }
+        return getMaxMs();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ConnectionPhaseHistogram{" +
+                "count=" + count +
+                ", minMs=" + getMinMs() +
+                ", meanMs=" + getMeanMs() +
+                ", p90Ms=" + getPercentileMs(90) +
+                ", maxMs=" + getMaxMs() +
+                '}';
+    }
+}
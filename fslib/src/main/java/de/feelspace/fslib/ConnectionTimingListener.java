@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+/**
+ * Listener for the timing of connection phases.
+ */
+public interface ConnectionTimingListener {
+
+    /**
+     * Called when a phase of the belt connection is terminated.
+     *
+     * @param phase The terminated phase.
+     * @param nextPhase The next phase.
+     * @param durationMs The duration of the terminated phase in milliseconds.
+     */
+    void onBeltConnectionPhaseCompleted(BeltConnectionState phase, BeltConnectionState nextPhase,
+                                        long durationMs);
+
+    /**
+     * Called when a phase of the GATT connection is terminated.
+     *
+     * @param phase The terminated phase.
+     * @param nextPhase The next phase.
+     * @param durationMs The duration of the terminated phase in milliseconds.
+     */
+    void onGattConnectionPhaseCompleted(GattConnectionState phase, GattConnectionState nextPhase,
+                                        long durationMs);
+
+    /**
+     * Called when the belt is connected and ready.
+     *
+     * @param connectionTimeMs The time from the start of the connection (or from the connection
+     *                         loss for a reconnection) in milliseconds.
+     * @param reconnection <code>true</code> if the connection follows a connection loss.
+     */
+    void onBeltConnected(long connectionTimeMs, boolean reconnection);
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recorder of the timestamps of connection state transitions, aggregated in histograms of the
+ * duration of each connection phase.
+ */
+class ConnectionTimingRecorder {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    // Current belt phase and start time
+    private @NonNull BeltConnectionState beltPhase = BeltConnectionState.STATE_DISCONNECTED;
+    private long beltPhaseStartTimeNano = System.nanoTime();
+
+    // Current GATT phase and start time
+    private @NonNull GattConnectionState gattPhase = GattConnectionState.GATT_DISCONNECTED;
+    private long gattPhaseStartTimeNano = System.nanoTime();
+
+    // Start time of the ongoing connection or reconnection, 0 if none
+    private long connectionStartTimeNano = 0;
+    private boolean reconnection = false;
+
+    // Histograms
+    private final @NonNull EnumMap<BeltConnectionState, ConnectionPhaseHistogram> beltPhases =
+            new EnumMap<>(BeltConnectionState.class);
+    private final @NonNull EnumMap<GattConnectionState, ConnectionPhaseHistogram> gattPhases =
+            new EnumMap<>(GattConnectionState.class);
+    private @NonNull ConnectionPhaseHistogram connection = new ConnectionPhaseHistogram();
+    private @NonNull ConnectionPhaseHistogram reconnections = new ConnectionPhaseHistogram();
+
+    // Listeners
+    private final @NonNull ArrayList<ConnectionTimingListener> listeners = new ArrayList<>();
+
+    /**
+     * Records a transition of the belt connection state.
+     *
+     * @param state The new state.
+     */
+    void onBeltConnectionStateChanged(@NonNull BeltConnectionState state) {
+        long now = System.nanoTime();
+        BeltConnectionState phase;
+        long phaseDurationNano;
+        long connectionTimeNano = -1;
+        boolean isReconnection = false;
+        ArrayList<ConnectionTimingListener> targets = null;
+        synchronized (this) {
+            if (state == beltPhase) {
+                return;
+            }
+            phase = beltPhase;
+            phaseDurationNano = now - beltPhaseStartTimeNano;
+            beltPhase = state;
+            beltPhaseStartTimeNano = now;
+            getHistogram(beltPhases, phase).record(phaseDurationNano);
+            // Connection and reconnection times
+            if (phase == BeltConnectionState.STATE_DISCONNECTED) {
+                connectionStartTimeNano = now;
+                reconnection = false;
+            } else if (phase == BeltConnectionState.STATE_CONNECTED) {
+                connectionStartTimeNano = now;
+                reconnection = true;
+            }
+            if (state == BeltConnectionState.STATE_CONNECTED && connectionStartTimeNano != 0) {
+                connectionTimeNano = now - connectionStartTimeNano;
+                isReconnection = reconnection;
+                if (isReconnection) {
+                    reconnections.record(connectionTimeNano);
+                } else {
+                    connection.record(connectionTimeNano);
+                }
+                connectionStartTimeNano = 0;
+            } else if (state == BeltConnectionState.STATE_DISCONNECTED) {
+                connectionStartTimeNano = 0;
+            }
+            if (!listeners.isEmpty()) {
+                targets = new ArrayList<>(listeners);
+            }
+        }
+        if (DEBUG) Log.i(DEBUG_TAG, "ConnectionTimingRecorder: " + phase.name() + " -> " +
+                state.name() + " in " + TimeUnit.NANOSECONDS.toMillis(phaseDurationNano) + "ms.");
+        if (targets == null) {
+            return;
+        }
+        for (ConnectionTimingListener l: targets) {
+            l.onBeltConnectionPhaseCompleted(phase, state,
+                    TimeUnit.NANOSECONDS.toMillis(phaseDurationNano));
+            if (connectionTimeNano >= 0) {
+                l.onBeltConnected(TimeUnit.NANOSECONDS.toMillis(connectionTimeNano),
+                        isReconnection);
+            }
+        }
+    }
+
+    /**
+     * Records a transition of the GATT connection state.
+     *
+     * @param state The new state.
+     */
+    void onGattConnectionStateChanged(@NonNull GattConnectionState state) {
+        long now = System.nanoTime();
+        GattConnectionState phase;
+        long phaseDurationNano;
+        ArrayList<ConnectionTimingListener> targets = null;
+        synchronized (this) {
+            if (state == gattPhase) {
+                return;
+            }
+            phase = gattPhase;
+            phaseDurationNano = now - gattPhaseStartTimeNano;
+            gattPhase = state;
+            gattPhaseStartTimeNano = now;
+            getHistogram(gattPhases, phase).record(phaseDurationNano);
+            if (!listeners.isEmpty()) {
+                targets = new ArrayList<>(listeners);
+            }
+        }
+        if (targets == null) {
+            return;
+        }
+        for (ConnectionTimingListener l: targets) {
+            l.onGattConnectionPhaseCompleted(phase, state,
+                    TimeUnit.NANOSECONDS.toMillis(phaseDurationNano));
+        }
+    }
+
+    /**
+     * Returns a snapshot of the histograms.
+     *
+     * @return a snapshot of the histograms.
+     */
+    synchronized @NonNull ConnectionTimingSnapshot getSnapshot() {
+        EnumMap<BeltConnectionState, ConnectionPhaseHistogram> beltCopy =
+                new EnumMap<>(BeltConnectionState.class);
+        for (BeltConnectionState phase: beltPhases.keySet()) {
+            beltCopy.put(phase, new ConnectionPhaseHistogram(beltPhases.get(phase)));
+        }
+        EnumMap<GattConnectionState, ConnectionPhaseHistogram> gattCopy =
+                new EnumMap<>(GattConnectionState.class);
+        for (GattConnectionState phase: gattPhases.keySet()) {
+            gattCopy.put(phase, new ConnectionPhaseHistogram(gattPhases.get(phase)));
+        }
+        return new ConnectionTimingSnapshot(beltCopy, gattCopy,
+                new ConnectionPhaseHistogram(connection),
+                new ConnectionPhaseHistogram(reconnections));
+    }
+
+    /**
+     * Clears the histograms. The ongoing phases are not interrupted.
+     */
+    synchronized void reset() {
+        beltPhases.clear();
+        gattPhases.clear();
+        connection = new ConnectionPhaseHistogram();
+        reconnections = new ConnectionPhaseHistogram();
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener The listener to add.
+     */
+    synchronized void addListener(@Nullable ConnectionTimingListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    synchronized void removeListener(@Nullable ConnectionTimingListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the histogram of a phase, created on first use.
+     */
+    private static <E extends Enum<E>> @NonNull ConnectionPhaseHistogram getHistogram(
+            @NonNull EnumMap<E, ConnectionPhaseHistogram> histograms, @NonNull E phase) {
+        ConnectionPhaseHistogram histogram = histograms.get(phase);
+        if (histogram == null) {
+            histogram = new ConnectionPhaseHistogram();
+            histograms.put(phase, histogram);
+        }
+        return histogram;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumMap;
+
+/**
+ * Snapshot of the timing of connection phases, with one histogram of durations per phase of the
+ * belt connection and per phase of the GATT connection, and histograms of the total time to
+ * connect and to reconnect.
+ */
+public class ConnectionTimingSnapshot {
+
+    // Histograms per phase
+    private final @NonNull EnumMap<BeltConnectionState, ConnectionPhaseHistogram> beltPhases;
+    private final @NonNull EnumMap<GattConnectionState, ConnectionPhaseHistogram> gattPhases;
+
+    // Histograms of total durations
+    private final @NonNull ConnectionPhaseHistogram connection;
+    private final @NonNull ConnectionPhaseHistogram reconnection;
+
+    /**
+     * Creates a snapshot. The histograms must be copies.
+     */
+    ConnectionTimingSnapshot(
+            @NonNull EnumMap<BeltConnectionState, ConnectionPhaseHistogram> beltPhases,
+            @NonNull EnumMap<GattConnectionState, ConnectionPhaseHistogram> gattPhases,
+            @NonNull ConnectionPhaseHistogram connection,
+            @NonNull ConnectionPhaseHistogram reconnection) {
+        this.beltPhases = beltPhases;
+        this.gattPhases = gattPhases;
+        this.connection = connection;
+        this.reconnection = reconnection;
+    }
+
+    /**
+     * Returns the histogram of durations of a phase of the belt connection.
+     *
+     * @param phase The phase.
+     * @return the histogram of durations of the phase.
+     */
+    public @NonNull ConnectionPhaseHistogram getBeltPhaseHistogram(
+            @NonNull BeltConnectionState phase) {
+        ConnectionPhaseHistogram histogram = beltPhases.get(phase);
+        return (histogram == null)?(new ConnectionPhaseHistogram()):(histogram);
+    }
+
+    /**
+     * Returns the histogram of durations of a phase of the GATT connection.
+     *
+     * @param phase The phase.
+     * @return the histogram of durations of the phase.
+     */
+    public @NonNull ConnectionPhaseHistogram getGattPhaseHistogram(
+            @NonNull GattConnectionState phase) {
+        ConnectionPhaseHistogram histogram = gattPhases.get(phase);
+        return (histogram == null)?(new ConnectionPhaseHistogram()):(histogram);
+    }
+
+    /**
+     * Returns the histogram of the time from the start of a connection (including the scan when
+     * connecting to the first belt found) to the connected state.
+     *
+     * @return the histogram of connection times.
+     */
+    public @NonNull ConnectionPhaseHistogram getConnectionHistogram() {
+        return connection;
+    }
+
+    /**
+     * Returns the histogram of the time from a connection loss to the connected state.
+     *
+     * @return the histogram of reconnection times.
+     */
+    public @NonNull ConnectionPhaseHistogram getReconnectionHistogram() {
+        return reconnection;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ConnectionTimingSnapshot{");
+        sb.append("connection=").append(connection);
+        sb.append(", reconnection=").append(reconnection);
+        for (BeltConnectionState phase: beltPhases.keySet()) {
+            sb.append(", ").append(phase.name()).append('=').append(beltPhases.get(phase));
+        }
+        for (GattConnectionState phase: gattPhases.keySet()) {
+            sb.append(", ").append(phase.name()).append('=').append(gattPhases.get(phase));
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGatt;
+
+/**
+ * Connection priorities of the GATT connection, i.e. the trade-off between latency and power
+ * consumption of the link.
+ */
+public enum GattConnectionPriority {
+
+    /**
+     * Short connection intervals for low latency and high throughput, e.g. during navigation or
+     * when orientation notifications are streamed.
+     */
+    HIGH(BluetoothGatt.CONNECTION_PRIORITY_HIGH),
+
+    /**
+     * Default connection parameters.
+     */
+    BALANCED(BluetoothGatt.CONNECTION_PRIORITY_BALANCED),
+
+    /**
+     * Long connection intervals to reduce power consumption when the belt is idle.
+     */
+    LOW_POWER(BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER);
+
+    // Value for `BluetoothGatt.requestConnectionPriority`
+    private final int value;
+
+    GattConnectionPriority(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the value of the priority for the Android GATT API.
+     * @return the value of the priority.
+     */
+    int getValue() {
+        return value;
+    }
+
+}
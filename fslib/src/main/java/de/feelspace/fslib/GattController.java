@@ -18,32 +18,45 @@ import static de.feelspace.fslib.GattConnectionState.GATT_RECONNECTING;
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.feelspace.fslib.protocol.PacketBufferPool;
 
 /**
  * Encapsulation of the GATT server with the addition of a queue of operations.
+ *
+ * Operations and GATT events are submitted without lock to a drain loop that runs on the
+ * executor. The drain loop is the only owner of the operation queue, so that the submission of an
+ * operation never waits for a GATT callback. Completion of operations is notified by the drain
+ * loop.
  */
-public class GattController extends BluetoothGattCallback implements BluetoothPairingManager.BluetoothPairingDelegate {
+public class GattController implements GattTransport.Callback,
+        BluetoothPairingManager.BluetoothPairingDelegate {
 
     // Debug
     @SuppressWarnings("unused")
@@ -52,34 +65,59 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     private static final boolean DEBUG = true;
 
     // Connection state
-    private @NonNull GattConnectionState connectionState =
+    private volatile @NonNull GattConnectionState connectionState =
             GattConnectionState.GATT_DISCONNECTED;
 
     // GATT server and device
-    private @Nullable BluetoothGatt gattServer;
+    private volatile @Nullable GattTransport gattServer;
     private @Nullable BluetoothDevice device;
     private @Nullable Context context;
 
     // Pairing manager
     private BluetoothPairingManager pairingManager = null;
 
-    // Operation queue
-    private final @NonNull LinkedList<GattOperation> operationQueue = new LinkedList<>();
+    // Operation queue, owned by the drain loop
+    private final @NonNull GattOperationQueue operationQueue;
     private @Nullable GattOperation runningOperation;
 
-    // Executor for callback and timeout
-    private final @NonNull ScheduledThreadPoolExecutor executor;
+    // Pipelined writes without response, in order of start, owned by the drain loop
+    private final @NonNull LinkedList<GattOperationWriteCharacteristic> pipelinedWrites =
+            new LinkedList<>();
+
+    // Completed operations to notify at the end of a pass of the drain loop
+    private final @NonNull ArrayList<GattOperation> completedOperations = new ArrayList<>();
+
+    // Lock-free submission of operations and GATT events to the drain loop
+    private final @NonNull ConcurrentLinkedQueue<GattOperation> submittedOperations =
+            new ConcurrentLinkedQueue<>();
+    private final @NonNull ConcurrentLinkedQueue<Runnable> operationEvents =
+            new ConcurrentLinkedQueue<>();
+    private final @NonNull AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    // Requests waiting for their response, by notification characteristic, in order of start,
+    // owned by the drain loop
+    private final @NonNull HashMap<BluetoothGattCharacteristic, LinkedList<GattOperationRequest>>
+            pendingRequests = new HashMap<>();
+
+    // Characteristics of the notifications awaited by the pending requests
+    private volatile @NonNull BluetoothGattCharacteristic[] awaitedNotificationCharacteristics =
+            new BluetoothGattCharacteristic[0];
+
+    // Executor for callback and timeout, and its clock
+    private final @NonNull ScheduledExecutorService executor;
+    private final @NonNull TimerWheel timerWheel;
+    private final @NonNull MonotonicClock clock;
 
     // Listeners
     private final @NonNull ArrayList<GattEventListener> listeners = new ArrayList<>();
 
     // Connection timeout
     public static final long CONNECTION_TIMEOUT_MS = 2000;
-    private ScheduledFuture<?> connectionTimeoutTask;
+    private TimerWheel.Timeout connectionTimeoutTask;
 
     // Disconnection timeout
     public static final long DISCONNECTION_TIMEOUT_MS = 2000;
-    private ScheduledFuture<?> disconnectionTimeoutTask;
+    private TimerWheel.Timeout disconnectionTimeoutTask;
 
     // Flag for connection termination
     private boolean initialConnection = true;
@@ -88,36 +126,208 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
 
     // Service discovery timeout
     public static final long SERVICE_DISCOVERY_TIMEOUT_MS = 10000; // 4000;
-    private ScheduledFuture<?> serviceDiscoveryTimeoutTask;
+    private TimerWheel.Timeout serviceDiscoveryTimeoutTask;
     public static final long SERVICE_DISCOVERY_DELAY_MS = 1500; // 500 ?
     private static final boolean CLEAR_GATT_CACHE_ON_DISCOVERY_ERROR = false;
 
     public static final boolean SERVICE_DISCOVERY_RETRY = true;
     public static final int SERVICE_DISCOVERY_RETRY_PERIOD_MS = 5000;
-    private ScheduledFuture<?> serviceDiscoveryRetryTask;
+    private TimerWheel.Timeout serviceDiscoveryRetryTask;
+
+    // Service discovery of known belts
+    // Note: For a belt with a cached profile, the services are usually served from the cache of
+    // the Android stack, the delay and timeout of the service discovery are shortened
+    public static final long KNOWN_BELT_SERVICE_DISCOVERY_DELAY_MS = 100;
+    public static final long KNOWN_BELT_SERVICE_DISCOVERY_TIMEOUT_MS = 4000;
+    private volatile @Nullable BeltProfileCache profileCache;
+    private boolean knownBeltDiscovery = false;
 
     // GATT supervision timeout
     public static final long GATT_SUPERVISION_TIMEOUT_MS = 6000;
-    private ScheduledFuture<?> gattSupervisionTask;
-    private long lastGattServerActivityTimeNano;
+    private TimerWheel.Timeout gattSupervisionTask;
+    private volatile long lastGattServerActivityTimeNano;
     private long gattSupervisionStartTimeNano;
 
     // Reconnection
+    // Note: After a connection loss, the reconnection policy gives the delays and attempts
     public static final long RECONNECTION_DELAY_MS = 2000;
+    @Deprecated
     public static final int RECONNECTION_ATTEMPTS = 2;
     public static final int INITIAL_RECONNECTION_ATTEMPTS = 1;
-    private ScheduledFuture<?> reconnectionTask;
-    private int remainingReconnectionAttempts = 0;
+    private TimerWheel.Timeout reconnectionTask;
+    private int reconnectionAttempt = 0;
+    private volatile @NonNull ReconnectionPolicy reconnectionPolicy =
+            ReconnectionPolicy.createDefaultPolicy();
+
+    // Time to recover from a connection loss
+    private long connectionLossTimeNano = 0;
+    private volatile long lastTimeToRecoverNano = 0;
+    private volatile long maxTimeToRecoverNano = 0;
+    private volatile int recoveryCount = 0;
 
     // Operation timeout
     public static final long GATT_OPERATION_TIMEOUT_MS = 500;
-    private ScheduledFuture<?> gattOperationTimeoutTask;
+    private TimerWheel.Timeout gattOperationTimeoutTask;
+
+    // Estimator of operation round-trip times for adaptive timeouts
+    private final @NonNull GattRttEstimator rttEstimator = new GattRttEstimator();
+    // Smoothed round-trip time of the last acknowledged write, published by the drain loop
+    private volatile long smoothedWriteRttNano = 0;
+    private volatile boolean adaptiveOperationTimeout = true;
+
+    // Flow control for writes without response
+    public static final int DEFAULT_WRITE_WITHOUT_RESPONSE_CREDITS = 4;
+    private volatile int writeWithoutResponseCredits = DEFAULT_WRITE_WITHOUT_RESPONSE_CREDITS;
+    private volatile boolean weightedScheduling = false;
+    private TimerWheel.Timeout pipelinedWriteTimeoutTask;
+
+    // Trace of completed operations
+    private final @NonNull GattOperationTracer operationTracer =
+            new GattOperationTracer(GattOperationTracer.DEFAULT_CAPACITY);
+    private volatile boolean operationTraceEnabled = true;
+
+    // Pool of the buffers of pooled writes, a buffer is released on completion of its write
+    private final @NonNull PacketBufferPool packetBufferPool = new PacketBufferPool();
+
+    // Skip the write of notification descriptors that are already set
+    private volatile boolean skipUnchangedDescriptorWrites = true;
+    // Values of the notification descriptors confirmed by successful writes on the device of the
+    // last connection, by characteristic
+    private final @NonNull HashMap<String, byte[]> confirmedDescriptorValues = new HashMap<>();
+
+    // Link tuning
+    public static final int DEFAULT_MTU = 23;
+    public static final int DEFAULT_PREFERRED_MTU = 247;
+    public static final int MAX_MTU = 517;
+    private volatile int preferredMtu = DEFAULT_PREFERRED_MTU;
+    private volatile int mtu = DEFAULT_MTU;
+    private volatile @NonNull GattConnectionPriority connectionPriority =
+            GattConnectionPriority.BALANCED;
+    private volatile @Nullable GattConnectionPriority appliedConnectionPriority;
+
+    // Transport to the GATT server
+    private volatile @NonNull GattTransport.Factory transportFactory =
+            AndroidGattTransport.FACTORY;
+
+    // Thread for GATT callbacks and delayed GATT calls
+    public static final String GATT_THREAD_NAME = "FSLib-GATT";
+    private @Nullable HandlerThread gattThread;
+    private @Nullable Looper callbackLooper;
+    private @Nullable Handler gattHandler;
 
     /**
      * Constructor.
+     *
+     * @param executor The executor of the drain loop.
+     * @param timerWheel The timer wheel for timeouts, advanced by the same executor.
+     */
+    GattController(@NonNull ScheduledExecutorService executor,
+                   @NonNull TimerWheel timerWheel) {
+        this(executor, timerWheel, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Constructor with the clock of the executor, e.g. a virtual clock that drives the executor
+     * to run the controller in simulated time.
+     *
+     * @param executor The executor of the drain loop.
+     * @param timerWheel The timer wheel for timeouts, advanced by the same executor on the same
+     *                   clock.
+     * @param clock The clock of the executor.
      */
-    GattController(@NonNull ScheduledThreadPoolExecutor executor) {
+    GattController(@NonNull ScheduledExecutorService executor,
+                   @NonNull TimerWheel timerWheel, @NonNull MonotonicClock clock) {
         this.executor = executor;
+        this.timerWheel = timerWheel;
+        this.clock = clock;
+        operationQueue = new GattOperationQueue(clock);
+    }
+
+    /**
+     * Sets the looper on which the GATT callbacks are received and the delayed GATT calls are
+     * made. By default, the GATT controller uses its own thread {@link #GATT_THREAD_NAME} so that
+     * the latency of commands does not depend on the load of the main thread. The GATT events are
+     * handed off to the executor of the GATT controller for the processing of operations.
+     *
+     * The looper can only be changed when disconnected.
+     *
+     * @param looper The looper for GATT callbacks, or <code>null</code> to use the thread of the
+     *               GATT controller.
+     * @return <code>true</code> if the looper has been set.
+     */
+    public synchronized boolean setCallbackLooper(@Nullable Looper looper) {
+        if (connectionState != GATT_DISCONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: Cannot change callback looper when connected.");
+            return false;
+        }
+        callbackLooper = looper;
+        gattHandler = null;
+        return true;
+    }
+
+    /**
+     * Sets the cache of belt profiles used to shorten the service discovery of known belts.
+     *
+     * @param profileCache The profile cache, or <code>null</code> to disable the cache.
+     */
+    void setProfileCache(@Nullable BeltProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    /**
+     * Sets the factory of transports to the GATT server. By default, the Android Bluetooth stack
+     * is used ({@link AndroidGattTransport#FACTORY}). Another transport, e.g. the in-process
+     * transport of the unit tests, can be used to run the GATT controller and the belt protocol
+     * against a simulated belt.
+     *
+     * The transport can only be changed when disconnected.
+     *
+     * @param factory The factory of transports, or <code>null</code> for the Android transport.
+     * @return <code>true</code> if the transport has been set.
+     */
+    public synchronized boolean setTransportFactory(@Nullable GattTransport.Factory factory) {
+        if (connectionState != GATT_DISCONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: Cannot change transport when connected.");
+            return false;
+        }
+        transportFactory = (factory == null)?(AndroidGattTransport.FACTORY):(factory);
+        return true;
+    }
+
+    /**
+     * Returns the handler for GATT callbacks and delayed GATT calls. The thread of the GATT
+     * controller is started on first use, and stopped when the connection is closed (see
+     * {@link #quitGattThreadIfDisconnected()}).
+     *
+     * @return the handler for GATT callbacks.
+     */
+    private synchronized @NonNull Handler getGattHandler() {
+        if (gattHandler == null) {
+            Looper looper = callbackLooper;
+            if (looper == null) {
+                if (gattThread == null) {
+                    gattThread = new HandlerThread(GATT_THREAD_NAME,
+                            Process.THREAD_PRIORITY_FOREGROUND);
+                    gattThread.start();
+                }
+                looper = gattThread.getLooper();
+            }
+            gattHandler = new Handler(looper);
+        }
+        return gattHandler;
+    }
+
+    /**
+     * Stops the thread of the GATT controller when disconnected. The callbacks already posted are
+     * delivered before the thread stops, and a new thread is started for the next connection.
+     */
+    private synchronized void quitGattThreadIfDisconnected() {
+        if (connectionState != GATT_DISCONNECTED || gattThread == null) {
+            return;
+        }
+        gattThread.quitSafely();
+        gattThread = null;
+        gattHandler = null;
     }
 
     /**
@@ -140,7 +350,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
         boolean success = true;
         // Initialize pairing manager
         if (pairingManager == null) {
-            pairingManager = new BluetoothPairingManager(context, executor, this);
+            pairingManager = new BluetoothPairingManager(context, timerWheel, this);
         }
         synchronized (this) {
             if (connectionState != GattConnectionState.GATT_DISCONNECTED) {
@@ -149,16 +359,19 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                 return;
             }
             connectionState = GATT_CONNECTING;
-            remainingReconnectionAttempts = INITIAL_RECONNECTION_ATTEMPTS;
+            reconnectionAttempt = 0;
+            connectionLossTimeNano = 0;
             initialConnection = true;
             connectionLost = false;
             connectionFailed = false;
+            if (this.device == null || !this.device.getAddress().equals(device.getAddress())) {
+                clearConfirmedDescriptorValues();
+            }
             this.device = device;
             this.context = context;
             try {
-                gattServer = device.connectGatt(context, false, this,
-                        BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M,
-                        new Handler(Looper.getMainLooper()));
+                gattServer = transportFactory.connect(context, device, false, this,
+                        getGattHandler());
             } catch (Exception e) {
                 Log.e(DEBUG_TAG, "GattController: Unable to call connection method for" +
                         " GATT server.", e);
@@ -185,7 +398,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      */
     private void scheduleConnectionTimeout() {
         try {
-            connectionTimeoutTask = executor.schedule(() -> {
+            connectionTimeoutTask = timerWheel.schedule(() -> {
                 Log.w(DEBUG_TAG, "GattController: Connection timeout.");
                 boolean reconnect = false;
                 synchronized (GattController.this) {
@@ -195,8 +408,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                         // Ignore timeout if not connecting or reconnecting
                         return;
                     }
-                    if (remainingReconnectionAttempts > 0) {
-                        remainingReconnectionAttempts--;
+                    if (canReconnect()) {
                         reconnect = true;
                     } else if (initialConnection) {
                         Log.w(DEBUG_TAG, "GattController: Set flag for connection failed.");
@@ -222,13 +434,12 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     @SuppressLint("MissingPermission")
     public void disconnect() {
         if (DEBUG) Log.i(DEBUG_TAG, "GattController: Disconnection request.");
-        List<GattOperation> canceledOperations = null;
         synchronized (this) {
             if (connectionState == GATT_DISCONNECTED) {
                 return;
             }
             cancelAllTimeoutTasks();
-            canceledOperations = cancelAllGattOperations();
+            requestOperationCancellation();
             connectionState = GATT_DISCONNECTING;
             if (gattServer != null) {
                 // First disconnect, then wait asynchronous notification to close
@@ -236,11 +447,6 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                 gattServer.disconnect();
             }
         }
-        if (canceledOperations != null) {
-            for (GattOperation operation: canceledOperations) {
-                notifyOperationCompletion(operation);
-            }
-        }
         notifyGattConnectionStateChange();
     }
 
@@ -251,7 +457,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     @SuppressLint("MissingPermission")
     private void scheduleDisconnectionTimeout() {
         try {
-            disconnectionTimeoutTask = executor.schedule(() -> {
+            disconnectionTimeoutTask = timerWheel.schedule(() -> {
                 Log.w(DEBUG_TAG, "GattController: Disconnection timeout.");
                 boolean lost;
                 boolean failed;
@@ -301,11 +507,13 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     @SuppressLint("MissingPermission")
     protected void reconnect() {
         if (DEBUG) Log.i(DEBUG_TAG, "GattController: Schedule reconnection.");
-        List<GattOperation> canceledOperations = null;
         synchronized (this) {
             // First, disconnect
             cancelAllTimeoutTasks();
-            canceledOperations = cancelAllGattOperations();
+            requestOperationCancellation();
+            if (!initialConnection && connectionLossTimeNano == 0) {
+                connectionLossTimeNano = clock.nanoTime();
+            }
             connectionState = GATT_RECONNECTING;
             // After `disconnect` an event will be received to close the GATT server
             if (gattServer != null) {
@@ -314,27 +522,107 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             // Schedule reconnection
             scheduleReconnection();
         }
-        if (canceledOperations != null) {
-            for (GattOperation operation: canceledOperations) {
-                notifyOperationCompletion(operation);
+        notifyGattConnectionStateChange();
+    }
+
+    /**
+     * Sets the reconnection policy used after a connection loss. The policy is applied from the
+     * next reconnection attempt.
+     *
+     * @param policy The reconnection policy.
+     */
+    public void setReconnectionPolicy(@NonNull ReconnectionPolicy policy) {
+        reconnectionPolicy = policy;
+    }
+
+    /**
+     * Returns the reconnection policy.
+     * @return the reconnection policy.
+     */
+    public @NonNull ReconnectionPolicy getReconnectionPolicy() {
+        return reconnectionPolicy;
+    }
+
+    /**
+     * Returns the time to recover of the last successful reconnection, from the connection loss
+     * to the re-established connection.
+     *
+     * @return the last time to recover in milliseconds, or <code>null</code> if no connection has
+     * been recovered.
+     */
+    public @Nullable Float getLastTimeToRecoverMs() {
+        long ttr = lastTimeToRecoverNano;
+        return (recoveryCount == 0)?(null):(ttr / 1000000f);
+    }
+
+    /**
+     * Returns the maximum time to recover from a connection loss.
+     *
+     * @return the maximum time to recover in milliseconds, or <code>null</code> if no connection
+     * has been recovered.
+     */
+    public @Nullable Float getMaxTimeToRecoverMs() {
+        long ttr = maxTimeToRecoverNano;
+        return (recoveryCount == 0)?(null):(ttr / 1000000f);
+    }
+
+    /**
+     * Returns the number of connections recovered after a connection loss.
+     * @return the number of connections recovered.
+     */
+    public int getRecoveryCount() {
+        return recoveryCount;
+    }
+
+    /**
+     * Checks if a reconnection attempt can be made. On initial connection, the number of attempts
+     * is {@link #INITIAL_RECONNECTION_ATTEMPTS}, otherwise the reconnection policy is used. Must be
+     * called with the lock of the controller.
+     *
+     * @return <code>true</code> if a reconnection attempt can be made.
+     */
+    private boolean canReconnect() {
+        if (initialConnection) {
+            return reconnectionAttempt < INITIAL_RECONNECTION_ATTEMPTS;
+        }
+        return reconnectionPolicy.isAttemptAllowed(reconnectionAttempt);
+    }
+
+    /**
+     * Sets the connected state, updates the time to recover and starts the supervision and the
+     * link tuning. Must be called with the lock of the controller.
+     */
+    private void onConnectionEstablished() {
+        connectionState = GATT_CONNECTED;
+        if (connectionLossTimeNano != 0) {
+            long ttr = clock.nanoTime() - connectionLossTimeNano;
+            lastTimeToRecoverNano = ttr;
+            if (ttr > maxTimeToRecoverNano) {
+                maxTimeToRecoverNano = ttr;
             }
+            recoveryCount++;
+            Log.i(DEBUG_TAG, "GattController: Connection recovered in " + (ttr / 1000000) +
+                    " ms after " + reconnectionAttempt + " attempt(s).");
+            connectionLossTimeNano = 0;
         }
-        notifyGattConnectionStateChange();
+        reconnectionAttempt = 0;
+        connectionLost = false;
+        connectionFailed = false;
+        initialConnection = false;
+        startGattSupervision();
+        startLinkTuning();
     }
 
     /**
      * Clears the GATT cached data.
      */
-    protected void clearGattCache(BluetoothGatt gatt) {
+    protected void clearGattCache(@Nullable GattTransport gatt) {
         Log.w(DEBUG_TAG, "GattController: Clear GATT cache.");
-        // From: https://stackoverflow.com/a/50745997/8477032
         try {
-            final Method refresh = gatt.getClass().getMethod("refresh");
-            if (refresh != null) {
-                refresh.invoke(gatt);
+            if (gatt != null && gatt.refresh()) {
                 Thread.sleep(1000);
             } else {
-                Log.w(DEBUG_TAG, "GattController: No method to clear GATT cache.");
+                Log.w(DEBUG_TAG, "GattController: Unable to clear GATT cache.");
             }
         } catch (Exception e) {
             Log.w(DEBUG_TAG, "GattController: Unable to clear GATT cache.");
@@ -346,8 +634,15 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      */
     @SuppressLint("MissingPermission")
     private void scheduleReconnection() {
+        final int attempt = reconnectionAttempt++;
+        final ReconnectionPolicy policy = reconnectionPolicy;
+        final boolean autoConnect = !initialConnection && policy.isAutoConnect(attempt);
+        final long delayMs = (initialConnection)?(RECONNECTION_DELAY_MS):
+                (policy.getDelayMs(attempt));
+        if (DEBUG) Log.i(DEBUG_TAG, "GattController: Reconnection attempt " + attempt +
+                " in " + delayMs + " ms" + ((autoConnect)?(" (auto-connect)."):(".")));
         try {
-            reconnectionTask = executor.schedule(() -> {
+            reconnectionTask = timerWheel.schedule(() -> {
                 if (DEBUG) Log.i(DEBUG_TAG, "GattController: Reconnection attempt.");
                 boolean lost = false;
                 boolean failed = false;
@@ -356,11 +651,20 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                     reconnectionTask = null;
                     if (connectionState == GATT_RECONNECTING ||
                             connectionState == GATT_CONNECTING) {
+                        if (gattServer != null) {
+                            // Fast reconnection before the disconnection event of the previous
+                            // GATT server
+                            try {
+                                gattServer.close();
+                            } catch (Exception e) {
+                                Log.e(DEBUG_TAG, "GattController: Unable to close GATT server!", e);
+                            }
+                            gattServer = null;
+                        }
                         try {
                             if (device != null) {
-                                gattServer = device.connectGatt(context, false, GattController.this,
-                                        BluetoothDevice.TRANSPORT_LE, BluetoothDevice.PHY_LE_1M,
-                                        new Handler(Looper.getMainLooper()));
+                                gattServer = transportFactory.connect(context, device,
+                                        autoConnect, GattController.this, getGattHandler());
                             } else {
                                 gattServer = null;
                             }
@@ -370,15 +674,18 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                             gattServer = null;
                         }
                         if (gattServer != null) {
-                            scheduleConnectionTimeout();
+                            if (!autoConnect) {
+                                // In auto-connect mode, the stack connects when the belt is in
+                                // range
+                                scheduleConnectionTimeout();
+                            }
                         } else {
                             // Yep, 'connectGatt' can return 'null' but it is not documented
                             // No reconnection attempt when an error occurs with the Bluetooth service
                             Log.e(DEBUG_TAG, "GattController: Unable to reconnect to " +
                                     "GATT server.");
                             // Schedule new reconnection
-                            if (remainingReconnectionAttempts > 0) {
-                                remainingReconnectionAttempts--;
+                            if (canReconnect()) {
                                 reconnect = true;
                             } else if (initialConnection) {
                                 failed = true;
@@ -399,7 +706,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                     notifyConnectionLost();
                     notifyGattConnectionStateChange();
                 }
-            }, RECONNECTION_DELAY_MS, TimeUnit.MILLISECONDS);
+            }, delayMs, TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             Log.e(DEBUG_TAG, "GattController: Unable to schedule the reconnection.", e);
             connectionState = GATT_DISCONNECTED;
@@ -419,8 +726,13 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             // Change state
             cancelAllTimeoutTasks();
             connectionState = GATT_DISCOVERING_SERVICES;
-            // Delayed service discovery in main UI thread
-            Handler mainHandler = new Handler(Looper.getMainLooper());
+            // Shorten the discovery of known belts
+            BeltProfileCache cache = profileCache;
+            knownBeltDiscovery = (cache != null && device != null &&
+                    cache.get(device.getAddress()) != null);
+            if (DEBUG && knownBeltDiscovery) Log.i(DEBUG_TAG, "GattController: Known belt profile, shorten service discovery.");
+            // Delayed service discovery in GATT thread
+            Handler handler = getGattHandler();
             @SuppressLint("MissingPermission") Runnable disc = () -> {
                 boolean reconnect = false;
                 boolean disconnect = false;
@@ -436,8 +748,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                         }
                     } else {
                         if (DEBUG) Log.i(DEBUG_TAG, "GattController: Failed to request service discovery.");
-                        if (remainingReconnectionAttempts > 0) {
-                            remainingReconnectionAttempts--;
+                        if (canReconnect()) {
                             reconnect = true;
                         } else {
                             if (initialConnection) {
@@ -465,7 +776,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                     disconnect();
                 }
             };
-            mainHandler.postDelayed(disc, SERVICE_DISCOVERY_DELAY_MS);
+            handler.postDelayed(disc, (knownBeltDiscovery)?
+                    (KNOWN_BELT_SERVICE_DISCOVERY_DELAY_MS):(SERVICE_DISCOVERY_DELAY_MS));
         }
         notifyGattConnectionStateChange();
     }
@@ -478,7 +790,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      */
     private void scheduleServiceDiscoveryTimeout() {
         try {
-            serviceDiscoveryTimeoutTask = executor.schedule(() -> {
+            serviceDiscoveryTimeoutTask = timerWheel.schedule(() -> {
                 Log.e(DEBUG_TAG, "GattController: Service discovery timeout!");
                 boolean reconnect = false;
                 synchronized (GattController.this) {
@@ -487,8 +799,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                         // Should not happen, ignore obsolete timeout
                         return;
                     }
-                    if (remainingReconnectionAttempts > 0) {
-                        remainingReconnectionAttempts--;
+                    forgetKnownBeltProfile();
+                    if (canReconnect()) {
                         reconnect = true;
                     } else if (initialConnection) {
                         connectionFailed = true;
@@ -508,19 +820,32 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                     Log.i(DEBUG_TAG, "GattController: Disconnect after service discovery timeout.");
                     disconnect();
                 }
-            }, SERVICE_DISCOVERY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }, (knownBeltDiscovery)?(KNOWN_BELT_SERVICE_DISCOVERY_TIMEOUT_MS):
+                    (SERVICE_DISCOVERY_TIMEOUT_MS), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             Log.e(DEBUG_TAG, "GattController: Unable to schedule the service discovery" +
                     " timeout.");
         }
     }
 
+    /**
+     * Removes the cached profile of the belt after a failed service discovery, so that the next
+     * discovery is made without shortcut. Must be called with the lock of the controller.
+     */
+    private void forgetKnownBeltProfile() {
+        BeltProfileCache cache = profileCache;
+        if (knownBeltDiscovery && cache != null && device != null) {
+            Log.w(DEBUG_TAG, "GattController: Remove cached profile after service discovery failure.");
+            cache.remove(device.getAddress());
+        }
+        knownBeltDiscovery = false;
+    }
+
     /**
      * Hey, it's so f***ing buggy on API 30 that we should implement stupidly complex things.
      */
     private void scheduleServiceDiscoveryRetry() {
-        Handler mainHandler = new Handler(Looper.getMainLooper());
-        mainHandler.postDelayed(retryServiceDiscovery, SERVICE_DISCOVERY_RETRY_PERIOD_MS);
+        getGattHandler().postDelayed(retryServiceDiscovery, SERVICE_DISCOVERY_RETRY_PERIOD_MS);
     }
 
     /**
@@ -542,8 +867,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                 }
             } finally {
                 if (connectionState == GATT_DISCOVERING_SERVICES) {
-                    Handler mainHandler = new Handler(Looper.getMainLooper());
-                    mainHandler.postDelayed(retryServiceDiscovery, SERVICE_DISCOVERY_RETRY_PERIOD_MS);
+                    getGattHandler().postDelayed(retryServiceDiscovery,
+                            SERVICE_DISCOVERY_RETRY_PERIOD_MS);
                 }
             }
         }
@@ -555,24 +880,26 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     private void startGattSupervision() {
         cancelGattSupervision();
         if (DEBUG) Log.i(DEBUG_TAG, "GattController: Start GATT supervision.");
-        gattSupervisionStartTimeNano = System.nanoTime();
+        gattSupervisionStartTimeNano = clock.nanoTime();
         lastGattServerActivityTimeNano = gattSupervisionStartTimeNano;
         try {
-            gattSupervisionTask = executor.scheduleWithFixedDelay(() -> {
+            gattSupervisionTask = timerWheel.scheduleWithFixedDelay(() -> {
                 if (connectionState != GATT_CONNECTED) {
                     // Should not happen
                     cancelGattSupervision();
                 }
                 // Check last activity time
-                long timeFromLastActivity = (System.nanoTime()-lastGattServerActivityTimeNano)/
+                long timeFromLastActivity = (clock.nanoTime()-lastGattServerActivityTimeNano)/
                         1_000_000L;
                 if (timeFromLastActivity > GATT_SUPERVISION_TIMEOUT_MS) {
                     Log.w(DEBUG_TAG, "GattController: GATT supervision timeout.");
+                    boolean reconnect;
                     synchronized (GattController.this) {
                         connectionLost = true;
-                        remainingReconnectionAttempts = RECONNECTION_ATTEMPTS - 1;
+                        reconnectionAttempt = 0;
+                        reconnect = canReconnect();
                     }
-                    if (RECONNECTION_ATTEMPTS > 0) {
+                    if (reconnect) {
                         Log.w(DEBUG_TAG, "GattController: Start reconnection after supervision timeout.");
                         reconnect();
                     } else {
@@ -595,7 +922,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
         cancelServiceDiscoveryTimeout();
         cancelReconnectionTask();
         cancelGattSupervision();
-        cancelGattOperationTimeout();
+        // Note: Operation timeouts are cancelled by the drain loop with the operations
     }
 
 //    /**
@@ -614,20 +941,18 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * Cancels the timeout for the connection.
      */
     private void cancelConnectionTimeout() {
-        ScheduledFuture<?> task = connectionTimeoutTask;
+        TimerWheel.Timeout task = connectionTimeoutTask;
         connectionTimeoutTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
     }
 
     private void cancelDisconnectionTimeout() {
-        ScheduledFuture<?> task = disconnectionTimeoutTask;
+        TimerWheel.Timeout task = disconnectionTimeoutTask;
         disconnectionTimeoutTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
     }
 
@@ -635,11 +960,10 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * Cancels the reconnection task
      */
     private void cancelReconnectionTask() {
-        ScheduledFuture<?> task = reconnectionTask;
+        TimerWheel.Timeout task = reconnectionTask;
         reconnectionTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
     }
 
@@ -647,17 +971,15 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * Cancels the service discovery timeout.
      */
     private void cancelServiceDiscoveryTimeout() {
-        ScheduledFuture<?> task = serviceDiscoveryTimeoutTask;
+        TimerWheel.Timeout task = serviceDiscoveryTimeoutTask;
         serviceDiscoveryTimeoutTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
         task = serviceDiscoveryRetryTask;
         serviceDiscoveryRetryTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
     }
 
@@ -665,11 +987,10 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * Cancels the GATT supervision task.
      */
     private void cancelGattSupervision() {
-        ScheduledFuture<?> task = gattSupervisionTask;
+        TimerWheel.Timeout task = gattSupervisionTask;
         gattSupervisionTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
         }
     }
 
@@ -677,11 +998,45 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * Cancels the GATT operation timeout.
      */
     private void cancelGattOperationTimeout() {
-        ScheduledFuture<?> task = gattOperationTimeoutTask;
+        TimerWheel.Timeout task = gattOperationTimeoutTask;
         gattOperationTimeoutTask = null;
         if (task != null) {
-            task.cancel(false);
-            // Note: `executor.purge();` should not be necessary
+            task.cancel();
+        }
+    }
+
+    /**
+     * Cancels the timeout of the oldest pipelined write.
+     */
+    private void cancelPipelinedWriteTimeout() {
+        TimerWheel.Timeout task = pipelinedWriteTimeoutTask;
+        pipelinedWriteTimeoutTask = null;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Schedules the timeout of the oldest pipelined write. This method MUST only be called by the
+     * drain loop.
+     */
+    private void schedulePipelinedWriteTimeout() {
+        cancelPipelinedWriteTimeout();
+        GattOperationWriteCharacteristic oldest = pipelinedWrites.peek();
+        if (oldest == null) {
+            return;
+        }
+        try {
+            // The oldest write may have been started before the completion of the previous one
+            long elapsedMs = (clock.nanoTime() - oldest.getStartTimeNano()) / 1000000;
+            pipelinedWriteTimeoutTask = timerWheel.schedule(
+                    new GattOperationTimeoutRunnable(oldest),
+                    Math.max(0, oldest.getOperationTimeoutMs() - elapsedMs),
+                    TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "GattController: Failed to schedule pipelined write " +
+                    "timeout.", e);
+            oldest.setState(GattOperationState.STATE_CANCELLED);
         }
     }
 
@@ -719,47 +1074,334 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     }
 
     /**
-     * Check if a GATT operation must be started. This method must NOT be called inside a
-     * synchronization block.
+     * Schedules a pass of the drain loop on the executor. This method can be called from any
+     * thread and never blocks.
+     */
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (Exception e) {
+                Log.e(DEBUG_TAG, "GattController: Unable to schedule the operation drain loop.",
+                        e);
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Posts a GATT event or a command to the drain loop. The event is executed by the drain loop,
+     * in order of posting, before the submitted operations are queued.
+     *
+     * @param event The event to execute in the drain loop.
+     */
+    private void postOperationEvent(@NonNull Runnable event) {
+        operationEvents.offer(event);
+        scheduleDrain();
+    }
+
+    /**
+     * Submits an operation to the drain loop.
+     *
+     * @param operation The operation to submit.
+     */
+    private void submitOperation(@NonNull GattOperation operation) {
+        submittedOperations.offer(operation);
+        scheduleDrain();
+    }
+
+    /**
+     * Task of the drain loop. Only one pass of the drain loop runs at a time, and the drain loop
+     * is the only owner of the operation queue, the running operation and the pipelined writes.
+     */
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                try {
+                    drainOperations();
+                } catch (Exception e) {
+                    Log.e(DEBUG_TAG, "GattController: Error in operation drain loop.", e);
+                }
+                drainScheduled.set(false);
+                // Check for events or operations posted after the last pass
+            } while ((!operationEvents.isEmpty() || !submittedOperations.isEmpty()) &&
+                    drainScheduled.compareAndSet(false, true));
+        }
+    };
+
+    /**
+     * Executes the posted events, queues the submitted operations, starts the next operations
+     * and notifies the completed operations. This method MUST only be called by the drain loop.
+     */
+    private void drainOperations() {
+        // GATT events, timeouts and commands
+        Runnable event;
+        while ((event = operationEvents.poll()) != null) {
+            event.run();
+        }
+        // Submitted operations
+        queueSubmittedOperations();
+        // Start operations
+        if (connectionState == GATT_CONNECTED) {
+            checkAndStartGattOperation();
+        } else {
+            // Operations submitted before a disconnection
+            cancelAllGattOperations();
+        }
+        // Notify completed operations
+        if (!completedOperations.isEmpty()) {
+            for (GattOperation operation: completedOperations) {
+                notifyOperationCompletion(operation);
+            }
+            completedOperations.clear();
+        }
+    }
+
+    /**
+     * Moves the submitted operations to the operation queue. The steps of a batch are submitted
+     * as a chain and queued together. This method MUST only be called by the drain loop.
+     */
+    private void queueSubmittedOperations() {
+        GattOperation submitted;
+        while ((submitted = submittedOperations.poll()) != null) {
+            for (GattOperation operation = submitted; operation != null;
+                 operation = operation.getNextInBatch()) {
+                operation.setQueueDepth(operationQueue.size());
+                if (operation instanceof GattOperationWriteCharacteristic) {
+                    GattOperationWriteCharacteristic superseded = operationQueue.addOrSupersede(
+                            (GattOperationWriteCharacteristic) operation);
+                    if (superseded != null) {
+                        superseded.setState(GattOperationState.STATE_SUPERSEDED);
+                        completedOperations.add(superseded);
+                    }
+                } else {
+                    operationQueue.add(operation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a GATT operation must be started. This method MUST only be called by the drain
+     * loop.
+     *
+     * Writes without response are pipelined: up to
+     * {@link #getWriteWithoutResponseCredits()} writes can be in flight at once. Any other
+     * operation waits for the pipelined writes to complete, and pipelined writes wait for the
+     * running operation to complete. A write rejected by the transport while other writes are in
+     * flight is retried after the next completion, so the depth is also limited by the
+     * transport (1 on Android).
      */
     private void checkAndStartGattOperation() {
-        ArrayList<GattOperation> completedOperations = null;
-        synchronized (this) {
-            while ((runningOperation == null && !operationQueue.isEmpty()) ||
-                    (runningOperation != null && runningOperation.isDone())) {
-                if (runningOperation != null && runningOperation.isDone()) {
-                    cancelGattOperationTimeout();
-                    if (completedOperations == null) {
-                        completedOperations = new ArrayList<>();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            // Collect completed operations
+            if (runningOperation != null && runningOperation.isDone()) {
+                cancelGattOperationTimeout();
+                if (runningOperation instanceof GattOperationRequest) {
+                    unregisterRequest((GattOperationRequest) runningOperation);
+                }
+                updateRttEstimation(runningOperation);
+                updateConfirmedDescriptorValue(runningOperation);
+                completedOperations.add(runningOperation);
+                runningOperation = null;
+            } else if (runningOperation instanceof GattOperationRequest &&
+                    ((GattOperationRequest) runningOperation).isWriteAcknowledged()) {
+                // Release the queue, the response is awaited in the table of pending requests
+                cancelGattOperationTimeout();
+                scheduleResponseTimeout((GattOperationRequest) runningOperation);
+                runningOperation = null;
+            }
+            if (!pendingRequests.isEmpty()) {
+                collectCompletedRequests();
+            }
+            if (!pipelinedWrites.isEmpty()) {
+                GattOperationWriteCharacteristic oldest = pipelinedWrites.peek();
+                Iterator<GattOperationWriteCharacteristic> it = pipelinedWrites.iterator();
+                while (it.hasNext()) {
+                    GattOperationWriteCharacteristic write = it.next();
+                    if (write.isDone()) {
+                        it.remove();
+                        updateRttEstimation(write);
+                        completedOperations.add(write);
                     }
-                    completedOperations.add(runningOperation);
-                    runningOperation = null;
                 }
-                if (!operationQueue.isEmpty()) {
-                    runningOperation = operationQueue.remove();
-                    runningOperation.start();
-                    if (!runningOperation.isDone()) {
-                        try {
-                            gattOperationTimeoutTask = executor.schedule(
-                                    new GattOperationTimeoutRunnable(runningOperation),
-                                    runningOperation.getOperationTimeoutMs(),
-                                    TimeUnit.MILLISECONDS);
-                        } catch (Exception e) {
-                            Log.e(DEBUG_TAG, "GattController: Failed to schedule GATT " +
-                                    "operation timeout.", e);
-                            runningOperation.setState(GattOperationState.STATE_CANCELLED);
-                        }
+                if (pipelinedWrites.peek() != oldest) {
+                    schedulePipelinedWriteTimeout();
+                }
+            }
+            // Start next operation
+            if (runningOperation != null || operationQueue.isEmpty()) {
+                break;
+            }
+            GattOperation next = operationQueue.peek();
+            if (next.gatt != gattServer || next.isBatchAborted()) {
+                // Operation submitted for a previous connection, or previous step failed
+                operationQueue.remove();
+                next.setState(GattOperationState.STATE_CANCELLED);
+                completedOperations.add(next);
+                progress = true;
+            } else if (next instanceof GattOperationWriteCharacteristic &&
+                    ((GattOperationWriteCharacteristic) next).isWithoutResponse()) {
+                if (pipelinedWrites.size() >= writeWithoutResponseCredits) {
+                    // No credit, wait for the completion of a pipelined write
+                    break;
+                }
+                GattOperationWriteCharacteristic write =
+                        (GattOperationWriteCharacteristic) operationQueue.remove();
+                prepareOperationStart(write);
+                write.start();
+                if (write.getState() == GattOperationState.STATE_FAILED &&
+                        !pipelinedWrites.isEmpty()) {
+                    // The buffers of the stack are full, retry after the next completion
+                    write.setState(GattOperationState.STATE_NOT_STARTED);
+                    operationQueue.addFirst(write);
+                    break;
+                }
+                if (write.isDone()) {
+                    completedOperations.add(write);
+                } else {
+                    pipelinedWrites.add(write);
+                    if (pipelinedWrites.size() == 1) {
+                        schedulePipelinedWriteTimeout();
+                    }
+                }
+                progress = true;
+            } else if (pipelinedWrites.isEmpty()) {
+                runningOperation = operationQueue.remove();
+                prepareOperationStart(runningOperation);
+                if (runningOperation instanceof GattOperationRequest) {
+                    // Notifications must be forwarded before the write is sent
+                    registerRequest((GattOperationRequest) runningOperation);
+                }
+                runningOperation.start();
+                if (!runningOperation.isDone()) {
+                    try {
+                        gattOperationTimeoutTask = timerWheel.schedule(
+                                new GattOperationTimeoutRunnable(runningOperation),
+                                runningOperation.getOperationTimeoutMs(),
+                                TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        Log.e(DEBUG_TAG, "GattController: Failed to schedule GATT " +
+                                "operation timeout.", e);
+                        runningOperation.setState(GattOperationState.STATE_CANCELLED);
                     }
                 }
+                progress = true;
             }
         }
-        if (completedOperations != null) {
-            for (GattOperation operation: completedOperations) {
-                notifyOperationCompletion(operation);
+    }
+
+    /**
+     * Sets the start time and the timeout of an operation before it is started. This method MUST
+     * only be called by the drain loop.
+     *
+     * @param operation The operation to start.
+     */
+    private void prepareOperationStart(@NonNull GattOperation operation) {
+        if (adaptiveOperationTimeout && operation.isAdaptiveTimeout()) {
+            operation.setOperationTimeoutMs(rttEstimator.getTimeoutMs(operation));
+        }
+        operation.setStartTimeNano(clock.nanoTime());
+    }
+
+    /**
+     * Updates the round-trip time estimation with a completed operation. This method MUST only be
+     * called by the drain loop.
+     *
+     * @param operation The completed operation.
+     */
+    private void updateRttEstimation(@NonNull GattOperation operation) {
+        if (operation.getStartTimeNano() == 0) {
+            return;
+        }
+        if (operation instanceof GattOperationSetNotificationIndication &&
+                ((GattOperationSetNotificationIndication) operation).isDescriptorWriteSkipped()) {
+            // No exchange with the GATT server
+            return;
+        }
+        if (operation.succeed()) {
+            long srttUs = rttEstimator.onOperationSucceeded(operation,
+                    operation.getCompletionTimeNano() - operation.getStartTimeNano());
+            if (srttUs > 0 && operation.getType() == GattOperationType.WRITE_CHARACTERISTIC) {
+                smoothedWriteRttNano = srttUs * 1000;
+            }
+        } else if (operation.getState() == GattOperationState.STATE_TIMED_OUT) {
+            rttEstimator.onOperationTimedOut(operation);
+        }
+    }
+
+    /**
+     * Updates the confirmed value of a notification descriptor with a completed operation. The
+     * value is confirmed by a successful write, and unknown after a failed write. This method
+     * MUST only be called by the drain loop.
+     *
+     * @param operation The completed operation.
+     */
+    private void updateConfirmedDescriptorValue(@NonNull GattOperation operation) {
+        if (!(operation instanceof GattOperationSetNotificationIndication)) {
+            return;
+        }
+        GattOperationSetNotificationIndication setNotification =
+                (GattOperationSetNotificationIndication) operation;
+        if (setNotification.isDescriptorWriteSkipped()) {
+            return;
+        }
+        String key = getDescriptorKey(setNotification.getDescriptor());
+        synchronized (confirmedDescriptorValues) {
+            byte[] value = setNotification.getDescriptorValue();
+            if (setNotification.succeed() && value != null) {
+                confirmedDescriptorValues.put(key, value);
+            } else {
+                confirmedDescriptorValues.remove(key);
             }
         }
     }
 
+    /**
+     * Returns the confirmed value of a notification descriptor.
+     *
+     * @param descriptor The descriptor.
+     * @return the value of the last successful write of the descriptor on the device, or
+     * <code>null</code> if unknown or if the skipping of unchanged writes is disabled.
+     */
+    private @Nullable byte[] getConfirmedDescriptorValue(
+            @NonNull BluetoothGattDescriptor descriptor) {
+        if (!skipUnchangedDescriptorWrites) {
+            return null;
+        }
+        String key = getDescriptorKey(descriptor);
+        synchronized (confirmedDescriptorValues) {
+            return confirmedDescriptorValues.get(key);
+        }
+    }
+
+    /**
+     * Clears the confirmed values of notification descriptors.
+     */
+    private void clearConfirmedDescriptorValues() {
+        synchronized (confirmedDescriptorValues) {
+            confirmedDescriptorValues.clear();
+        }
+    }
+
+    /**
+     * Returns the key of a descriptor that remains valid between connections, from the UUID and
+     * instance of its characteristic.
+     *
+     * @param descriptor The descriptor.
+     * @return the key of the descriptor.
+     */
+    private static @NonNull String getDescriptorKey(@NonNull BluetoothGattDescriptor descriptor) {
+        BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+        if (characteristic == null) {
+            return String.valueOf(descriptor.getUuid());
+        }
+        return characteristic.getUuid() + "/" + characteristic.getInstanceId();
+    }
+
     /**
      * Runnable for the timeout of an operation.
      */
@@ -778,51 +1420,225 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
 
         @Override
         public void run() {
-            // Check and cancel running operation
-            synchronized (GattController.this) {
+            // The timeout is processed by the drain loop
+            postOperationEvent(() -> {
                 if (runningOperation == operation) {
-                    cancelGattOperationTimeout();
-                    runningOperation.setState(GattOperationState.STATE_CANCELLED);
+                    gattOperationTimeoutTask = null;
+                    runningOperation.setState(GattOperationState.STATE_TIMED_OUT);
                     Log.w(DEBUG_TAG, "GattController: Operation timeout for "+runningOperation.toString());
+                } else if (pipelinedWrites.peek() == operation) {
+                    pipelinedWriteTimeoutTask = null;
+                    operation.setState(GattOperationState.STATE_TIMED_OUT);
+                    Log.w(DEBUG_TAG, "GattController: Pipelined write timeout for "+operation.toString());
+                } else if (operation instanceof GattOperationRequest && !operation.isDone() &&
+                        ((GattOperationRequest) operation).getResponseTimeoutTask() != null) {
+                    ((GattOperationRequest) operation).setResponseTimeoutTask(null);
+                    operation.setState(GattOperationState.STATE_TIMED_OUT);
+                    Log.w(DEBUG_TAG, "GattController: Response timeout for "+operation.toString());
                 } else {
-                    // Should not happen
+                    // Obsolete timeout
                     Log.w(DEBUG_TAG, "GattController: Timeout of non running operation.");
                 }
-            }
-            // Check for operation to schedule
-            checkAndStartGattOperation();
+            });
         }
     }
 
     /**
-     * Cancels and returns all operations. Completion of operations is NOT notified. This method
-     * MUST be called inside a synchronization block.
-     * @return The list of canceled operations.
+     * Cancels all operations, including the submitted operations not yet queued. The cancelled
+     * operations are added to the list of completed operations. This method MUST only be called
+     * by the drain loop.
      */
-    private List<GattOperation> cancelAllGattOperations() {
-        ArrayList<GattOperation> operations = null;
-        if (runningOperation != null || !operationQueue.isEmpty()) {
-            operations = new ArrayList<>();
-            if (runningOperation != null) {
-                cancelGattOperationTimeout();
-                runningOperation.setState(GattOperationState.STATE_CANCELLED);
-                operations.add(runningOperation);
+    private void cancelAllGattOperations() {
+        queueSubmittedOperations();
+        for (LinkedList<GattOperationRequest> requests: pendingRequests.values()) {
+            for (GattOperationRequest request: requests) {
+                cancelResponseTimeout(request);
+                if (request != runningOperation) {
+                    request.setState(GattOperationState.STATE_CANCELLED);
+                    completedOperations.add(request);
+                }
             }
-            for (GattOperation operation: operationQueue) {
+        }
+        pendingRequests.clear();
+        updateAwaitedNotificationCharacteristics();
+        if (runningOperation != null) {
+            cancelGattOperationTimeout();
+            runningOperation.setState(GattOperationState.STATE_CANCELLED);
+            completedOperations.add(runningOperation);
+            runningOperation = null;
+        }
+        cancelPipelinedWriteTimeout();
+        for (GattOperation operation: pipelinedWrites) {
+            operation.setState(GattOperationState.STATE_CANCELLED);
+            completedOperations.add(operation);
+        }
+        pipelinedWrites.clear();
+        if (!operationQueue.isEmpty()) {
+            for (GattOperation operation: operationQueue.removeAll()) {
                 operation.setState(GattOperationState.STATE_CANCELLED);
-                operations.add(operation);
+                completedOperations.add(operation);
             }
-            operationQueue.clear();
         }
-        return operations;
     }
 
     /**
-     * Notifies the completion of an operation. This method must NOT be called inside a
-     * synchronization block.
-     * @param operation The completed operation.
+     * Registers a request in the table of pending requests, before the request is started. This
+     * method MUST only be called by the drain loop.
+     *
+     * @param request The request to register.
+     */
+    private void registerRequest(@NonNull GattOperationRequest request) {
+        LinkedList<GattOperationRequest> requests =
+                pendingRequests.get(request.getNotifiedCharacteristic());
+        if (requests == null) {
+            requests = new LinkedList<>();
+            pendingRequests.put(request.getNotifiedCharacteristic(), requests);
+            requests.add(request);
+            updateAwaitedNotificationCharacteristics();
+        } else {
+            requests.add(request);
+        }
+    }
+
+    /**
+     * Removes a request from the table of pending requests. This method MUST only be called by
+     * the drain loop.
+     *
+     * @param request The request to remove.
+     */
+    private void unregisterRequest(@NonNull GattOperationRequest request) {
+        cancelResponseTimeout(request);
+        LinkedList<GattOperationRequest> requests =
+                pendingRequests.get(request.getNotifiedCharacteristic());
+        if (requests != null && requests.remove(request) && requests.isEmpty()) {
+            pendingRequests.remove(request.getNotifiedCharacteristic());
+            updateAwaitedNotificationCharacteristics();
+        }
+    }
+
+    /**
+     * Collects the completed requests that have released the queue. This method MUST only be
+     * called by the drain loop.
+     */
+    private void collectCompletedRequests() {
+        boolean removedCharacteristic = false;
+        Iterator<LinkedList<GattOperationRequest>> listIt = pendingRequests.values().iterator();
+        while (listIt.hasNext()) {
+            LinkedList<GattOperationRequest> requests = listIt.next();
+            Iterator<GattOperationRequest> it = requests.iterator();
+            while (it.hasNext()) {
+                GattOperationRequest request = it.next();
+                if (request != runningOperation && request.isDone()) {
+                    it.remove();
+                    cancelResponseTimeout(request);
+                    updateRttEstimation(request);
+                    completedOperations.add(request);
+                }
+            }
+            if (requests.isEmpty()) {
+                listIt.remove();
+                removedCharacteristic = true;
+            }
+        }
+        if (removedCharacteristic) {
+            updateAwaitedNotificationCharacteristics();
+        }
+    }
+
+    /**
+     * Forwards a notification to the oldest pending request that waits for it. This method MUST
+     * only be called by the drain loop.
+     *
+     * @param characteristic The notified characteristic.
+     * @param value The notified value.
+     */
+    private void dispatchNotification(@NonNull BluetoothGattCharacteristic characteristic,
+                                      @Nullable byte[] value) {
+        LinkedList<GattOperationRequest> requests = pendingRequests.get(characteristic);
+        if (requests == null) {
+            return;
+        }
+        for (GattOperationRequest request: requests) {
+            if (!request.isDone() && !request.isResponseReceived() && request.matches(value)) {
+                request.onCharacteristicChanged(characteristic, value);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes the characteristics of the notifications awaited by pending requests for the
+     * GATT callbacks. This method MUST only be called by the drain loop.
+     */
+    private void updateAwaitedNotificationCharacteristics() {
+        awaitedNotificationCharacteristics = pendingRequests.keySet().toArray(
+                new BluetoothGattCharacteristic[0]);
+    }
+
+    /**
+     * Schedules the timeout of the response of a request that has released the queue. This method
+     * MUST only be called by the drain loop.
+     *
+     * @param request The request.
+     */
+    private void scheduleResponseTimeout(@NonNull GattOperationRequest request) {
+        try {
+            request.setResponseTimeoutTask(timerWheel.schedule(
+                    new GattOperationTimeoutRunnable(request),
+                    request.getOperationTimeoutMs(),
+                    TimeUnit.MILLISECONDS));
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "GattController: Failed to schedule response timeout.", e);
+            request.setState(GattOperationState.STATE_CANCELLED);
+        }
+    }
+
+    /**
+     * Cancels the timeout of the response of a request.
+     *
+     * @param request The request.
+     */
+    private void cancelResponseTimeout(@NonNull GattOperationRequest request) {
+        TimerWheel.Timeout task = request.getResponseTimeoutTask();
+        request.setResponseTimeoutTask(null);
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Requests the cancellation of all operations. The operations are cancelled and notified
+     * asynchronously by the drain loop.
+     */
+    private void requestOperationCancellation() {
+        postOperationEvent(this::cancelAllGattOperations);
+    }
+
+    /**
+     * Notifies the completion of an operation. This method must NOT be called inside a
+     * synchronization block.
+     * @param operation The completed operation.
      */
     private void notifyOperationCompletion(@Nullable GattOperation operation) {
+        if (operation != null) {
+            if (operationTraceEnabled) {
+                operationTracer.record(operation);
+            }
+            notifyOperationListeners(operation);
+            operation.completeFuture();
+            if (operation instanceof GattOperationWriteCharacteristic &&
+                    ((GattOperationWriteCharacteristic) operation).isPooledValue()) {
+                packetBufferPool.release(((GattOperationWriteCharacteristic) operation).getValue());
+            }
+        }
+    }
+
+    /**
+     * Informs listeners about the completion of an operation.
+     *
+     * @param operation The completed operation.
+     */
+    private void notifyOperationListeners(@Nullable GattOperation operation) {
         if (operation != null) {
             ArrayList<GattEventListener> targets;
             synchronized (listeners) {
@@ -862,7 +1678,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             } else if (operation instanceof GattOperationRequestMtu) {
                 GattOperationRequestMtu mtuRequest = (GattOperationRequestMtu) operation;
                 for (GattEventListener l : targets) {
-                    l.onMtuChanged(mtuRequest.getRequestedMtu(), operation.succeed());
+                    l.onMtuChanged(mtuRequest.getNegotiatedMtu(), operation.succeed());
                 }
             } else {
                 // Should not happen
@@ -885,28 +1701,50 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     public boolean setCharacteristicNotificationIndication(
             @Nullable BluetoothGattCharacteristic characteristic,
             boolean enableNotification, boolean enableIndication) {
-        synchronized (this) {
-            if (characteristic == null) {
-                Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
-                return false;
-            }
-            if (connectionState != GATT_CONNECTED) {
-                Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
-                return false;
-            }
-            if (gattServer == null) {
-                Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
-                return false;
-            }
-            if (characteristic.getDescriptors().isEmpty()) {
-                Log.w(DEBUG_TAG, "GattController: No descriptor for the operation.");
-                return false;
-            }
-            BluetoothGattDescriptor descriptor = characteristic.getDescriptors().get(0);
-            operationQueue.add(new GattOperationSetNotificationIndication(gattServer, descriptor,
-                    enableNotification, enableIndication));
+        return setCharacteristicNotificationIndication(characteristic, enableNotification,
+                enableIndication, GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Enables or disables the notifications on a characteristic.
+     *
+     * @param characteristic The characteristic on which the notifications must be enabled or
+     *                       disabled.
+     * @param enableNotification <code>true</code> to enable notifications, <code>false</code>
+     *                           to disable them.
+     * @param enableIndication <code>true</code> to enable indications, <code>false</code>
+     *                         to disable them.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been sent.
+     */
+    public boolean setCharacteristicNotificationIndication(
+            @Nullable BluetoothGattCharacteristic characteristic,
+            boolean enableNotification, boolean enableIndication,
+            @NonNull GattOperationPriority priority) {
+        GattTransport gatt = gattServer;
+        if (characteristic == null) {
+            Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
+            return false;
         }
-        checkAndStartGattOperation();
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
+            return false;
+        }
+        if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
+            return false;
+        }
+        if (characteristic.getDescriptors().isEmpty()) {
+            Log.w(DEBUG_TAG, "GattController: No descriptor for the operation.");
+            return false;
+        }
+        BluetoothGattDescriptor descriptor = characteristic.getDescriptors().get(0);
+        GattOperationSetNotificationIndication operation =
+                new GattOperationSetNotificationIndication(gatt, descriptor, enableNotification,
+                        enableIndication);
+        operation.setConfirmedDescriptorValue(getConfirmedDescriptorValue(descriptor));
+        operation.setPriority(priority);
+        submitOperation(operation);
         return true;
     }
 
@@ -917,22 +1755,34 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * @return <code>true</code> if the request has been correctly been sent.
      */
     public boolean readCharacteristic(@Nullable BluetoothGattCharacteristic characteristic) {
-        synchronized (this) {
-            if (characteristic == null) {
-                Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
-                return false;
-            }
-            if (connectionState != GATT_CONNECTED) {
-                Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
-                return false;
-            }
-            if (gattServer == null) {
-                Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
-                return false;
-            }
-            operationQueue.add(new GattOperationReadCharacteristic(gattServer, characteristic));
+        return readCharacteristic(characteristic, GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Reads a characteristic.
+     *
+     * @param characteristic The characteristic to read.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean readCharacteristic(@Nullable BluetoothGattCharacteristic characteristic,
+                                      @NonNull GattOperationPriority priority) {
+        GattTransport gatt = gattServer;
+        if (characteristic == null) {
+            Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
+            return false;
+        }
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
+            return false;
+        }
+        if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
+            return false;
         }
-        checkAndStartGattOperation();
+        GattOperation operation = new GattOperationReadCharacteristic(gatt, characteristic);
+        operation.setPriority(priority);
+        submitOperation(operation);
         return true;
     }
 
@@ -945,26 +1795,402 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      */
     public boolean writeCharacteristic(@Nullable BluetoothGattCharacteristic characteristic,
                                        @NonNull byte[] value) {
-        synchronized (this) {
-            if (characteristic == null) {
-                Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
-                return false;
-            }
-            if (connectionState != GATT_CONNECTED) {
-                Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
-                return false;
-            }
-            if (gattServer == null) {
-                Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
-                return false;
-            }
-            operationQueue.add(
-                    new GattOperationWriteCharacteristic(gattServer, characteristic, value));
+        return queueWrite(characteristic, value, false, false, GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Writes a characteristic, with optional coalescing.
+     *
+     * A coalescable write supersedes the last queued (not started) write on the same
+     * characteristic when that write is also coalescable and has the same first byte, e.g. a
+     * channel configuration command for the same channel. The superseded write is replaced in
+     * place and completed in state {@link GattOperationState#STATE_SUPERSEDED}. A write is never
+     * coalesced over another queued operation on the same characteristic.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean writeCharacteristic(@Nullable BluetoothGattCharacteristic characteristic,
+                                       @NonNull byte[] value, boolean coalescable) {
+        return queueWrite(characteristic, value, false, coalescable,
+                GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Writes a characteristic, with optional coalescing and a given priority class. See
+     * {@link #writeCharacteristic(BluetoothGattCharacteristic, byte[], boolean)}.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean writeCharacteristic(@Nullable BluetoothGattCharacteristic characteristic,
+                                       @NonNull byte[] value, boolean coalescable,
+                                       @NonNull GattOperationPriority priority) {
+        return queueWrite(characteristic, value, false, coalescable, priority);
+    }
+
+    /**
+     * Enables or disables the trace of operations. When enabled (the default), the timing of the
+     * last {@link GattOperationTracer#DEFAULT_CAPACITY} completed operations is kept in memory:
+     * time of queuing, start, first GATT callback and completion, queue depth at queuing and final
+     * state.
+     *
+     * @param enabled <code>true</code> to enable the trace of operations.
+     */
+    public void setOperationTraceEnabled(boolean enabled) {
+        operationTraceEnabled = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> if the trace of operations is enabled.
+     * @return <code>true</code> if the trace of operations is enabled.
+     */
+    public boolean isOperationTraceEnabled() {
+        return operationTraceEnabled;
+    }
+
+    /**
+     * Returns the trace of the last completed operations in the JSON trace event format of Chrome
+     * and Perfetto. The trace can be saved in a file and opened with <code>chrome://tracing</code>
+     * or <code>ui.perfetto.dev</code> to see the queuing delays and the execution of operations
+     * on the link.
+     *
+     * @return the trace of operations as a JSON string.
+     */
+    public @NonNull String exportOperationTrace() {
+        return operationTracer.exportChromeTrace();
+    }
+
+    /**
+     * Clears the trace of operations.
+     */
+    public void clearOperationTrace() {
+        operationTracer.clear();
+    }
+
+    /**
+     * Enables or disables the skipping of notification descriptor writes. When enabled (the
+     * default), the configuration of notifications of a bonded belt is not written again when
+     * the value has been confirmed by a previous successful write of the descriptor on the
+     * belt. A failed write or a connection to another belt clears the confirmed values.
+     *
+     * @param skip <code>true</code> to skip the write of unchanged descriptors.
+     */
+    public void setSkipUnchangedDescriptorWrites(boolean skip) {
+        skipUnchangedDescriptorWrites = skip;
+    }
+
+    /**
+     * Returns <code>true</code> if the write of unchanged notification descriptors is skipped.
+     * @return <code>true</code> if the write of unchanged descriptors is skipped.
+     */
+    public boolean isSkipUnchangedDescriptorWrites() {
+        return skipUnchangedDescriptorWrites;
+    }
+
+    /**
+     * Enables or disables weighted scheduling of the priority classes. With strict scheduling (the
+     * default), a queued operation is started only when no operation of a higher priority class
+     * can be started. With weighted scheduling, lower priority classes get a share of the link so
+     * that they are never starved. In both cases, control operations are started first.
+     *
+     * @param weighted <code>true</code> for weighted scheduling, <code>false</code> for strict
+     *                 priority scheduling.
+     */
+    public void setWeightedScheduling(boolean weighted) {
+        weightedScheduling = weighted;
+        postOperationEvent(() -> operationQueue.setWeightedScheduling(weighted));
+    }
+
+    /**
+     * Enables or disables adaptive operation timeouts. When enabled, the timeout of each GATT
+     * operation is derived from the round-trip times measured for the same type of operation on
+     * the same characteristic, instead of the fixed {@link #GATT_OPERATION_TIMEOUT_MS}.
+     *
+     * @param enabled <code>true</code> to enable adaptive timeouts.
+     */
+    public void setAdaptiveOperationTimeout(boolean enabled) {
+        adaptiveOperationTimeout = enabled;
+    }
+
+    /**
+     * Returns <code>true</code> if adaptive operation timeouts are enabled.
+     * @return <code>true</code> if adaptive operation timeouts are enabled.
+     */
+    public boolean isAdaptiveOperationTimeout() {
+        return adaptiveOperationTimeout;
+    }
+
+    /**
+     * Returns the monotonic clock of the GATT controller. The times of operations and command
+     * results are given on this clock.
+     * @return the clock of the GATT controller.
+     */
+    @NonNull MonotonicClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the smoothed round-trip time of writes with response, i.e. the time from the start
+     * of the write to its acknowledgment. The value can be read from any thread.
+     * @return the smoothed round-trip time in nanoseconds, or 0 if no write has been acknowledged.
+     */
+    long getSmoothedWriteRttNano() {
+        return smoothedWriteRttNano;
+    }
+
+    /**
+     * Returns the estimator of operation round-trip times. The estimator MUST only be accessed by
+     * the drain loop of operations, on the executor.
+     * @return the estimator of operation round-trip times.
+     */
+    @NonNull GattRttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
+
+    /**
+     * Returns <code>true</code> if the scheduling of priority classes is weighted.
+     * @return <code>true</code> if the scheduling of priority classes is weighted.
+     */
+    public boolean isWeightedScheduling() {
+        return weightedScheduling;
+    }
+
+    /**
+     * Writes a characteristic without response.
+     *
+     * Writes without response are pipelined: several writes can be in flight at once, limited by
+     * the number of credits (see {@link #setWriteWithoutResponseCredits(int)}) and by the
+     * transport. A write is completed when the Android stack has taken over the packet, not when
+     * the peripheral has received it. If the characteristic does not support writes without response, a write with
+     * response is used instead.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean writeCharacteristicWithoutResponse(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value) {
+        return queueWrite(characteristic, value, true, false, GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Writes a characteristic without response, with optional coalescing. See
+     * {@link #writeCharacteristicWithoutResponse(BluetoothGattCharacteristic, byte[])} and
+     * {@link #writeCharacteristic(BluetoothGattCharacteristic, byte[], boolean)}.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean writeCharacteristicWithoutResponse(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value,
+            boolean coalescable) {
+        return queueWrite(characteristic, value, true, coalescable,
+                GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Writes a characteristic without response, with optional coalescing and a given priority
+     * class. See
+     * {@link #writeCharacteristicWithoutResponse(BluetoothGattCharacteristic, byte[], boolean)}.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean writeCharacteristicWithoutResponse(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value,
+            boolean coalescable, @NonNull GattOperationPriority priority) {
+        return queueWrite(characteristic, value, true, coalescable, priority);
+    }
+
+    /**
+     * Places a write operation in queue.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param withoutResponse <code>true</code> to write without response.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    private boolean queueWrite(@Nullable BluetoothGattCharacteristic characteristic,
+                               @NonNull byte[] value, boolean withoutResponse,
+                               boolean coalescable, @NonNull GattOperationPriority priority) {
+        return queueWrite(characteristic, value, withoutResponse, coalescable, priority, null);
+    }
+
+    /**
+     * Places a write operation in queue.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param withoutResponse <code>true</code> to write without response.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @param future The future to complete with the result of the operation, or
+     *               <code>null</code>.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    boolean queueWrite(@Nullable BluetoothGattCharacteristic characteristic,
+                       @NonNull byte[] value, boolean withoutResponse,
+                       boolean coalescable, @NonNull GattOperationPriority priority,
+                       @Nullable CompletableFuture<BeltCommandResult> future) {
+        return queueWrite(characteristic, value, withoutResponse, coalescable, priority, future,
+                false);
+    }
+
+    /**
+     * Places a write operation in queue with a buffer acquired from the packet buffer pool. The
+     * buffer is written without copy and released to the pool when the write is completed, or
+     * immediately if the write cannot be queued. The caller must not use the buffer after this
+     * call.
+     *
+     * @param characteristic The characteristic to write.
+     * @param buffer The buffer acquired from {@link #getPacketBufferPool()}.
+     * @param withoutResponse <code>true</code> to write without response.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @param future The future to complete with the result of the operation, or
+     *               <code>null</code>.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    boolean queuePooledWrite(@Nullable BluetoothGattCharacteristic characteristic,
+                             @NonNull byte[] buffer, boolean withoutResponse,
+                             boolean coalescable, @NonNull GattOperationPriority priority,
+                             @Nullable CompletableFuture<BeltCommandResult> future) {
+        if (!queueWrite(characteristic, buffer, withoutResponse, coalescable, priority, future,
+                true)) {
+            packetBufferPool.release(buffer);
+            return false;
         }
-        checkAndStartGattOperation();
         return true;
     }
 
+    /**
+     * Returns the pool of buffers for {@link #queuePooledWrite(BluetoothGattCharacteristic,
+     * byte[], boolean, boolean, GattOperationPriority, CompletableFuture)}.
+     *
+     * @return the packet buffer pool.
+     */
+    @NonNull PacketBufferPool getPacketBufferPool() {
+        return packetBufferPool;
+    }
+
+    /**
+     * Places a write operation in queue.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param withoutResponse <code>true</code> to write without response.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @param future The future to complete with the result of the operation, or
+     *               <code>null</code>.
+     * @param pooledValue <code>true</code> if the value is a pooled buffer written without copy.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    private boolean queueWrite(@Nullable BluetoothGattCharacteristic characteristic,
+                               @NonNull byte[] value, boolean withoutResponse,
+                               boolean coalescable, @NonNull GattOperationPriority priority,
+                               @Nullable CompletableFuture<BeltCommandResult> future,
+                               boolean pooledValue) {
+        GattTransport gatt = gattServer;
+        if (characteristic == null) {
+            Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
+            return false;
+        }
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
+            return false;
+        }
+        if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
+            return false;
+        }
+        if (withoutResponse && (characteristic.getProperties() &
+                BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) == 0) {
+            Log.w(DEBUG_TAG, "GattController: Write without response not supported, " +
+                    "write with response instead.");
+            withoutResponse = false;
+        }
+        GattOperationWriteCharacteristic operation = new GattOperationWriteCharacteristic(
+                gatt, characteristic, value, withoutResponse, coalescable, pooledValue);
+        operation.setPriority(priority);
+        operation.setCompletionFuture(future);
+        // Note: Coalescing is done by the drain loop
+        submitOperation(operation);
+        return true;
+    }
+
+    /**
+     * Writes a characteristic and returns a future completed with the result of the write. The
+     * future is completed when the write is acknowledged, or when the write fails, times out or is
+     * superseded. The future is never completed exceptionally.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @param withoutResponse <code>true</code> to write without response, see
+     *                        {@link #writeCharacteristicWithoutResponse(BluetoothGattCharacteristic, byte[])}.
+     * @param coalescable <code>true</code> if the write can supersede or be superseded by another
+     *                    write.
+     * @param priority The priority class of the operation.
+     * @return the future result of the write.
+     */
+    public @NonNull CompletableFuture<BeltCommandResult> writeCharacteristicAsync(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value,
+            boolean withoutResponse, boolean coalescable,
+            @NonNull GattOperationPriority priority) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!queueWrite(characteristic, value, withoutResponse, coalescable, priority, future)) {
+            future.complete(new BeltCommandResult(clock));
+        }
+        return future;
+    }
+
+    /**
+     * Sets the number of credits for writes without response, i.e. the maximum number of writes
+     * without response in flight at once. The credits prevent the overflow of the Android stack
+     * buffers.
+     *
+     * Note: The credits are an upper bound. The Android Bluetooth stack accepts a single write
+     * per GATT client until the write callback, so the effective number of writes in flight on
+     * Android is 1 whatever the number of credits. More credits are only used by transports that
+     * accept several writes, e.g. the in-process transport of the unit tests.
+     *
+     * @param credits The number of credits, at least one.
+     */
+    public void setWriteWithoutResponseCredits(int credits) {
+        writeWithoutResponseCredits = Math.max(1, credits);
+        // Start operations with the new credits
+        postOperationEvent(() -> {});
+    }
+
+    /**
+     * Returns the number of credits for writes without response.
+     * @return the number of credits for writes without response.
+     */
+    public int getWriteWithoutResponseCredits() {
+        return writeWithoutResponseCredits;
+    }
+
     /**
      * Sends a request on a characteristic and wait for a notification that acknowledge the request.
      *
@@ -981,24 +2207,246 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             @NonNull byte[] writeValue,
             @Nullable Byte[] notifyPattern,
             int requestId) {
-        synchronized (this) {
-            if (writeCharacteristic == null || notifyCharacteristic == null) {
-                Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
-                return false;
+        return request(writeCharacteristic, notifyCharacteristic, writeValue, notifyPattern,
+                requestId, GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Sends a request on a characteristic and wait for a notification that acknowledge the request.
+     *
+     * @param writeCharacteristic The characteristic to write.
+     * @param notifyCharacteristic The characteristic for the notification.
+     * @param writeValue The value to write.
+     * @param notifyPattern The notification pattern to wait.
+     * @param requestId The request ID.
+     * @param priority The priority class of the operation.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    public boolean request(
+            @Nullable BluetoothGattCharacteristic writeCharacteristic,
+            @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+            @NonNull byte[] writeValue,
+            @Nullable Byte[] notifyPattern,
+            int requestId,
+            @NonNull GattOperationPriority priority) {
+        return queueRequest(writeCharacteristic, notifyCharacteristic, writeValue, notifyPattern,
+                requestId, priority, null);
+    }
+
+    /**
+     * Sends a request on a characteristic and returns a future completed with the result of the
+     * request. The future is completed when the notification that acknowledges the request is
+     * received, or when the request fails or times out. The future is never completed
+     * exceptionally.
+     *
+     * @param writeCharacteristic The characteristic to write.
+     * @param notifyCharacteristic The characteristic for the notification.
+     * @param writeValue The value to write.
+     * @param notifyPattern The notification pattern to wait.
+     * @param requestId The request ID.
+     * @param priority The priority class of the operation.
+     * @return the future result of the request, with the notified value.
+     */
+    public @NonNull CompletableFuture<BeltCommandResult> requestAsync(
+            @Nullable BluetoothGattCharacteristic writeCharacteristic,
+            @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+            @NonNull byte[] writeValue,
+            @Nullable Byte[] notifyPattern,
+            int requestId,
+            @NonNull GattOperationPriority priority) {
+        CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+        if (!queueRequest(writeCharacteristic, notifyCharacteristic, writeValue, notifyPattern,
+                requestId, priority, future)) {
+            future.complete(new BeltCommandResult(clock));
+        }
+        return future;
+    }
+
+    /**
+     * Places a request operation in queue.
+     *
+     * @param writeCharacteristic The characteristic to write.
+     * @param notifyCharacteristic The characteristic for the notification.
+     * @param writeValue The value to write.
+     * @param notifyPattern The notification pattern to wait.
+     * @param requestId The request ID.
+     * @param priority The priority class of the operation.
+     * @param future The future to complete with the result of the operation, or
+     *               <code>null</code>.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    boolean queueRequest(
+            @Nullable BluetoothGattCharacteristic writeCharacteristic,
+            @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+            @NonNull byte[] writeValue,
+            @Nullable Byte[] notifyPattern,
+            int requestId,
+            @NonNull GattOperationPriority priority,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
+        return queueRequest(writeCharacteristic, notifyCharacteristic, writeValue,
+                GattOperationRequest.toPrefix(notifyPattern),
+                GattOperationRequest.toMask(notifyPattern), requestId, priority, future);
+    }
+
+    /**
+     * Places a request operation in queue. The request releases the queue when its write is
+     * acknowledged, and is completed when a notification matching the prefix is received.
+     * Several requests can wait for their response at once, notifications are matched to the
+     * oldest pending request with a matching prefix.
+     *
+     * @param writeCharacteristic The characteristic to write.
+     * @param notifyCharacteristic The characteristic for the notification.
+     * @param writeValue The value to write.
+     * @param notifyPrefix The prefix of the notification, or <code>null</code> to accept any
+     *                     notification.
+     * @param notifyMask The mask of the bits to compare with the prefix, or <code>null</code> to
+     *                   compare all bits.
+     * @param requestId The request ID.
+     * @param priority The priority class of the operation.
+     * @param future The future to complete with the result of the operation, or
+     *               <code>null</code>.
+     * @return <code>true</code> if the request has been correctly been sent.
+     */
+    boolean queueRequest(
+            @Nullable BluetoothGattCharacteristic writeCharacteristic,
+            @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+            @NonNull byte[] writeValue,
+            @Nullable byte[] notifyPrefix,
+            @Nullable byte[] notifyMask,
+            int requestId,
+            @NonNull GattOperationPriority priority,
+            @Nullable CompletableFuture<BeltCommandResult> future) {
+        GattTransport gatt = gattServer;
+        if (writeCharacteristic == null || notifyCharacteristic == null) {
+            Log.e(DEBUG_TAG, "GattController: Operation on null characteristic.");
+            return false;
+        }
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
+            return false;
+        }
+        if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
+            return false;
+        }
+        GattOperation operation = new GattOperationRequest(gatt, writeCharacteristic,
+                notifyCharacteristic, writeValue, notifyPrefix, notifyMask, requestId);
+        operation.setPriority(priority);
+        operation.setCompletionFuture(future);
+        submitOperation(operation);
+        return true;
+    }
+
+    /**
+     * Submits a batch of operations. The operations of the batch are queued atomically, i.e. no
+     * operation of the same priority class can be queued between two steps, and are started back
+     * to back in order. The returned future is completed when all steps are completed, with the
+     * result of each step. The future is never completed exceptionally.
+     *
+     * When a step cannot be created (e.g. missing characteristic), no step is queued and all
+     * steps of the result are failed.
+     *
+     * @param batch The batch of operations.
+     * @return the future result of the batch.
+     */
+    public @NonNull CompletableFuture<BeltCommandBatchResult> submitBatch(
+            @NonNull GattOperationBatch batch) {
+        List<GattOperationBatch.Step> steps = batch.getSteps();
+        int count = steps.size();
+        GattTransport gatt = gattServer;
+        boolean valid = true;
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the batch.");
+            valid = false;
+        } else if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the batch.");
+            valid = false;
+        }
+        // Create operations
+        GattOperation[] operations = new GattOperation[count];
+        for (int i = 0; valid && i < count; i++) {
+            operations[i] = createBatchOperation(gatt, steps.get(i));
+            if (operations[i] == null) {
+                Log.e(DEBUG_TAG, "GattController: Invalid step " + i + " in batch.");
+                valid = false;
             }
-            if (connectionState != GATT_CONNECTED) {
-                Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
-                return false;
+        }
+        if (!valid || count == 0) {
+            BeltCommandResult[] results = new BeltCommandResult[count];
+            for (int i = 0; i < count; i++) {
+                results[i] = new BeltCommandResult(clock);
             }
-            if (gattServer == null) {
-                Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
-                return false;
+            return CompletableFuture.completedFuture(new BeltCommandBatchResult(results));
+        }
+        // Link and submit the steps as one chain
+        List<CompletableFuture<BeltCommandResult>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<BeltCommandResult> future = new CompletableFuture<>();
+            futures.add(future);
+            operations[i].setPriority(batch.getPriority());
+            operations[i].setCompletionFuture(future);
+            if (i > 0) {
+                operations[i].linkAfter(operations[i-1], batch.isAbortOnFailure());
             }
-            operationQueue.add(new GattOperationRequest(gattServer, writeCharacteristic,
-                    notifyCharacteristic, writeValue, notifyPattern, requestId));
         }
-        checkAndStartGattOperation();
-        return true;
+        submitOperation(operations[0]);
+        CompletableFuture<Void> allSteps =
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        return allSteps.thenApply(v -> {
+            BeltCommandResult[] results = new BeltCommandResult[count];
+            for (int i = 0; i < count; i++) {
+                results[i] = futures.get(i).join();
+            }
+            return new BeltCommandBatchResult(results);
+        });
+    }
+
+    /**
+     * Creates the operation of a step of a batch.
+     *
+     * @param gatt The GATT server.
+     * @param step The step.
+     * @return the operation, or <code>null</code> if the step is not valid.
+     */
+    private @Nullable GattOperation createBatchOperation(@NonNull GattTransport gatt,
+                                                        @NonNull GattOperationBatch.Step step) {
+        BluetoothGattCharacteristic characteristic = step.characteristic;
+        if (characteristic == null) {
+            return null;
+        }
+        switch (step.type) {
+            case SET_NOTIFICATION:
+                if (characteristic.getDescriptors().isEmpty()) {
+                    return null;
+                }
+                GattOperationSetNotificationIndication setNotification =
+                        new GattOperationSetNotificationIndication(gatt,
+                                characteristic.getDescriptors().get(0), step.enableNotification,
+                                step.enableIndication);
+                setNotification.setConfirmedDescriptorValue(getConfirmedDescriptorValue(
+                        characteristic.getDescriptors().get(0)));
+                return setNotification;
+            case READ:
+                return new GattOperationReadCharacteristic(gatt, characteristic);
+            case WRITE:
+            case WRITE_NO_RESPONSE:
+                if (step.value == null) {
+                    return null;
+                }
+                boolean withoutResponse =
+                        (step.type == GattOperationBatch.StepType.WRITE_NO_RESPONSE &&
+                        (characteristic.getProperties() &
+                                BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0);
+                return new GattOperationWriteCharacteristic(gatt, characteristic, step.value,
+                        withoutResponse, false);
+            case REQUEST:
+                if (step.notifyCharacteristic == null || step.value == null) {
+                    return null;
+                }
+                return new GattOperationRequest(gatt, characteristic, step.notifyCharacteristic,
+                        step.value, step.notifyPrefix, step.notifyMask, step.requestId);
+        }
+        return null;
     }
 
     /**
@@ -1008,41 +2456,138 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
      * @return <code>true</code> if the request has been sent.
      */
     public boolean requestMtu(int mtu) {
-        synchronized (this) {
-            if (connectionState != GATT_CONNECTED) {
-                Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
-                return false;
-            }
-            if (gattServer == null) {
-                Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
-                return false;
-            }
-            operationQueue.add(new GattOperationRequestMtu(gattServer, mtu));
+        GattTransport gatt = gattServer;
+        if (connectionState != GATT_CONNECTED) {
+            Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
+            return false;
         }
-        checkAndStartGattOperation();
+        if (gatt == null) {
+            Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
+            return false;
+        }
+        submitOperation(new GattOperationRequestMtu(gatt, mtu));
         return true;
     }
 
     /**
-     * Requests new connection parameters with fast connection intervals.
+     * Requests new connection parameters with fast connection intervals. The connection priority
+     * set with {@link #setConnectionPriority(GattConnectionPriority)} is applied again on the
+     * next change of priority or reconnection.
      * @return <code>true</code> if the request has been correctly been sent.
      */
-    @SuppressLint("MissingPermission")
     public boolean requestFastConnectionIntervals() {
         if (connectionState != GATT_CONNECTED) {
             Log.w(DEBUG_TAG, "GattController: No connection for the operation.");
             return false;
         }
-        if (gattServer == null) {
+        return applyConnectionPriority(GattConnectionPriority.HIGH);
+    }
+
+    /**
+     * Sets the MTU size to negotiate when the connection is established. The MTU is negotiated on
+     * the next connection or reconnection.
+     *
+     * @param preferredMtu The preferred MTU size, or {@link #DEFAULT_MTU} to keep the default MTU
+     *                     of the stack.
+     */
+    public void setPreferredMtu(int preferredMtu) {
+        this.preferredMtu = Math.max(DEFAULT_MTU, Math.min(MAX_MTU, preferredMtu));
+    }
+
+    /**
+     * Returns the MTU size negotiated when the connection is established.
+     * @return the preferred MTU size.
+     */
+    public int getPreferredMtu() {
+        return preferredMtu;
+    }
+
+    /**
+     * Returns the MTU size of the current connection.
+     * @return the MTU size of the current connection.
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * Sets the connection priority that matches the workload, e.g.
+     * {@link GattConnectionPriority#HIGH} during navigation or orientation streaming, and
+     * {@link GattConnectionPriority#BALANCED} or {@link GattConnectionPriority#LOW_POWER} when the
+     * belt is idle. The priority is applied immediately when connected. On each connection or
+     * reconnection, the link tuning stage uses {@link GattConnectionPriority#HIGH} until the
+     * priority is set again, see {@link #startLinkTuning()}.
+     *
+     * @param priority The connection priority.
+     */
+    public void setConnectionPriority(@NonNull GattConnectionPriority priority) {
+        connectionPriority = priority;
+        if (connectionState == GATT_CONNECTED && appliedConnectionPriority != priority) {
+            applyConnectionPriority(priority);
+        }
+    }
+
+    /**
+     * Returns the connection priority set for the workload.
+     * @return the connection priority set for the workload.
+     */
+    public @NonNull GattConnectionPriority getConnectionPriority() {
+        return connectionPriority;
+    }
+
+    /**
+     * Starts the link tuning stage of a new connection. The MTU is negotiated with a control
+     * operation queued before any other operation, and the connection priority is set to
+     * {@link GattConnectionPriority#HIGH} to speed up the handshake, until the next call to
+     * {@link #setConnectionPriority(GattConnectionPriority)}.
+     */
+    private void startLinkTuning() {
+        GattTransport gatt = gattServer;
+        mtu = DEFAULT_MTU;
+        appliedConnectionPriority = null;
+        if (gatt == null) {
+            return;
+        }
+        int requestedMtu = preferredMtu;
+        if (requestedMtu > DEFAULT_MTU) {
+            GattOperation operation = new GattOperationRequestMtu(gatt, requestedMtu);
+            operation.setPriority(GattOperationPriority.CONTROL);
+            submitOperation(operation);
+        }
+        applyConnectionPriority(GattConnectionPriority.HIGH);
+    }
+
+    /**
+     * Requests a connection priority to the GATT server.
+     *
+     * @param priority The connection priority.
+     * @return <code>true</code> if the request has been sent.
+     */
+    @SuppressLint("MissingPermission")
+    private boolean applyConnectionPriority(@NonNull GattConnectionPriority priority) {
+        GattTransport gatt = gattServer;
+        if (gatt == null) {
             Log.w(DEBUG_TAG, "GattController: No GATT server for the operation.");
             return false;
         }
-        return gattServer.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        try {
+            if (gatt.requestConnectionPriority(priority.getValue())) {
+                appliedConnectionPriority = priority;
+                if (DEBUG) Log.i(DEBUG_TAG, "GattController: Connection priority set to " +
+                        priority.toString() + ".");
+                return true;
+            }
+        } catch (SecurityException e) {
+            Log.e(DEBUG_TAG, "GattController: Missing permissions!", e);
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "GattController: Failed to request connection priority.", e);
+        }
+        return false;
     }
 
     @SuppressLint("MissingPermission")
     @Override
-    public void onConnectionStateChange(final BluetoothGatt gatt, int status, int newState) {
+    public void onConnectionStateChange(final GattTransport gatt, int status, int newState) {
 
         if (gatt != gattServer) {
             // Obsolete event
@@ -1102,7 +2647,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                             connectionState = GATT_DISCONNECTED;
                             failed = connectionFailed;
                             lost = connectionLost;
-                            remainingReconnectionAttempts = INITIAL_RECONNECTION_ATTEMPTS;
+                            reconnectionAttempt = 0;
+                            connectionLossTimeNano = 0;
                             connectionLost = false;
                             connectionFailed = false;
                             initialConnection = false;
@@ -1137,6 +2683,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                     case GATT_CONNECTED:
                         synchronized (this) {
                             cancelAllTimeoutTasks();
+                            // Operations cannot complete on the closed GATT server
+                            requestOperationCancellation();
                             if (gattServer != null) {
                                 try {
                                     gattServer.close();
@@ -1145,13 +2693,13 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                                 }
                                 gattServer = null;
                             }
-                            if (remainingReconnectionAttempts > 0) {
-                                remainingReconnectionAttempts--;
+                            if (canReconnect()) {
                                 reconnect = true;
                             } else {
                                 connectionState = GATT_DISCONNECTED;
                                 failed = initialConnection;
-                                remainingReconnectionAttempts = INITIAL_RECONNECTION_ATTEMPTS;
+                                reconnectionAttempt = 0;
+                                connectionLossTimeNano = 0;
                                 connectionLost = false;
                                 connectionFailed = false;
                                 initialConnection = false;
@@ -1175,7 +2723,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
 
     @SuppressLint("MissingPermission")
     @Override
-    public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+    public void onServicesDiscovered(GattTransport gatt, int status) {
         Log.i(DEBUG_TAG, "GattController: Service discovered, status :"+status+" (0=OK).");
         // Note: No update of last GATT server activity time because services may be in cache
         boolean reconnect = false;
@@ -1192,21 +2740,20 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
                                 BeltCommunicationController.DEBUG_SERVICE_UUID) != null) {
                     // Service discovery completed
                     cancelServiceDiscoveryTimeout();
+                    BeltProfileCache cache = profileCache;
+                    if (cache != null && device != null) {
+                        cache.updateServices(device.getAddress(), gatt);
+                    }
                     if (device != null && device.getBondState() != BluetoothDevice.BOND_BONDED) {
                         connectionState = GATT_PAIRING;
                         pairingManager.startPairing(device);
                     } else {
-                        connectionState = GATT_CONNECTED;
-                        remainingReconnectionAttempts = RECONNECTION_ATTEMPTS;
-                        connectionLost = false;
-                        connectionFailed = false;
-                        initialConnection = false;
-                        startGattSupervision();
+                        onConnectionEstablished();
                     }
                 } else {
                     Log.e(DEBUG_TAG, "GattController: Service discovery failed.");
-                    if (remainingReconnectionAttempts > 0) {
-                        remainingReconnectionAttempts--;
+                    forgetKnownBeltProfile();
+                    if (canReconnect()) {
                         reconnect = true;
                     } else if (initialConnection) {
                         connectionFailed = true;
@@ -1228,47 +2775,61 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     }
 
     @Override
-    public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic,
-                                     int status) {
-        synchronized (this) {
-            // Update last GATT server activity time
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                lastGattServerActivityTimeNano = System.nanoTime();
-            }
-            // Propagate event to operation
+    public void onCharacteristicRead(GattTransport gatt, BluetoothGattCharacteristic characteristic,
+                                     byte[] readValue, int status) {
+        // Update last GATT server activity time
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            lastGattServerActivityTimeNano = clock.nanoTime();
+        }
+        // Propagate event to operation, with a copy of the value
+        final byte[] value = copyOf(readValue);
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
-                runningOperation.onCharacteristicRead(gatt, characteristic, status);
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
+                runningOperation.onCharacteristicRead(characteristic, value, status);
             }
-        }
-        checkAndStartGattOperation();
+        });
     }
 
     @Override
-    public void onCharacteristicWrite(BluetoothGatt gatt,
+    public void onCharacteristicWrite(GattTransport gatt,
                                       BluetoothGattCharacteristic characteristic, int status) {
-        synchronized (this) {
-            // Propagate event to operation queue
+        // Propagate event to operation queue
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
                 runningOperation.onCharacteristicWrite(gatt, characteristic, status);
+            } else {
+                // Pipelined writes are acknowledged in order
+                for (GattOperationWriteCharacteristic write: pipelinedWrites) {
+                    if (!write.isDone() && write.getCharacteristic() == characteristic) {
+                        write.setCallbackTimeNano(callbackTimeNano);
+                        write.onCharacteristicWrite(gatt, characteristic, status);
+                        break;
+                    }
+                }
             }
-        }
-        checkAndStartGattOperation();
+        });
     }
 
     @Override
-    public void onCharacteristicChanged(BluetoothGatt gatt,
-                                        BluetoothGattCharacteristic characteristic) {
+    public void onCharacteristicChanged(GattTransport gatt,
+                                        BluetoothGattCharacteristic characteristic,
+                                        byte[] notifiedValue) {
 //        Log.d(DEBUG_TAG, "GattController: Notification on " + characteristic.getUuid() +
 //                ", value: " + Arrays.toString(characteristic.getValue()));
-        synchronized (this) {
-            // Update last GATT server activity time
-            lastGattServerActivityTimeNano = System.nanoTime();
-            // Propagate event to operation
-            if (runningOperation != null) {
-                runningOperation.onCharacteristicChanged(gatt, characteristic);
+        // Update last GATT server activity time
+        lastGattServerActivityTimeNano = clock.nanoTime();
+        // Propagate event to pending requests, only when a request waits for this notification
+        for (BluetoothGattCharacteristic awaited: awaitedNotificationCharacteristics) {
+            if (awaited == characteristic) {
+                final byte[] value = copyOf(notifiedValue);
+                postOperationEvent(() -> dispatchNotification(characteristic, value));
+                break;
             }
         }
-        checkAndStartGattOperation();
         // Inform listeners
         ArrayList<GattEventListener> targets;
         synchronized (listeners) {
@@ -1278,66 +2839,80 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             targets = new ArrayList<>(listeners);
         }
         for (GattEventListener l: targets) {
-            l.onCharacteristicChanged(characteristic, characteristic.getValue());
+            l.onCharacteristicChanged(characteristic, notifiedValue);
         }
     }
 
     @Override
-    public void onDescriptorRead(BluetoothGatt gatt,
+    public void onDescriptorRead(GattTransport gatt,
                                  BluetoothGattDescriptor descriptor, int status) {
-        synchronized (this) {
-            // Update last GATT server activity time
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                lastGattServerActivityTimeNano = System.nanoTime();
-            }
-            // Propagate event to operation
+        // Update last GATT server activity time
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            lastGattServerActivityTimeNano = clock.nanoTime();
+        }
+        // Propagate event to operation
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
                 runningOperation.onDescriptorRead(gatt, descriptor, status);
             }
-        }
-        checkAndStartGattOperation();
+        });
     }
 
     @Override
-    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor,
+    public void onDescriptorWrite(GattTransport gatt, BluetoothGattDescriptor descriptor,
                                   int status) {
-        synchronized (this) {
-            // Propagate event to operation
+        // Propagate event to operation
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
                 runningOperation.onDescriptorWrite(gatt, descriptor, status);
             }
-        }
-        checkAndStartGattOperation();
+        });
     }
 
     @Override
-    public void onReliableWriteCompleted(BluetoothGatt gatt, int status) {
-        synchronized (this) {
-            // Update last GATT server activity time
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                lastGattServerActivityTimeNano = System.nanoTime();
-            }
-            // Propagate event to operation
+    public void onReliableWriteCompleted(GattTransport gatt, int status) {
+        // Update last GATT server activity time
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            lastGattServerActivityTimeNano = clock.nanoTime();
+        }
+        // Propagate event to operation
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
                 runningOperation.onReliableWriteCompleted(gatt, status);
             }
-        }
-        checkAndStartGattOperation();
+        });
     }
 
     @Override
-    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
-        synchronized (this) {
-            // Update last GATT server activity time
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                lastGattServerActivityTimeNano = System.nanoTime();
-            }
-            // Propagate event to operation
+    public void onMtuChanged(GattTransport gatt, int mtu, int status) {
+        // Update last GATT server activity time and MTU
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            lastGattServerActivityTimeNano = clock.nanoTime();
+            this.mtu = mtu;
+        }
+        // Propagate event to operation
+        final long callbackTimeNano = clock.nanoTime();
+        postOperationEvent(() -> {
             if (runningOperation != null) {
+                runningOperation.setCallbackTimeNano(callbackTimeNano);
                 runningOperation.onMtuChanged(gatt, mtu, status);
             }
-        }
-        checkAndStartGattOperation();
+        });
+    }
+
+    /**
+     * Returns a copy of a value.
+     * @param value The value to copy.
+     * @return a copy of the value, or <code>null</code> if the value is <code>null</code>.
+     */
+    private static @Nullable byte[] copyOf(@Nullable byte[] value) {
+        return (value == null)?(null):(Arrays.copyOf(value, value.length));
     }
 
     /**
@@ -1404,6 +2979,8 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
     private void notifyGattConnectionStateChange() {
         if (DEBUG) Log.i(DEBUG_TAG, "GattController: Connection state changed to: " +
                 connectionState.toString());
+        // Release the thread of the closed connection
+        quitGattThreadIfDisconnected();
         ArrayList<GattEventListener> targets;
         GattConnectionState state;
         synchronized (listeners) {
@@ -1489,7 +3066,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
         /**
          * Callback for the completion of MTU size request.
          *
-         * @param mtu The requested MTU size.
+         * @param mtu The negotiated MTU size, or the requested MTU size if the request failed.
          * @param success Success flag.
          */
         void onMtuChanged(int mtu, boolean success);
@@ -1504,12 +3081,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             if (connectionState != GATT_PAIRING) {
                 return;
             }
-            connectionState = GATT_CONNECTED;
-            remainingReconnectionAttempts = RECONNECTION_ATTEMPTS;
-            connectionLost = false;
-            connectionFailed = false;
-            initialConnection = false;
-            startGattSupervision();
+            onConnectionEstablished();
         }
         notifyGattConnectionStateChange();
     }
@@ -1522,8 +3094,7 @@ public class GattController extends BluetoothGattCallback implements BluetoothPa
             if (connectionState != GATT_PAIRING) {
                 return;
             }
-            if (remainingReconnectionAttempts > 0) {
-                remainingReconnectionAttempts--;
+            if (canReconnect()) {
                 reconnect = true;
             } else if (initialConnection) {
                 connectionFailed = true;
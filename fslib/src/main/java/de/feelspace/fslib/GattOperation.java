@@ -7,13 +7,15 @@
  */
 package de.feelspace.fslib;
 
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.CompletableFuture;
+
 import static de.feelspace.fslib.GattOperationState.STATE_NOT_STARTED;
 import static de.feelspace.fslib.GattOperationState.STATE_STARTED;
 import static de.feelspace.fslib.GattOperationState.STATE_SUCCESS;
@@ -23,7 +25,7 @@ import static de.feelspace.fslib.GattOperationState.STATE_SUCCESS;
  * An 'operation' abstraction is necessary for asynchronous BLE operations (a queue of operations
  * is required).
  */
-abstract class GattOperation extends BluetoothGattCallback {
+abstract class GattOperation {
 
     // Debug
     @SuppressWarnings("unused")
@@ -31,29 +33,62 @@ abstract class GattOperation extends BluetoothGattCallback {
     @SuppressWarnings("unused")
     private static final boolean DEBUG = true;
 
-    /* GATT service for the execution of the operation. */
-    protected @NonNull BluetoothGatt gatt;
+    /* GATT transport for the execution of the operation. */
+    protected @NonNull GattTransport gatt;
 
     /* Timeout period */
     protected static final long GATT_OPERATION_DEFAULT_TIMEOUT_MS = 500;
     protected long operationTimeout = GATT_OPERATION_DEFAULT_TIMEOUT_MS;
+    private final boolean adaptiveTimeout;
+
+    /* Timing of the operation on the clock of the controller, 0 if not reached */
+    private @NonNull MonotonicClock clock = MonotonicClock.SYSTEM;
+    private long queuedTimeNano;
+    private long startTimeNano;
+    private long callbackTimeNano;
+    private long completionTimeNano;
+
+    /* Number of queued operations when the operation has been queued */
+    private int queueDepth;
+
+    /* Future completed with the result of the operation, if any */
+    private @Nullable CompletableFuture<BeltCommandResult> completionFuture;
 
     /* State of the operation */
     private volatile @NonNull GattOperationState state = STATE_NOT_STARTED;
 
+    /* Priority class and position in queue */
+    private @NonNull GattOperationPriority priority = GattOperationPriority.PARAMETER;
+    private long sequenceNumber;
+
+    /* Links to the previous and next steps of a batch, if any */
+    private @Nullable GattOperation previousInBatch;
+    private @Nullable GattOperation nextInBatch;
+    private boolean abortBatchOnFailure;
+
     /**
      * References the GATT service and the callback.
      * @param gatt The GATT service.
-     * @param operationTimeout The timeout period in milliseconds.
+     * @param operationTimeout The timeout period in milliseconds, or <code>null</code> to let the
+     *                         GATT controller adapt the timeout to the measured round-trip times.
      */
-    protected GattOperation(@NonNull BluetoothGatt gatt,
+    protected GattOperation(@NonNull GattTransport gatt,
                             @Nullable Long operationTimeout) {
         this.gatt = gatt;
         if (operationTimeout != null && operationTimeout > 0) {
             this.operationTimeout = operationTimeout;
+            adaptiveTimeout = false;
+        } else {
+            adaptiveTimeout = true;
         }
     }
 
+    /**
+     * Returns the type of the operation.
+     * @return the type of the operation.
+     */
+    abstract protected @NonNull GattOperationType getType();
+
     /**
      * Returns the timeout period for this BLE operation.
      *
@@ -63,6 +98,112 @@ abstract class GattOperation extends BluetoothGattCallback {
         return operationTimeout;
     }
 
+    /**
+     * Sets the timeout period for this BLE operation. The timeout must be set before the operation
+     * is started.
+     *
+     * @param operationTimeout The timeout period in milliseconds.
+     */
+    protected void setOperationTimeoutMs(long operationTimeout) {
+        if (operationTimeout > 0) {
+            this.operationTimeout = operationTimeout;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the timeout of the operation can be adapted to the measured
+     * round-trip times.
+     * @return <code>true</code> if the timeout can be adapted.
+     */
+    protected boolean isAdaptiveTimeout() {
+        return adaptiveTimeout;
+    }
+
+    /**
+     * Sets the clock of the timing of the operation, by default the monotonic clock of the
+     * system.
+     * @param clock The clock of the controller.
+     */
+    protected void setClock(@NonNull MonotonicClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the time the operation has been queued, in nanoseconds.
+     * @return the time the operation has been queued (clock of the controller).
+     */
+    protected long getQueuedTimeNano() {
+        return queuedTimeNano;
+    }
+
+    /**
+     * Sets the time the operation has been queued, in nanoseconds.
+     * @param queuedTimeNano The time the operation has been queued (clock of the controller).
+     */
+    protected void setQueuedTimeNano(long queuedTimeNano) {
+        this.queuedTimeNano = queuedTimeNano;
+    }
+
+    /**
+     * Returns the time the operation has been started, in nanoseconds.
+     * @return the time the operation has been started (clock of the controller).
+     */
+    protected long getStartTimeNano() {
+        return startTimeNano;
+    }
+
+    /**
+     * Sets the time the operation has been started, in nanoseconds.
+     * @param startTimeNano The time the operation has been started (clock of the controller).
+     */
+    protected void setStartTimeNano(long startTimeNano) {
+        this.startTimeNano = startTimeNano;
+    }
+
+    /**
+     * Returns the time of the first GATT callback of the operation, in nanoseconds.
+     * @return the time of the first GATT callback (clock of the controller), or 0 if no callback has been
+     * received.
+     */
+    protected long getCallbackTimeNano() {
+        return callbackTimeNano;
+    }
+
+    /**
+     * Sets the time of a GATT callback of the operation, only the first callback is kept.
+     * @param callbackTimeNano The time the GATT callback has been received (clock of the controller).
+     */
+    protected void setCallbackTimeNano(long callbackTimeNano) {
+        if (this.callbackTimeNano == 0) {
+            this.callbackTimeNano = callbackTimeNano;
+        }
+    }
+
+    /**
+     * Returns the number of queued operations when the operation has been queued.
+     * @return the queue depth at queuing.
+     */
+    protected int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Sets the number of queued operations when the operation has been queued.
+     * @param queueDepth The queue depth at queuing.
+     */
+    protected void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Returns the time the operation has been completed, in nanoseconds.
+     * @return the time the operation has been completed (clock of the controller), or 0 if the operation
+     * is not done.
+     */
+    protected long getCompletionTimeNano() {
+        return completionTimeNano;
+    }
+
     /**
      * Sets the state of the operation. The completion callback is not called, instead the operation
      * queue must later check the state of the operation.
@@ -81,12 +222,18 @@ abstract class GattOperation extends BluetoothGattCallback {
             case STATE_TIMED_OUT:
                 Log.e(DEBUG_TAG, "GattOperation: BLE operation timed out: "+toString());
                 break;
+            case STATE_SUPERSEDED:
             case STATE_NOT_STARTED:
             case STATE_STARTED:
             case STATE_SUCCESS:
                 break;
         }
         // Set state
+        if (state != STATE_NOT_STARTED && state != STATE_STARTED) {
+            completionTimeNano = clock.nanoTime();
+        } else {
+            completionTimeNano = 0;
+        }
         this.state = state;
     }
 
@@ -98,6 +245,190 @@ abstract class GattOperation extends BluetoothGattCallback {
         return state;
     }
 
+    /**
+     * Returns the priority class of the operation.
+     * @return the priority class of the operation.
+     */
+    protected @NonNull GattOperationPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority class of the operation. The priority must be set before the operation is
+     * queued.
+     * @param priority The priority class of the operation.
+     */
+    protected void setPriority(@NonNull GattOperationPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the sequence number of the operation in the queue.
+     * @return the sequence number of the operation in the queue.
+     */
+    protected long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Sets the sequence number of the operation in the queue.
+     * @param sequenceNumber The sequence number.
+     */
+    protected void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Sets the future to complete with the result of the operation. The future must be set before
+     * the operation is queued.
+     * @param completionFuture The future to complete.
+     */
+    protected void setCompletionFuture(
+            @Nullable CompletableFuture<BeltCommandResult> completionFuture) {
+        this.completionFuture = completionFuture;
+    }
+
+    /**
+     * Completes the future of the operation, if any, with the result of the operation. The future
+     * is never completed exceptionally, failures are reported in the result.
+     */
+    protected void completeFuture() {
+        CompletableFuture<BeltCommandResult> future = completionFuture;
+        if (future != null) {
+            completionFuture = null;
+            future.complete(new BeltCommandResult(this));
+        }
+    }
+
+    /**
+     * Links the operation after the previous step of a batch. The links must be set before the
+     * operation is submitted.
+     *
+     * @param previous The previous step of the batch.
+     * @param abortOnFailure <code>true</code> if the operation must be cancelled when a previous
+     *                       step fails.
+     */
+    protected void linkAfter(@NonNull GattOperation previous, boolean abortOnFailure) {
+        previousInBatch = previous;
+        previous.nextInBatch = this;
+        abortBatchOnFailure = abortOnFailure;
+    }
+
+    /**
+     * Returns the next step of the batch of the operation.
+     * @return the next step of the batch, or <code>null</code> if the operation is not in a batch
+     * or is the last step.
+     */
+    protected @Nullable GattOperation getNextInBatch() {
+        return nextInBatch;
+    }
+
+    /**
+     * Returns <code>true</code> if the operation must not be started because a previous step of
+     * its batch has failed. All previous steps are checked, because a request step releases the
+     * queue when its write is acknowledged and can fail after the next steps have started.
+     *
+     * @return <code>true</code> if the batch of the operation has been aborted.
+     */
+    protected boolean isBatchAborted() {
+        if (!abortBatchOnFailure) {
+            return false;
+        }
+        for (GattOperation previous = previousInBatch; previous != null;
+             previous = previous.previousInBatch) {
+            if (previous.isDone() && !previous.succeed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the characteristic targeted by the operation, or <code>null</code> if the operation
+     * does not target a characteristic.
+     *
+     * @return the characteristic targeted by the operation.
+     */
+    protected @Nullable BluetoothGattCharacteristic getTargetCharacteristic() {
+        return null;
+    }
+
+    /**
+     * Callback for the read of a characteristic, with the value read. The value is copied when
+     * the GATT event is received, because the value of the characteristic object can be changed
+     * before the operation processes the event.
+     *
+     * @param characteristic The characteristic read.
+     * @param value The value read.
+     * @param status The status of the read.
+     */
+    protected void onCharacteristicRead(@NonNull BluetoothGattCharacteristic characteristic,
+                                        @Nullable byte[] value, int status) {
+    }
+
+    /**
+     * Callback for the notification of a characteristic, with the notified value. The value is
+     * copied when the GATT event is received.
+     *
+     * @param characteristic The characteristic notified.
+     * @param value The notified value.
+     */
+    protected void onCharacteristicChanged(@NonNull BluetoothGattCharacteristic characteristic,
+                                           @Nullable byte[] value) {
+    }
+
+    /**
+     * Callback for the write of a characteristic.
+     *
+     * @param gatt The GATT transport.
+     * @param characteristic The characteristic written.
+     * @param status The status of the write.
+     */
+    public void onCharacteristicWrite(GattTransport gatt,
+                                      BluetoothGattCharacteristic characteristic, int status) {
+    }
+
+    /**
+     * Callback for the read of a descriptor.
+     *
+     * @param gatt The GATT transport.
+     * @param descriptor The descriptor read.
+     * @param status The status of the read.
+     */
+    public void onDescriptorRead(GattTransport gatt, BluetoothGattDescriptor descriptor,
+                                 int status) {
+    }
+
+    /**
+     * Callback for the write of a descriptor.
+     *
+     * @param gatt The GATT transport.
+     * @param descriptor The descriptor written.
+     * @param status The status of the write.
+     */
+    public void onDescriptorWrite(GattTransport gatt, BluetoothGattDescriptor descriptor,
+                                  int status) {
+    }
+
+    /**
+     * Callback for the completion of a reliable write.
+     *
+     * @param gatt The GATT transport.
+     * @param status The status of the reliable write.
+     */
+    public void onReliableWriteCompleted(GattTransport gatt, int status) {
+    }
+
+    /**
+     * Callback for the change of MTU.
+     *
+     * @param gatt The GATT transport.
+     * @param mtu The new MTU.
+     * @param status The status of the MTU request.
+     */
+    public void onMtuChanged(GattTransport gatt, int mtu, int status) {
+    }
+
     /**
      * Starts the operation.
      *
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Group of GATT operations submitted at once to the GATT controller.
+ *
+ * The operations of a batch are queued atomically and started back to back, in order, in the
+ * priority class of the batch. Operations of a higher priority class can still be started between
+ * two steps of the batch. By default, the remaining steps of a batch are cancelled when a step
+ * fails.
+ *
+ * See {@link GattController#submitBatch(GattOperationBatch)}.
+ */
+public class GattOperationBatch {
+
+    /**
+     * Types of steps.
+     */
+    enum StepType {
+        SET_NOTIFICATION,
+        READ,
+        WRITE,
+        WRITE_NO_RESPONSE,
+        REQUEST
+    }
+
+    /**
+     * Step of a batch.
+     */
+    static class Step {
+        final @NonNull StepType type;
+        final @Nullable BluetoothGattCharacteristic characteristic;
+        final @Nullable BluetoothGattCharacteristic notifyCharacteristic;
+        final @Nullable byte[] value;
+        final @Nullable byte[] notifyPrefix;
+        final @Nullable byte[] notifyMask;
+        final boolean enableNotification;
+        final boolean enableIndication;
+        final int requestId;
+
+        Step(@NonNull StepType type,
+             @Nullable BluetoothGattCharacteristic characteristic,
+             @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+             @Nullable byte[] value,
+             @Nullable byte[] notifyPrefix,
+             @Nullable byte[] notifyMask,
+             boolean enableNotification,
+             boolean enableIndication,
+             int requestId) {
+            this.type = type;
+            this.characteristic = characteristic;
+            this.notifyCharacteristic = notifyCharacteristic;
+            this.value = (value == null)?(null):(Arrays.copyOf(value, value.length));
+            this.notifyPrefix = notifyPrefix;
+            this.notifyMask = notifyMask;
+            this.enableNotification = enableNotification;
+            this.enableIndication = enableIndication;
+            this.requestId = requestId;
+        }
+    }
+
+    // Steps in order
+    private final @NonNull ArrayList<Step> steps = new ArrayList<>();
+
+    // Priority class of the operations
+    private final @NonNull GattOperationPriority priority;
+
+    // Flag to cancel the remaining steps on failure
+    private boolean abortOnFailure = true;
+
+    /**
+     * Creates an empty batch with the default priority class.
+     */
+    public GattOperationBatch() {
+        this(GattOperationPriority.PARAMETER);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param priority The priority class of the operations of the batch.
+     */
+    public GattOperationBatch(@NonNull GattOperationPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Adds a step to enable or disable the notifications on a characteristic.
+     *
+     * @param characteristic The characteristic.
+     * @param enableNotification <code>true</code> to enable notifications.
+     * @param enableIndication <code>true</code> to enable indications.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch setCharacteristicNotificationIndication(
+            @Nullable BluetoothGattCharacteristic characteristic,
+            boolean enableNotification, boolean enableIndication) {
+        steps.add(new Step(StepType.SET_NOTIFICATION, characteristic, null, null, null, null,
+                enableNotification, enableIndication, 0));
+        return this;
+    }
+
+    /**
+     * Adds a step to read a characteristic.
+     *
+     * @param characteristic The characteristic to read.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch readCharacteristic(
+            @Nullable BluetoothGattCharacteristic characteristic) {
+        steps.add(new Step(StepType.READ, characteristic, null, null, null, null, false, false, 0));
+        return this;
+    }
+
+    /**
+     * Adds a step to write a characteristic.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch writeCharacteristic(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value) {
+        steps.add(new Step(StepType.WRITE, characteristic, null, value, null, null, false, false, 0));
+        return this;
+    }
+
+    /**
+     * Adds a step to write a characteristic without response.
+     *
+     * @param characteristic The characteristic to write.
+     * @param value The value to write.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch writeCharacteristicWithoutResponse(
+            @Nullable BluetoothGattCharacteristic characteristic, @NonNull byte[] value) {
+        steps.add(new Step(StepType.WRITE_NO_RESPONSE, characteristic, null, value, null, null,
+                false, false, 0));
+        return this;
+    }
+
+    /**
+     * Adds a request step. The step is completed when a notification that starts with the given
+     * prefix is received. The next step is started as soon as the write of the request is
+     * acknowledged.
+     *
+     * @param writeCharacteristic The characteristic to write.
+     * @param notifyCharacteristic The characteristic for the notification.
+     * @param writeValue The value to write.
+     * @param notifyPrefix The prefix of the notification, or <code>null</code> to accept any
+     *                     notification.
+     * @param notifyMask The mask of the bits to compare with the prefix, or <code>null</code> to
+     *                   compare all bits.
+     * @param requestId The request ID.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch request(
+            @Nullable BluetoothGattCharacteristic writeCharacteristic,
+            @Nullable BluetoothGattCharacteristic notifyCharacteristic,
+            @NonNull byte[] writeValue,
+            @Nullable byte[] notifyPrefix,
+            @Nullable byte[] notifyMask,
+            int requestId) {
+        steps.add(new Step(StepType.REQUEST, writeCharacteristic, notifyCharacteristic,
+                writeValue, notifyPrefix, notifyMask, false, false, requestId));
+        return this;
+    }
+
+    /**
+     * Sets if the remaining steps must be cancelled when a step fails. Steps that have already
+     * been started when the failure is known are not cancelled.
+     *
+     * @param abortOnFailure <code>true</code> to cancel the remaining steps on failure.
+     * @return the batch.
+     */
+    public @NonNull GattOperationBatch setAbortOnFailure(boolean abortOnFailure) {
+        this.abortOnFailure = abortOnFailure;
+        return this;
+    }
+
+    /**
+     * Returns <code>true</code> if the remaining steps are cancelled when a step fails.
+     * @return <code>true</code> if the remaining steps are cancelled when a step fails.
+     */
+    public boolean isAbortOnFailure() {
+        return abortOnFailure;
+    }
+
+    /**
+     * Returns the priority class of the operations.
+     * @return the priority class of the operations.
+     */
+    public @NonNull GattOperationPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the number of steps.
+     * @return the number of steps.
+     */
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     * Returns the steps of the batch.
+     * @return the steps of the batch.
+     */
+    @NonNull List<Step> getSteps() {
+        return steps;
+    }
+
+}
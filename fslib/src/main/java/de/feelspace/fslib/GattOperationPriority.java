@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+/**
+ * Enumeration of priority classes of GATT operations, from the highest to the lowest priority.
+ *
+ * Operations of a higher priority class are started before queued operations of a lower priority
+ * class, with two exceptions that preserve the semantic order of commands:
+ * <ul>
+ *     <li>Operations on the same characteristic are always started in the order they were
+ *     queued.</li>
+ *     <li>A {@link #CONTROL} operation is never overtaken by an operation queued after it.</li>
+ * </ul>
+ */
+public enum GattOperationPriority {
+
+    /**
+     * Control and liveness operations, e.g. keep-alive acknowledgments and mode changes.
+     */
+    CONTROL(0),
+
+    /**
+     * Commands to stop the vibration.
+     */
+    STOP(8),
+
+    /**
+     * Vibration commands.
+     */
+    VIBRATION(4),
+
+    /**
+     * Parameter requests and changes. This is the default priority class.
+     */
+    PARAMETER(2),
+
+    /**
+     * Bulk and debug operations, e.g. tone patterns.
+     */
+    BULK(1);
+
+    // Weight for weighted scheduling, the control class is always scheduled first
+    private final int weight;
+
+    GattOperationPriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the number of operations of this class that can be started in a scheduling round
+     * with weighted scheduling.
+     *
+     * @return the weight of the priority class.
+     */
+    int getWeight() {
+        return weight;
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Queue of GATT operations with one lane per priority class.
+ *
+ * The ordering constraints between lanes are tracked incrementally: the queued operations of
+ * each characteristic are kept in order of sequence number, and the oldest control operation is
+ * the head of the control lane. The selection of the next operation and the coalescing of
+ * writes are therefore independent of the number of queued operations.
+ *
+ * The queue is not synchronized, the owner of the queue must synchronize the access.
+ */
+class GattOperationQueue {
+
+    // Lanes of queued entries, indexed by priority class ordinal, in order of sequence number
+    private final @NonNull ArrayList<ArrayDeque<Entry>> lanes;
+
+    // Queued entries per characteristic, in order of sequence number
+    private final @NonNull HashMap<BluetoothGattCharacteristic, ArrayDeque<Entry>>
+            characteristicEntries = new HashMap<>();
+
+    // Lane of control operations, the barrier for the other lanes
+    private final @NonNull ArrayDeque<Entry> controlLane;
+
+    // Remaining number of operations per lane in the current round of weighted scheduling
+    private final @NonNull int[] credits;
+
+    // Scheduling policy
+    private boolean weightedScheduling = false;
+
+    // Sequence number for the next operation
+    private long nextSequenceNumber = 0;
+
+    // Number of queued operations
+    private int size = 0;
+
+    // Clock of the timing of queued operations
+    private final @NonNull MonotonicClock clock;
+
+    /**
+     * Position of an operation in the queue. The entry is shared by the lane and the
+     * characteristic, so that a superseded write is replaced in place.
+     */
+    private static class Entry {
+        @NonNull GattOperation operation;
+
+        Entry(@NonNull GattOperation operation) {
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Creates an empty queue with strict priority scheduling, timed on the system clock.
+     */
+    GattOperationQueue() {
+        this(MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * Creates an empty queue with strict priority scheduling.
+     *
+     * @param clock The clock for the timing of queued operations.
+     */
+    GattOperationQueue(@NonNull MonotonicClock clock) {
+        this.clock = clock;
+        GattOperationPriority[] priorities = GattOperationPriority.values();
+        lanes = new ArrayList<>(priorities.length);
+        credits = new int[priorities.length];
+        for (GattOperationPriority priority: priorities) {
+            lanes.add(new ArrayDeque<>());
+            credits[priority.ordinal()] = priority.getWeight();
+        }
+        controlLane = lanes.get(GattOperationPriority.CONTROL.ordinal());
+    }
+
+    /**
+     * Sets the scheduling policy. With strict scheduling, an operation of a lower priority class
+     * is started only when no operation of a higher priority class can be started. With weighted
+     * scheduling, each priority class (except control operations that are always started first)
+     * can start a number of operations per round given by its weight, so that low priority
+     * operations are never starved.
+     *
+     * @param weighted <code>true</code> for weighted scheduling, <code>false</code> for strict
+     *                 priority scheduling.
+     */
+    void setWeightedScheduling(boolean weighted) {
+        weightedScheduling = weighted;
+        refillCredits();
+    }
+
+    /**
+     * Returns <code>true</code> if the scheduling is weighted.
+     * @return <code>true</code> if the scheduling is weighted.
+     */
+    boolean isWeightedScheduling() {
+        return weightedScheduling;
+    }
+
+    /**
+     * Returns <code>true</code> if the queue is empty.
+     * @return <code>true</code> if the queue is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of queued operations.
+     * @return the number of queued operations.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds an operation at the end of the lane of its priority class.
+     *
+     * @param operation The operation to add.
+     */
+    void add(@NonNull GattOperation operation) {
+        operation.setSequenceNumber(nextSequenceNumber++);
+        operation.setClock(clock);
+        operation.setQueuedTimeNano(clock.nanoTime());
+        Entry entry = new Entry(operation);
+        lanes.get(operation.getPriority().ordinal()).addLast(entry);
+        BluetoothGattCharacteristic characteristic = operation.getTargetCharacteristic();
+        if (characteristic != null) {
+            ArrayDeque<Entry> entries = characteristicEntries.get(characteristic);
+            if (entries == null) {
+                entries = new ArrayDeque<>();
+                characteristicEntries.put(characteristic, entries);
+            }
+            entries.addLast(entry);
+        }
+        size++;
+    }
+
+    /**
+     * Puts back an operation at the head of its lane. The operation keeps its sequence number.
+     * The operation must be the last removed operation, so that it is still the oldest operation
+     * on its characteristic.
+     *
+     * @param operation The operation to put back.
+     */
+    void addFirst(@NonNull GattOperation operation) {
+        Entry entry = new Entry(operation);
+        lanes.get(operation.getPriority().ordinal()).addFirst(entry);
+        BluetoothGattCharacteristic characteristic = operation.getTargetCharacteristic();
+        if (characteristic != null) {
+            ArrayDeque<Entry> entries = characteristicEntries.get(characteristic);
+            if (entries == null) {
+                entries = new ArrayDeque<>();
+                characteristicEntries.put(characteristic, entries);
+            }
+            entries.addFirst(entry);
+        }
+        size++;
+    }
+
+    /**
+     * Adds a write operation, or replaces the last queued write on the same characteristic when
+     * the new write supersedes it. The new write takes the place and the sequence number of the
+     * superseded write. A write is not coalesced when an operation on the same characteristic, or
+     * a control operation, has been queued after the superseded write.
+     *
+     * @param operation The write operation to add.
+     * @return the superseded operation, or <code>null</code> if no operation has been superseded.
+     */
+    @Nullable GattOperationWriteCharacteristic addOrSupersede(
+            @NonNull GattOperationWriteCharacteristic operation) {
+        ArrayDeque<Entry> entries = characteristicEntries.get(operation.getCharacteristic());
+        Entry last = (entries == null)?(null):(entries.peekLast());
+        if (last != null && last.operation.getPriority() == operation.getPriority() &&
+                last.operation instanceof GattOperationWriteCharacteristic &&
+                operation.supersedes((GattOperationWriteCharacteristic) last.operation) &&
+                !isControlQueuedAfter(last.operation)) {
+            // Last queued operation on the characteristic, in the same lane
+            GattOperationWriteCharacteristic superseded =
+                    (GattOperationWriteCharacteristic) last.operation;
+            operation.setSequenceNumber(superseded.getSequenceNumber());
+            operation.setClock(clock);
+            operation.setQueuedTimeNano(clock.nanoTime());
+            last.operation = operation;
+            return superseded;
+        }
+        add(operation);
+        return null;
+    }
+
+    /**
+     * Returns the next operation to start without removing it.
+     *
+     * @return the next operation to start, or <code>null</code> if the queue is empty.
+     */
+    @Nullable GattOperation peek() {
+        int laneIndex = selectLane();
+        if (laneIndex < 0) {
+            return null;
+        }
+        return lanes.get(laneIndex).getFirst().operation;
+    }
+
+    /**
+     * Removes and returns the next operation to start.
+     *
+     * @return the next operation to start, or <code>null</code> if the queue is empty.
+     */
+    @Nullable GattOperation remove() {
+        int laneIndex = selectLane();
+        if (laneIndex < 0) {
+            return null;
+        }
+        if (weightedScheduling && laneIndex != GattOperationPriority.CONTROL.ordinal()) {
+            if (credits[laneIndex] <= 0) {
+                // New round
+                refillCredits();
+            }
+            credits[laneIndex]--;
+        }
+        size--;
+        GattOperation operation = lanes.get(laneIndex).removeFirst().operation;
+        BluetoothGattCharacteristic characteristic = operation.getTargetCharacteristic();
+        if (characteristic != null) {
+            // The selected operation is the oldest operation on its characteristic
+            ArrayDeque<Entry> entries = characteristicEntries.get(characteristic);
+            entries.removeFirst();
+            if (entries.isEmpty()) {
+                characteristicEntries.remove(characteristic);
+            }
+        }
+        return operation;
+    }
+
+    /**
+     * Removes and returns all operations.
+     *
+     * @return the list of removed operations, in order of priority class.
+     */
+    @NonNull List<GattOperation> removeAll() {
+        ArrayList<GattOperation> operations = new ArrayList<>(size);
+        for (ArrayDeque<Entry> lane: lanes) {
+            for (Entry entry: lane) {
+                operations.add(entry.operation);
+            }
+            lane.clear();
+        }
+        characteristicEntries.clear();
+        size = 0;
+        refillCredits();
+        return operations;
+    }
+
+    /**
+     * Selects the lane of the next operation to start.
+     *
+     * @return the index of the lane, or -1 if the queue is empty.
+     */
+    private int selectLane() {
+        if (size == 0) {
+            return -1;
+        }
+        int firstEligible = -1;
+        for (int i = 0; i < lanes.size(); i++) {
+            Entry head = lanes.get(i).peekFirst();
+            if (head == null || !isEligible(head, i)) {
+                continue;
+            }
+            if (!weightedScheduling || i == GattOperationPriority.CONTROL.ordinal() ||
+                    credits[i] > 0) {
+                return i;
+            }
+            if (firstEligible < 0) {
+                firstEligible = i;
+            }
+        }
+        // All eligible lanes have used their credits, the next round starts with the highest
+        // priority. Note: The oldest operation is always eligible.
+        return firstEligible;
+    }
+
+    /**
+     * Checks if the head operation of a lane can overtake the operations of other lanes, i.e. if
+     * no older control operation and no older operation on the same characteristic is queued.
+     * Lanes are in order of sequence number, so an older operation can only be in another lane.
+     *
+     * @param head The head entry of the lane.
+     * @param laneIndex The lane index.
+     * @return <code>true</code> if the operation can be started.
+     */
+    private boolean isEligible(@NonNull Entry head, int laneIndex) {
+        if (laneIndex != GattOperationPriority.CONTROL.ordinal()) {
+            Entry control = controlLane.peekFirst();
+            if (control != null && control.operation.getSequenceNumber() <
+                    head.operation.getSequenceNumber()) {
+                return false;
+            }
+        }
+        BluetoothGattCharacteristic characteristic = head.operation.getTargetCharacteristic();
+        if (characteristic == null) {
+            return true;
+        }
+        return characteristicEntries.get(characteristic).peekFirst() == head;
+    }
+
+    /**
+     * Checks if a control operation has been queued after the given queued operation.
+     *
+     * @param queued The queued operation.
+     * @return <code>true</code> if a control operation has been queued after the operation.
+     */
+    private boolean isControlQueuedAfter(@NonNull GattOperation queued) {
+        Entry control = controlLane.peekLast();
+        return control != null &&
+                control.operation.getSequenceNumber() > queued.getSequenceNumber();
+    }
+
+    /**
+     * Starts a new round of weighted scheduling.
+     */
+    private void refillCredits() {
+        for (GattOperationPriority priority: GattOperationPriority.values()) {
+            credits[priority.ordinal()] = priority.getWeight();
+        }
+    }
+
+}
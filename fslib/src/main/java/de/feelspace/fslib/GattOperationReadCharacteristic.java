@@ -13,8 +13,6 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.Arrays;
-
 import static de.feelspace.fslib.GattOperationState.STATE_FAILED;
 import static de.feelspace.fslib.GattOperationState.STATE_STARTED;
 import static de.feelspace.fslib.GattOperationState.STATE_SUCCESS;
@@ -42,7 +40,7 @@ class GattOperationReadCharacteristic extends GattOperation {
      * @param gatt The GATT service.
      * @param characteristic The characteristic to read.
      */
-    GattOperationReadCharacteristic(@NonNull BluetoothGatt gatt,
+    GattOperationReadCharacteristic(@NonNull GattTransport gatt,
                                     @NonNull BluetoothGattCharacteristic characteristic) {
         super(gatt, null);
         this.characteristic = characteristic;
@@ -64,6 +62,16 @@ class GattOperationReadCharacteristic extends GattOperation {
         return characteristic;
     }
 
+    @Override
+    protected @NonNull GattOperationType getType() {
+        return GattOperationType.READ_CHARACTERISTIC;
+    }
+
+    @Override
+    protected @NonNull BluetoothGattCharacteristic getTargetCharacteristic() {
+        return characteristic;
+    }
+
     @Override
     protected void start() {
         setState(STATE_STARTED);
@@ -78,14 +86,12 @@ class GattOperationReadCharacteristic extends GattOperation {
     }
 
     @Override
-    public void onCharacteristicRead(BluetoothGatt gatt,
-                                     BluetoothGattCharacteristic characteristic, int status) {
+    protected void onCharacteristicRead(@NonNull BluetoothGattCharacteristic characteristic,
+                                        @Nullable byte[] value, int status) {
         if (getState() == STATE_STARTED && characteristic == this.characteristic) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                if (characteristic.getValue() != null) {
-                    value = Arrays.copyOf(characteristic.getValue(),
-                            characteristic.getValue().length);
-                }
+                // Note: The value is already a copy
+                this.value = value;
                 // Operation callback
                 setState(STATE_SUCCESS);
             } else {
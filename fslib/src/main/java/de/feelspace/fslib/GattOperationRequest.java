@@ -40,8 +40,9 @@ class GattOperationRequest extends GattOperation {
     /** Store the value to be written. */
     private @NonNull byte[] writeValue;
 
-    /** Pattern for the response. */
-    private @Nullable Byte[] notifyPattern;
+    /** Pattern for the response: prefix and mask of the bits to compare. */
+    private @Nullable byte[] notifyPrefix;
+    private @Nullable byte[] notifyMask;
 
     /** Request ID */
     private int requestId;
@@ -52,6 +53,12 @@ class GattOperationRequest extends GattOperation {
     /** Flag for write acknowledgment. */
     private boolean writeAcknowledged = false;
 
+    /** Flag for the reception of the response. */
+    private boolean responseReceived = false;
+
+    /** Timeout of the response after the write acknowledgment. */
+    private @Nullable TimerWheel.Timeout responseTimeoutTask;
+
     /**
      * Creates a write characteristic operation.
      *
@@ -59,31 +66,74 @@ class GattOperationRequest extends GattOperation {
      * @param writeCharacteristic The characteristic to write.
      * @param notifyCharacteristic The characteristic to be notified.
      * @param writeValue The value to be written.
-     * @param notifyPattern The pattern for the notification.
+     * @param notifyPrefix The prefix of the notification, or <code>null</code> to accept any
+     *                     notification.
+     * @param notifyMask The mask of the bits to compare with the prefix, of the same length as
+     *                   the prefix, or <code>null</code> to compare all bits.
      * @param requestId ID to identify the request and callback.
      */
-    GattOperationRequest(@NonNull BluetoothGatt gatt,
+    GattOperationRequest(@NonNull GattTransport gatt,
                          @NonNull BluetoothGattCharacteristic writeCharacteristic,
                          @NonNull BluetoothGattCharacteristic notifyCharacteristic,
                          @NonNull byte[] writeValue,
-                         @Nullable Byte[] notifyPattern,
+                         @Nullable byte[] notifyPrefix,
+                         @Nullable byte[] notifyMask,
                          int requestId) {
         super(gatt, null);
         this.writeCharacteristic = writeCharacteristic;
         this.notifyCharacteristic = notifyCharacteristic;
         this.writeValue = Arrays.copyOf(writeValue, writeValue.length);
-        this.notifyPattern = null;
-        if (notifyPattern != null) {
-            this.notifyPattern = Arrays.copyOf(notifyPattern, notifyPattern.length);
+        if (notifyPrefix != null && notifyPrefix.length > 0) {
+            this.notifyPrefix = Arrays.copyOf(notifyPrefix, notifyPrefix.length);
+            this.notifyMask = new byte[notifyPrefix.length];
+            if (notifyMask == null) {
+                Arrays.fill(this.notifyMask, (byte) 0xFF);
+            } else {
+                System.arraycopy(notifyMask, 0, this.notifyMask, 0,
+                        Math.min(notifyMask.length, notifyPrefix.length));
+            }
         }
         this.requestId = requestId;
     }
 
+    /**
+     * Returns the prefix of a notification pattern.
+     * @param notifyPattern The notification pattern.
+     * @return the prefix, with 0 for undefined elements.
+     */
+    static @Nullable byte[] toPrefix(@Nullable Byte[] notifyPattern) {
+        if (notifyPattern == null) {
+            return null;
+        }
+        byte[] prefix = new byte[notifyPattern.length];
+        for (int i = 0; i < notifyPattern.length; i++) {
+            prefix[i] = (notifyPattern[i] == null)?(0):(notifyPattern[i]);
+        }
+        return prefix;
+    }
+
+    /**
+     * Returns the mask of a notification pattern.
+     * @param notifyPattern The notification pattern.
+     * @return the mask, with 0 for undefined elements and 0xFF for defined elements.
+     */
+    static @Nullable byte[] toMask(@Nullable Byte[] notifyPattern) {
+        if (notifyPattern == null) {
+            return null;
+        }
+        byte[] mask = new byte[notifyPattern.length];
+        for (int i = 0; i < notifyPattern.length; i++) {
+            mask[i] = (notifyPattern[i] == null)?(0):((byte) 0xFF);
+        }
+        return mask;
+    }
+
     @Override
     protected void start() {
         if (DEBUG) Log.d(DEBUG_TAG, "GattOperationRequest: BLE operation started: "+toString());
         setState(STATE_STARTED);
         try {
+            writeCharacteristic.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
             writeCharacteristic.setValue(writeValue);
             if(!gatt.writeCharacteristic(writeCharacteristic)) {
                 setState(STATE_FAILED);
@@ -94,6 +144,16 @@ class GattOperationRequest extends GattOperation {
         }
     }
 
+    @Override
+    protected @NonNull GattOperationType getType() {
+        return GattOperationType.REQUEST;
+    }
+
+    @Override
+    protected @NonNull BluetoothGattCharacteristic getTargetCharacteristic() {
+        return writeCharacteristic;
+    }
+
     /**
      * Returns the characteristic notified.
      * @return the characteristic notified.
@@ -118,14 +178,67 @@ class GattOperationRequest extends GattOperation {
         return requestId;
     }
 
+    /**
+     * Returns <code>true</code> if the write of the request has been acknowledged.
+     * @return <code>true</code> if the write of the request has been acknowledged.
+     */
+    protected boolean isWriteAcknowledged() {
+        return writeAcknowledged;
+    }
+
+    /**
+     * Returns <code>true</code> if the response of the request has been received.
+     * @return <code>true</code> if the response of the request has been received.
+     */
+    protected boolean isResponseReceived() {
+        return responseReceived;
+    }
+
+    /**
+     * Checks if a notified value matches the pattern of the response.
+     *
+     * @param value The notified value.
+     * @return <code>true</code> if the value matches the pattern of the response.
+     */
+    protected boolean matches(@Nullable byte[] value) {
+        if (notifyPrefix == null || notifyMask == null) {
+            return true;
+        }
+        if (value == null || value.length < notifyPrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < notifyPrefix.length; i++) {
+            if (((value[i] ^ notifyPrefix[i]) & notifyMask[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the timeout of the response.
+     * @return the timeout of the response, or <code>null</code> if no timeout is scheduled.
+     */
+    protected @Nullable TimerWheel.Timeout getResponseTimeoutTask() {
+        return responseTimeoutTask;
+    }
+
+    /**
+     * Sets the timeout of the response.
+     * @param responseTimeoutTask The timeout of the response.
+     */
+    protected void setResponseTimeoutTask(@Nullable TimerWheel.Timeout responseTimeoutTask) {
+        this.responseTimeoutTask = responseTimeoutTask;
+    }
+
     @Override
-    public void onCharacteristicWrite(BluetoothGatt gatt,
+    public void onCharacteristicWrite(GattTransport gatt,
                                       BluetoothGattCharacteristic characteristic, int status) {
         if (getState() == STATE_STARTED && characteristic == this.writeCharacteristic) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 // Write ok
                 writeAcknowledged = true;
-                if (notifyValue != null) {
+                if (responseReceived) {
                     // Notification already received
                     setState(STATE_SUCCESS);
                 } // Else, wait for notification
@@ -137,36 +250,22 @@ class GattOperationRequest extends GattOperation {
     }
 
     @Override
-    public void onCharacteristicChanged(BluetoothGatt gatt,
-                                        BluetoothGattCharacteristic characteristic) {
+    protected void onCharacteristicChanged(@NonNull BluetoothGattCharacteristic characteristic,
+                                           @Nullable byte[] value) {
         // Here we check the notification without waiting the write acknowledgment.
         // Condition for waiting acknowledgment should be:
         // > if (getState() == STATE_STARTED && characteristic == this.notifyCharacteristic &&
         // >       writeAcknowledged) {
-        if (getState() == STATE_STARTED && characteristic == this.notifyCharacteristic) {
+        if (getState() == STATE_STARTED && characteristic == this.notifyCharacteristic &&
+                !responseReceived) {
             // Check notification pattern
-            byte[] notified = characteristic.getValue();
-            if (notified == null) {
-                if (notifyPattern != null && notifyPattern.length > 0) {
-                    return;
-                }
-            } else if (notifyPattern != null && notifyPattern.length > 0) {
-                if (notifyPattern.length > notified.length) {
-                    return;
-                }
-                for (int i=0; i<notifyPattern.length; i++) {
-                    if (notifyPattern[i] != null) {
-                        if (notifyPattern[i] != notified[i]) {
-                            return;
-                        }
-                    }
-                }
+            if (!matches(value)) {
+                return;
             }
             // Pattern verified
-            if (notified != null) {
-                notifyValue = Arrays.copyOf(characteristic.getValue(),
-                        characteristic.getValue().length);
-            }
+            // Note: The notified value is already a copy
+            notifyValue = value;
+            responseReceived = true;
             // Check for write acknowledged
             if (writeAcknowledged) {
                 setState(STATE_SUCCESS);
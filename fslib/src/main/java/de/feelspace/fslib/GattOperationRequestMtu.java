@@ -32,16 +32,20 @@ class GattOperationRequestMtu extends GattOperation {
     /** Requested size. */
     private final int requestMtuSize;
 
+    /** Negotiated size. */
+    private int negotiatedMtuSize;
+
     /**
      * Creates a operation.
      *
      * @param gatt The GATT service.
      * @param requestMtuSize The requested MTU size.
      */
-    GattOperationRequestMtu(@NonNull BluetoothGatt gatt,
+    GattOperationRequestMtu(@NonNull GattTransport gatt,
                             int requestMtuSize) {
         super(gatt, null);
         this.requestMtuSize = requestMtuSize;
+        this.negotiatedMtuSize = requestMtuSize;
     }
 
     /**
@@ -52,6 +56,19 @@ class GattOperationRequestMtu extends GattOperation {
         return requestMtuSize;
     }
 
+    /**
+     * Returns the negotiated MTU size.
+     * @return the negotiated MTU size, or the requested MTU size if the request is not successful.
+     */
+    protected int getNegotiatedMtu() {
+        return negotiatedMtuSize;
+    }
+
+    @Override
+    protected @NonNull GattOperationType getType() {
+        return GattOperationType.REQUEST_MTU;
+    }
+
     @Override
     protected void start() {
         setState(STATE_STARTED);
@@ -70,10 +87,11 @@ class GattOperationRequestMtu extends GattOperation {
     }
 
     @Override
-    public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+    public void onMtuChanged(GattTransport gatt, int mtu, int status) {
         if (getState() == STATE_STARTED) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 // Operation callback
+                negotiatedMtuSize = mtu;
                 setState(STATE_SUCCESS);
                 Log.i(DEBUG_TAG, "GattOperationRequestMtu: MTU size set to "+mtu);
             } else {
@@ -8,11 +8,15 @@
 package de.feelspace.fslib;
 
 import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
 
 import static de.feelspace.fslib.GattOperationState.STATE_FAILED;
 import static de.feelspace.fslib.GattOperationState.STATE_STARTED;
@@ -30,6 +34,13 @@ class GattOperationSetNotificationIndication extends GattOperation {
     private boolean enableNotification;
     private boolean enableIndication;
 
+    /** Value of the descriptor confirmed by the GATT server, to skip an unchanged write. */
+    private @Nullable byte[] confirmedDescriptorValue = null;
+    private boolean descriptorWriteSkipped = false;
+
+    /** Value written to the descriptor. */
+    private @Nullable byte[] descriptorValue = null;
+
     /**
      * Creates a operation.
      *
@@ -40,7 +51,7 @@ class GattOperationSetNotificationIndication extends GattOperation {
      * @param enableIndication <code>true</code> to enable indication, <code>false</code> to disable
      *                         them.
      */
-    GattOperationSetNotificationIndication(@NonNull BluetoothGatt gatt,
+    GattOperationSetNotificationIndication(@NonNull GattTransport gatt,
                                            @NonNull BluetoothGattDescriptor descriptor,
                                            boolean enableNotification,
                                            boolean enableIndication) {
@@ -50,6 +61,44 @@ class GattOperationSetNotificationIndication extends GattOperation {
         this.enableIndication = enableIndication;
     }
 
+    /**
+     * Sets the value of the descriptor confirmed by the GATT server, i.e. the value of the last
+     * successful write of the descriptor. The descriptor write is skipped when the confirmed
+     * value is the value to set and the device is bonded, for which the configuration of
+     * notifications is kept by the device between connections.
+     *
+     * @param value The confirmed value of the descriptor, or <code>null</code> if unknown.
+     */
+    void setConfirmedDescriptorValue(@Nullable byte[] value) {
+        confirmedDescriptorValue = value;
+    }
+
+    /**
+     * Returns <code>true</code> if the descriptor write has been skipped because the descriptor
+     * had already the value.
+     * @return <code>true</code> if the descriptor write has been skipped.
+     */
+    boolean isDescriptorWriteSkipped() {
+        return descriptorWriteSkipped;
+    }
+
+    /**
+     * Returns the value written to the descriptor.
+     * @return the value written to the descriptor, or <code>null</code> if the operation has not
+     * been started.
+     */
+    @Nullable byte[] getDescriptorValue() {
+        return descriptorValue;
+    }
+
+    /**
+     * Returns the descriptor targeted by the operation.
+     * @return the descriptor targeted by the operation.
+     */
+    @NonNull BluetoothGattDescriptor getDescriptor() {
+        return descriptor;
+    }
+
     @SuppressLint("MissingPermission")
     @Override
     protected void start() {
@@ -57,15 +106,25 @@ class GattOperationSetNotificationIndication extends GattOperation {
         try {
             if (gatt.setCharacteristicNotification(descriptor.getCharacteristic(),
                     enableNotification || enableIndication)) {
+                byte[] value;
                 if (enableNotification && enableIndication) {
-                    descriptor.setValue(new byte[] {0x03, 0x00});
+                    value = new byte[] {0x03, 0x00};
                 } else if (enableIndication) {
-                    descriptor.setValue(BluetoothGattDescriptor.ENABLE_INDICATION_VALUE);
+                    value = BluetoothGattDescriptor.ENABLE_INDICATION_VALUE;
                 } else if (enableNotification) {
-                    descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                    value = BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE;
                 } else {
-                    descriptor.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+                    value = BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE;
+                }
+                descriptorValue = value;
+                if (Arrays.equals(confirmedDescriptorValue, value) &&
+                        gatt.getDevice().getBondState() == BluetoothDevice.BOND_BONDED) {
+                    // Notifications registered locally, the descriptor is already set
+                    descriptorWriteSkipped = true;
+                    setState(STATE_SUCCESS);
+                    return;
                 }
+                descriptor.setValue(value);
                 if (!gatt.writeDescriptor(descriptor)) {
                     setState(STATE_FAILED);
                 }
@@ -79,7 +138,7 @@ class GattOperationSetNotificationIndication extends GattOperation {
     }
 
     @Override
-    public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor,
+    public void onDescriptorWrite(GattTransport gatt, BluetoothGattDescriptor descriptor,
                                  int status) {
         if (getState() == STATE_STARTED && descriptor == this.descriptor) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
@@ -108,6 +167,16 @@ class GattOperationSetNotificationIndication extends GattOperation {
         return descriptor.getCharacteristic();
     }
 
+    @Override
+    protected @NonNull GattOperationType getType() {
+        return GattOperationType.SET_NOTIFICATION;
+    }
+
+    @Override
+    protected @Nullable BluetoothGattCharacteristic getTargetCharacteristic() {
+        return descriptor.getCharacteristic();
+    }
+
     @Override
     public String toString() {
         try {
@@ -16,5 +16,6 @@ enum GattOperationState {
     STATE_FAILED(),
     STATE_CANCELLED(),
     STATE_TIMED_OUT(),
+    STATE_SUPERSEDED(),
     STATE_SUCCESS();
 }
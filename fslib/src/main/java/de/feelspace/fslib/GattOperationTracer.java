@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Fixed-size ring buffer of the timing of completed GATT operations.
+ *
+ * For each operation, the time of queuing, start, first GATT callback and completion are kept
+ * with the queue depth at queuing and the final state. The records are stored in preallocated
+ * arrays so that recording an operation does not allocate. When the buffer is full, the oldest
+ * records are overwritten.
+ *
+ * The records can be exported in the trace event format of Chrome and Perfetto
+ * (<code>chrome://tracing</code>, <code>ui.perfetto.dev</code>). The queuing of operations is
+ * shown on one track per priority class and the execution of operations on the link track.
+ * Operations overlap on a track (queued operations, requests awaiting their response after the
+ * write, pipelined writes), so they are exported as async slices identified by their sequence
+ * number, which the viewers stack without nesting.
+ */
+class GattOperationTracer {
+
+    /** Default number of records. */
+    public static final int DEFAULT_CAPACITY = 512;
+
+    // Track identifiers of the trace
+    private static final int LINK_TRACK_ID = 1;
+    private static final int FIRST_QUEUE_TRACK_ID = 2;
+
+    // Categories of the async slices, separate so that the slices of one operation on the queue
+    // and link tracks do not match each other
+    private static final String QUEUE_CATEGORY = "gatt.queue";
+    private static final String LINK_CATEGORY = "gatt.link";
+
+    // Records, as parallel arrays
+    private final int capacity;
+    private final @NonNull long[] queuedTimeNano;
+    private final @NonNull long[] startTimeNano;
+    private final @NonNull long[] callbackTimeNano;
+    private final @NonNull long[] completionTimeNano;
+    private final @NonNull int[] queueDepth;
+    private final @NonNull long[] sequenceNumber;
+    private final @NonNull GattOperationType[] type;
+    private final @NonNull GattOperationPriority[] priority;
+    private final @NonNull GattOperationState[] state;
+    private final @NonNull UUID[] characteristicUuid;
+
+    // Index of the next record and number of records
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * Creates a tracer.
+     *
+     * @param capacity The number of records.
+     */
+    GattOperationTracer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        queuedTimeNano = new long[this.capacity];
+        startTimeNano = new long[this.capacity];
+        callbackTimeNano = new long[this.capacity];
+        completionTimeNano = new long[this.capacity];
+        queueDepth = new int[this.capacity];
+        sequenceNumber = new long[this.capacity];
+        type = new GattOperationType[this.capacity];
+        priority = new GattOperationPriority[this.capacity];
+        state = new GattOperationState[this.capacity];
+        characteristicUuid = new UUID[this.capacity];
+    }
+
+    /**
+     * Records a completed operation.
+     *
+     * @param operation The completed operation.
+     */
+    synchronized void record(@NonNull GattOperation operation) {
+        int i = next;
+        queuedTimeNano[i] = operation.getQueuedTimeNano();
+        startTimeNano[i] = operation.getStartTimeNano();
+        callbackTimeNano[i] = operation.getCallbackTimeNano();
+        completionTimeNano[i] = operation.getCompletionTimeNano();
+        queueDepth[i] = operation.getQueueDepth();
+        sequenceNumber[i] = operation.getSequenceNumber();
+        type[i] = operation.getType();
+        priority[i] = operation.getPriority();
+        state[i] = operation.getState();
+        BluetoothGattCharacteristic characteristic = operation.getTargetCharacteristic();
+        characteristicUuid[i] = (characteristic == null)?(null):(characteristic.getUuid());
+        next = (next + 1) % capacity;
+        if (count < capacity) {
+            count++;
+        }
+    }
+
+    /**
+     * Returns the number of records.
+     * @return the number of records.
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Removes all records.
+     */
+    synchronized void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    /**
+     * Exports the records, from the oldest to the most recent, in the JSON trace event format of
+     * Chrome and Perfetto. Timestamps are in microseconds of the monotonic clock
+     * (System.nanoTime).
+     *
+     * @return the trace as a JSON string.
+     */
+    synchronized @NonNull String exportChromeTrace() {
+        StringBuilder sb = new StringBuilder(256 + count * 400);
+        sb.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        // Track names
+        appendTrackName(sb, LINK_TRACK_ID, "GATT link");
+        for (GattOperationPriority p: GattOperationPriority.values()) {
+            sb.append(',');
+            appendTrackName(sb, FIRST_QUEUE_TRACK_ID + p.ordinal(), "Queue " + p.name());
+        }
+        // Operations
+        int first = (next - count + capacity) % capacity;
+        for (int n = 0; n < count; n++) {
+            int i = (first + n) % capacity;
+            String name = type[i].name() + ((characteristicUuid[i] == null)?(""):
+                    (" " + characteristicUuid[i].toString()));
+            long queueEnd = (startTimeNano[i] != 0)?(startTimeNano[i]):(completionTimeNano[i]);
+            if (queuedTimeNano[i] != 0 && queueEnd >= queuedTimeNano[i]) {
+                // Queuing delay
+                sb.append(',');
+                appendSlice(sb, FIRST_QUEUE_TRACK_ID + priority[i].ordinal(), QUEUE_CATEGORY,
+                        name, queuedTimeNano[i], queueEnd, i);
+            }
+            if (startTimeNano[i] != 0 && completionTimeNano[i] >= startTimeNano[i]) {
+                // Execution on the link
+                sb.append(',');
+                appendSlice(sb, LINK_TRACK_ID, LINK_CATEGORY, name, startTimeNano[i],
+                        completionTimeNano[i], i);
+                if (callbackTimeNano[i] != 0) {
+                    sb.append(",{\"name\":\"Callback\",\"cat\":\"gatt\",\"ph\":\"i\",\"s\":\"t\"");
+                    sb.append(",\"pid\":1,\"tid\":").append(LINK_TRACK_ID);
+                    sb.append(",\"ts\":");
+                    appendMicros(sb, callbackTimeNano[i]);
+                    sb.append(",\"args\":{\"seq\":").append(sequenceNumber[i]).append("}}");
+                }
+            }
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    /**
+     * Appends the metadata event for the name of a track.
+     */
+    private static void appendTrackName(@NonNull StringBuilder sb, int trackId,
+                                        @NonNull String name) {
+        sb.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(trackId);
+        sb.append(",\"args\":{\"name\":\"").append(name).append("\"}}");
+    }
+
+    /**
+     * Appends the async begin and end events of a record, identified by the sequence number.
+     */
+    private void appendSlice(@NonNull StringBuilder sb, int trackId, @NonNull String category,
+                             @NonNull String name, long beginNano, long endNano, int i) {
+        appendAsyncEvent(sb, 'b', trackId, category, name, beginNano, i);
+        sb.append(",\"args\":{\"seq\":").append(sequenceNumber[i]);
+        sb.append(",\"priority\":\"").append(priority[i].name());
+        sb.append("\",\"queueDepth\":").append(queueDepth[i]);
+        sb.append(",\"state\":\"").append(state[i].name()).append("\"}},");
+        appendAsyncEvent(sb, 'e', trackId, category, name, endNano, i);
+        sb.append('}');
+    }
+
+    /**
+     * Appends the common fields of an async event, without the closing brace.
+     */
+    private void appendAsyncEvent(@NonNull StringBuilder sb, char phase, int trackId,
+                                  @NonNull String category, @NonNull String name, long timeNano,
+                                  int i) {
+        sb.append("{\"name\":\"").append(name).append("\",\"cat\":\"").append(category);
+        sb.append("\",\"ph\":\"").append(phase).append("\",\"id\":").append(sequenceNumber[i]);
+        sb.append(",\"pid\":1,\"tid\":").append(trackId);
+        sb.append(",\"ts\":");
+        appendMicros(sb, timeNano);
+    }
+
+    /**
+     * Appends a time in nanoseconds as microseconds with a fractional part.
+     */
+    private static void appendMicros(@NonNull StringBuilder sb, long nano) {
+        long remainder = Math.abs(nano % 1000);
+        sb.append(nano / 1000).append('.');
+        if (remainder < 100) {
+            sb.append('0');
+        }
+        if (remainder < 10) {
+            sb.append('0');
+        }
+        sb.append(remainder);
+    }
+
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+/**
+ * Types of GATT operations.
+ */
+enum GattOperationType {
+    SET_NOTIFICATION(),
+    READ_CHARACTERISTIC(),
+    WRITE_CHARACTERISTIC(),
+    WRITE_CHARACTERISTIC_NO_RESPONSE(),
+    REQUEST(),
+    REQUEST_MTU();
+}
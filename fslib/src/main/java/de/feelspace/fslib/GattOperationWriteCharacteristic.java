@@ -36,6 +36,15 @@ class GattOperationWriteCharacteristic extends GattOperation {
     /** Store the value to be written. */
     private @NonNull byte[] value;
 
+    /** The write type, with or without response. */
+    private final int writeType;
+
+    /** Flag for a write that can supersede or be superseded by another write. */
+    private final boolean coalescable;
+
+    /** Flag for a value buffer owned by the operation and released to a pool on completion. */
+    private final boolean pooledValue;
+
     /**
      * Creates a write characteristic operation.
      *
@@ -43,18 +52,65 @@ class GattOperationWriteCharacteristic extends GattOperation {
      * @param characteristic The characteristic to write.
      * @param value The value to be written.
      */
-    GattOperationWriteCharacteristic(@NonNull BluetoothGatt gatt,
+    GattOperationWriteCharacteristic(@NonNull GattTransport gatt,
                                      @NonNull BluetoothGattCharacteristic characteristic,
                                      @NonNull byte[] value) {
+        this(gatt, characteristic, value, false, false);
+    }
+
+    /**
+     * Creates a write characteristic operation.
+     *
+     * @param gatt The GATT service.
+     * @param characteristic The characteristic to write.
+     * @param value The value to be written.
+     * @param withoutResponse <code>true</code> to write the characteristic without response.
+     * @param coalescable <code>true</code> if the write can supersede a queued write on the same
+     *                    characteristic with the same first byte, or be superseded by such a write.
+     */
+    GattOperationWriteCharacteristic(@NonNull GattTransport gatt,
+                                     @NonNull BluetoothGattCharacteristic characteristic,
+                                     @NonNull byte[] value,
+                                     boolean withoutResponse,
+                                     boolean coalescable) {
+        this(gatt, characteristic, value, withoutResponse, coalescable, false);
+    }
+
+    /**
+     * Creates a write characteristic operation.
+     *
+     * @param gatt The GATT service.
+     * @param characteristic The characteristic to write.
+     * @param value The value to be written.
+     * @param withoutResponse <code>true</code> to write the characteristic without response.
+     * @param coalescable <code>true</code> if the write can supersede a queued write on the same
+     *                    characteristic with the same first byte, or be superseded by such a write.
+     * @param pooledValue <code>true</code> if the value is a pooled buffer. The buffer is not
+     *                    copied, the caller must not modify it until the operation is completed.
+     */
+    GattOperationWriteCharacteristic(@NonNull GattTransport gatt,
+                                     @NonNull BluetoothGattCharacteristic characteristic,
+                                     @NonNull byte[] value,
+                                     boolean withoutResponse,
+                                     boolean coalescable,
+                                     boolean pooledValue) {
         super(gatt, null);
         this.characteristic = characteristic;
-        this.value = Arrays.copyOf(value, value.length);
+        this.value = (pooledValue)?(value):(Arrays.copyOf(value, value.length));
+        this.pooledValue = pooledValue;
+        this.writeType = (withoutResponse)?
+                (BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE):
+                (BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        this.coalescable = coalescable && value.length > 0;
     }
 
     @Override
     protected void start() {
         setState(STATE_STARTED);
         try {
+            // Note: The write type must be set for each write because the characteristic object is
+            // shared by all operations
+            characteristic.setWriteType(writeType);
             characteristic.setValue(value);
             if(!gatt.writeCharacteristic(characteristic)) {
                 setState(STATE_FAILED);
@@ -73,6 +129,22 @@ class GattOperationWriteCharacteristic extends GattOperation {
         return value;
     }
 
+    /**
+     * Returns <code>true</code> if the value is a pooled buffer.
+     * @return <code>true</code> if the value is a pooled buffer.
+     */
+    protected boolean isPooledValue() {
+        return pooledValue;
+    }
+
+    /**
+     * Returns <code>true</code> if the characteristic is written without response.
+     * @return <code>true</code> if the characteristic is written without response.
+     */
+    protected boolean isWithoutResponse() {
+        return writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE;
+    }
+
     /**
      * Returns the characteristic targeted by the operation.
      * @return the characteristic targeted by the operation.
@@ -82,7 +154,34 @@ class GattOperationWriteCharacteristic extends GattOperation {
     }
 
     @Override
-    public void onCharacteristicWrite(BluetoothGatt gatt,
+    protected @NonNull GattOperationType getType() {
+        return (isWithoutResponse())?
+                (GattOperationType.WRITE_CHARACTERISTIC_NO_RESPONSE):
+                (GattOperationType.WRITE_CHARACTERISTIC);
+    }
+
+    @Override
+    protected @NonNull BluetoothGattCharacteristic getTargetCharacteristic() {
+        return characteristic;
+    }
+
+    /**
+     * Checks if this write supersedes a queued write. A write supersedes another one when both
+     * are coalescable, target the same characteristic and have the same first byte (e.g. the
+     * channel index of a channel configuration command).
+     *
+     * @param other The queued write.
+     * @return <code>true</code> if this write supersedes the queued write.
+     */
+    protected boolean supersedes(@NonNull GattOperationWriteCharacteristic other) {
+        return coalescable && other.coalescable &&
+                other.characteristic == characteristic &&
+                other.value.length == value.length &&
+                other.value[0] == value[0];
+    }
+
+    @Override
+    public void onCharacteristicWrite(GattTransport gatt,
                                       BluetoothGattCharacteristic characteristic, int status) {
         if (getState() == STATE_STARTED && characteristic == this.characteristic) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
@@ -100,7 +199,7 @@ class GattOperationWriteCharacteristic extends GattOperation {
     public String toString() {
         try {
             return "Write characteristic '"+ characteristic.getUuid().toString()+"' with '"+
-                    Arrays.toString(value)+"'";
+                    Arrays.toString(value)+"'"+((isWithoutResponse())?(" without response"):(""));
         } catch (Exception e) {
             // In case the characteristic UUID is no more accessible
             return "Write characteristic 'Unknown UUID'";
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Estimator of the round-trip time of GATT operations and derived operation timeouts.
+ *
+ * The estimation follows the retransmission timer of TCP (RFC 6298): a smoothed round-trip time
+ * (SRTT) and a round-trip time variation (RTTVAR) are kept per operation type and characteristic,
+ * and the timeout is <code>SRTT + max(G, 4*RTTVAR)</code>, bounded by a floor and a ceiling. After
+ * a timeout, the timeout is doubled until the next successful operation.
+ *
+ * The estimator is not synchronized, the owner of the estimator must synchronize the access.
+ */
+class GattRttEstimator {
+
+    // Bounds of the timeout
+    public static final long MIN_OPERATION_TIMEOUT_MS = 50;
+    public static final long MAX_OPERATION_TIMEOUT_MS = 2000;
+
+    // Timeout before the first measure
+    public static final long INITIAL_OPERATION_TIMEOUT_MS =
+            GattOperation.GATT_OPERATION_DEFAULT_TIMEOUT_MS;
+
+    // Minimum margin over SRTT (clock granularity in RFC 6298)
+    private static final long MIN_VARIATION_MARGIN_US = 25_000;
+
+    // Gains for SRTT and RTTVAR as right shifts (alpha = 1/8, beta = 1/4)
+    private static final int SRTT_GAIN_SHIFT = 3;
+    private static final int RTTVAR_GAIN_SHIFT = 2;
+
+    // Maximum backoff factor after timeouts
+    private static final int MAX_BACKOFF_SHIFT = 4;
+
+    // Estimates per operation type, then per characteristic UUID
+    private final @NonNull EnumMap<GattOperationType, HashMap<UUID, Estimate>> estimates =
+            new EnumMap<>(GattOperationType.class);
+
+    /**
+     * Estimate for one type of operation on one characteristic.
+     */
+    private static class Estimate {
+        long srttUs;
+        long rttvarUs;
+        int backoffShift;
+    }
+
+    /**
+     * Creates an estimator without measure.
+     */
+    GattRttEstimator() {
+        for (GattOperationType type: GattOperationType.values()) {
+            estimates.put(type, new HashMap<>());
+        }
+    }
+
+    /**
+     * Returns the timeout for an operation.
+     *
+     * @param operation The operation.
+     * @return the timeout in milliseconds.
+     */
+    long getTimeoutMs(@NonNull GattOperation operation) {
+        Estimate estimate = getEstimate(operation, false);
+        if (estimate == null) {
+            return INITIAL_OPERATION_TIMEOUT_MS;
+        }
+        long timeoutUs;
+        if (estimate.srttUs == 0) {
+            // Only timeouts so far
+            timeoutUs = INITIAL_OPERATION_TIMEOUT_MS * 1000;
+        } else {
+            timeoutUs = estimate.srttUs + Math.max(MIN_VARIATION_MARGIN_US,
+                    estimate.rttvarUs << 2);
+        }
+        timeoutUs <<= estimate.backoffShift;
+        return Math.max(MIN_OPERATION_TIMEOUT_MS,
+                Math.min(MAX_OPERATION_TIMEOUT_MS, timeoutUs / 1000));
+    }
+
+    /**
+     * Returns the smoothed round-trip time for a type of operation on a characteristic.
+     *
+     * @param type The operation type.
+     * @param characteristicUuid The characteristic UUID.
+     * @return the smoothed round-trip time in milliseconds, or <code>null</code> if no measure is
+     * available.
+     */
+    @Nullable Float getSmoothedRttMs(@NonNull GattOperationType type,
+                                     @Nullable UUID characteristicUuid) {
+        Estimate estimate = estimates.get(type).get(characteristicUuid);
+        if (estimate == null || estimate.srttUs == 0) {
+            return null;
+        }
+        return estimate.srttUs / 1000f;
+    }
+
+    /**
+     * Updates the estimation with the round-trip time of a successful operation.
+     *
+     * @param operation The operation.
+     * @param rttNano The measured round-trip time in nanoseconds.
+     * @return the smoothed round-trip time in microseconds, or 0 if the measure is invalid.
+     */
+    long onOperationSucceeded(@NonNull GattOperation operation, long rttNano) {
+        if (rttNano < 0) {
+            return 0;
+        }
+        Estimate estimate = getEstimate(operation, true);
+        long rttUs = Math.max(1, rttNano / 1000);
+        if (estimate.srttUs == 0) {
+            estimate.srttUs = rttUs;
+            estimate.rttvarUs = rttUs >> 1;
+        } else {
+            long error = rttUs - estimate.srttUs;
+            estimate.rttvarUs += (Math.abs(error) - estimate.rttvarUs) >> RTTVAR_GAIN_SHIFT;
+            estimate.srttUs += error >> SRTT_GAIN_SHIFT;
+        }
+        estimate.backoffShift = 0;
+        return estimate.srttUs;
+    }
+
+    /**
+     * Backs off the timeout after an operation timeout.
+     *
+     * @param operation The operation that timed out.
+     */
+    void onOperationTimedOut(@NonNull GattOperation operation) {
+        Estimate estimate = getEstimate(operation, true);
+        if (estimate.backoffShift < MAX_BACKOFF_SHIFT) {
+            estimate.backoffShift++;
+        }
+    }
+
+    /**
+     * Returns the estimate for an operation.
+     *
+     * @param operation The operation.
+     * @param create <code>true</code> to create the estimate if missing.
+     * @return the estimate.
+     */
+    private Estimate getEstimate(@NonNull GattOperation operation, boolean create) {
+        HashMap<UUID, Estimate> typeEstimates = estimates.get(operation.getType());
+        BluetoothGattCharacteristic characteristic = operation.getTargetCharacteristic();
+        UUID uuid = null;
+        try {
+            uuid = (characteristic == null)?(null):(characteristic.getUuid());
+        } catch (Exception e) {
+            // Characteristic no more accessible, use the default estimate of the type
+        }
+        Estimate estimate = typeEstimates.get(uuid);
+        if (estimate == null && create) {
+            estimate = new Estimate();
+            typeEstimates.put(uuid, estimate);
+        }
+        return estimate;
+    }
+
+}
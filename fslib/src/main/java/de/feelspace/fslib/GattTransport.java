@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.content.Context;
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Connection to a GATT server used by the {@link GattController}.
+ *
+ * The transport decouples the GATT controller, the operation queue and the belt protocol from the
+ * Android Bluetooth stack. The default transport {@link AndroidGattTransport} uses
+ * <code>BluetoothGatt</code>. The unit tests connect the GATT controller to a simulated belt in
+ * the same process with another transport.
+ *
+ * The methods follow the semantic of <code>BluetoothGatt</code>: a method returns
+ * <code>true</code> when the procedure has been started, and the result is given later by a
+ * method of the {@link Callback}.
+ */
+public interface GattTransport {
+
+    /**
+     * Factory of transports.
+     */
+    interface Factory {
+
+        /**
+         * Starts the connection to a GATT server.
+         *
+         * @param context The context.
+         * @param device The device to connect to.
+         * @param autoConnect <code>true</code> to connect as soon as the device is available.
+         * @param callback The callback for GATT events.
+         * @param handler The handler on which the callback should be called.
+         * @return the transport of the connection, or <code>null</code> if the connection cannot be
+         * started.
+         */
+        @Nullable GattTransport connect(@NonNull Context context, @NonNull BluetoothDevice device,
+                                        boolean autoConnect, @NonNull Callback callback,
+                                        @NonNull Handler handler);
+    }
+
+    /**
+     * Callback for GATT events, with the same semantic as <code>BluetoothGattCallback</code>.
+     */
+    interface Callback {
+
+        /**
+         * Called when the connection state changes.
+         *
+         * @param gatt The transport.
+         * @param status The status of the operation (<code>BluetoothGatt.GATT_SUCCESS</code> or
+         *               error code).
+         * @param newState The new state (<code>BluetoothProfile.STATE_CONNECTED</code> or
+         *                 <code>BluetoothProfile.STATE_DISCONNECTED</code>).
+         */
+        void onConnectionStateChange(GattTransport gatt, int status, int newState);
+
+        /**
+         * Called when the service discovery is terminated.
+         *
+         * @param gatt The transport.
+         * @param status The status of the discovery.
+         */
+        void onServicesDiscovered(GattTransport gatt, int status);
+
+        /**
+         * Called when a characteristic has been read.
+         *
+         * @param gatt The transport.
+         * @param characteristic The characteristic.
+         * @param value The value read.
+         * @param status The status of the read.
+         */
+        void onCharacteristicRead(GattTransport gatt, BluetoothGattCharacteristic characteristic,
+                                  byte[] value, int status);
+
+        /**
+         * Called when a characteristic has been written.
+         *
+         * @param gatt The transport.
+         * @param characteristic The characteristic.
+         * @param status The status of the write.
+         */
+        void onCharacteristicWrite(GattTransport gatt, BluetoothGattCharacteristic characteristic,
+                                   int status);
+
+        /**
+         * Called when a notification or indication is received.
+         *
+         * @param gatt The transport.
+         * @param characteristic The characteristic.
+         * @param value The notified value.
+         */
+        void onCharacteristicChanged(GattTransport gatt,
+                                     BluetoothGattCharacteristic characteristic, byte[] value);
+
+        /**
+         * Called when a descriptor has been read.
+         *
+         * @param gatt The transport.
+         * @param descriptor The descriptor.
+         * @param status The status of the read.
+         */
+        void onDescriptorRead(GattTransport gatt, BluetoothGattDescriptor descriptor, int status);
+
+        /**
+         * Called when a descriptor has been written.
+         *
+         * @param gatt The transport.
+         * @param descriptor The descriptor.
+         * @param status The status of the write.
+         */
+        void onDescriptorWrite(GattTransport gatt, BluetoothGattDescriptor descriptor, int status);
+
+        /**
+         * Called when a reliable write is completed.
+         *
+         * @param gatt The transport.
+         * @param status The status of the reliable write.
+         */
+        void onReliableWriteCompleted(GattTransport gatt, int status);
+
+        /**
+         * Called when the MTU has been changed.
+         *
+         * @param gatt The transport.
+         * @param mtu The new MTU.
+         * @param status The status of the MTU request.
+         */
+        void onMtuChanged(GattTransport gatt, int mtu, int status);
+    }
+
+    /**
+     * Returns the connected device.
+     * @return the connected device.
+     */
+    @NonNull BluetoothDevice getDevice();
+
+    /**
+     * Disconnects from the GATT server. The disconnection is notified by the callback.
+     */
+    void disconnect();
+
+    /**
+     * Closes the transport. No more events are notified after closing.
+     */
+    void close();
+
+    /**
+     * Starts the service discovery.
+     * @return <code>true</code> if the service discovery has been started.
+     */
+    boolean discoverServices();
+
+    /**
+     * Returns the discovered services.
+     * @return the discovered services.
+     */
+    @NonNull List<BluetoothGattService> getServices();
+
+    /**
+     * Returns a discovered service.
+     *
+     * @param uuid The UUID of the service.
+     * @return the service, or <code>null</code> if the service has not been discovered.
+     */
+    @Nullable BluetoothGattService getService(@NonNull UUID uuid);
+
+    /**
+     * Starts the read of a characteristic.
+     *
+     * @param characteristic The characteristic.
+     * @return <code>true</code> if the read has been started.
+     */
+    boolean readCharacteristic(@NonNull BluetoothGattCharacteristic characteristic);
+
+    /**
+     * Starts the write of a characteristic with its current value and write type.
+     *
+     * @param characteristic The characteristic.
+     * @return <code>true</code> if the write has been started.
+     */
+    boolean writeCharacteristic(@NonNull BluetoothGattCharacteristic characteristic);
+
+    /**
+     * Starts the write of a descriptor with its current value.
+     *
+     * @param descriptor The descriptor.
+     * @return <code>true</code> if the write has been started.
+     */
+    boolean writeDescriptor(@NonNull BluetoothGattDescriptor descriptor);
+
+    /**
+     * Enables or disables the local reception of notifications and indications of a
+     * characteristic.
+     *
+     * @param characteristic The characteristic.
+     * @param enable <code>true</code> to enable notifications.
+     * @return <code>true</code> if the reception has been set.
+     */
+    boolean setCharacteristicNotification(@NonNull BluetoothGattCharacteristic characteristic,
+                                          boolean enable);
+
+    /**
+     * Starts a MTU request.
+     *
+     * @param mtu The requested MTU.
+     * @return <code>true</code> if the request has been started.
+     */
+    boolean requestMtu(int mtu);
+
+    /**
+     * Requests a connection priority.
+     *
+     * @param connectionPriority The connection priority
+     *                           (<code>BluetoothGatt.CONNECTION_PRIORITY_*</code>).
+     * @return <code>true</code> if the request has been sent.
+     */
+    boolean requestConnectionPriority(int connectionPriority);
+
+    /**
+     * Clears the cache of services.
+     * @return <code>true</code> if the cache has been cleared.
+     */
+    boolean refresh();
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+/**
+ * Estimator of the heading and angular velocity of the belt from the orientation notifications.
+ *
+ * The estimation is an alpha-beta filter on the circle: at each sample the heading is predicted
+ * with the current rate, and the residual to the measured heading corrects the heading (gain
+ * alpha) and the rate (gain beta). The heading can then be extrapolated to a future time, e.g.
+ * the time at which a vibration command reaches the motors. The extrapolation is bounded to
+ * {@link #MAX_PREDICTION_MS} to limit the error after the last sample.
+ *
+ * Timestamps are in nanoseconds of the monotonic clock of the GATT controller, i.e.
+ * System.nanoTime unless another clock is given to the controller. The estimator is thread-safe.
+ */
+public class HeadingRateEstimator {
+
+    /** Default gain of the heading correction. */
+    public static final float DEFAULT_ALPHA = 0.5f;
+
+    /** Default gain of the rate correction. */
+    public static final float DEFAULT_BETA = 0.1f;
+
+    /** Maximum interval between samples, the estimation is restarted after a longer interval. */
+    public static final long MAX_SAMPLE_INTERVAL_MS = 1000;
+
+    /** Maximum duration of the extrapolation after the last sample. */
+    public static final long MAX_PREDICTION_MS = 500;
+
+    // Gains
+    private final float alpha;
+    private final float beta;
+
+    // Estimation
+    private boolean initialized = false;
+    private long lastTimestampNano;
+    private double heading;
+    private double rateDegPerSec;
+
+    /**
+     * Creates an estimator with the default gains.
+     */
+    public HeadingRateEstimator() {
+        this(DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    /**
+     * Creates an estimator.
+     *
+     * @param alpha The gain of the heading correction in range ]0-1].
+     * @param beta The gain of the rate correction in range ]0-1], usually smaller than alpha.
+     * @throws IllegalArgumentException If a gain is out of range.
+     */
+    public HeadingRateEstimator(float alpha, float beta) {
+        if (!(alpha > 0 && alpha <= 1) || !(beta > 0 && beta <= 1)) {
+            throw new IllegalArgumentException("Gain out of range.");
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Updates the estimation with a heading sample. Samples must be given in order of time.
+     *
+     * @param timestampNano The time of the sample in nanoseconds.
+     * @param headingDeg The heading in degrees.
+     */
+    public synchronized void update(long timestampNano, float headingDeg) {
+        long intervalNano = timestampNano - lastTimestampNano;
+        if (!initialized || intervalNano > MAX_SAMPLE_INTERVAL_MS * 1_000_000L ||
+                intervalNano < 0) {
+            // (Re)start the estimation
+            initialized = true;
+            lastTimestampNano = timestampNano;
+            heading = normalizeAngle(headingDeg);
+            rateDegPerSec = 0;
+            return;
+        }
+        if (intervalNano == 0) {
+            // Correct the heading only
+            heading = normalizeAngle(heading + alpha * shortestRotation(heading, headingDeg));
+            return;
+        }
+        double intervalSec = intervalNano / 1e9;
+        double predicted = heading + rateDegPerSec * intervalSec;
+        double residual = shortestRotation(predicted, headingDeg);
+        heading = normalizeAngle(predicted + alpha * residual);
+        rateDegPerSec += beta * residual / intervalSec;
+        lastTimestampNano = timestampNano;
+    }
+
+    /**
+     * Restarts the estimation.
+     */
+    public synchronized void reset() {
+        initialized = false;
+        rateDegPerSec = 0;
+    }
+
+    /**
+     * Returns <code>true</code> if at least one sample has been received since the last reset.
+     *
+     * @return <code>true</code> if a heading is estimated.
+     */
+    public synchronized boolean hasEstimate() {
+        return initialized;
+    }
+
+    /**
+     * Returns the estimated angular velocity, positive clockwise.
+     *
+     * @return the angular velocity in degrees per second, 0 without estimation.
+     */
+    public synchronized float getHeadingRate() {
+        return (float) rateDegPerSec;
+    }
+
+    /**
+     * Returns the heading extrapolated at a given time.
+     *
+     * @param timeNano The time in nanoseconds.
+     * @return the heading in range [0-360[, or <code>Float.NaN</code> without estimation.
+     */
+    public synchronized float predictHeading(long timeNano) {
+        if (!initialized) {
+            return Float.NaN;
+        }
+        return (float) normalizeAngle(heading + rateDegPerSec * getPredictionSec(timeNano));
+    }
+
+    /**
+     * Returns the rotation predicted between the last sample and a given time.
+     *
+     * @param timeNano The time in nanoseconds.
+     * @return the rotation in degrees, positive clockwise, 0 without estimation.
+     */
+    public synchronized float predictRotation(long timeNano) {
+        if (!initialized) {
+            return 0;
+        }
+        return (float) (rateDegPerSec * getPredictionSec(timeNano));
+    }
+
+    /**
+     * Returns the bounded duration of extrapolation from the last sample.
+     */
+    private double getPredictionSec(long timeNano) {
+        long predictionNano = Math.max(0, Math.min(MAX_PREDICTION_MS * 1_000_000L,
+                timeNano - lastTimestampNano));
+        return predictionNano / 1e9;
+    }
+
+    /**
+     * Returns the shortest rotation from an angle to another, in range [-180-180[.
+     */
+    private static double shortestRotation(double from, double to) {
+        return normalizeAngle(to - from + 180.) - 180.;
+    }
+
+    /**
+     * Returns an angle in range [0-360[.
+     */
+    private static double normalizeAngle(double angle) {
+        angle = angle % 360.;
+        return (angle < 0)?(angle + 360.):(angle);
+    }
+
+}
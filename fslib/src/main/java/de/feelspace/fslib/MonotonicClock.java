@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+/**
+ * Monotonic clock of the GATT controller and timer wheel.
+ *
+ * The system clock is used by default. A virtual clock can be given with the executor of the
+ * controller to run the connection and the operations in simulated time.
+ */
+interface MonotonicClock {
+
+    /** Monotonic clock of the system. */
+    MonotonicClock SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current time.
+     * @return the current time in nanoseconds, only meaningful as a difference of times.
+     */
+    long nanoTime();
+
+}
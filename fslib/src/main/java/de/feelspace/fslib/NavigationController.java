@@ -8,8 +8,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -36,11 +34,11 @@ public class NavigationController {
     // Flag for scheduled vibration command
     private @NonNull AtomicBoolean isVibrationCommandScheduled = new AtomicBoolean(false);
 
-    // Executor for delayed vibration command
-    private @NonNull ScheduledThreadPoolExecutor executor;
+    // Timer wheel for delayed vibration command
+    private @NonNull TimerWheel timerWheel;
 
     // Scheduled vibration command
-    private @Nullable ScheduledFuture vibrationCommandTask;
+    private @Nullable TimerWheel.Timeout vibrationCommandTask;
 
     // Last vibration command send time
     private long lastVibrationCommandNanoTime = 0;
@@ -60,6 +58,10 @@ public class NavigationController {
     // Flag that indicate that the current pause mode has been set by the application
     private boolean isPauseModeForNavigation = false;
 
+    // Reconnection policy during the navigation, and policy of the application to restore
+    private @Nullable ReconnectionPolicy navigationReconnectionPolicy;
+    private @Nullable ReconnectionPolicy appReconnectionPolicy;
+
     // Flag for compass accuracy signal
     private Boolean compassAccuracySignalEnabled = null;
 
@@ -84,8 +86,9 @@ public class NavigationController {
         BeltListener beltListener = new BeltListener();
         beltConnection.addConnectionListener(beltListener);
         beltController.addCommandListener(beltListener);
+        beltController.addOrientationListener(beltListener);
         this.navigationState = NavigationState.STOPPED;
-        executor = beltConnection.getExecutor();
+        timerWheel = beltConnection.getTimerWheel();
     }
 
     /**
@@ -304,6 +307,13 @@ public class NavigationController {
         isMagneticBearingDirection = isMagneticBearing;
         navigationSignal = signal;
         navigationState = NavigationState.NAVIGATING;
+        beltController.setLowLatencyMode(true);
+        if (navigationReconnectionPolicy == null) {
+            // Keep the policy of the application for the end of the navigation
+            appReconnectionPolicy = beltConnection.getReconnectionPolicy();
+            navigationReconnectionPolicy = ReconnectionPolicy.createUnlimitedPolicy();
+            beltConnection.setReconnectionPolicy(navigationReconnectionPolicy);
+        }
         if (beltConnection.getState() == BeltConnectionState.STATE_CONNECTED) {
             if (beltController.getMode() == BeltMode.APP) {
                 scheduleOrSendVibrationCommand();
@@ -344,6 +354,7 @@ public class NavigationController {
             return;
         }
         navigationState = NavigationState.PAUSED;
+        beltController.setLowLatencyMode(false);
         if (beltConnection.getState() == BeltConnectionState.STATE_CONNECTED &&
                 beltController.getMode() == BeltMode.APP) {
             beltController.changeMode(BeltMode.PAUSE);
@@ -359,6 +370,16 @@ public class NavigationController {
             return;
         }
         navigationState = NavigationState.STOPPED;
+        beltController.setLowLatencyMode(false);
+        if (navigationReconnectionPolicy != null) {
+            // Restore the policy of the application, unless changed during the navigation
+            if (beltConnection.getReconnectionPolicy() == navigationReconnectionPolicy &&
+                    appReconnectionPolicy != null) {
+                beltConnection.setReconnectionPolicy(appReconnectionPolicy);
+            }
+            navigationReconnectionPolicy = null;
+            appReconnectionPolicy = null;
+        }
         if (beltConnection.getState() == BeltConnectionState.STATE_CONNECTED &&
                 (beltController.getMode() == BeltMode.APP ||
                         (beltController.getMode() == BeltMode.PAUSE && isPauseModeForNavigation))) {
@@ -511,7 +532,7 @@ public class NavigationController {
             } else {
                 // Schedule command
                 try {
-                    vibrationCommandTask = executor.schedule(new Runnable() {
+                    vibrationCommandTask = timerWheel.schedule(new Runnable() {
                         @Override
                         public void run() {
                             sendVibrationCommand(beltConnection, navigationDirection,
@@ -754,9 +775,11 @@ public class NavigationController {
     }
 
     /**
-     * Connection listener and command listener for the navigation controller.
+     * Connection listener, command listener and orientation listener for the navigation
+     * controller.
      */
-    class BeltListener implements BeltConnectionListener, BeltCommandListener {
+    class BeltListener implements BeltConnectionListener, BeltCommandListener,
+            BeltOrientationListener {
 
         @Override
         public void onBeltModeChanged(BeltMode mode) {
@@ -899,9 +922,13 @@ public class NavigationController {
 
         @Override
         public void onBeltOrientationUpdated(BeltOrientation orientation) {
+            // Nothing to do, the orientation is notified with 'onBeltOrientationNotified'
+        }
+
+        @Override
+        public void onBeltOrientationNotified(@NonNull OrientationSnapshot orientation) {
             notifyBeltOrientationUpdated(orientation.getBeltHeading(),
-                    (orientation.isOrientationAccurate()==null)?(true):
-                            (orientation.isOrientationAccurate()));
+                    orientation.isOrientationAccurate());
         }
 
         @Override
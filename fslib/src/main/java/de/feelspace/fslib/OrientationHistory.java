@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Fixed-size ring buffer of the last orientation samples of the belt.
+ *
+ * The samples are stored in preallocated arrays so that recording an orientation does not
+ * allocate. When the buffer is full, the oldest samples are overwritten. Samples are recorded in
+ * order of reception with the monotonic clock of the GATT controller, queries are done with
+ * timestamps of the same clock.
+ *
+ * Headings are interpolated and averaged on the circle, e.g. the mean of 350 and 10 degrees is 0
+ * degree. The history is thread-safe.
+ */
+public class OrientationHistory {
+
+    /** Default number of samples. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    // Samples, as parallel arrays
+    private final int capacity;
+    private final @NonNull long[] timestampNano;
+    private final @NonNull long[] sequenceNumber;
+    private final @NonNull int[] sourceId;
+    private final @NonNull int[] beltHeading;
+    private final @NonNull int[] controlBoxHeading;
+    private final @NonNull int[] controlBoxRoll;
+    private final @NonNull int[] controlBoxPitch;
+    private final @NonNull int[] accuracy;
+    private final @NonNull int[] magnetometerStatus;
+    private final @NonNull int[] accelerometerStatus;
+    private final @NonNull int[] gyroscopeStatus;
+    private final @NonNull int[] fusionStatus;
+    private final @NonNull boolean[] inaccurateOrientation;
+
+    // Index of the next sample and number of samples
+    private int next = 0;
+    private int count = 0;
+
+    /**
+     * Creates an orientation history.
+     *
+     * @param capacity The number of samples, at least one.
+     */
+    public OrientationHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        timestampNano = new long[this.capacity];
+        sequenceNumber = new long[this.capacity];
+        sourceId = new int[this.capacity];
+        beltHeading = new int[this.capacity];
+        controlBoxHeading = new int[this.capacity];
+        controlBoxRoll = new int[this.capacity];
+        controlBoxPitch = new int[this.capacity];
+        accuracy = new int[this.capacity];
+        magnetometerStatus = new int[this.capacity];
+        accelerometerStatus = new int[this.capacity];
+        gyroscopeStatus = new int[this.capacity];
+        fusionStatus = new int[this.capacity];
+        inaccurateOrientation = new boolean[this.capacity];
+    }
+
+    /**
+     * Records an orientation sample. The timestamp of the sample must not be older than the
+     * timestamp of the last recorded sample.
+     *
+     * @param sample The orientation sample.
+     */
+    public synchronized void add(@NonNull OrientationSnapshot sample) {
+        int i = next;
+        timestampNano[i] = sample.getTimestampNano();
+        sequenceNumber[i] = sample.getSequenceNumber();
+        sourceId[i] = sample.getSourceId();
+        beltHeading[i] = sample.getBeltHeading();
+        controlBoxHeading[i] = sample.getControlBoxHeading();
+        controlBoxRoll[i] = sample.getControlBoxRoll();
+        controlBoxPitch[i] = sample.getControlBoxPitch();
+        accuracy[i] = sample.getAccuracy();
+        magnetometerStatus[i] = sample.getMagnetometerStatus();
+        accelerometerStatus[i] = sample.getAccelerometerStatus();
+        gyroscopeStatus[i] = sample.getGyroscopeStatus();
+        fusionStatus[i] = sample.getFusionStatus();
+        inaccurateOrientation[i] = !sample.isOrientationAccurate();
+        next = (next + 1) % capacity;
+        if (count < capacity) {
+            count++;
+        }
+    }
+
+    /**
+     * Returns the maximum number of samples.
+     * @return the maximum number of samples.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of samples.
+     * @return the number of samples.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Removes all samples.
+     */
+    public synchronized void clear() {
+        next = 0;
+        count = 0;
+    }
+
+    /**
+     * Copies a sample.
+     *
+     * @param index The index of the sample, 0 for the oldest sample.
+     * @param target The snapshot in which the sample is copied.
+     * @return <code>true</code> if the sample has been copied, <code>false</code> if the index is
+     * out of range.
+     */
+    public synchronized boolean getSample(int index, @NonNull OrientationSnapshot target) {
+        if (index < 0 || index >= count) {
+            return false;
+        }
+        copySample(physicalIndex(index), target);
+        return true;
+    }
+
+    /**
+     * Copies the most recent sample.
+     *
+     * @param target The snapshot in which the sample is copied.
+     * @return <code>true</code> if the sample has been copied, <code>false</code> if the history is
+     * empty.
+     */
+    public synchronized boolean getLatestSample(@NonNull OrientationSnapshot target) {
+        return getSample(count-1, target);
+    }
+
+    /**
+     * Copies the samples received in a time window, from the oldest to the most recent. When there
+     * are more samples than snapshots, the most recent samples are copied.
+     *
+     * @param fromNano The start of the window (inclusive) in nanoseconds.
+     * @param toNano The end of the window (inclusive) in nanoseconds.
+     * @param targets The snapshots in which the samples are copied.
+     * @return the number of copied samples.
+     */
+    public synchronized int getSamplesInWindow(long fromNano, long toNano,
+                                               @NonNull OrientationSnapshot[] targets) {
+        int first = firstIndexAfter(fromNano - 1);
+        int end = firstIndexAfter(toNano);
+        first = Math.max(first, end - targets.length);
+        for (int i=first; i<end; i++) {
+            copySample(physicalIndex(i), targets[i-first]);
+        }
+        return Math.max(0, end - first);
+    }
+
+    /**
+     * Returns the number of samples received in a time window.
+     *
+     * @param fromNano The start of the window (inclusive) in nanoseconds.
+     * @param toNano The end of the window (inclusive) in nanoseconds.
+     * @return the number of samples in the window.
+     */
+    public synchronized int countSamplesInWindow(long fromNano, long toNano) {
+        return Math.max(0, firstIndexAfter(toNano) - firstIndexAfter(fromNano - 1));
+    }
+
+    /**
+     * Returns the heading of the belt at a given time, interpolated on the circle between the
+     * samples before and after that time. Before the oldest sample and after the most recent
+     * sample, the heading of that sample is returned.
+     *
+     * @param timeNano The time in nanoseconds.
+     * @return the heading of the belt in range [0-360[, or <code>Float.NaN</code> if the history
+     * is empty.
+     */
+    public synchronized float getBeltHeadingAt(long timeNano) {
+        return interpolateAt(timeNano, beltHeading, true);
+    }
+
+    /**
+     * Copies the orientation at a given time. The headings and roll are interpolated on the circle
+     * and the pitch linearly between the samples before and after that time, and rounded to
+     * degrees. The other values, timestamp and sequence number are those of the closest sample.
+     * Before the oldest sample and after the most recent sample, that sample is copied.
+     *
+     * @param timeNano The time in nanoseconds.
+     * @param target The snapshot in which the orientation is copied.
+     * @return <code>true</code> if the orientation has been copied, <code>false</code> if the
+     * history is empty.
+     */
+    public synchronized boolean getSampleAt(long timeNano, @NonNull OrientationSnapshot target) {
+        if (count == 0) {
+            return false;
+        }
+        int after = firstIndexAfter(timeNano);
+        int before = Math.max(0, after - 1);
+        after = Math.min(after, count - 1);
+        int p0 = physicalIndex(before);
+        int p1 = physicalIndex(after);
+        boolean closestIsAfter = (timestampNano[p1] - timeNano) < (timeNano - timestampNano[p0]);
+        copySample((closestIsAfter)?(p1):(p0), target);
+        target.setAngles(
+                Math.round(interpolateAt(timeNano, beltHeading, true)) % 360,
+                Math.round(interpolateAt(timeNano, controlBoxHeading, true)) % 360,
+                normalizeSignedAngle(Math.round(interpolateAt(timeNano, controlBoxRoll, true))),
+                Math.round(interpolateAt(timeNano, controlBoxPitch, false)));
+        return true;
+    }
+
+    /**
+     * Returns the circular mean of the heading of the belt in a time window.
+     *
+     * @param fromNano The start of the window (inclusive) in nanoseconds.
+     * @param toNano The end of the window (inclusive) in nanoseconds.
+     * @return the mean heading in range [0-360[, or <code>Float.NaN</code> if there is no sample
+     * in the window or the headings cancel each other out.
+     */
+    public synchronized float getBeltHeadingMean(long fromNano, long toNano) {
+        int first = firstIndexAfter(fromNano - 1);
+        int end = firstIndexAfter(toNano);
+        double sumSin = 0;
+        double sumCos = 0;
+        for (int i=first; i<end; i++) {
+            double rad = Math.toRadians(beltHeading[physicalIndex(i)]);
+            sumSin += Math.sin(rad);
+            sumCos += Math.cos(rad);
+        }
+        if (end <= first || (Math.abs(sumSin) < 1e-9 && Math.abs(sumCos) < 1e-9)) {
+            return Float.NaN;
+        }
+        return (float) normalizeAngle(Math.toDegrees(Math.atan2(sumSin, sumCos)));
+    }
+
+    /**
+     * Returns the circular variance of the heading of the belt in a time window, i.e. one minus
+     * the mean resultant length of the headings. The variance is 0 when all headings are equal and
+     * close to 1 when the headings are spread around the circle.
+     *
+     * @param fromNano The start of the window (inclusive) in nanoseconds.
+     * @param toNano The end of the window (inclusive) in nanoseconds.
+     * @return the circular variance in range [0-1], or <code>Float.NaN</code> if there is no
+     * sample in the window.
+     */
+    public synchronized float getBeltHeadingVariance(long fromNano, long toNano) {
+        int first = firstIndexAfter(fromNano - 1);
+        int end = firstIndexAfter(toNano);
+        if (end <= first) {
+            return Float.NaN;
+        }
+        double sumSin = 0;
+        double sumCos = 0;
+        for (int i=first; i<end; i++) {
+            double rad = Math.toRadians(beltHeading[physicalIndex(i)]);
+            sumSin += Math.sin(rad);
+            sumCos += Math.cos(rad);
+        }
+        double meanResultantLength = Math.sqrt(sumSin*sumSin + sumCos*sumCos) / (end - first);
+        return (float) Math.max(0., Math.min(1., 1. - meanResultantLength));
+    }
+
+    /**
+     * Returns the index in the arrays of a sample.
+     *
+     * @param index The index of the sample, 0 for the oldest sample.
+     * @return the index in the arrays.
+     */
+    private int physicalIndex(int index) {
+        return (next - count + index + capacity) % capacity;
+    }
+
+    /**
+     * Returns the index of the first sample with a timestamp after a given time, or the number of
+     * samples if there is no such sample. The timestamps are in increasing order.
+     */
+    private int firstIndexAfter(long timeNano) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            // Note: Timestamps are compared by difference to support the overflow of the clock
+            if (timestampNano[physicalIndex(mid)] - timeNano > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Interpolates a value between the samples before and after a given time.
+     *
+     * @param timeNano The time in nanoseconds.
+     * @param values The values of the samples.
+     * @param circular <code>true</code> to interpolate angles on the circle.
+     * @return the interpolated value, in range [0-360[ for angles, or <code>Float.NaN</code> if the
+     * history is empty.
+     */
+    private float interpolateAt(long timeNano, @NonNull int[] values, boolean circular) {
+        if (count == 0) {
+            return Float.NaN;
+        }
+        int after = firstIndexAfter(timeNano);
+        if (after == 0 || after == count) {
+            float value = values[physicalIndex((after == 0)?(0):(count - 1))];
+            return (circular)?((float) normalizeAngle(value)):(value);
+        }
+        int p0 = physicalIndex(after - 1);
+        int p1 = physicalIndex(after);
+        long interval = timestampNano[p1] - timestampNano[p0];
+        double ratio = (interval <= 0)?(1.):((double) (timeNano - timestampNano[p0]) / interval);
+        double delta = values[p1] - values[p0];
+        if (circular) {
+            // Shortest rotation from the first to the second angle
+            delta = normalizeAngle(delta + 180.) - 180.;
+            return (float) normalizeAngle(values[p0] + delta * ratio);
+        }
+        return (float) (values[p0] + delta * ratio);
+    }
+
+    /**
+     * Copies a sample in a snapshot.
+     */
+    private void copySample(int i, @NonNull OrientationSnapshot target) {
+        target.set(timestampNano[i], sequenceNumber[i], sourceId[i], beltHeading[i],
+                controlBoxHeading[i], controlBoxRoll[i], controlBoxPitch[i], accuracy[i],
+                magnetometerStatus[i], accelerometerStatus[i], gyroscopeStatus[i],
+                fusionStatus[i], inaccurateOrientation[i]);
+    }
+
+    /**
+     * Returns an angle in range [0-360[.
+     */
+    private static double normalizeAngle(double angle) {
+        angle = angle % 360.;
+        if (angle < 0) {
+            // Note: A tiny negative angle is rounded to 360
+            angle += 360.;
+        }
+        return (angle >= 360.)?(0.):(angle);
+    }
+
+    /**
+     * Returns an angle in range [-180-180[.
+     */
+    private static int normalizeSignedAngle(int angle) {
+        return (int) normalizeAngle(angle + 180) - 180;
+    }
+
+}
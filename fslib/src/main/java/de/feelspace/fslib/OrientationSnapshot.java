@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import de.feelspace.fslib.protocol.OrientationPacket;
+
+/**
+ * Orientation of the belt with primitive values.
+ *
+ * The snapshot notified to a {@link BeltOrientationListener} is reused for every orientation
+ * notification and is only valid during the callback. Use {@link #copyTo(OrientationSnapshot)} or
+ * {@link #toBeltOrientation()} to keep the orientation.
+ */
+public class OrientationSnapshot {
+
+    // Time of reception and sequence number of the notification
+    private long timestampNano;
+    private long sequenceNumber;
+
+    // Orientation values
+    private int sourceId;
+    private int beltHeading;
+    private int controlBoxHeading;
+    private int controlBoxRoll;
+    private int controlBoxPitch;
+    private int accuracy;
+    private int magnetometerStatus;
+    private int accelerometerStatus;
+    private int gyroscopeStatus;
+    private int fusionStatus;
+    private boolean inaccurateOrientation;
+
+    /**
+     * Sets the values from a decoded orientation packet.
+     *
+     * @param packet The decoded packet.
+     * @param timestampNano The time of reception in nanoseconds on the clock of the GATT
+     * controller.
+     * @param sequenceNumber The sequence number of the notification.
+     */
+    void set(@NonNull OrientationPacket packet, long timestampNano, long sequenceNumber) {
+        this.timestampNano = timestampNano;
+        this.sequenceNumber = sequenceNumber;
+        sourceId = packet.getSourceId();
+        beltHeading = packet.getBeltHeading();
+        controlBoxHeading = packet.getControlBoxHeading();
+        controlBoxRoll = packet.getControlBoxRoll();
+        controlBoxPitch = packet.getControlBoxPitch();
+        accuracy = packet.getAccuracy();
+        magnetometerStatus = packet.getMagnetometerStatus();
+        accelerometerStatus = packet.getAccelerometerStatus();
+        gyroscopeStatus = packet.getGyroscopeStatus();
+        fusionStatus = packet.getFusionStatus();
+        inaccurateOrientation = packet.isOrientationInaccurate();
+    }
+
+    /**
+     * Sets all values.
+     */
+    void set(long timestampNano, long sequenceNumber, int sourceId, int beltHeading,
+             int controlBoxHeading, int controlBoxRoll, int controlBoxPitch, int accuracy,
+             int magnetometerStatus, int accelerometerStatus, int gyroscopeStatus,
+             int fusionStatus, boolean inaccurateOrientation) {
+        this.timestampNano = timestampNano;
+        this.sequenceNumber = sequenceNumber;
+        this.sourceId = sourceId;
+        this.beltHeading = beltHeading;
+        this.controlBoxHeading = controlBoxHeading;
+        this.controlBoxRoll = controlBoxRoll;
+        this.controlBoxPitch = controlBoxPitch;
+        this.accuracy = accuracy;
+        this.magnetometerStatus = magnetometerStatus;
+        this.accelerometerStatus = accelerometerStatus;
+        this.gyroscopeStatus = gyroscopeStatus;
+        this.fusionStatus = fusionStatus;
+        this.inaccurateOrientation = inaccurateOrientation;
+    }
+
+    /**
+     * Sets the angles, e.g. after interpolation.
+     */
+    void setAngles(int beltHeading, int controlBoxHeading, int controlBoxRoll,
+                   int controlBoxPitch) {
+        this.beltHeading = beltHeading;
+        this.controlBoxHeading = controlBoxHeading;
+        this.controlBoxRoll = controlBoxRoll;
+        this.controlBoxPitch = controlBoxPitch;
+    }
+
+    /**
+     * Copies the values of this snapshot into another snapshot.
+     *
+     * @param target The target snapshot.
+     */
+    public void copyTo(@NonNull OrientationSnapshot target) {
+        target.timestampNano = timestampNano;
+        target.sequenceNumber = sequenceNumber;
+        target.sourceId = sourceId;
+        target.beltHeading = beltHeading;
+        target.controlBoxHeading = controlBoxHeading;
+        target.controlBoxRoll = controlBoxRoll;
+        target.controlBoxPitch = controlBoxPitch;
+        target.accuracy = accuracy;
+        target.magnetometerStatus = magnetometerStatus;
+        target.accelerometerStatus = accelerometerStatus;
+        target.gyroscopeStatus = gyroscopeStatus;
+        target.fusionStatus = fusionStatus;
+        target.inaccurateOrientation = inaccurateOrientation;
+    }
+
+    /**
+     * Returns an immutable copy of the orientation.
+     *
+     * @return the orientation.
+     */
+    public @NonNull BeltOrientation toBeltOrientation() {
+        return new BeltOrientation(sourceId, beltHeading, controlBoxHeading, controlBoxRoll,
+                controlBoxPitch, accuracy, magnetometerStatus, accelerometerStatus,
+                gyroscopeStatus, fusionStatus, inaccurateOrientation);
+    }
+
+    /**
+     * Returns the time of reception of the orientation in nanoseconds on the clock of the GATT
+     * controller, i.e. {@link System#nanoTime()} unless another clock is given to the controller.
+     *
+     * @return the time of reception in nanoseconds.
+     */
+    public long getTimestampNano() {
+        return timestampNano;
+    }
+
+    /**
+     * Returns the sequence number of the orientation notification since the connection.
+     *
+     * @return the sequence number of the notification.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Returns the ID of the orientation source.
+     *
+     * @return the ID of the orientation source.
+     */
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * Returns the heading of the belt, adjusted with the heading offset.
+     *
+     * @return the heading of the belt in degrees.
+     */
+    public int getBeltHeading() {
+        return beltHeading;
+    }
+
+    /**
+     * Returns the heading of the control box.
+     *
+     * @return the heading of the control box in degrees.
+     */
+    public int getControlBoxHeading() {
+        return controlBoxHeading;
+    }
+
+    /**
+     * Returns the roll of the control box.
+     *
+     * @return the roll of the control box in degrees.
+     */
+    public int getControlBoxRoll() {
+        return controlBoxRoll;
+    }
+
+    /**
+     * Returns the pitch of the control box.
+     *
+     * @return the pitch of the control box in degrees.
+     */
+    public int getControlBoxPitch() {
+        return controlBoxPitch;
+    }
+
+    /**
+     * Returns the accuracy of the orientation.
+     *
+     * @return the accuracy of the orientation.
+     */
+    public int getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Returns the status of the magnetometer.
+     *
+     * @return the status of the magnetometer.
+     */
+    public int getMagnetometerStatus() {
+        return magnetometerStatus;
+    }
+
+    /**
+     * Returns the status of the accelerometer.
+     *
+     * @return the status of the accelerometer.
+     */
+    public int getAccelerometerStatus() {
+        return accelerometerStatus;
+    }
+
+    /**
+     * Returns the status of the gyroscope.
+     *
+     * @return the status of the gyroscope.
+     */
+    public int getGyroscopeStatus() {
+        return gyroscopeStatus;
+    }
+
+    /**
+     * Returns the status of the sensor fusion.
+     *
+     * @return the status of the sensor fusion.
+     */
+    public int getFusionStatus() {
+        return fusionStatus;
+    }
+
+    /**
+     * Returns <code>true</code> if the orientation is accurate.
+     *
+     * @return <code>true</code> if the orientation is accurate.
+     */
+    public boolean isOrientationAccurate() {
+        return !inaccurateOrientation;
+    }
+
+}
@@ -20,6 +20,17 @@ public enum OrientationType {
     // Value of the item
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final OrientationType[] ITEMS_BY_VALUE = new OrientationType[256];
+
+    static {
+        for (OrientationType item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -45,12 +56,8 @@ public enum OrientationType {
      * @return The item corresponding to the value or the default item.
      */
     public static OrientationType fromValue(byte v, OrientationType defaultItem) {
-        for (OrientationType item: OrientationType.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return defaultItem;
+        OrientationType item = ITEMS_BY_VALUE[v & 0xFF];
+        return (item == null)?(defaultItem):(item);
     }
 
 
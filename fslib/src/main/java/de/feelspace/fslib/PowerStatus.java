@@ -35,6 +35,17 @@ public enum PowerStatus {
     // Value of the item
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final PowerStatus[] ITEMS_BY_VALUE = new PowerStatus[256];
+
+    static {
+        for (PowerStatus item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -60,12 +71,8 @@ public enum PowerStatus {
      * @return The item corresponding to the value or the default item.
      */
     public static PowerStatus fromValue(byte v, PowerStatus defaultItem) {
-        for (PowerStatus item: PowerStatus.values()) {
-            if (item.value == v) {
-                return item;
-            }
-        }
-        return defaultItem;
+        PowerStatus item = ITEMS_BY_VALUE[v & 0xFF];
+        return (item == null)?(defaultItem):(item);
     }
 
     @Override
@@ -7,11 +7,16 @@
  */
 package de.feelspace.fslib;
 
+import de.feelspace.fslib.protocol.BeltPacketEncoder;
+
 /**
  * Command to start a pulse on the belt.
  */
 public class PulseCommand {
 
+    /** Size of the packet of the command. */
+    public static final int PACKET_SIZE = BeltPacketEncoder.PULSE_PACKET_SIZE;
+
     // Channel index
     private int channelIndex;
 
@@ -58,6 +63,23 @@ public class PulseCommand {
             int  intensity, int onDurationMs, int pulseIterations, int patternIterations,
             int pulsePeriodMs, int patternPeriodMs, ResetProgressOption resetProgressOption,
             boolean exclusiveChannel, boolean clearOtherChannels) {
+        set(channelIndex, orientationType, orientationValue, intensity, onDurationMs,
+                pulseIterations, patternIterations, pulsePeriodMs, patternPeriodMs,
+                resetProgressOption, exclusiveChannel, clearOtherChannels);
+    }
+
+    /**
+     * Changes the values of the command. A command object can be reused with this method to avoid
+     * an allocation for each command.
+     *
+     * @throws IllegalArgumentException If an argument has illegal value. The command is not
+     * changed in that case.
+     */
+    public void set(
+            int channelIndex, OrientationType orientationType, int orientationValue,
+            int  intensity, int onDurationMs, int pulseIterations, int patternIterations,
+            int pulsePeriodMs, int patternPeriodMs, ResetProgressOption resetProgressOption,
+            boolean exclusiveChannel, boolean clearOtherChannels) {
         if (channelIndex < 0 || channelIndex > 5) {
             throw new IllegalArgumentException("Channel index must be in range [0-5].");
         }
@@ -128,25 +150,24 @@ public class PulseCommand {
      * @return the packet for this pulse command.
      */
     public byte[] getPacket() {
-        return new byte[] {
-                (byte) 0x40,
-                (byte) channelIndex,
-                orientationType.getValue(),
-                (byte) (orientationValue & 0xFF),
-                (byte) ((orientationValue >> 8) & 0xFF),
-                (byte) intensity,
-                (byte) (onDurationMs & 0xFF),
-                (byte) ((onDurationMs >> 8) & 0xFF),
-                (byte) pulseIterations,
-                (byte) (patternIterations & 0xFF),
-                (byte) (pulsePeriodMs & 0xFF),
-                (byte) ((pulsePeriodMs >> 8) & 0xFF),
-                (byte) (patternPeriodMs & 0xFF),
-                (byte) ((patternPeriodMs >> 8) & 0xFF),
-                resetProgressOption.getValue(),
-                (byte) ((exclusiveChannel)?(0x01):(0x00)),
-                (byte) ((clearOtherChannels)?(0x01):(0x00))
-        };
+        return BeltPacketEncoder.encodePulse(channelIndex, orientationType.getValue(),
+                orientationValue, intensity, onDurationMs, pulseIterations, patternIterations,
+                pulsePeriodMs, patternPeriodMs, resetProgressOption.getValue(), exclusiveChannel,
+                clearOtherChannels);
+    }
+
+    /**
+     * Encodes the packet of this pulse command into a buffer.
+     *
+     * @param buffer The buffer, with at least {@link #PACKET_SIZE} bytes from the offset.
+     * @param offset The offset of the packet in the buffer.
+     * @return the size of the packet.
+     */
+    public int encode(byte[] buffer, int offset) {
+        return BeltPacketEncoder.encodePulse(buffer, offset, channelIndex,
+                orientationType.getValue(), orientationValue, intensity, onDurationMs,
+                pulseIterations, patternIterations, pulsePeriodMs, patternPeriodMs,
+                resetProgressOption.getValue(), exclusiveChannel, clearOtherChannels);
     }
 
 }
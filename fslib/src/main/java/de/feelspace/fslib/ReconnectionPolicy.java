@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy for the reconnection attempts after a connection loss.
+ *
+ * The first attempt is made after a short delay (immediately by default), and the next attempts
+ * after an exponentially increasing delay with random jitter, so that a brief radio dropout is
+ * recovered quickly while long outages do not flood the Bluetooth stack. After a given number of
+ * attempts, the reconnection can be delegated to the Android stack in background
+ * ('autoConnect' mode) that connects as soon as the belt is in range.
+ *
+ * Policies are immutable.
+ */
+public class ReconnectionPolicy {
+
+    /** Value for an unlimited number of attempts. */
+    public static final int UNLIMITED_ATTEMPTS = -1;
+
+    /** Value to never use the 'autoConnect' mode. */
+    public static final int NO_AUTO_CONNECT = -1;
+
+    // Maximum number of attempts
+    private final int maxAttempts;
+
+    // Delay before the first attempt
+    private final long firstDelayMs;
+
+    // Exponential backoff for next attempts
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final float multiplier;
+
+    // Proportion of random jitter in [0, 1]
+    private final float jitter;
+
+    // Number of attempts before using the 'autoConnect' mode
+    private final int autoConnectAfterAttempts;
+
+    /**
+     * Creates a reconnection policy.
+     *
+     * @param maxAttempts The maximum number of attempts, or {@link #UNLIMITED_ATTEMPTS}.
+     * @param firstDelayMs The delay before the first attempt in milliseconds.
+     * @param baseDelayMs The delay before the second attempt in milliseconds.
+     * @param maxDelayMs The maximum delay between two attempts in milliseconds.
+     * @param multiplier The factor applied to the delay after each attempt, at least 1.
+     * @param jitter The proportion of the delay that is random, in [0, 1].
+     * @param autoConnectAfterAttempts The number of attempts after which the 'autoConnect' mode is
+     *                                 used, or {@link #NO_AUTO_CONNECT}.
+     */
+    public ReconnectionPolicy(int maxAttempts, long firstDelayMs, long baseDelayMs,
+                              long maxDelayMs, float multiplier, float jitter,
+                              int autoConnectAfterAttempts) {
+        this.maxAttempts = (maxAttempts < 0)?(UNLIMITED_ATTEMPTS):(maxAttempts);
+        this.firstDelayMs = Math.max(0, firstDelayMs);
+        this.baseDelayMs = Math.max(0, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.multiplier = Math.max(1.f, multiplier);
+        this.jitter = Math.max(0.f, Math.min(1.f, jitter));
+        this.autoConnectAfterAttempts = (autoConnectAfterAttempts < 0)?
+                (NO_AUTO_CONNECT):(autoConnectAfterAttempts);
+    }
+
+    /**
+     * Returns the default policy: an immediate first attempt, then up to four attempts with a
+     * delay from 0.5 to 4 seconds.
+     *
+     * @return the default policy.
+     */
+    public static @NonNull ReconnectionPolicy createDefaultPolicy() {
+        return new ReconnectionPolicy(5, 0, 500, 4000, 2.f, 0.5f, NO_AUTO_CONNECT);
+    }
+
+    /**
+     * Returns a policy for navigation sessions, with unlimited attempts. After 8 attempts, the
+     * reconnection is delegated to the Android stack in 'autoConnect' mode.
+     *
+     * @return a policy with unlimited attempts.
+     */
+    public static @NonNull ReconnectionPolicy createUnlimitedPolicy() {
+        return new ReconnectionPolicy(UNLIMITED_ATTEMPTS, 0, 500, 8000, 2.f, 0.5f, 8);
+    }
+
+    /**
+     * Returns a policy with a fixed delay between attempts and no jitter.
+     *
+     * @param delayMs The delay before each attempt in milliseconds.
+     * @param maxAttempts The maximum number of attempts.
+     * @return a policy with a fixed delay.
+     */
+    public static @NonNull ReconnectionPolicy createFixedDelayPolicy(long delayMs,
+                                                                     int maxAttempts) {
+        return new ReconnectionPolicy(maxAttempts, delayMs, delayMs, delayMs, 1.f, 0.f,
+                NO_AUTO_CONNECT);
+    }
+
+    /**
+     * Returns <code>true</code> if an attempt can be made.
+     *
+     * @param attempt The index of the attempt, starting at 0.
+     * @return <code>true</code> if the attempt can be made.
+     */
+    public boolean isAttemptAllowed(int attempt) {
+        return maxAttempts == UNLIMITED_ATTEMPTS || attempt < maxAttempts;
+    }
+
+    /**
+     * Returns the delay before an attempt, including jitter.
+     *
+     * @param attempt The index of the attempt, starting at 0.
+     * @return the delay in milliseconds.
+     */
+    public long getDelayMs(int attempt) {
+        if (attempt <= 0) {
+            return firstDelayMs;
+        }
+        double delay = baseDelayMs * Math.pow(multiplier, attempt - 1);
+        if (delay > maxDelayMs) {
+            delay = maxDelayMs;
+        }
+        if (jitter > 0) {
+            delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+        return (long) delay;
+    }
+
+    /**
+     * Returns <code>true</code> if the attempt must use the 'autoConnect' mode.
+     *
+     * @param attempt The index of the attempt, starting at 0.
+     * @return <code>true</code> if the attempt must use the 'autoConnect' mode.
+     */
+    public boolean isAutoConnect(int attempt) {
+        return autoConnectAfterAttempts != NO_AUTO_CONNECT && attempt >= autoConnectAfterAttempts;
+    }
+
+    /**
+     * Returns the maximum number of attempts.
+     * @return the maximum number of attempts, or {@link #UNLIMITED_ATTEMPTS}.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ReconnectionPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", firstDelayMs=" + firstDelayMs +
+                ", baseDelayMs=" + baseDelayMs +
+                ", maxDelayMs=" + maxDelayMs +
+                ", multiplier=" + multiplier +
+                ", jitter=" + jitter +
+                ", autoConnectAfterAttempts=" + autoConnectAfterAttempts +
+                '}';
+    }
+}
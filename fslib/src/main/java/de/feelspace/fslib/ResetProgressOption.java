@@ -19,6 +19,17 @@ public enum ResetProgressOption {
     // Value of the item
     private byte value;
 
+    // Items by unsigned value, for lookups without iteration over the items
+    private static final ResetProgressOption[] ITEMS_BY_VALUE = new ResetProgressOption[256];
+
+    static {
+        for (ResetProgressOption item: values()) {
+            if (ITEMS_BY_VALUE[item.value & 0xFF] == null) {
+                ITEMS_BY_VALUE[item.value & 0xFF] = item;
+            }
+        }
+    }
+
     /**
      * Constructor of enum items.
      * @param v The value of the item.
@@ -44,12 +55,11 @@ public enum ResetProgressOption {
      * @return The item corresponding to the value or the default item.
      */
     public static ResetProgressOption fromValue(int v, ResetProgressOption defaultItem) {
-        for (ResetProgressOption item: ResetProgressOption.values()) {
-            if (item.value == v) {
-                return item;
-            }
+        if (v < Byte.MIN_VALUE || v > Byte.MAX_VALUE) {
+            return defaultItem;
         }
-        return defaultItem;
+        ResetProgressOption item = ITEMS_BY_VALUE[v & 0xFF];
+        return (item == null)?(defaultItem):(item);
     }
 
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import de.feelspace.fslib.protocol.BeltPacketEncoder;
+
+/**
+ * Precomputed channel configuration packets of the vibration signals.
+ *
+ * The packets of a signal only differ by the channel index, intensity, clear flag and, for
+ * directional signals, the orientation. These fields are patched in a copy of the template of
+ * the signal, the pattern, iterations, period and exclusivity are encoded once.
+ */
+final class SignalPacketTemplates {
+
+    // Offsets of the variable fields in a channel configuration packet
+    private static final int CHANNEL_INDEX_OFFSET = 0;
+    private static final int INTENSITY_OFFSET = 2;
+    private static final int ORIENTATION_TYPE_OFFSET = 6;
+    private static final int ORIENTATION_VALUE_OFFSET = 7;
+    private static final int CLEAR_OTHER_CHANNELS_OFFSET = 17;
+
+    // Templates by ordinal of the signal, null for signals without channel configuration
+    private static final byte[][] TEMPLATES = new byte[BeltVibrationSignal.values().length][];
+
+    static {
+        // Directional signals, the orientation is patched
+        setTemplate(BeltVibrationSignal.CONTINUOUS, BeltVibrationPattern.CONTINUOUS,
+                OrientationType.ANGLE, 0, 0, 500, false);
+        setTemplate(BeltVibrationSignal.NAVIGATION, BeltVibrationPattern.CONTINUOUS,
+                OrientationType.ANGLE, 0, 0, 500, false);
+        setTemplate(BeltVibrationSignal.APPROACHING_DESTINATION,
+                BeltVibrationPattern.SINGLE_SHORT_PULSE, OrientationType.ANGLE, 0, 0, 500, false);
+        setTemplate(BeltVibrationSignal.TURN_ONGOING, BeltVibrationPattern.SINGLE_LONG_PULSE,
+                OrientationType.ANGLE, 0, 0, 750, false);
+        setTemplate(BeltVibrationSignal.DIRECTION_NOTIFICATION, BeltVibrationPattern.CONTINUOUS,
+                OrientationType.ANGLE, 0, 1, 1000, false);
+        setTemplate(BeltVibrationSignal.NEXT_WAYPOINT_LONG_DISTANCE,
+                BeltVibrationPattern.SINGLE_LONG_PULSE, OrientationType.ANGLE, 0, 0, 3000, false);
+        setTemplate(BeltVibrationSignal.NEXT_WAYPOINT_MEDIUM_DISTANCE,
+                BeltVibrationPattern.SINGLE_LONG_PULSE, OrientationType.ANGLE, 0, 0, 1500, false);
+        setTemplate(BeltVibrationSignal.NEXT_WAYPOINT_SHORT_DISTANCE,
+                BeltVibrationPattern.SINGLE_LONG_PULSE, OrientationType.ANGLE, 0, 0, 1000, false);
+        setTemplate(BeltVibrationSignal.NEXT_WAYPOINT_AREA_REACHED,
+                BeltVibrationPattern.SINGLE_LONG_PULSE, OrientationType.ANGLE, 0, 0, 750, false);
+        // Non-directional signals, the orientation is part of the template
+        setTemplate(BeltVibrationSignal.DESTINATION_REACHED_REPEATED,
+                BeltVibrationPattern.DESTINATION_REACHED, OrientationType.VIBROMOTOR_INDEX, 0, 0,
+                5000, false);
+        setTemplate(BeltVibrationSignal.DESTINATION_REACHED_SINGLE,
+                BeltVibrationPattern.DESTINATION_REACHED, OrientationType.VIBROMOTOR_INDEX, 0, 1,
+                2500, true);
+        // Note: exclusive channel is true because firmware 43 only support 4 simultaneous
+        // vibration.
+        setTemplate(BeltVibrationSignal.OPERATION_WARNING, BeltVibrationPattern.WARNING,
+                OrientationType.VIBROMOTOR_INDEX, 0, 2, 500, true);
+        setTemplate(BeltVibrationSignal.CRITICAL_WARNING, BeltVibrationPattern.SINGLE_LONG_PULSE,
+                OrientationType.BINARY_MASK, 0b0001000100010001, 3, 700, true);
+        // Note: The battery signal is a system signal without template
+    }
+
+    private SignalPacketTemplates() {
+    }
+
+    /**
+     * Encodes the template of a signal.
+     */
+    private static void setTemplate(@NonNull BeltVibrationSignal signal,
+                                    @NonNull BeltVibrationPattern pattern,
+                                    @NonNull OrientationType orientationType,
+                                    int orientationValue, int iterations, int periodMs,
+                                    boolean exclusiveChannel) {
+        TEMPLATES[signal.ordinal()] = BeltPacketEncoder.encodeChannelConfiguration(0,
+                pattern.getValue(), 0, orientationType.getValue(), orientationValue, iterations,
+                periodMs, 0, exclusiveChannel, false);
+    }
+
+    /**
+     * Encodes the channel configuration packet of a non-directional signal.
+     *
+     * @param signal The signal.
+     * @param buffer The buffer, with at least
+     *               {@link BeltPacketEncoder#CHANNEL_CONFIGURATION_PACKET_SIZE} bytes from the
+     *               offset.
+     * @param offset The offset of the packet in the buffer.
+     * @param channelIndex The channel index.
+     * @param intensity The intensity, already checked.
+     * @param clearOtherChannels <code>true</code> to clear the other channels.
+     * @return the size of the packet, or -1 if the signal has no template or the channel index is
+     * out of range.
+     */
+    static int encode(@NonNull BeltVibrationSignal signal, @NonNull byte[] buffer, int offset,
+                      int channelIndex, int intensity, boolean clearOtherChannels) {
+        byte[] template = TEMPLATES[signal.ordinal()];
+        if (template == null || channelIndex < 0 || channelIndex > 5) {
+            return -1;
+        }
+        System.arraycopy(template, 0, buffer, offset, template.length);
+        buffer[offset+CHANNEL_INDEX_OFFSET] = (byte) channelIndex;
+        buffer[offset+INTENSITY_OFFSET] = (byte) (intensity & 0xFF);
+        buffer[offset+INTENSITY_OFFSET+1] = (byte) ((intensity >> 8) & 0xFF);
+        buffer[offset+CLEAR_OTHER_CHANNELS_OFFSET] = (byte) ((clearOtherChannels)?(0x01):(0x00));
+        return template.length;
+    }
+
+    /**
+     * Encodes the channel configuration packet of a directional signal.
+     *
+     * @param signal The signal.
+     * @param buffer The buffer, with at least
+     *               {@link BeltPacketEncoder#CHANNEL_CONFIGURATION_PACKET_SIZE} bytes from the
+     *               offset.
+     * @param offset The offset of the packet in the buffer.
+     * @param channelIndex The channel index.
+     * @param intensity The intensity, already checked.
+     * @param orientationType The type of orientation.
+     * @param orientation The orientation value.
+     * @param clearOtherChannels <code>true</code> to clear the other channels.
+     * @return the size of the packet, or -1 if the signal has no template or an argument has
+     * illegal value.
+     */
+    static int encode(@NonNull BeltVibrationSignal signal, @NonNull byte[] buffer, int offset,
+                      int channelIndex, int intensity, @NonNull OrientationType orientationType,
+                      int orientation, boolean clearOtherChannels) {
+        if (!ChannelConfigurationCommand.isLegalOrientation(orientationType, orientation)) {
+            return -1;
+        }
+        int size = encode(signal, buffer, offset, channelIndex, intensity, clearOtherChannels);
+        if (size < 0) {
+            return -1;
+        }
+        orientation = ChannelConfigurationCommand.normalizeOrientation(orientationType,
+                orientation);
+        buffer[offset+ORIENTATION_TYPE_OFFSET] = orientationType.getValue();
+        buffer[offset+ORIENTATION_VALUE_OFFSET] = (byte) (orientation & 0xFF);
+        buffer[offset+ORIENTATION_VALUE_OFFSET+1] = (byte) ((orientation >> 8) & 0xFF);
+        return size;
+    }
+
+}
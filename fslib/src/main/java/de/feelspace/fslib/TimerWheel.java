@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for timeouts and delayed tasks.
+ *
+ * Timeouts are placed in a ring of buckets indexed by their expiration tick, so that arming and
+ * cancelling a timeout are constant time operations without allocation on the delay queue of the
+ * executor. The wheel is advanced by a one-shot task on the executor, scheduled at the earliest
+ * deadline of the pending timeouts: the executor is not woken up between deadlines, and not at
+ * all when no timeout is pending. A cancelled timeout may cause one early wake-up, after which
+ * the next wake-up is scheduled at the earliest remaining deadline. Expired tasks are executed on
+ * the executor thread.
+ *
+ * The resolution of the timeouts is one tick: a task is executed between its delay and its delay
+ * plus one tick. The deadlines are computed on the clock of the wheel, which must be the clock of
+ * the executor (e.g. a virtual clock driving the executor in simulations).
+ */
+class TimerWheel {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    /** Default duration of a tick in milliseconds. */
+    public static final long DEFAULT_TICK_MS = 20;
+
+    /** Default number of buckets, a power of two. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // States of a timeout
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_EXPIRED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    /**
+     * Handle of a task scheduled on the timer wheel.
+     */
+    class Timeout {
+
+        // Task to execute
+        private final @NonNull Runnable task;
+
+        // Period in ticks for repeated tasks, 0 for one-shot tasks
+        private final long periodTicks;
+
+        // Position in the wheel
+        private long deadlineTick;
+        private long remainingRounds;
+        private int bucket;
+        private @Nullable Timeout previous;
+        private @Nullable Timeout next;
+
+        // State, guarded by the wheel
+        private int state = STATE_PENDING;
+
+        private Timeout(@NonNull Runnable task, long periodTicks) {
+            this.task = task;
+            this.periodTicks = periodTicks;
+        }
+
+        /**
+         * Cancels the task. A repeated task is not executed again after cancellation.
+         *
+         * @return <code>true</code> if the task has been cancelled, <code>false</code> if the
+         * task has already been executed or cancelled.
+         */
+        boolean cancel() {
+            return TimerWheel.this.cancel(this);
+        }
+
+        /**
+         * Returns <code>true</code> if the task has been cancelled.
+         * @return <code>true</code> if the task has been cancelled.
+         */
+        boolean isCancelled() {
+            synchronized (TimerWheel.this) {
+                return state == STATE_CANCELLED;
+            }
+        }
+    }
+
+    // Executor that advances the wheel and executes the tasks, and its clock
+    private final @NonNull ScheduledExecutorService executor;
+    private final @NonNull MonotonicClock clock;
+
+    // Buckets of timeouts, as doubly linked lists
+    private final @NonNull Timeout[] buckets;
+    private final int mask;
+
+    // Duration of a tick
+    private final long tickNano;
+
+    // Time of tick 0 and index of the next tick to process
+    private long startTimeNano;
+    private long nextTick;
+
+    // Number of pending timeouts
+    private int pendingCount = 0;
+
+    // Task that advances the wheel at the earliest deadline, only when timeouts are pending
+    private @Nullable ScheduledFuture<?> wakeupTask;
+    private long wakeupTick;
+
+    /**
+     * Creates a timer wheel with the default resolution.
+     *
+     * @param executor The executor that advances the wheel and executes the tasks.
+     */
+    TimerWheel(@NonNull ScheduledExecutorService executor) {
+        this(executor, MonotonicClock.SYSTEM, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a timer wheel with the default resolution on a given clock.
+     *
+     * @param executor The executor that advances the wheel and executes the tasks.
+     * @param clock The clock of the executor.
+     */
+    TimerWheel(@NonNull ScheduledExecutorService executor, @NonNull MonotonicClock clock) {
+        this(executor, clock, DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a timer wheel.
+     *
+     * @param executor The executor that advances the wheel and executes the tasks.
+     * @param clock The clock of the executor.
+     * @param tickMs The duration of a tick in milliseconds.
+     * @param wheelSize The number of buckets, rounded up to a power of two.
+     */
+    TimerWheel(@NonNull ScheduledExecutorService executor, @NonNull MonotonicClock clock,
+               long tickMs, int wheelSize) {
+        this.executor = executor;
+        this.clock = clock;
+        this.tickNano = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules a one-shot task.
+     *
+     * @param task The task to execute.
+     * @param delay The delay before execution.
+     * @param unit The unit of the delay.
+     * @return the handle of the task.
+     * @throws java.util.concurrent.RejectedExecutionException If the executor is shut down.
+     */
+    @NonNull Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit) {
+        Timeout timeout = new Timeout(task, 0);
+        synchronized (this) {
+            arm(timeout, unit.toNanos(delay));
+        }
+        return timeout;
+    }
+
+    /**
+     * Schedules a task repeated with a fixed delay.
+     *
+     * @param task The task to execute.
+     * @param initialDelay The delay before the first execution.
+     * @param delay The delay between the end of an execution and the next execution.
+     * @param unit The unit of the delays.
+     * @return the handle of the task.
+     * @throws java.util.concurrent.RejectedExecutionException If the executor is shut down.
+     */
+    @NonNull Timeout scheduleWithFixedDelay(@NonNull Runnable task, long initialDelay,
+                                            long delay, @NonNull TimeUnit unit) {
+        Timeout timeout = new Timeout(task, Math.max(1, unit.toNanos(delay) / tickNano));
+        synchronized (this) {
+            arm(timeout, unit.toNanos(initialDelay));
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     * @return the number of pending tasks.
+     */
+    synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Places a timeout in its bucket and schedules the wake-up of the wheel if the timeout is the
+     * earliest. Must be called with the lock of the wheel.
+     *
+     * @param timeout The timeout.
+     * @param delayNano The delay in nanoseconds.
+     */
+    private void arm(@NonNull Timeout timeout, long delayNano) {
+        long now = clock.nanoTime();
+        if (pendingCount == 0 && wakeupTask == null) {
+            // Restart the wheel
+            startTimeNano = now;
+            nextTick = 0;
+        }
+        // Round up to the next tick
+        long deadlineTick = (now - startTimeNano + Math.max(0, delayNano) + tickNano - 1) /
+                tickNano;
+        if (deadlineTick < nextTick) {
+            deadlineTick = nextTick;
+        }
+        if (wakeupTask == null || deadlineTick < wakeupTick) {
+            scheduleWakeup(deadlineTick);
+        }
+        timeout.deadlineTick = deadlineTick;
+        timeout.remainingRounds = (deadlineTick - nextTick) / buckets.length;
+        timeout.bucket = (int) (deadlineTick & mask);
+        timeout.state = STATE_PENDING;
+        timeout.previous = null;
+        timeout.next = buckets[timeout.bucket];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        pendingCount++;
+    }
+
+    /**
+     * Removes a timeout from its bucket. Must be called with the lock of the wheel.
+     *
+     * @param timeout The timeout.
+     */
+    private void unlink(@NonNull Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        pendingCount--;
+    }
+
+    /**
+     * Schedules the wake-up of the wheel, replacing the previous wake-up. Must be called with the
+     * lock of the wheel.
+     *
+     * @param tick The tick of the wake-up.
+     */
+    private void scheduleWakeup(long tick) {
+        long delayNano = startTimeNano + tick * tickNano - clock.nanoTime();
+        ScheduledFuture<?> task = executor.schedule(this::advance, Math.max(0, delayNano),
+                TimeUnit.NANOSECONDS);
+        cancelWakeup();
+        wakeupTask = task;
+        wakeupTick = tick;
+    }
+
+    /**
+     * Cancels the wake-up of the wheel. Must be called with the lock of the wheel.
+     */
+    private void cancelWakeup() {
+        if (wakeupTask != null) {
+            wakeupTask.cancel(false);
+            wakeupTask = null;
+        }
+    }
+
+    /**
+     * Returns the earliest deadline of the pending timeouts. Must be called with the lock of the
+     * wheel.
+     *
+     * @return the earliest deadline tick, or <code>Long.MAX_VALUE</code> if no timeout is
+     * pending.
+     */
+    private long getEarliestDeadlineTick() {
+        long earliest = Long.MAX_VALUE;
+        for (Timeout bucket: buckets) {
+            for (Timeout timeout = bucket; timeout != null; timeout = timeout.next) {
+                if (timeout.deadlineTick < earliest) {
+                    earliest = timeout.deadlineTick;
+                }
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Cancels a timeout.
+     *
+     * @param timeout The timeout.
+     * @return <code>true</code> if the timeout has been cancelled.
+     */
+    private synchronized boolean cancel(@NonNull Timeout timeout) {
+        switch (timeout.state) {
+            case STATE_PENDING:
+                unlink(timeout);
+                timeout.state = STATE_CANCELLED;
+                if (pendingCount == 0) {
+                    // Stop the wheel until the next timeout
+                    cancelWakeup();
+                }
+                return true;
+            case STATE_RUNNING:
+                if (timeout.periodTicks > 0) {
+                    // Not repeated
+                    timeout.state = STATE_CANCELLED;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time, executes the expired tasks and schedules the next
+     * wake-up. Called on the executor.
+     */
+    private void advance() {
+        ArrayList<Timeout> expired = null;
+        synchronized (this) {
+            long currentTick = (clock.nanoTime() - startTimeNano) / tickNano;
+            while (nextTick <= currentTick && pendingCount > 0) {
+                Timeout timeout = buckets[(int) (nextTick & mask)];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.remainingRounds > 0) {
+                        timeout.remainingRounds--;
+                    } else {
+                        unlink(timeout);
+                        timeout.state = STATE_RUNNING;
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+                nextTick++;
+            }
+            if (pendingCount > 0) {
+                scheduleWakeup(Math.max(nextTick, getEarliestDeadlineTick()));
+            } else {
+                // Stop the wheel until the next timeout
+                cancelWakeup();
+            }
+        }
+        if (expired == null) {
+            return;
+        }
+        for (Timeout timeout: expired) {
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                Log.e(DEBUG_TAG, "TimerWheel: Error in scheduled task.", e);
+            }
+            synchronized (this) {
+                if (timeout.state != STATE_RUNNING) {
+                    // Cancelled during execution
+                    continue;
+                }
+                if (timeout.periodTicks > 0) {
+                    try {
+                        arm(timeout, timeout.periodTicks * tickNano);
+                    } catch (Exception e) {
+                        Log.e(DEBUG_TAG, "TimerWheel: Unable to repeat scheduled task.", e);
+                        timeout.state = STATE_EXPIRED;
+                    }
+                } else {
+                    timeout.state = STATE_EXPIRED;
+                }
+            }
+        }
+    }
+
+}
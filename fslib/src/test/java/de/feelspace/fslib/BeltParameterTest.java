@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import org.junit.Test;
+
+import de.feelspace.fslib.protocol.ParameterNotificationPacket;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the belt parameters and their notification types.
+ */
+public class BeltParameterTest {
+
+    @Test
+    public void fromNotificationType_parameterOfEachType() {
+        for (BeltParameter parameter: BeltParameter.values()) {
+            assertSame(parameter,
+                    BeltParameter.fromNotificationType(parameter.getNotificationType()));
+        }
+        assertSame(BeltParameter.HEADING_OFFSET, BeltParameter.fromNotificationType(
+                ParameterNotificationPacket.TYPE_HEADING_OFFSET));
+        assertSame(BeltParameter.ACCURACY_SIGNAL_STATE, BeltParameter.fromNotificationType(
+                ParameterNotificationPacket.TYPE_ACCURACY_SIGNAL_STATE));
+    }
+
+    @Test
+    public void fromNotificationType_otherTypesNull() {
+        assertNull(BeltParameter.fromNotificationType(ParameterNotificationPacket.TYPE_MODE));
+        assertNull(BeltParameter.fromNotificationType(
+                ParameterNotificationPacket.TYPE_DEFAULT_INTENSITY));
+        assertNull(BeltParameter.fromNotificationType(ParameterNotificationPacket.TYPE_UNKNOWN));
+        assertNull(BeltParameter.fromNotificationType(
+                ParameterNotificationPacket.TYPE_MALFORMED));
+        assertNull(BeltParameter.fromNotificationType(ParameterNotificationPacket.MAX_TYPE));
+        assertNull(BeltParameter.fromNotificationType(ParameterNotificationPacket.MAX_TYPE + 1));
+    }
+
+    @Test
+    public void codec_rangeOfParameterValues() {
+        assertTrue(BeltParameter.HEADING_OFFSET.getCodec().isLegalValue(0));
+        assertTrue(BeltParameter.HEADING_OFFSET.getCodec().isLegalValue(359));
+        assertFalse(BeltParameter.HEADING_OFFSET.getCodec().isLegalValue(360));
+        assertFalse(BeltParameter.HEADING_OFFSET.getCodec().isLegalValue(-1));
+        assertTrue(BeltParameter.ACCURACY_SIGNAL_STATE.getCodec().isLegalValue(3));
+        assertFalse(BeltParameter.ACCURACY_SIGNAL_STATE.getCodec().isLegalValue(4));
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests of the belt protocol against the simulated belt firmware, on a simulated link with
+ * latency, jitter and losses.
+ *
+ * The controllers, the link and the belt run on a virtual clock, so that the tests are
+ * reproducible and minutes of connection run in a fraction of a second.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BeltSimulationTest {
+
+    private static final String BELT_ADDRESS = "00:11:22:33:44:55";
+    private static final long STEP_MS = 5;
+
+    private VirtualClock clock;
+    private SimulatedBelt belt;
+    private SimulatedLink link;
+    private GattController gattController;
+    private BeltCommunicationController communicationController;
+
+    // Handshake events
+    private boolean handshakeReady;
+    private Boolean handshakeSuccess;
+    private BeltMode modeAtHandshakeReady;
+    private Integer intensityAtHandshakeReady;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        belt = new SimulatedBelt(clock);
+        link = new SimulatedLink(42)
+                .setLatency(7500)
+                .setJitter(2000)
+                .setLossRate(0.05);
+        gattController = new GattController(clock, new TimerWheel(clock, clock), clock);
+        gattController.setCallbackLooper(Looper.getMainLooper());
+        gattController.setTransportFactory(
+                new InProcessGattTransport.InProcessFactory(belt, clock, link));
+        communicationController = new BeltCommunicationController(gattController);
+        handshakeReady = false;
+        handshakeSuccess = null;
+    }
+
+    @After
+    public void tearDown() {
+        gattController.disconnect();
+        advance(1000);
+        clock.shutdownNow();
+    }
+
+    private void advance(long durationMs) {
+        for (long elapsedMs = 0; elapsedMs < durationMs; elapsedMs += STEP_MS) {
+            clock.advanceBy(STEP_MS, TimeUnit.MILLISECONDS);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(STEP_MS));
+        }
+    }
+
+    private void connectAndHandshake() {
+        handshakeReady = false;
+        handshakeSuccess = null;
+        BluetoothDevice device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(
+                BELT_ADDRESS);
+        shadowOf(device).setBondState(BluetoothDevice.BOND_BONDED);
+        gattController.connect(RuntimeEnvironment.getApplication(), device);
+        advance(3000);
+        assertEquals(GattConnectionState.GATT_CONNECTED, gattController.getConnectionState());
+        communicationController.startHandshake(
+                new BeltCommunicationController.HandshakeCallback() {
+                    @Override
+                    public void onHandshakeReady() {
+                        handshakeReady = true;
+                        modeAtHandshakeReady = communicationController.getMode();
+                        intensityAtHandshakeReady =
+                                communicationController.getDefaultVibrationIntensity();
+                    }
+
+                    @Override
+                    public void onHandshakeCompleted(boolean success) {
+                        handshakeSuccess = success;
+                    }
+                });
+        advance(2000);
+        assertTrue(handshakeReady);
+        assertEquals(Boolean.TRUE, handshakeSuccess);
+    }
+
+    @Test
+    public void handshake_retrievesBeltParameters() {
+        connectAndHandshake();
+        assertEquals(BeltMode.WAIT, communicationController.getMode());
+        assertEquals(Integer.valueOf(SimulatedBelt.DEFAULT_FIRMWARE_VERSION),
+                communicationController.getFirmwareVersion());
+        assertEquals(Integer.valueOf(belt.getDefaultIntensity()),
+                communicationController.getDefaultVibrationIntensity());
+    }
+
+    @Test
+    public void knownBelt_handshakeReadyWithCachedMode() {
+        BeltProfileCache cache = new BeltProfileCache(RuntimeEnvironment.getApplication());
+        gattController.setProfileCache(cache);
+        communicationController.setProfileCache(cache);
+        // First connection, the mode is received before the handshake is ready
+        connectAndHandshake();
+        assertEquals(BeltMode.WAIT, modeAtHandshakeReady);
+        assertTrue(communicationController.changeMode(BeltMode.APP));
+        advance(500);
+        assertEquals(BeltMode.APP, belt.getMode());
+        // The belt leaves the app mode on disconnection, the cache keeps the app mode
+        gattController.disconnect();
+        advance(1000);
+        assertEquals(BeltMode.WAIT, belt.getMode());
+        // Second connection, ready with the cached mode, corrected by the mode request
+        connectAndHandshake();
+        assertEquals(BeltMode.APP, modeAtHandshakeReady);
+        assertNull(intensityAtHandshakeReady);
+        assertEquals(BeltMode.WAIT, communicationController.getMode());
+        assertEquals(Integer.valueOf(belt.getDefaultIntensity()),
+                communicationController.getDefaultVibrationIntensity());
+    }
+
+    @Test
+    public void vibration_appliedByBeltInAppMode() {
+        connectAndHandshake();
+        assertTrue(communicationController.changeMode(BeltMode.APP));
+        advance(500);
+        assertEquals(BeltMode.APP, belt.getMode());
+        assertEquals(BeltMode.APP, communicationController.getMode());
+        assertTrue(communicationController.vibrateAtAngle(90, 60, BeltVibrationSignal.CONTINUOUS,
+                2, false));
+        advance(500);
+        assertEquals(1, belt.getVibrationCommandCount());
+        assertEquals(0, belt.getIgnoredCommandCount());
+        assertTrue(belt.isChannelActive(2));
+        assertEquals(60, belt.getChannelIntensity(2));
+        assertEquals(90, belt.getChannelOrientation(2));
+        assertTrue(communicationController.stopVibration(2));
+        advance(500);
+        assertFalse(belt.isChannelActive(2));
+    }
+
+    @Test
+    public void orientation_timestampedOnControllerClock() {
+        belt.setHeading(350, 20);
+        connectAndHandshake();
+        assertTrue(communicationController.setOrientationNotificationsActive(true));
+        advance(1000);
+        OrientationHistory history = communicationController.getOrientationHistory();
+        OrientationSnapshot latest = new OrientationSnapshot();
+        assertTrue(history.getLatestSample(latest));
+        long nowNano = clock.nanoTime();
+        assertTrue(latest.getTimestampNano() <= nowNano);
+        assertTrue(latest.getTimestampNano() > nowNano - TimeUnit.MILLISECONDS.toNanos(500));
+        // Queries in virtual time
+        assertTrue(history.countSamplesInWindow(nowNano - TimeUnit.MILLISECONDS.toNanos(500),
+                nowNano) > 0);
+        assertFalse(Float.isNaN(history.getBeltHeadingAt(latest.getTimestampNano())));
+    }
+
+    @Test
+    public void predictedHeading_extrapolatedOnControllerClock() {
+        // The heading turns at 20 degrees per second from north
+        belt.setHeading(0, 20);
+        connectAndHandshake();
+        assertTrue(communicationController.setOrientationNotificationsActive(true));
+        // Acknowledged write for the round-trip time
+        assertTrue(communicationController.changeMode(BeltMode.APP));
+        advance(2000);
+        assertEquals(20, communicationController.getHeadingRateEstimator().getHeadingRate(), 1);
+        long rttNano = gattController.getSmoothedWriteRttNano();
+        assertTrue(rttNano > 0);
+        double expectedHeading = (20. * (clock.nanoTime() + rttNano) / 1e9) % 360.;
+        double error = communicationController.getPredictedBeltHeading() - expectedHeading;
+        error = ((error % 360.) + 540.) % 360. - 180.;
+        assertEquals(0, error, 2);
+    }
+
+    @Test
+    public void keepAlive_acknowledgedDuringLongConnection() {
+        // Keep-alive notifications are the only activity of an idle connection, their period
+        // must be shorter than the GATT supervision timeout
+        long keepAlivePeriodMs = GattController.GATT_SUPERVISION_TIMEOUT_MS / 3;
+        belt.setKeepAlivePeriod(keepAlivePeriodMs);
+        connectAndHandshake();
+        // Note: Keep-alives sent before the handshake are not notified nor acknowledged
+        long keepAliveCount = belt.getKeepAliveCount();
+        long keepAliveAckCount = belt.getKeepAliveAckCount();
+        long durationMs = TimeUnit.MINUTES.toMillis(1);
+        advance(durationMs);
+        assertEquals(GattConnectionState.GATT_CONNECTED, gattController.getConnectionState());
+        long keepAlives = durationMs / keepAlivePeriodMs;
+        assertEquals(keepAliveCount + keepAlives, belt.getKeepAliveCount());
+        // Acknowledgment of the last keep-alive
+        advance(100);
+        assertEquals(keepAliveAckCount + keepAlives, belt.getKeepAliveAckCount());
+        assertTrue(link.getRetransmissionCount() > 0);
+    }
+
+}
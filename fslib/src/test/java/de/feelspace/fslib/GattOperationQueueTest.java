@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the ordering rules of the GATT operation queue.
+ */
+public class GattOperationQueueTest {
+
+    private static BluetoothGattCharacteristic createCharacteristic() {
+        return new BluetoothGattCharacteristic(UUID.randomUUID(),
+                BluetoothGattCharacteristic.PROPERTY_WRITE,
+                BluetoothGattCharacteristic.PERMISSION_WRITE);
+    }
+
+    private static GattOperationWriteCharacteristic createWrite(
+            BluetoothGattCharacteristic characteristic, GattOperationPriority priority,
+            boolean coalescable, byte command) {
+        GattOperationWriteCharacteristic write = new GattOperationWriteCharacteristic(
+                null, characteristic, new byte[] {command, 0x00}, false, coalescable);
+        write.setPriority(priority);
+        return write;
+    }
+
+    private static GattOperationWriteCharacteristic createWrite(
+            BluetoothGattCharacteristic characteristic, GattOperationPriority priority) {
+        return createWrite(characteristic, priority, false, (byte) 0x01);
+    }
+
+    @Test
+    public void strictPriority_higherClassFirst() {
+        GattOperationQueue queue = new GattOperationQueue();
+        GattOperation bulk = createWrite(createCharacteristic(), GattOperationPriority.BULK);
+        GattOperation parameter = createWrite(createCharacteristic(),
+                GattOperationPriority.PARAMETER);
+        GattOperation vibration = createWrite(createCharacteristic(),
+                GattOperationPriority.VIBRATION);
+        GattOperation stop = createWrite(createCharacteristic(), GattOperationPriority.STOP);
+        queue.add(bulk);
+        queue.add(parameter);
+        queue.add(vibration);
+        queue.add(stop);
+        assertEquals(4, queue.size());
+        assertSame(stop, queue.peek());
+        assertSame(stop, queue.remove());
+        assertSame(vibration, queue.remove());
+        assertSame(parameter, queue.remove());
+        assertSame(bulk, queue.remove());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+        assertNull(queue.remove());
+    }
+
+    @Test
+    public void sameCharacteristic_startedInQueueOrder() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        GattOperation parameter = createWrite(characteristic, GattOperationPriority.PARAMETER);
+        GattOperation vibration = createWrite(characteristic, GattOperationPriority.VIBRATION);
+        GattOperation stop = createWrite(createCharacteristic(), GattOperationPriority.STOP);
+        queue.add(parameter);
+        queue.add(vibration);
+        queue.add(stop);
+        // The stop command on another characteristic overtakes, the vibration command does not
+        assertSame(stop, queue.remove());
+        assertSame(parameter, queue.remove());
+        assertSame(vibration, queue.remove());
+    }
+
+    @Test
+    public void controlOperation_isBarrier() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic controlCharacteristic = createCharacteristic();
+        GattOperation parameter = createWrite(controlCharacteristic,
+                GattOperationPriority.PARAMETER);
+        GattOperation control = createWrite(controlCharacteristic,
+                GattOperationPriority.CONTROL);
+        GattOperation stop = createWrite(createCharacteristic(), GattOperationPriority.STOP);
+        queue.add(parameter);
+        queue.add(control);
+        queue.add(stop);
+        // The control operation waits for the parameter write, the stop command waits for the
+        // control operation
+        assertSame(parameter, queue.remove());
+        assertSame(control, queue.remove());
+        assertSame(stop, queue.remove());
+    }
+
+    @Test
+    public void controlOperation_overtakesOlderOperations() {
+        GattOperationQueue queue = new GattOperationQueue();
+        GattOperation vibration = createWrite(createCharacteristic(),
+                GattOperationPriority.VIBRATION);
+        GattOperation control = createWrite(createCharacteristic(),
+                GattOperationPriority.CONTROL);
+        queue.add(vibration);
+        queue.add(control);
+        assertSame(control, queue.remove());
+        assertSame(vibration, queue.remove());
+    }
+
+    @Test
+    public void operationWithoutCharacteristic_onlyConstrainedByControl() {
+        GattOperationQueue queue = new GattOperationQueue();
+        GattOperation vibration = createWrite(createCharacteristic(),
+                GattOperationPriority.VIBRATION);
+        GattOperation mtu = new GattOperationRequestMtu(null, 128);
+        mtu.setPriority(GattOperationPriority.STOP);
+        queue.add(vibration);
+        queue.add(mtu);
+        assertSame(mtu, queue.remove());
+        assertSame(vibration, queue.remove());
+    }
+
+    @Test
+    public void addOrSupersede_replacesLastWriteInPlace() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        GattOperationWriteCharacteristic first = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        GattOperationWriteCharacteristic other = createWrite(createCharacteristic(),
+                GattOperationPriority.VIBRATION);
+        GattOperationWriteCharacteristic second = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        assertNull(queue.addOrSupersede(first));
+        assertNull(queue.addOrSupersede(other));
+        assertSame(first, queue.addOrSupersede(second));
+        assertEquals(2, queue.size());
+        assertEquals(first.getSequenceNumber(), second.getSequenceNumber());
+        // The new write takes the place of the superseded write
+        assertSame(second, queue.remove());
+        assertSame(other, queue.remove());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void addOrSupersede_notCoalescedWithDifferentCommand() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        assertNull(queue.addOrSupersede(createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01)));
+        assertNull(queue.addOrSupersede(createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x02)));
+        assertNull(queue.addOrSupersede(createWrite(characteristic,
+                GattOperationPriority.VIBRATION, false, (byte) 0x02)));
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void addOrSupersede_notCoalescedAfterControl() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        GattOperationWriteCharacteristic first = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        GattOperation control = createWrite(createCharacteristic(),
+                GattOperationPriority.CONTROL);
+        GattOperationWriteCharacteristic second = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        assertNull(queue.addOrSupersede(first));
+        queue.add(control);
+        assertNull(queue.addOrSupersede(second));
+        assertEquals(3, queue.size());
+        assertSame(control, queue.remove());
+        assertSame(first, queue.remove());
+        assertSame(second, queue.remove());
+    }
+
+    @Test
+    public void addOrSupersede_notCoalescedAfterOperationOnSameCharacteristic() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        GattOperationWriteCharacteristic first = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        GattOperation read = new GattOperationReadCharacteristic(null, characteristic);
+        read.setPriority(GattOperationPriority.PARAMETER);
+        GattOperationWriteCharacteristic second = createWrite(characteristic,
+                GattOperationPriority.VIBRATION, true, (byte) 0x01);
+        assertNull(queue.addOrSupersede(first));
+        queue.add(read);
+        assertNull(queue.addOrSupersede(second));
+        assertSame(first, queue.remove());
+        assertSame(read, queue.remove());
+        assertSame(second, queue.remove());
+    }
+
+    @Test
+    public void addFirst_putsBackOldestOperation() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        GattOperation first = createWrite(characteristic, GattOperationPriority.PARAMETER);
+        GattOperation second = createWrite(characteristic, GattOperationPriority.STOP);
+        queue.add(first);
+        queue.add(second);
+        assertSame(first, queue.remove());
+        queue.addFirst(first);
+        assertEquals(2, queue.size());
+        assertSame(first, queue.remove());
+        assertSame(second, queue.remove());
+    }
+
+    @Test
+    public void removeAll_emptiesQueue() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic characteristic = createCharacteristic();
+        queue.add(createWrite(characteristic, GattOperationPriority.PARAMETER));
+        queue.add(createWrite(characteristic, GattOperationPriority.CONTROL));
+        queue.add(createWrite(createCharacteristic(), GattOperationPriority.BULK));
+        assertEquals(3, queue.removeAll().size());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.peek());
+        // Constraints of removed operations are cleared
+        GattOperation stop = createWrite(characteristic, GattOperationPriority.STOP);
+        queue.add(stop);
+        assertSame(stop, queue.remove());
+    }
+
+    @Test
+    public void weightedScheduling_roundsFollowWeights() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.setWeightedScheduling(true);
+        GattOperationPriority[] classes = new GattOperationPriority[] {
+                GattOperationPriority.STOP, GattOperationPriority.VIBRATION,
+                GattOperationPriority.PARAMETER, GattOperationPriority.BULK};
+        for (GattOperationPriority priority: classes) {
+            BluetoothGattCharacteristic characteristic = createCharacteristic();
+            for (int i = 0; i < 40; i++) {
+                queue.add(createWrite(characteristic, priority));
+            }
+        }
+        int roundSize = 0;
+        for (GattOperationPriority priority: classes) {
+            roundSize += priority.getWeight();
+        }
+        for (int round = 0; round < 2; round++) {
+            int[] counts = new int[GattOperationPriority.values().length];
+            for (int i = 0; i < roundSize; i++) {
+                counts[queue.remove().getPriority().ordinal()]++;
+            }
+            for (GattOperationPriority priority: classes) {
+                assertEquals("Operations of " + priority + " in round " + round,
+                        priority.getWeight(), counts[priority.ordinal()]);
+            }
+        }
+    }
+
+    @Test
+    public void weightedScheduling_controlNotLimited() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.setWeightedScheduling(true);
+        for (int i = 0; i < 20; i++) {
+            queue.add(createWrite(createCharacteristic(), GattOperationPriority.CONTROL));
+        }
+        queue.add(createWrite(createCharacteristic(), GattOperationPriority.BULK));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(GattOperationPriority.CONTROL, queue.remove().getPriority());
+        }
+        assertEquals(GattOperationPriority.BULK, queue.remove().getPriority());
+    }
+
+    @Test
+    public void weightedScheduling_lowPriorityNotStarved() {
+        GattOperationQueue queue = new GattOperationQueue();
+        queue.setWeightedScheduling(true);
+        BluetoothGattCharacteristic stopCharacteristic = createCharacteristic();
+        GattOperation bulk = createWrite(createCharacteristic(), GattOperationPriority.BULK);
+        queue.add(bulk);
+        boolean bulkStarted = false;
+        for (int i = 0; i < 20 && !bulkStarted; i++) {
+            // Stop commands are continuously queued
+            queue.add(createWrite(stopCharacteristic, GattOperationPriority.STOP));
+            bulkStarted = (queue.remove() == bulk);
+        }
+        assertTrue(bulkStarted);
+    }
+
+    @Test
+    public void strictScheduling_lowPriorityWaits() {
+        GattOperationQueue queue = new GattOperationQueue();
+        BluetoothGattCharacteristic stopCharacteristic = createCharacteristic();
+        GattOperation bulk = createWrite(createCharacteristic(), GattOperationPriority.BULK);
+        queue.add(bulk);
+        for (int i = 0; i < 20; i++) {
+            queue.add(createWrite(stopCharacteristic, GattOperationPriority.STOP));
+            assertNotSame(bulk, queue.remove());
+        }
+        assertSame(bulk, queue.remove());
+    }
+
+}
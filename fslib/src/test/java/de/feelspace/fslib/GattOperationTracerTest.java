@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the trace export of completed operations.
+ */
+public class GattOperationTracerTest {
+
+    private static GattOperation createCompletedOperation(long sequenceNumber,
+                                                          long startTimeNano) {
+        GattOperation operation = new GattOperationRequestMtu(null, 128);
+        operation.setSequenceNumber(sequenceNumber);
+        operation.setQueuedTimeNano(startTimeNano - 1000);
+        operation.setStartTimeNano(startTimeNano);
+        operation.setState(GattOperationState.STATE_SUCCESS);
+        return operation;
+    }
+
+    private static int countOccurrences(String text, String pattern) {
+        int count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void export_overlappingOperationsAsAsyncSlices() {
+        GattOperationTracer tracer = new GattOperationTracer(8);
+        long now = System.nanoTime();
+        // Both operations on the link at the same time, as a released request and a write
+        tracer.record(createCompletedOperation(1, now - 2_000_000));
+        tracer.record(createCompletedOperation(2, now - 1_000_000));
+        String trace = tracer.exportChromeTrace();
+        assertEquals(0, countOccurrences(trace, "\"ph\":\"X\""));
+        assertEquals(4, countOccurrences(trace, "\"ph\":\"b\""));
+        assertEquals(4, countOccurrences(trace, "\"ph\":\"e\""));
+        // Slices of the link track matched by sequence number
+        assertEquals(1, countOccurrences(trace, "\"cat\":\"gatt.link\",\"ph\":\"b\",\"id\":1,"));
+        assertEquals(1, countOccurrences(trace, "\"cat\":\"gatt.link\",\"ph\":\"e\",\"id\":1,"));
+        assertEquals(1, countOccurrences(trace, "\"cat\":\"gatt.link\",\"ph\":\"b\",\"id\":2,"));
+        assertTrue(trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(trace.endsWith("]}"));
+    }
+
+    @Test
+    public void export_oldestRecordsOverwritten() {
+        GattOperationTracer tracer = new GattOperationTracer(2);
+        long now = System.nanoTime();
+        for (int i = 1; i <= 3; i++) {
+            tracer.record(createCompletedOperation(i, now - 1_000_000));
+        }
+        assertEquals(2, tracer.size());
+        String trace = tracer.exportChromeTrace();
+        assertEquals(0, countOccurrences(trace, "\"id\":1,"));
+        assertEquals(4, countOccurrences(trace, "\"id\":3,"));
+        tracer.clear();
+        assertEquals(0, tracer.size());
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the round-trip time estimation and derived timeouts.
+ */
+public class GattRttEstimatorTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static GattOperation createOperation() {
+        return new GattOperationRequestMtu(null, 128);
+    }
+
+    @Test
+    public void timeout_initialWithoutMeasure() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        assertEquals(GattRttEstimator.INITIAL_OPERATION_TIMEOUT_MS,
+                estimator.getTimeoutMs(createOperation()));
+        assertNull(estimator.getSmoothedRttMs(GattOperationType.REQUEST_MTU, null));
+    }
+
+    @Test
+    public void firstMeasure_setsSrttAndHalfVariation() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        assertEquals(100_000, estimator.onOperationSucceeded(operation, 100 * MS));
+        assertEquals(100f, estimator.getSmoothedRttMs(GattOperationType.REQUEST_MTU, null),
+                0.001f);
+        // SRTT + 4 * RTTVAR = 100 + 4 * 50
+        assertEquals(300, estimator.getTimeoutMs(operation));
+    }
+
+    @Test
+    public void nextMeasures_smoothWithGains() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        estimator.onOperationSucceeded(operation, 100 * MS);
+        // Error 80 ms: RTTVAR = 50 + (80 - 50) / 4 = 57.5, SRTT = 100 + 80 / 8 = 110
+        assertEquals(110_000, estimator.onOperationSucceeded(operation, 180 * MS));
+        assertEquals(110 + 4 * 57.5, estimator.getTimeoutMs(operation), 1);
+        // Error -30 ms: RTTVAR = 57.5 + (30 - 57.5) / 4 = 50.625, SRTT = 110 - 30 / 8 = 106.25
+        assertEquals(106_250, estimator.onOperationSucceeded(operation, 80 * MS));
+        assertEquals(106.25 + 4 * 50.625, estimator.getTimeoutMs(operation), 1);
+    }
+
+    @Test
+    public void stableMeasures_timeoutConvergesToMinimumMargin() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        for (int i = 0; i < 100; i++) {
+            estimator.onOperationSucceeded(operation, 100 * MS);
+        }
+        // SRTT + 25 ms of minimum margin
+        assertEquals(125, estimator.getTimeoutMs(operation));
+    }
+
+    @Test
+    public void timeout_boundedByFloorAndCeiling() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation fast = new GattOperationRequestMtu(null, 128);
+        for (int i = 0; i < 100; i++) {
+            estimator.onOperationSucceeded(fast, MS);
+        }
+        assertEquals(GattRttEstimator.MIN_OPERATION_TIMEOUT_MS, estimator.getTimeoutMs(fast));
+        GattRttEstimator slowEstimator = new GattRttEstimator();
+        slowEstimator.onOperationSucceeded(fast, 1500 * MS);
+        assertEquals(GattRttEstimator.MAX_OPERATION_TIMEOUT_MS,
+                slowEstimator.getTimeoutMs(fast));
+    }
+
+    @Test
+    public void timeouts_doubleUntilSuccess() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        for (int i = 0; i < 100; i++) {
+            estimator.onOperationSucceeded(operation, 40 * MS);
+        }
+        assertEquals(65, estimator.getTimeoutMs(operation));
+        estimator.onOperationTimedOut(operation);
+        assertEquals(130, estimator.getTimeoutMs(operation));
+        estimator.onOperationTimedOut(operation);
+        assertEquals(260, estimator.getTimeoutMs(operation));
+        // The backoff is limited to a factor 16
+        for (int i = 0; i < 10; i++) {
+            estimator.onOperationTimedOut(operation);
+        }
+        assertEquals(65 * 16, estimator.getTimeoutMs(operation));
+        // A success resets the backoff
+        estimator.onOperationSucceeded(operation, 40 * MS);
+        assertEquals(65, estimator.getTimeoutMs(operation));
+    }
+
+    @Test
+    public void timeoutsOnly_backoffFromInitialTimeout() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        estimator.onOperationTimedOut(operation);
+        assertEquals(2 * GattRttEstimator.INITIAL_OPERATION_TIMEOUT_MS,
+                estimator.getTimeoutMs(operation));
+        assertNull(estimator.getSmoothedRttMs(GattOperationType.REQUEST_MTU, null));
+    }
+
+    @Test
+    public void invalidMeasure_ignored() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        GattOperation operation = createOperation();
+        assertEquals(0, estimator.onOperationSucceeded(operation, -1));
+        assertEquals(GattRttEstimator.INITIAL_OPERATION_TIMEOUT_MS,
+                estimator.getTimeoutMs(operation));
+    }
+
+    @Test
+    public void estimates_separatedByOperationType() {
+        GattRttEstimator estimator = new GattRttEstimator();
+        estimator.onOperationSucceeded(createOperation(), 100 * MS);
+        assertNotNull(estimator.getSmoothedRttMs(GattOperationType.REQUEST_MTU, null));
+        assertNull(estimator.getSmoothedRttMs(GattOperationType.WRITE_CHARACTERISTIC, null));
+    }
+
+}
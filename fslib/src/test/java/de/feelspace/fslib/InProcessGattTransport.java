@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GATT transport connected to a peripheral simulated in the same process, for unit tests without
+ * Bluetooth device.
+ *
+ * Each procedure is answered by the {@link Peripheral} and its result is notified to the
+ * callback on the given executor after the link delay, in order of the procedures. The
+ * peripheral can send notifications with {@link #notifyCharacteristicChanged(UUID, byte[])}; a
+ * notification is delivered only when it has been enabled by the client. As for a bonded
+ * peripheral, the notifications enabled by a bonded client are kept for its next connections.
+ *
+ * The link delay is either fixed, or given by a {@link SimulatedLink} with latency, loss and
+ * throughput. When the executor is a {@link VirtualClock}, the events are timed on the virtual
+ * clock.
+ */
+public class InProcessGattTransport implements GattTransport {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    /** Maximum MTU accepted by the simulated peripheral. */
+    public static final int MAX_MTU = 517;
+
+    /**
+     * Peripheral simulated in process.
+     */
+    public interface Peripheral {
+
+        /**
+         * Returns the GATT services of the peripheral.
+         * @return the GATT services.
+         */
+        @NonNull List<BluetoothGattService> getServices();
+
+        /**
+         * Called when the client connects.
+         *
+         * @param transport The transport of the connection, to send notifications.
+         */
+        void onConnected(@NonNull InProcessGattTransport transport);
+
+        /**
+         * Called when the client disconnects.
+         *
+         * @param transport The transport of the connection.
+         */
+        void onDisconnected(@NonNull InProcessGattTransport transport);
+
+        /**
+         * Called when the client reads a characteristic.
+         *
+         * @param characteristic The characteristic.
+         * @return the value of the characteristic, or <code>null</code> to fail the read.
+         */
+        @Nullable byte[] onRead(@NonNull BluetoothGattCharacteristic characteristic);
+
+        /**
+         * Called when the client writes a characteristic.
+         *
+         * @param characteristic The characteristic.
+         * @param value The written value.
+         * @return <code>true</code> if the write is accepted.
+         */
+        boolean onWrite(@NonNull BluetoothGattCharacteristic characteristic,
+                        @NonNull byte[] value);
+    }
+
+    /**
+     * Factory of in-process transports connected to a peripheral.
+     */
+    public static class InProcessFactory implements Factory {
+
+        private final @NonNull Peripheral peripheral;
+        private final @NonNull ScheduledExecutorService executor;
+        private final long linkDelayMicros;
+        private final @Nullable SimulatedLink link;
+
+        // Notifications enabled by bonded clients, by address
+        private final @NonNull HashMap<String, HashSet<UUID>> bondedNotifications =
+                new HashMap<>();
+
+        /**
+         * Creates a factory.
+         *
+         * @param peripheral The simulated peripheral.
+         * @param executor The executor on which the GATT events are notified. A single thread
+         *                 executor keeps the order of events.
+         * @param linkDelayMicros The delay between a procedure and its result in microseconds.
+         */
+        public InProcessFactory(@NonNull Peripheral peripheral,
+                                @NonNull ScheduledExecutorService executor,
+                                long linkDelayMicros) {
+            this.peripheral = peripheral;
+            this.executor = executor;
+            this.linkDelayMicros = Math.max(0, linkDelayMicros);
+            this.link = null;
+        }
+
+        /**
+         * Creates a factory with a model of the link.
+         *
+         * @param peripheral The simulated peripheral.
+         * @param executor The executor on which the GATT events are notified, a
+         *                 {@link VirtualClock} for deterministic simulations.
+         * @param link The model of the link.
+         */
+        public InProcessFactory(@NonNull Peripheral peripheral,
+                                @NonNull ScheduledExecutorService executor,
+                                @NonNull SimulatedLink link) {
+            this.peripheral = peripheral;
+            this.executor = executor;
+            this.linkDelayMicros = 0;
+            this.link = link;
+        }
+
+        @Override
+        public @Nullable GattTransport connect(@NonNull Context context,
+                                               @NonNull BluetoothDevice device,
+                                               boolean autoConnect, @NonNull Callback callback,
+                                               @NonNull Handler handler) {
+            HashSet<UUID> remoteNotifications;
+            if (device.getBondState() == BluetoothDevice.BOND_BONDED) {
+                synchronized (bondedNotifications) {
+                    remoteNotifications = bondedNotifications.get(device.getAddress());
+                    if (remoteNotifications == null) {
+                        remoteNotifications = new HashSet<>();
+                        bondedNotifications.put(device.getAddress(), remoteNotifications);
+                    }
+                }
+            } else {
+                remoteNotifications = new HashSet<>();
+            }
+            InProcessGattTransport transport = new InProcessGattTransport(device, peripheral,
+                    callback, executor, linkDelayMicros, link, remoteNotifications);
+            transport.post(() -> {
+                peripheral.onConnected(transport);
+                callback.onConnectionStateChange(transport, BluetoothGatt.GATT_SUCCESS,
+                        BluetoothProfile.STATE_CONNECTED);
+            }, 0);
+            return transport;
+        }
+    }
+
+    // Peripheral and callback
+    private final @NonNull BluetoothDevice device;
+    private final @NonNull Peripheral peripheral;
+    private final @NonNull Callback callback;
+
+    // Executor and delay of GATT events
+    private final @NonNull ScheduledExecutorService executor;
+    private final long linkDelayMicros;
+    private final @Nullable SimulatedLink link;
+
+    // State of the connection
+    private volatile boolean connected = true;
+    private volatile boolean closed = false;
+    private volatile boolean servicesDiscovered = false;
+
+    // Characteristics with notifications enabled, by UUID
+    private final @NonNull HashSet<UUID> localNotifications = new HashSet<>();
+    private final @NonNull HashSet<UUID> remoteNotifications;
+
+    // Time of the last scheduled event, to keep events in order
+    private long lastEventTimeNano = 0;
+
+    /**
+     * Creates a transport.
+     */
+    private InProcessGattTransport(@NonNull BluetoothDevice device,
+                                   @NonNull Peripheral peripheral,
+                                   @NonNull Callback callback,
+                                   @NonNull ScheduledExecutorService executor,
+                                   long linkDelayMicros,
+                                   @Nullable SimulatedLink link,
+                                   @NonNull HashSet<UUID> remoteNotifications) {
+        this.device = device;
+        this.peripheral = peripheral;
+        this.callback = callback;
+        this.executor = executor;
+        this.linkDelayMicros = linkDelayMicros;
+        this.link = link;
+        this.remoteNotifications = remoteNotifications;
+    }
+
+    /**
+     * Sends a notification or indication from the peripheral. The notification is delivered only
+     * when the client has enabled it.
+     *
+     * @param characteristicUuid The UUID of the characteristic.
+     * @param value The value to notify.
+     * @return <code>true</code> if the notification has been sent.
+     */
+    public boolean notifyCharacteristicChanged(@NonNull UUID characteristicUuid,
+                                               @NonNull byte[] value) {
+        BluetoothGattCharacteristic characteristic = findCharacteristic(characteristicUuid);
+        if (characteristic == null || !connected) {
+            return false;
+        }
+        synchronized (this) {
+            if (!remoteNotifications.contains(characteristicUuid)) {
+                return false;
+            }
+        }
+        final byte[] copy = Arrays.copyOf(value, value.length);
+        post(() -> {
+            boolean deliver;
+            synchronized (this) {
+                deliver = localNotifications.contains(characteristicUuid);
+            }
+            if (deliver) {
+                characteristic.setValue(copy);
+                callback.onCharacteristicChanged(this, characteristic, copy);
+            }
+        }, copy.length);
+        return true;
+    }
+
+    /**
+     * Simulates a connection loss.
+     */
+    public void simulateConnectionLoss() {
+        terminateConnection(8 /* GATT_CONN_TIMEOUT */, getLinkDelayNano());
+    }
+
+    /**
+     * Returns <code>true</code> if the client is connected.
+     * @return <code>true</code> if the client is connected.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public @NonNull BluetoothDevice getDevice() {
+        return device;
+    }
+
+    @Override
+    public void disconnect() {
+        terminateConnection(BluetoothGatt.GATT_SUCCESS, getLinkDelayNano());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connected = false;
+    }
+
+    @Override
+    public boolean discoverServices() {
+        if (!connected) {
+            return false;
+        }
+        post(() -> {
+            servicesDiscovered = true;
+            callback.onServicesDiscovered(this, BluetoothGatt.GATT_SUCCESS);
+        }, 0);
+        return true;
+    }
+
+    @Override
+    public @NonNull List<BluetoothGattService> getServices() {
+        if (!servicesDiscovered) {
+            return new ArrayList<>();
+        }
+        return peripheral.getServices();
+    }
+
+    @Override
+    public @Nullable BluetoothGattService getService(@NonNull UUID uuid) {
+        for (BluetoothGattService service: getServices()) {
+            if (uuid.equals(service.getUuid())) {
+                return service;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean readCharacteristic(@NonNull BluetoothGattCharacteristic characteristic) {
+        if (!connected) {
+            return false;
+        }
+        post(() -> {
+            byte[] value = peripheral.onRead(characteristic);
+            if (value != null) {
+                characteristic.setValue(value);
+            }
+            callback.onCharacteristicRead(this, characteristic, value,
+                    (value == null)?(BluetoothGatt.GATT_FAILURE):(BluetoothGatt.GATT_SUCCESS));
+        }, 0);
+        return true;
+    }
+
+    @Override
+    public boolean writeCharacteristic(@NonNull BluetoothGattCharacteristic characteristic) {
+        byte[] value = characteristic.getValue();
+        if (!connected || value == null) {
+            return false;
+        }
+        final byte[] copy = Arrays.copyOf(value, value.length);
+        post(() -> {
+            boolean accepted = peripheral.onWrite(characteristic, copy);
+            callback.onCharacteristicWrite(this, characteristic,
+                    (accepted)?(BluetoothGatt.GATT_SUCCESS):(BluetoothGatt.GATT_FAILURE));
+        }, copy.length);
+        return true;
+    }
+
+    @Override
+    public boolean writeDescriptor(@NonNull BluetoothGattDescriptor descriptor) {
+        byte[] value = descriptor.getValue();
+        if (!connected || value == null) {
+            return false;
+        }
+        final boolean enable = value.length > 0 && value[0] != 0;
+        final UUID characteristicUuid = descriptor.getCharacteristic().getUuid();
+        post(() -> {
+            synchronized (this) {
+                if (enable) {
+                    remoteNotifications.add(characteristicUuid);
+                } else {
+                    remoteNotifications.remove(characteristicUuid);
+                }
+            }
+            callback.onDescriptorWrite(this, descriptor, BluetoothGatt.GATT_SUCCESS);
+        }, value.length);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setCharacteristicNotification(
+            @NonNull BluetoothGattCharacteristic characteristic, boolean enable) {
+        if (enable) {
+            localNotifications.add(characteristic.getUuid());
+        } else {
+            localNotifications.remove(characteristic.getUuid());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        if (!connected) {
+            return false;
+        }
+        final int negotiated = Math.min(mtu, MAX_MTU);
+        post(() -> callback.onMtuChanged(this, negotiated, BluetoothGatt.GATT_SUCCESS), 2);
+        return true;
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int connectionPriority) {
+        return connected;
+    }
+
+    @Override
+    public boolean refresh() {
+        servicesDiscovered = false;
+        return true;
+    }
+
+    /**
+     * Returns a characteristic of the peripheral.
+     *
+     * @param uuid The UUID of the characteristic.
+     * @return the characteristic, or <code>null</code> if not found.
+     */
+    private @Nullable BluetoothGattCharacteristic findCharacteristic(@NonNull UUID uuid) {
+        for (BluetoothGattService service: peripheral.getServices()) {
+            for (BluetoothGattCharacteristic characteristic: service.getCharacteristics()) {
+                if (uuid.equals(characteristic.getUuid())) {
+                    return characteristic;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the delay of the link for events without transfer.
+     */
+    private long getLinkDelayNano() {
+        SimulatedLink l = link;
+        return (l == null)?(TimeUnit.MICROSECONDS.toNanos(linkDelayMicros)):(l.getLatencyNano());
+    }
+
+    /**
+     * Terminates the connection and notifies the disconnection after the previous events.
+     *
+     * @param status The status of the disconnection.
+     * @param delayNano The delay of the disconnection event.
+     */
+    private void terminateConnection(int status, long delayNano) {
+        synchronized (this) {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+        }
+        long now = VirtualClock.currentTimeNano(executor);
+        long eventTimeNano = reserveEventTime(now + delayNano);
+        schedule(() -> {
+            peripheral.onDisconnected(this);
+            callback.onConnectionStateChange(this, status, BluetoothProfile.STATE_DISCONNECTED);
+        }, eventTimeNano - now);
+    }
+
+    /**
+     * Transfers a GATT event on the link and schedules it after the previous events. When the
+     * link is lost, the event is dropped and the connection is lost after the supervision
+     * timeout.
+     *
+     * @param event The event.
+     * @param payloadSize The size of the payload transferred for the event.
+     */
+    private void post(@NonNull Runnable event, int payloadSize) {
+        long now = VirtualClock.currentTimeNano(executor);
+        long eventTimeNano;
+        SimulatedLink l = link;
+        if (l != null) {
+            eventTimeNano = l.transfer(now, payloadSize);
+            if (eventTimeNano < 0) {
+                terminateConnection(8 /* GATT_CONN_TIMEOUT */, l.getSupervisionTimeoutNano());
+                return;
+            }
+        } else {
+            eventTimeNano = now + TimeUnit.MICROSECONDS.toNanos(linkDelayMicros);
+        }
+        eventTimeNano = reserveEventTime(eventTimeNano);
+        schedule(event, eventTimeNano - now);
+    }
+
+    /**
+     * Returns the time of a new event, not before the previous events.
+     *
+     * @param eventTimeNano The time of the event.
+     * @return the time of the event after the previous events.
+     */
+    private synchronized long reserveEventTime(long eventTimeNano) {
+        eventTimeNano = Math.max(eventTimeNano, lastEventTimeNano);
+        lastEventTimeNano = eventTimeNano;
+        return eventTimeNano;
+    }
+
+    /**
+     * Schedules a GATT event on the executor.
+     *
+     * @param event The event.
+     * @param delayNano The delay of the event.
+     */
+    private void schedule(@NonNull Runnable event, long delayNano) {
+        try {
+            executor.schedule(() -> {
+                if (closed) {
+                    return;
+                }
+                try {
+                    event.run();
+                } catch (Exception e) {
+                    Log.e(DEBUG_TAG, "InProcessGattTransport: Error in GATT event.", e);
+                }
+            }, delayNano, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            Log.e(DEBUG_TAG, "InProcessGattTransport: Unable to schedule GATT event.", e);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests of the GATT controller connected to a simulated belt with the in-process transport.
+ *
+ * The controller, the transport and the belt run on a virtual clock. The delayed GATT calls of
+ * the controller are posted on the main looper, advanced in step with the virtual clock.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class InProcessGattTransportTest {
+
+    private static final String BELT_ADDRESS = "00:11:22:33:44:55";
+    private static final long LINK_DELAY_MICROS = 1000;
+    private static final long SLOW_LINK_DELAY_MICROS = 150_000;
+    private static final int WRITE_STEPS = 8;
+    private static final long STEP_MS = 5;
+
+    private VirtualClock clock;
+    private SimulatedBelt belt;
+    private GattController gattController;
+    private BluetoothDevice device;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        belt = new SimulatedBelt(clock);
+        gattController = new GattController(clock, new TimerWheel(clock, clock), clock);
+        gattController.setCallbackLooper(Looper.getMainLooper());
+        gattController.setTransportFactory(
+                new InProcessGattTransport.InProcessFactory(belt, clock, LINK_DELAY_MICROS));
+        device = BluetoothAdapter.getDefaultAdapter().getRemoteDevice(BELT_ADDRESS);
+        shadowOf(device).setBondState(BluetoothDevice.BOND_BONDED);
+    }
+
+    @After
+    public void tearDown() {
+        gattController.disconnect();
+        advance(100);
+        clock.shutdownNow();
+    }
+
+    private void advance(long durationMs) {
+        for (long elapsedMs = 0; elapsedMs < durationMs; elapsedMs += STEP_MS) {
+            clock.advanceBy(STEP_MS, TimeUnit.MILLISECONDS);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(STEP_MS));
+        }
+    }
+
+    private void connect() {
+        gattController.connect(RuntimeEnvironment.getApplication(), device);
+        advance(3000);
+        assertEquals(GattConnectionState.GATT_CONNECTED, gattController.getConnectionState());
+    }
+
+    private BluetoothGattCharacteristic getControlCharacteristic(java.util.UUID uuid) {
+        BluetoothGattCharacteristic characteristic = gattController.getCharacteristic(
+                BeltCommunicationController.BELT_CONTROL_SERVICE_UUID, uuid);
+        assertNotNull(characteristic);
+        return characteristic;
+    }
+
+    @Test
+    public void connect_discoversServicesAndNegotiatesMtu() {
+        connect();
+        getControlCharacteristic(BeltCommunicationController.VIBRATION_COMMAND_CHAR_UUID);
+        assertEquals(GattController.DEFAULT_PREFERRED_MTU, gattController.getMtu());
+    }
+
+    @Test
+    public void request_completedByNotification() {
+        connect();
+        BluetoothGattCharacteristic requestChar = getControlCharacteristic(
+                BeltCommunicationController.PARAMETER_REQUEST_CHAR_UUID);
+        BluetoothGattCharacteristic notificationChar = getControlCharacteristic(
+                BeltCommunicationController.PARAMETER_NOTIFICATION_CHAR_UUID);
+        assertTrue(gattController.setCharacteristicNotificationIndication(notificationChar, true,
+                false));
+        // Mode request
+        CompletableFuture<BeltCommandResult> future = gattController.requestAsync(requestChar,
+                notificationChar, new byte[] {0x01, 0x01}, new Byte[] {0x01, 0x01}, 1,
+                GattOperationPriority.PARAMETER);
+        advance(100);
+        assertTrue(future.isDone());
+        BeltCommandResult result = future.join();
+        assertTrue(result.isSuccess());
+        assertArrayEquals(new byte[] {0x01, 0x01, BeltMode.WAIT.getValue()},
+                result.getNotifiedValue());
+        // Write and notification on the link, timed on the virtual clock
+        Float rttMs = result.getRoundTripTimeMs();
+        assertNotNull(rttMs);
+        assertEquals(2 * LINK_DELAY_MICROS / 1000f, rttMs, 0.001f);
+    }
+
+    @Test
+    public void write_receivedByBelt() {
+        connect();
+        BluetoothGattCharacteristic requestChar = getControlCharacteristic(
+                BeltCommunicationController.PARAMETER_REQUEST_CHAR_UUID);
+        // Change mode to app mode
+        CompletableFuture<BeltCommandResult> future = gattController.writeCharacteristicAsync(
+                requestChar, new byte[] {0x01, (byte) 0x81, BeltMode.APP.getValue()}, false,
+                false, GattOperationPriority.PARAMETER);
+        advance(100);
+        assertTrue(future.join().isSuccess());
+        assertEquals(BeltMode.APP, belt.getMode());
+    }
+
+    @Test
+    public void batch_requestTimeoutCancelsUnstartedSteps() {
+        // Slow link, the request is released before its response times out
+        gattController.setTransportFactory(
+                new InProcessGattTransport.InProcessFactory(belt, clock, SLOW_LINK_DELAY_MICROS));
+        connect();
+        BluetoothGattCharacteristic requestChar = getControlCharacteristic(
+                BeltCommunicationController.PARAMETER_REQUEST_CHAR_UUID);
+        BluetoothGattCharacteristic notificationChar = getControlCharacteristic(
+                BeltCommunicationController.PARAMETER_NOTIFICATION_CHAR_UUID);
+        // Mode request without notification registration, the response never arrives
+        GattOperationBatch batch = new GattOperationBatch(GattOperationPriority.PARAMETER)
+                .request(requestChar, notificationChar, new byte[] {0x01, 0x01},
+                        new byte[] {0x01, 0x01}, null, 1);
+        for (int i = 0; i < WRITE_STEPS; i++) {
+            batch.writeCharacteristic(requestChar, new byte[] {0x01, 0x01});
+        }
+        CompletableFuture<BeltCommandBatchResult> future = gattController.submitBatch(batch);
+        advance(3000);
+        assertTrue(future.isDone());
+        BeltCommandBatchResult result = future.join();
+        assertFalse(result.isSuccess());
+        BeltCommandResult requestResult = result.getStepResult(0);
+        assertTrue(requestResult.isTimedOut());
+        // Steps started after the release of the request and before its timeout
+        int startedSteps = 0;
+        for (int i = 1; i <= WRITE_STEPS; i++) {
+            BeltCommandResult stepResult = result.getStepResult(i);
+            if (stepResult.getStartTimeNano() != 0) {
+                assertTrue(stepResult.getStartTimeNano() <
+                        requestResult.getCompletionTimeNano());
+                assertTrue(stepResult.isSuccess());
+                startedSteps++;
+            } else {
+                assertFalse(stepResult.isSuccess());
+            }
+        }
+        assertTrue(startedSteps > 0);
+        assertTrue(startedSteps < WRITE_STEPS);
+    }
+
+    @Test
+    public void disconnect_closesConnection() {
+        connect();
+        gattController.disconnect();
+        advance(100);
+        assertEquals(GattConnectionState.GATT_DISCONNECTED, gattController.getConnectionState());
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the history of orientation samples.
+ */
+public class OrientationHistoryTest {
+
+    private static final float DELTA = 1e-3f;
+
+    private OrientationHistory history;
+    private OrientationSnapshot sample;
+    private long sequenceNumber;
+
+    @Before
+    public void setUp() {
+        history = new OrientationHistory(4);
+        sample = new OrientationSnapshot();
+        sequenceNumber = 0;
+    }
+
+    private static long nanos(long timeMs) {
+        return TimeUnit.MILLISECONDS.toNanos(timeMs);
+    }
+
+    private void add(long timeMs, int beltHeading) {
+        add(timeMs, beltHeading, 0, 0);
+    }
+
+    private void add(long timeMs, int beltHeading, int roll, int pitch) {
+        sample.set(nanos(timeMs), sequenceNumber++, 0, beltHeading, beltHeading, roll, pitch, 5,
+                3, 3, 3, 3, false);
+        history.add(sample);
+    }
+
+    @Test
+    public void emptyHistory_noSampleAndNaN() {
+        assertEquals(0, history.size());
+        assertFalse(history.getLatestSample(sample));
+        assertFalse(history.getSampleAt(0, sample));
+        assertTrue(Float.isNaN(history.getBeltHeadingAt(0)));
+        assertTrue(Float.isNaN(history.getBeltHeadingMean(0, nanos(1000))));
+        assertTrue(Float.isNaN(history.getBeltHeadingVariance(0, nanos(1000))));
+    }
+
+    @Test
+    public void interpolation_shortestRotationAcrossNorth() {
+        add(0, 350);
+        add(100, 10);
+        assertEquals(0, history.getBeltHeadingAt(nanos(50)), DELTA);
+        assertEquals(355, history.getBeltHeadingAt(nanos(25)), DELTA);
+        assertEquals(5, history.getBeltHeadingAt(nanos(75)), DELTA);
+        // Outside of the history, the closest sample
+        assertEquals(350, history.getBeltHeadingAt(nanos(-100)), DELTA);
+        assertEquals(10, history.getBeltHeadingAt(nanos(200)), DELTA);
+    }
+
+    @Test
+    public void mean_circularAcrossNorth() {
+        add(0, 350);
+        add(100, 10);
+        assertEquals(0, history.getBeltHeadingMean(0, nanos(100)), DELTA);
+        // Opposite headings cancel each other out
+        add(200, 90);
+        add(300, 270);
+        assertTrue(Float.isNaN(history.getBeltHeadingMean(nanos(200), nanos(300))));
+    }
+
+    @Test
+    public void variance_zeroForEqualHeadingsOneForOpposite() {
+        add(0, 350);
+        add(100, 350);
+        add(200, 170);
+        assertEquals(0, history.getBeltHeadingVariance(0, nanos(100)), DELTA);
+        assertEquals(1, history.getBeltHeadingVariance(nanos(100), nanos(200)), DELTA);
+        assertTrue(history.getBeltHeadingVariance(0, nanos(200)) > 0.5f);
+    }
+
+    @Test
+    public void fullBuffer_oldestSamplesOverwritten() {
+        for (int i=0; i<6; i++) {
+            add(i * 100, i * 10);
+        }
+        assertEquals(4, history.size());
+        assertEquals(4, history.getCapacity());
+        assertTrue(history.getSample(0, sample));
+        assertEquals(nanos(200), sample.getTimestampNano());
+        assertEquals(2, sample.getSequenceNumber());
+        assertEquals(20, sample.getBeltHeading());
+        assertTrue(history.getLatestSample(sample));
+        assertEquals(nanos(500), sample.getTimestampNano());
+        assertEquals(50, sample.getBeltHeading());
+        assertFalse(history.getSample(4, sample));
+        assertFalse(history.getSample(-1, sample));
+        // Overwritten samples are not in the window anymore
+        assertEquals(0, history.countSamplesInWindow(0, nanos(100)));
+        assertEquals(4, history.countSamplesInWindow(0, nanos(1000)));
+        history.clear();
+        assertEquals(0, history.size());
+        assertTrue(Float.isNaN(history.getBeltHeadingAt(nanos(500))));
+    }
+
+    @Test
+    public void window_boundsInclusive() {
+        add(100, 10);
+        add(200, 20);
+        add(300, 30);
+        assertEquals(3, history.countSamplesInWindow(nanos(100), nanos(300)));
+        assertEquals(1, history.countSamplesInWindow(nanos(200), nanos(200)));
+        assertEquals(1, history.countSamplesInWindow(nanos(100) + 1, nanos(300) - 1));
+        assertEquals(0, history.countSamplesInWindow(nanos(100) + 1, nanos(200) - 1));
+        assertEquals(0, history.countSamplesInWindow(nanos(400), nanos(500)));
+        assertTrue(Float.isNaN(history.getBeltHeadingMean(nanos(400), nanos(500))));
+        assertTrue(Float.isNaN(history.getBeltHeadingVariance(nanos(400), nanos(500))));
+        // Most recent samples when there are more samples than snapshots
+        OrientationSnapshot[] targets = new OrientationSnapshot[] {new OrientationSnapshot(),
+                new OrientationSnapshot()};
+        assertEquals(2, history.getSamplesInWindow(nanos(100), nanos(300), targets));
+        assertEquals(20, targets[0].getBeltHeading());
+        assertEquals(30, targets[1].getBeltHeading());
+        assertEquals(1, history.getSamplesInWindow(nanos(100), nanos(100), targets));
+        assertEquals(10, targets[0].getBeltHeading());
+    }
+
+    @Test
+    public void sampleAt_interpolatedAnglesClosestValues() {
+        add(0, 350, -170, 10);
+        add(100, 10, 170, 20);
+        assertTrue(history.getSampleAt(nanos(40), sample));
+        // Values of the closest sample
+        assertEquals(nanos(0), sample.getTimestampNano());
+        assertEquals(0, sample.getSequenceNumber());
+        // Headings and roll on the circle, pitch linearly
+        assertEquals(358, sample.getBeltHeading());
+        assertEquals(358, sample.getControlBoxHeading());
+        assertEquals(-178, sample.getControlBoxRoll());
+        assertEquals(14, sample.getControlBoxPitch());
+        assertTrue(history.getSampleAt(nanos(60), sample));
+        assertEquals(nanos(100), sample.getTimestampNano());
+        assertEquals(2, sample.getBeltHeading());
+        assertEquals(178, sample.getControlBoxRoll());
+        assertEquals(16, sample.getControlBoxPitch());
+        // After the most recent sample
+        assertTrue(history.getSampleAt(nanos(500), sample));
+        assertEquals(1, sample.getSequenceNumber());
+        assertEquals(10, sample.getBeltHeading());
+    }
+
+}
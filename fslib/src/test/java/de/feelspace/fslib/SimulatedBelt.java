@@ -0,0 +1,1049 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulation of the firmware of a belt, to connect the belt protocol to a simulated belt with
+ * {@link InProcessGattTransport}.
+ *
+ * The simulated belt has the GATT profile of a belt and answers:
+ * - keep-alive notifications in the period of the firmware, and their acknowledgments,
+ * - parameter requests and changes (commands 0x01, 0x10, 0x11 and 0x12) with parameter
+ * notifications,
+ * - channel configuration, pulse, stop and system signal commands on the vibration channels,
+ * - orientation notifications at a configurable rate, with a heading turning at a configurable
+ * rate,
+ * - battery status reads and notifications, with a battery discharging over time.
+ *
+ * The periodic notifications are scheduled on the given executor. With a {@link VirtualClock}
+ * shared with the transport, a session of several hours runs in seconds and is reproducible.
+ */
+public class SimulatedBelt implements InProcessGattTransport.Peripheral {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = false;
+
+    /** Number of vibration channels. */
+    public static final int CHANNEL_COUNT = 6;
+
+    /** Default firmware version. */
+    public static final int DEFAULT_FIRMWARE_VERSION = 52;
+
+    /** Default period of keep-alive notifications in milliseconds. */
+    public static final long DEFAULT_KEEP_ALIVE_PERIOD_MS = 30000;
+
+    /** Default period of orientation notifications in milliseconds. */
+    public static final long DEFAULT_ORIENTATION_PERIOD_MS = 100;
+
+    /** Default period of battery status notifications in milliseconds. */
+    public static final long DEFAULT_BATTERY_PERIOD_MS = 60000;
+
+    /**
+     * Listener for the commands received by the simulated belt.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a vibration command is applied by the simulated belt.
+         *
+         * @param packet The vibration command.
+         * @param timeNano The time of reception, on the clock of the simulation.
+         */
+        void onVibrationCommand(@NonNull byte[] packet, long timeNano);
+
+        /**
+         * Called when the mode of the simulated belt changes.
+         *
+         * @param mode The new mode.
+         */
+        void onModeChanged(@NonNull BeltMode mode);
+    }
+
+    // UUIDs of the GATT profile
+    private static final UUID CCCD_UUID =
+            UUID.fromString("00002902-0000-1000-8000-00805F9B34FB");
+    private static final UUID BELT_CONTROL_SERVICE_UUID =
+            UUID.fromString("0000FE51-0000-1000-8000-00805F9B34FB");
+    private static final UUID FIRMWARE_INFO_CHAR_UUID =
+            UUID.fromString("0000FE01-0000-1000-8000-00805F9B34FB");
+    private static final UUID KEEP_ALIVE_CHAR_UUID =
+            UUID.fromString("0000FE02-0000-1000-8000-00805F9B34FB");
+    private static final UUID VIBRATION_COMMAND_CHAR_UUID =
+            UUID.fromString("0000FE03-0000-1000-8000-00805F9B34FB");
+    private static final UUID BUTTON_PRESS_NOTIFICATION_CHAR_UUID =
+            UUID.fromString("0000FE04-0000-1000-8000-00805F9B34FB");
+    private static final UUID PARAMETER_REQUEST_CHAR_UUID =
+            UUID.fromString("0000FE05-0000-1000-8000-00805F9B34FB");
+    private static final UUID PARAMETER_NOTIFICATION_CHAR_UUID =
+            UUID.fromString("0000FE06-0000-1000-8000-00805F9B34FB");
+    private static final UUID BUZZER_LED_COMMAND_CHAR_UUID =
+            UUID.fromString("0000FE07-0000-1000-8000-00805F9B34FB");
+    private static final UUID BATTERY_STATUS_CHAR_UUID =
+            UUID.fromString("0000FE09-0000-1000-8000-00805F9B34FB");
+    private static final UUID SENSOR_SERVICE_UUID =
+            UUID.fromString("0000FE52-0000-1000-8000-00805F9B34FB");
+    private static final UUID SENSOR_PARAM_REQUEST_CHAR_UUID =
+            UUID.fromString("0000FE0A-0000-1000-8000-00805F9B34FB");
+    private static final UUID SENSOR_PARAM_NOTIFICATION_CHAR_UUID =
+            UUID.fromString("0000FE0B-0000-1000-8000-00805F9B34FB");
+    private static final UUID ORIENTATION_DATA_CHAR_UUID =
+            UUID.fromString("0000FE0C-0000-1000-8000-00805F9B34FB");
+    private static final UUID DEBUG_SERVICE_UUID =
+            UUID.fromString("0000FE53-0000-1000-8000-00805F9B34FB");
+    private static final UUID DEBUG_INPUT_CHAR_UUID =
+            UUID.fromString("0000FE13-0000-1000-8000-00805F9B34FB");
+    private static final UUID DEBUG_OUTPUT_CHAR_UUID =
+            UUID.fromString("0000FE14-0000-1000-8000-00805F9B34FB");
+
+    // Parameter IDs of commands 0x10 and 0x11
+    private static final int PARAMETER_DEFAULT_INTENSITY = 0x00;
+    private static final int PARAMETER_HEADING_OFFSET = 0x01;
+    private static final int PARAMETER_BUZZER_ACTIVE = 0x02;
+    private static final int PARAMETER_ACCURACY_SIGNAL_STATE = 0x03;
+
+    // Default values of parameters
+    private static final int DEFAULT_INTENSITY = 50;
+    private static final int DEFAULT_ACCURACY_SIGNAL_STATE = 1;
+
+    // GATT profile
+    private final @NonNull List<BluetoothGattService> services;
+
+    // Executor of periodic notifications
+    private final @NonNull ScheduledExecutorService executor;
+
+    // Connected transport and periodic tasks
+    private @Nullable InProcessGattTransport transport;
+    private @Nullable ScheduledFuture<?> keepAliveTask;
+    private @Nullable ScheduledFuture<?> orientationTask;
+    private @Nullable ScheduledFuture<?> batteryTask;
+
+    // Periods of notifications
+    private long keepAlivePeriodMs = DEFAULT_KEEP_ALIVE_PERIOD_MS;
+    private long orientationPeriodMs = DEFAULT_ORIENTATION_PERIOD_MS;
+    private long batteryPeriodMs = DEFAULT_BATTERY_PERIOD_MS;
+
+    // Mode and parameters
+    private @NonNull BeltMode mode = BeltMode.WAIT;
+    private int firmwareVersion = DEFAULT_FIRMWARE_VERSION;
+    private int defaultIntensity = DEFAULT_INTENSITY;
+    private int headingOffset = 0;
+    private boolean buzzerActive = true;
+    private int accuracySignalState = DEFAULT_ACCURACY_SIGNAL_STATE;
+
+    // Orientation, the heading turns at constant rate from the reference time
+    private double headingDeg = 0;
+    private double headingRateDegPerSecond = 0;
+    private long headingTimeNano;
+    private int roll = 0;
+    private int pitch = 0;
+    private int accuracy = 5;
+    private boolean inaccurateOrientation = false;
+
+    // Battery, the level changes at constant rate from the reference time
+    private @NonNull PowerStatus powerStatus = PowerStatus.ON_BATTERY;
+    private double batteryLevel = 80;
+    private double batteryRatePercentPerHour = 10;
+    private long batteryTimeNano;
+
+    // State of vibration channels
+    private final @NonNull int[] channelPattern = new int[CHANNEL_COUNT];
+    private final @NonNull int[] channelIntensity = new int[CHANNEL_COUNT];
+    private final @NonNull int[] channelOrientationType = new int[CHANNEL_COUNT];
+    private final @NonNull int[] channelOrientationValue = new int[CHANNEL_COUNT];
+    private final @NonNull long[] channelEndTimeNano = new long[CHANNEL_COUNT];
+    private final @NonNull boolean[] channelActive = new boolean[CHANNEL_COUNT];
+
+    // Counters
+    private long keepAliveCount = 0;
+    private long keepAliveAckCount = 0;
+    private long vibrationCommandCount = 0;
+    private long ignoredCommandCount = 0;
+    private long systemSignalCount = 0;
+    private long tonePatternCount = 0;
+
+    // Listeners
+    private final @NonNull ArrayList<Listener> listeners = new ArrayList<>();
+
+    /**
+     * Creates a simulated belt in wait mode.
+     *
+     * @param executor The executor of the periodic notifications. It should be the executor of
+     *                 the transport, a {@link VirtualClock} for deterministic simulations.
+     */
+    public SimulatedBelt(@NonNull ScheduledExecutorService executor) {
+        this.executor = executor;
+        long now = VirtualClock.currentTimeNano(executor);
+        headingTimeNano = now;
+        batteryTimeNano = now;
+        ArrayList<BluetoothGattService> profile = new ArrayList<>();
+        // Belt control service
+        BluetoothGattService control = new BluetoothGattService(BELT_CONTROL_SERVICE_UUID,
+                BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        addCharacteristic(control, FIRMWARE_INFO_CHAR_UUID, true, false, false);
+        addCharacteristic(control, KEEP_ALIVE_CHAR_UUID, true, true, true);
+        addCharacteristic(control, VIBRATION_COMMAND_CHAR_UUID, false, true, false);
+        addCharacteristic(control, BUTTON_PRESS_NOTIFICATION_CHAR_UUID, false, false, true);
+        addCharacteristic(control, PARAMETER_REQUEST_CHAR_UUID, false, true, false);
+        addCharacteristic(control, PARAMETER_NOTIFICATION_CHAR_UUID, false, false, true);
+        addCharacteristic(control, BUZZER_LED_COMMAND_CHAR_UUID, false, true, false);
+        addCharacteristic(control, BATTERY_STATUS_CHAR_UUID, true, false, true);
+        profile.add(control);
+        // Sensor service
+        BluetoothGattService sensor = new BluetoothGattService(SENSOR_SERVICE_UUID,
+                BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        addCharacteristic(sensor, SENSOR_PARAM_REQUEST_CHAR_UUID, false, true, false);
+        addCharacteristic(sensor, SENSOR_PARAM_NOTIFICATION_CHAR_UUID, false, false, true);
+        addCharacteristic(sensor, ORIENTATION_DATA_CHAR_UUID, false, false, true);
+        profile.add(sensor);
+        // Debug service
+        BluetoothGattService debug = new BluetoothGattService(DEBUG_SERVICE_UUID,
+                BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        addCharacteristic(debug, DEBUG_INPUT_CHAR_UUID, false, true, false);
+        addCharacteristic(debug, DEBUG_OUTPUT_CHAR_UUID, false, false, true);
+        profile.add(debug);
+        services = Collections.unmodifiableList(profile);
+    }
+
+    /**
+     * Adds a characteristic to a service of the profile.
+     */
+    private static void addCharacteristic(@NonNull BluetoothGattService service,
+                                          @NonNull UUID uuid, boolean read, boolean write,
+                                          boolean notify) {
+        int properties = 0;
+        int permissions = 0;
+        if (read) {
+            properties |= BluetoothGattCharacteristic.PROPERTY_READ;
+            permissions |= BluetoothGattCharacteristic.PERMISSION_READ;
+        }
+        if (write) {
+            properties |= BluetoothGattCharacteristic.PROPERTY_WRITE |
+                    BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE;
+            permissions |= BluetoothGattCharacteristic.PERMISSION_WRITE;
+        }
+        if (notify) {
+            properties |= BluetoothGattCharacteristic.PROPERTY_NOTIFY;
+        }
+        BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(uuid,
+                properties, permissions);
+        if (notify) {
+            characteristic.addDescriptor(new BluetoothGattDescriptor(CCCD_UUID,
+                    BluetoothGattDescriptor.PERMISSION_READ |
+                            BluetoothGattDescriptor.PERMISSION_WRITE));
+        }
+        service.addCharacteristic(characteristic);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Configuration of the simulation
+
+    /**
+     * Sets the period of keep-alive notifications. The period is applied on the next connection.
+     *
+     * @param periodMs The period in milliseconds.
+     */
+    public synchronized void setKeepAlivePeriod(long periodMs) {
+        keepAlivePeriodMs = Math.max(1, periodMs);
+    }
+
+    /**
+     * Sets the rate of orientation notifications. The rate is applied on the next connection.
+     *
+     * @param rateHz The rate in Hz.
+     */
+    public synchronized void setOrientationRate(double rateHz) {
+        orientationPeriodMs = (rateHz <= 0)?(DEFAULT_ORIENTATION_PERIOD_MS):
+                (Math.max(1, Math.round(1000. / rateHz)));
+    }
+
+    /**
+     * Sets the period of battery status notifications. The period is applied on the next
+     * connection.
+     *
+     * @param periodMs The period in milliseconds.
+     */
+    public synchronized void setBatteryPeriod(long periodMs) {
+        batteryPeriodMs = Math.max(1, periodMs);
+    }
+
+    /**
+     * Sets the firmware version.
+     *
+     * @param version The firmware version.
+     */
+    public synchronized void setFirmwareVersion(int version) {
+        firmwareVersion = version & 0xFFFF;
+    }
+
+    /**
+     * Sets the heading of the control box and the rate at which it turns.
+     *
+     * @param headingDeg The heading in degrees.
+     * @param rateDegPerSecond The angular velocity in degrees per second, positive clockwise.
+     */
+    public synchronized void setHeading(double headingDeg, double rateDegPerSecond) {
+        this.headingDeg = headingDeg;
+        this.headingRateDegPerSecond = rateDegPerSecond;
+        this.headingTimeNano = VirtualClock.currentTimeNano(executor);
+    }
+
+    /**
+     * Sets the roll, pitch and accuracy of the orientation.
+     *
+     * @param roll The roll in degrees.
+     * @param pitch The pitch in degrees.
+     * @param accuracy The accuracy in degrees.
+     * @param inaccurate <code>true</code> to flag the orientation as inaccurate.
+     */
+    public synchronized void setOrientationState(int roll, int pitch, int accuracy,
+                                                 boolean inaccurate) {
+        this.roll = roll;
+        this.pitch = pitch;
+        this.accuracy = accuracy;
+        this.inaccurateOrientation = inaccurate;
+    }
+
+    /**
+     * Sets the battery status.
+     *
+     * @param status The power status.
+     * @param level The battery level in percent.
+     * @param ratePercentPerHour The discharge rate on battery, or charge rate when charging, in
+     *                           percent per hour.
+     */
+    public synchronized void setBattery(@NonNull PowerStatus status, double level,
+                                        double ratePercentPerHour) {
+        powerStatus = status;
+        batteryLevel = Math.max(0, Math.min(100, level));
+        batteryRatePercentPerHour = Math.max(0, ratePercentPerHour);
+        batteryTimeNano = VirtualClock.currentTimeNano(executor);
+    }
+
+    /**
+     * Simulates a button press on the belt.
+     *
+     * @param button The button pressed.
+     */
+    public void pressButton(@NonNull BeltButton button) {
+        BeltMode previousMode;
+        BeltMode subsequentMode;
+        synchronized (this) {
+            previousMode = mode;
+            switch (button) {
+                case POWER:
+                    subsequentMode = BeltMode.STANDBY;
+                    break;
+                case PAUSE:
+                    subsequentMode = (mode == BeltMode.PAUSE)?(BeltMode.WAIT):(BeltMode.PAUSE);
+                    break;
+                case COMPASS:
+                    subsequentMode = BeltMode.COMPASS;
+                    break;
+                case HOME:
+                default:
+                    subsequentMode = BeltMode.WAIT;
+                    break;
+            }
+        }
+        setMode(subsequentMode);
+        notifyCharacteristic(BUTTON_PRESS_NOTIFICATION_CHAR_UUID, new byte[] {
+                button.getValue(),
+                (byte) 0x01,                // Press type
+                (byte) 0x00,
+                previousMode.getValue(),
+                subsequentMode.getValue()
+        });
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addListener(@Nullable Listener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeListener(@Nullable Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // State of the simulated belt
+
+    /**
+     * Returns the mode of the simulated belt.
+     * @return the mode.
+     */
+    public synchronized @NonNull BeltMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the default vibration intensity.
+     * @return the default vibration intensity.
+     */
+    public synchronized int getDefaultIntensity() {
+        return defaultIntensity;
+    }
+
+    /**
+     * Returns the heading offset.
+     * @return the heading offset in degrees.
+     */
+    public synchronized int getHeadingOffset() {
+        return headingOffset;
+    }
+
+    /**
+     * Returns the heading of the control box at the current time.
+     * @return the heading in degrees in range [0-359].
+     */
+    public synchronized int getHeading() {
+        return computeHeading(VirtualClock.currentTimeNano(executor));
+    }
+
+    /**
+     * Returns the battery level at the current time.
+     * @return the battery level in percent.
+     */
+    public synchronized double getBatteryLevel() {
+        return computeBatteryLevel(VirtualClock.currentTimeNano(executor));
+    }
+
+    /**
+     * Returns <code>true</code> if a channel vibrates at the current time.
+     *
+     * @param channelIndex The channel index.
+     * @return <code>true</code> if the channel vibrates.
+     */
+    public synchronized boolean isChannelActive(int channelIndex) {
+        if (channelIndex < 0 || channelIndex >= CHANNEL_COUNT) {
+            return false;
+        }
+        return channelActive[channelIndex] &&
+                VirtualClock.currentTimeNano(executor) < channelEndTimeNano[channelIndex];
+    }
+
+    /**
+     * Returns the vibration pattern of a channel.
+     *
+     * @param channelIndex The channel index.
+     * @return the value of the vibration pattern, or -1 if the channel index is invalid.
+     */
+    public synchronized int getChannelPattern(int channelIndex) {
+        return (channelIndex < 0 || channelIndex >= CHANNEL_COUNT)?(-1):
+                (channelPattern[channelIndex]);
+    }
+
+    /**
+     * Returns the intensity of a channel.
+     *
+     * @param channelIndex The channel index.
+     * @return the intensity, or -1 if the channel index is invalid.
+     */
+    public synchronized int getChannelIntensity(int channelIndex) {
+        return (channelIndex < 0 || channelIndex >= CHANNEL_COUNT)?(-1):
+                (channelIntensity[channelIndex]);
+    }
+
+    /**
+     * Returns the orientation type of a channel.
+     *
+     * @param channelIndex The channel index.
+     * @return the value of the orientation type, or -1 if the channel index is invalid.
+     */
+    public synchronized int getChannelOrientationType(int channelIndex) {
+        return (channelIndex < 0 || channelIndex >= CHANNEL_COUNT)?(-1):
+                (channelOrientationType[channelIndex]);
+    }
+
+    /**
+     * Returns the orientation value of a channel.
+     *
+     * @param channelIndex The channel index.
+     * @return the orientation value, or -1 if the channel index is invalid.
+     */
+    public synchronized int getChannelOrientation(int channelIndex) {
+        return (channelIndex < 0 || channelIndex >= CHANNEL_COUNT)?(-1):
+                (channelOrientationValue[channelIndex]);
+    }
+
+    /**
+     * Returns the number of keep-alive notifications sent.
+     * @return the number of keep-alive notifications.
+     */
+    public synchronized long getKeepAliveCount() {
+        return keepAliveCount;
+    }
+
+    /**
+     * Returns the number of keep-alive acknowledgments received.
+     * @return the number of keep-alive acknowledgments.
+     */
+    public synchronized long getKeepAliveAckCount() {
+        return keepAliveAckCount;
+    }
+
+    /**
+     * Returns the number of applied vibration commands.
+     * @return the number of applied vibration commands.
+     */
+    public synchronized long getVibrationCommandCount() {
+        return vibrationCommandCount;
+    }
+
+    /**
+     * Returns the number of malformed or ignored commands.
+     * @return the number of ignored commands.
+     */
+    public synchronized long getIgnoredCommandCount() {
+        return ignoredCommandCount;
+    }
+
+    /**
+     * Returns the number of system signals received.
+     * @return the number of system signals.
+     */
+    public synchronized long getSystemSignalCount() {
+        return systemSignalCount;
+    }
+
+    /**
+     * Returns the number of tone patterns received.
+     * @return the number of tone patterns.
+     */
+    public synchronized long getTonePatternCount() {
+        return tonePatternCount;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Peripheral
+
+    @Override
+    public @NonNull List<BluetoothGattService> getServices() {
+        return services;
+    }
+
+    @Override
+    public void onConnected(@NonNull InProcessGattTransport transport) {
+        synchronized (this) {
+            this.transport = transport;
+            cancelPeriodicTasks();
+            try {
+                keepAliveTask = executor.scheduleAtFixedRate(this::sendKeepAlive,
+                        keepAlivePeriodMs, keepAlivePeriodMs, TimeUnit.MILLISECONDS);
+                orientationTask = executor.scheduleAtFixedRate(this::sendOrientation,
+                        orientationPeriodMs, orientationPeriodMs, TimeUnit.MILLISECONDS);
+                batteryTask = executor.scheduleAtFixedRate(this::sendBatteryStatus,
+                        batteryPeriodMs, batteryPeriodMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                Log.e(DEBUG_TAG, "SimulatedBelt: Unable to schedule notifications.", e);
+            }
+        }
+    }
+
+    @Override
+    public void onDisconnected(@NonNull InProcessGattTransport transport) {
+        boolean appModeLeft = false;
+        synchronized (this) {
+            if (this.transport != transport) {
+                return;
+            }
+            this.transport = null;
+            cancelPeriodicTasks();
+            // The belt leaves the app mode when the app disconnects
+            if (mode == BeltMode.APP) {
+                appModeLeft = true;
+            }
+        }
+        if (appModeLeft) {
+            setMode(BeltMode.WAIT);
+        }
+    }
+
+    @Override
+    public @Nullable byte[] onRead(@NonNull BluetoothGattCharacteristic characteristic) {
+        UUID uuid = characteristic.getUuid();
+        if (FIRMWARE_INFO_CHAR_UUID.equals(uuid)) {
+            synchronized (this) {
+                return new byte[] {
+                        (byte) (firmwareVersion & 0xFF),
+                        (byte) ((firmwareVersion >> 8) & 0xFF)
+                };
+            }
+        } else if (BATTERY_STATUS_CHAR_UUID.equals(uuid)) {
+            return getBatteryStatusPacket();
+        }
+        return null;
+    }
+
+    @Override
+    public boolean onWrite(@NonNull BluetoothGattCharacteristic characteristic,
+                           @NonNull byte[] value) {
+        UUID uuid = characteristic.getUuid();
+        if (KEEP_ALIVE_CHAR_UUID.equals(uuid)) {
+            synchronized (this) {
+                keepAliveAckCount++;
+            }
+        } else if (VIBRATION_COMMAND_CHAR_UUID.equals(uuid)) {
+            onVibrationCommand(value);
+        } else if (PARAMETER_REQUEST_CHAR_UUID.equals(uuid)) {
+            onParameterRequest(value);
+        } else if (BUZZER_LED_COMMAND_CHAR_UUID.equals(uuid)) {
+            synchronized (this) {
+                tonePatternCount++;
+            }
+        } else if (!SENSOR_PARAM_REQUEST_CHAR_UUID.equals(uuid) &&
+                !DEBUG_INPUT_CHAR_UUID.equals(uuid)) {
+            return false;
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Protocol
+
+    /**
+     * Handles a packet written on the parameter request characteristic.
+     */
+    private void onParameterRequest(@NonNull byte[] value) {
+        if (value.length < 2) {
+            ignoreCommand("Malformed parameter request.");
+            return;
+        }
+        int command = value[0] & 0xFF;
+        int parameter = value[1] & 0xFF;
+        if (command == 0x01 && parameter == 0x01) {
+            // Mode request
+            notifyModeParameter();
+        } else if (command == 0x01 && parameter == 0x02) {
+            // Default intensity request
+            notifyDefaultIntensityParameter((byte) 0x01, (byte) 0x02);
+        } else if (command == 0x01 && parameter == 0x03) {
+            // Heading offset request
+            notifyHeadingOffsetParameter((byte) 0x01, (byte) 0x03);
+        } else if (command == 0x01 && parameter == 0x81 && value.length >= 3) {
+            // Change mode
+            BeltMode newMode = BeltMode.fromValue(value[2]);
+            if (newMode == null || newMode == BeltMode.UNKNOWN) {
+                ignoreCommand("Invalid mode.");
+                return;
+            }
+            setMode(newMode);
+        } else if (command == 0x01 && parameter == 0x82 && value.length >= 3) {
+            // Change default intensity
+            int intensity = value[2] & 0xFF;
+            if (intensity < 5 || intensity > 100) {
+                ignoreCommand("Invalid default intensity.");
+                return;
+            }
+            synchronized (this) {
+                defaultIntensity = intensity;
+            }
+            notifyDefaultIntensityParameter((byte) 0x01, (byte) 0x02);
+        } else if (command == 0x10 && value.length >= 3) {
+            // Parameter value request
+            notifyParameterValue(value[2] & 0xFF);
+        } else if (command == 0x11 && value.length >= 4) {
+            // Change parameter value
+            int parameterId = value[1] & 0xFF;
+            synchronized (this) {
+                switch (parameterId) {
+                    case PARAMETER_DEFAULT_INTENSITY:
+                        defaultIntensity = Math.max(5, Math.min(100, value[3] & 0xFF));
+                        break;
+                    case PARAMETER_HEADING_OFFSET:
+                        if (value.length < 5) {
+                            ignoreCommand("Malformed heading offset.");
+                            return;
+                        }
+                        headingOffset = ((value[4] & 0xFF) << 8 | (value[3] & 0xFF)) % 360;
+                        break;
+                    case PARAMETER_BUZZER_ACTIVE:
+                        buzzerActive = value[3] != 0;
+                        break;
+                    case PARAMETER_ACCURACY_SIGNAL_STATE:
+                        accuracySignalState = (value[3] & 0xFF) & 0x03;
+                        break;
+                    default:
+                        ignoreCommand("Unknown parameter.");
+                        return;
+                }
+            }
+            notifyParameterValue(parameterId);
+        } else if (command == 0x12 && value.length >= 4) {
+            // Reset
+            boolean parameterReset = value[1] != 0;
+            boolean bluetoothReset = value[2] != 0;
+            InProcessGattTransport t;
+            synchronized (this) {
+                if (parameterReset) {
+                    defaultIntensity = DEFAULT_INTENSITY;
+                    headingOffset = 0;
+                    buzzerActive = true;
+                    accuracySignalState = DEFAULT_ACCURACY_SIGNAL_STATE;
+                }
+                t = transport;
+            }
+            if (bluetoothReset && t != null) {
+                t.simulateConnectionLoss();
+            }
+        } else {
+            ignoreCommand("Unknown parameter request.");
+        }
+    }
+
+    /**
+     * Handles a packet written on the vibration command characteristic.
+     */
+    private void onVibrationCommand(@NonNull byte[] value) {
+        if (value.length < 1) {
+            ignoreCommand("Empty vibration command.");
+            return;
+        }
+        long now = VirtualClock.currentTimeNano(executor);
+        int command = value[0] & 0xFF;
+        ArrayList<Listener> targets;
+        synchronized (this) {
+            if (command == 0x20 && value.length >= 2) {
+                // System signal
+                systemSignalCount++;
+            } else if (command == 0x30 && value.length >= 2) {
+                // Stop channel
+                if (mode != BeltMode.APP) {
+                    ignoreCommand("Stop command outside app mode.");
+                    return;
+                }
+                int channel = value[1] & 0xFF;
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    if (channel == 0xFF || channel == i) {
+                        channelActive[i] = false;
+                    }
+                }
+            } else if (command == 0x40 && value.length >= 17) {
+                // Pulse command
+                if (mode != BeltMode.APP) {
+                    ignoreCommand("Pulse command outside app mode.");
+                    return;
+                }
+                int channel = value[1] & 0xFF;
+                if (channel >= CHANNEL_COUNT) {
+                    ignoreCommand("Invalid channel index.");
+                    return;
+                }
+                int patternIterations = value[9] & 0xFF;
+                int patternPeriodMs = readUInt16(value, 12);
+                configureChannel(channel, BeltVibrationPattern.CONTINUOUS.getValue(),
+                        value[5] & 0xFF, value[2] & 0xFF, readUInt16(value, 3),
+                        patternIterations, patternPeriodMs, value[16] != 0, now);
+            } else if (command < CHANNEL_COUNT && value.length >= 18) {
+                // Channel configuration
+                if (mode != BeltMode.APP) {
+                    ignoreCommand("Channel configuration outside app mode.");
+                    return;
+                }
+                configureChannel(command, value[1] & 0xFF, readUInt16(value, 2), value[6] & 0xFF,
+                        readUInt16(value, 7), value[11] & 0xFF, readUInt16(value, 12),
+                        value[17] != 0, now);
+            } else {
+                ignoreCommand("Unknown vibration command.");
+                return;
+            }
+            vibrationCommandCount++;
+            if (listeners.isEmpty()) {
+                return;
+            }
+            targets = new ArrayList<>(listeners);
+        }
+        for (Listener l: targets) {
+            l.onVibrationCommand(value, now);
+        }
+    }
+
+    /**
+     * Configures a vibration channel.
+     */
+    private void configureChannel(int channel, int pattern, int intensity, int orientationType,
+                                  int orientationValue, int iterations, int periodMs,
+                                  boolean clearOtherChannels, long nowNano) {
+        if (clearOtherChannels) {
+            for (int i = 0; i < CHANNEL_COUNT; i++) {
+                channelActive[i] = false;
+            }
+        }
+        channelPattern[channel] = pattern;
+        channelIntensity[channel] = intensity;
+        channelOrientationType[channel] = orientationType;
+        channelOrientationValue[channel] = orientationValue;
+        channelActive[channel] = (pattern != BeltVibrationPattern.NO_VIBRATION.getValue());
+        channelEndTimeNano[channel] = (iterations == 0 || periodMs == 0)?(Long.MAX_VALUE):
+                (nowNano + TimeUnit.MILLISECONDS.toNanos((long) iterations * periodMs));
+    }
+
+    /**
+     * Changes the mode and notifies it.
+     */
+    private void setMode(@NonNull BeltMode newMode) {
+        ArrayList<Listener> targets;
+        synchronized (this) {
+            if (newMode != BeltMode.APP) {
+                for (int i = 0; i < CHANNEL_COUNT; i++) {
+                    channelActive[i] = false;
+                }
+            }
+            boolean changed = (mode != newMode);
+            mode = newMode;
+            targets = (changed && !listeners.isEmpty())?(new ArrayList<>(listeners)):(null);
+        }
+        notifyModeParameter();
+        if (targets != null) {
+            for (Listener l: targets) {
+                l.onModeChanged(newMode);
+            }
+        }
+    }
+
+    /**
+     * Notifies the mode on the parameter notification characteristic.
+     */
+    private void notifyModeParameter() {
+        byte value;
+        synchronized (this) {
+            value = mode.getValue();
+        }
+        notifyCharacteristic(PARAMETER_NOTIFICATION_CHAR_UUID,
+                new byte[] {(byte) 0x01, (byte) 0x01, value});
+    }
+
+    /**
+     * Notifies the default intensity on the parameter notification characteristic.
+     */
+    private void notifyDefaultIntensityParameter(byte command, byte parameter) {
+        byte value;
+        synchronized (this) {
+            value = (byte) defaultIntensity;
+        }
+        notifyCharacteristic(PARAMETER_NOTIFICATION_CHAR_UUID,
+                new byte[] {command, parameter, value});
+    }
+
+    /**
+     * Notifies the heading offset on the parameter notification characteristic.
+     */
+    private void notifyHeadingOffsetParameter(byte command, byte parameter) {
+        int offset;
+        synchronized (this) {
+            offset = headingOffset;
+        }
+        notifyCharacteristic(PARAMETER_NOTIFICATION_CHAR_UUID,
+                new byte[] {command, parameter, (byte) (offset & 0xFF),
+                        (byte) ((offset >> 8) & 0xFF)});
+    }
+
+    /**
+     * Notifies the value of a parameter in response to a parameter value request (0x10).
+     */
+    private void notifyParameterValue(int parameterId) {
+        switch (parameterId) {
+            case PARAMETER_DEFAULT_INTENSITY:
+                notifyDefaultIntensityParameter((byte) 0x10, (byte) PARAMETER_DEFAULT_INTENSITY);
+                break;
+            case PARAMETER_HEADING_OFFSET:
+                notifyHeadingOffsetParameter((byte) 0x10, (byte) PARAMETER_HEADING_OFFSET);
+                break;
+            case PARAMETER_BUZZER_ACTIVE:
+            case PARAMETER_ACCURACY_SIGNAL_STATE:
+                byte value;
+                synchronized (this) {
+                    value = (byte) ((parameterId == PARAMETER_BUZZER_ACTIVE)?
+                            ((buzzerActive)?(1):(0)):(accuracySignalState));
+                }
+                notifyCharacteristic(PARAMETER_NOTIFICATION_CHAR_UUID,
+                        new byte[] {(byte) 0x10, (byte) parameterId, value});
+                break;
+            default:
+                ignoreCommand("Unknown parameter.");
+                break;
+        }
+    }
+
+    /**
+     * Sends a keep-alive notification.
+     */
+    private void sendKeepAlive() {
+        byte value;
+        synchronized (this) {
+            keepAliveCount++;
+            value = mode.getValue();
+        }
+        notifyCharacteristic(KEEP_ALIVE_CHAR_UUID, new byte[] {(byte) 0x01, value});
+    }
+
+    /**
+     * Sends an orientation notification.
+     */
+    private void sendOrientation() {
+        byte[] packet;
+        synchronized (this) {
+            int heading = computeHeading(VirtualClock.currentTimeNano(executor));
+            int beltHeading = (heading + headingOffset) % 360;
+            packet = new byte[] {
+                    (byte) 0x00,                // Source ID
+                    (byte) (beltHeading & 0xFF),
+                    (byte) ((beltHeading >> 8) & 0xFF),
+                    (byte) (heading & 0xFF),
+                    (byte) ((heading >> 8) & 0xFF),
+                    (byte) (roll & 0xFF),
+                    (byte) ((roll >> 8) & 0xFF),
+                    (byte) (pitch & 0xFF),
+                    (byte) ((pitch >> 8) & 0xFF),
+                    (byte) (accuracy & 0xFF),
+                    (byte) ((accuracy >> 8) & 0xFF),
+                    (byte) 0x03,                // Magnetometer status
+                    (byte) 0x03,                // Accelerometer status
+                    (byte) 0x03,                // Gyroscope status
+                    (byte) 0x03,                // Fusion status
+                    (byte) ((inaccurateOrientation)?(0x01):(0x00))
+            };
+        }
+        notifyCharacteristic(ORIENTATION_DATA_CHAR_UUID, packet);
+    }
+
+    /**
+     * Sends a battery status notification.
+     */
+    private void sendBatteryStatus() {
+        notifyCharacteristic(BATTERY_STATUS_CHAR_UUID, getBatteryStatusPacket());
+    }
+
+    /**
+     * Returns the battery status packet at the current time.
+     */
+    private synchronized @NonNull byte[] getBatteryStatusPacket() {
+        double level = computeBatteryLevel(VirtualClock.currentTimeNano(executor));
+        int levelFixed = (int) Math.round(level * 256.);
+        // Time to empty or full in units of 5.625 seconds
+        double remaining = (powerStatus == PowerStatus.CHARGING)?(100 - level):(level);
+        int tteTtf = (batteryRatePercentPerHour <= 0)?(0xFFFF):
+                ((int) Math.min(0xFFFF, (remaining / batteryRatePercentPerHour) * 3600. / 5.625));
+        int currentMa = (powerStatus == PowerStatus.CHARGING)?(500):(-150);
+        int voltageMv = 3500 + (int) (level * 7);
+        return new byte[] {
+                powerStatus.getValue(),
+                (byte) (levelFixed & 0xFF),
+                (byte) ((levelFixed >> 8) & 0xFF),
+                (byte) (tteTtf & 0xFF),
+                (byte) ((tteTtf >> 8) & 0xFF),
+                (byte) (currentMa & 0xFF),
+                (byte) ((currentMa >> 8) & 0xFF),
+                (byte) (voltageMv & 0xFF),
+                (byte) ((voltageMv >> 8) & 0xFF)
+        };
+    }
+
+    /**
+     * Returns the heading of the control box at a time.
+     */
+    private int computeHeading(long timeNano) {
+        double elapsedSeconds = (timeNano - headingTimeNano) / 1000000000.;
+        double heading = (headingDeg + headingRateDegPerSecond * elapsedSeconds) % 360.;
+        if (heading < 0) {
+            heading += 360.;
+        }
+        return ((int) Math.round(heading)) % 360;
+    }
+
+    /**
+     * Returns the battery level at a time.
+     */
+    private double computeBatteryLevel(long timeNano) {
+        double elapsedHours = (timeNano - batteryTimeNano) / 3600000000000.;
+        double level;
+        if (powerStatus == PowerStatus.CHARGING) {
+            level = batteryLevel + batteryRatePercentPerHour * elapsedHours;
+        } else if (powerStatus == PowerStatus.ON_BATTERY) {
+            level = batteryLevel - batteryRatePercentPerHour * elapsedHours;
+        } else {
+            level = batteryLevel;
+        }
+        return Math.max(0, Math.min(100, level));
+    }
+
+    /**
+     * Sends a notification on the connected transport.
+     */
+    private void notifyCharacteristic(@NonNull UUID uuid, @NonNull byte[] value) {
+        InProcessGattTransport t;
+        synchronized (this) {
+            t = transport;
+        }
+        if (t != null) {
+            t.notifyCharacteristicChanged(uuid, value);
+        }
+    }
+
+    /**
+     * Cancels the periodic notifications.
+     */
+    private void cancelPeriodicTasks() {
+        if (keepAliveTask != null) {
+            keepAliveTask.cancel(false);
+            keepAliveTask = null;
+        }
+        if (orientationTask != null) {
+            orientationTask.cancel(false);
+            orientationTask = null;
+        }
+        if (batteryTask != null) {
+            batteryTask.cancel(false);
+            batteryTask = null;
+        }
+    }
+
+    /**
+     * Counts an ignored command.
+     */
+    private synchronized void ignoreCommand(@NonNull String reason) {
+        ignoredCommandCount++;
+        if (DEBUG) Log.w(DEBUG_TAG, "SimulatedBelt: " + reason);
+    }
+
+    /**
+     * Reads an unsigned 16-bit little-endian value.
+     */
+    private static int readUInt16(@NonNull byte[] value, int offset) {
+        return ((value[offset + 1] & 0xFF) << 8) | (value[offset] & 0xFF);
+    }
+
+}
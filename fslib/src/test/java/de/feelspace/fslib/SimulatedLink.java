@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model of the Bluetooth LE link between the client and a peripheral simulated with
+ * {@link InProcessGattTransport}.
+ *
+ * Each GATT procedure and each notification is transferred as one packet. The delivery time of a
+ * packet is the sum of:
+ * - the time the link is busy with the previous packets,
+ * - the transmission time of the packet at the throughput of the link,
+ * - the retransmissions of the packet when it is lost, one connection interval each,
+ * - the latency of the link and a random jitter.
+ * Packets are delivered in order, like with the acknowledged link layer of Bluetooth LE. When the
+ * retransmissions of a packet last longer than the supervision timeout, the link is lost.
+ *
+ * The random draws use a seeded generator, so that a simulation on a {@link VirtualClock} is
+ * reproducible.
+ */
+public class SimulatedLink {
+
+    /** Size of the ATT header added to the payload of a packet. */
+    public static final int ATT_HEADER_SIZE = 3;
+
+    /** Minimum connection interval of Bluetooth LE in microseconds. */
+    public static final long MIN_CONNECTION_INTERVAL_MICROS = 7500;
+
+    /** Default latency in microseconds. */
+    public static final long DEFAULT_LATENCY_MICROS = 7500;
+
+    /** Default connection interval in microseconds. */
+    public static final long DEFAULT_CONNECTION_INTERVAL_MICROS = 30000;
+
+    /** Default supervision timeout in microseconds. */
+    public static final long DEFAULT_SUPERVISION_TIMEOUT_MICROS = 5000000;
+
+    // Parameters of the link
+    private long latencyNano = TimeUnit.MICROSECONDS.toNanos(DEFAULT_LATENCY_MICROS);
+    private long jitterNano = 0;
+    private double lossRate = 0;
+    private int throughputBytesPerSecond = 0;
+    private long connectionIntervalNano =
+            TimeUnit.MICROSECONDS.toNanos(DEFAULT_CONNECTION_INTERVAL_MICROS);
+    private long supervisionTimeoutNano =
+            TimeUnit.MICROSECONDS.toNanos(DEFAULT_SUPERVISION_TIMEOUT_MICROS);
+
+    // Random generator for loss and jitter
+    private final @NonNull Random random;
+
+    // State of the link
+    private long busyUntilNano = 0;
+    private long lastDeliveryNano = 0;
+
+    // Statistics
+    private long packetCount = 0;
+    private long byteCount = 0;
+    private long retransmissionCount = 0;
+    private long linkLossCount = 0;
+    private long totalDelayNano = 0;
+    private long maxDelayNano = 0;
+
+    /**
+     * Creates a link without loss, jitter and throughput limit, with the default latency.
+     *
+     * @param seed The seed of the random generator for loss and jitter.
+     */
+    public SimulatedLink(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Sets the latency of the link.
+     *
+     * @param latencyMicros The latency in microseconds.
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setLatency(long latencyMicros) {
+        latencyNano = TimeUnit.MICROSECONDS.toNanos(Math.max(0, latencyMicros));
+        return this;
+    }
+
+    /**
+     * Sets the maximum jitter added to the latency, drawn uniformly.
+     *
+     * @param jitterMicros The maximum jitter in microseconds.
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setJitter(long jitterMicros) {
+        jitterNano = TimeUnit.MICROSECONDS.toNanos(Math.max(0, jitterMicros));
+        return this;
+    }
+
+    /**
+     * Sets the probability that a packet is lost and retransmitted.
+     *
+     * @param lossRate The loss probability in range [0-1].
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setLossRate(double lossRate) {
+        this.lossRate = Math.max(0, Math.min(1, lossRate));
+        return this;
+    }
+
+    /**
+     * Sets the throughput of the link.
+     *
+     * @param bytesPerSecond The throughput in bytes per second, 0 for no limit.
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setThroughput(int bytesPerSecond) {
+        throughputBytesPerSecond = Math.max(0, bytesPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the connection interval, the delay between two retransmissions of a lost packet.
+     *
+     * @param intervalMicros The connection interval in microseconds, at least
+     *                       {@link #MIN_CONNECTION_INTERVAL_MICROS}.
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setConnectionInterval(long intervalMicros) {
+        connectionIntervalNano = TimeUnit.MICROSECONDS.toNanos(
+                Math.max(MIN_CONNECTION_INTERVAL_MICROS, intervalMicros));
+        return this;
+    }
+
+    /**
+     * Sets the supervision timeout, the maximum duration of the retransmissions of a packet
+     * before the link is lost.
+     *
+     * @param timeoutMicros The supervision timeout in microseconds.
+     * @return this link.
+     */
+    public synchronized @NonNull SimulatedLink setSupervisionTimeout(long timeoutMicros) {
+        supervisionTimeoutNano = TimeUnit.MICROSECONDS.toNanos(Math.max(0, timeoutMicros));
+        return this;
+    }
+
+    /**
+     * Returns the latency of the link.
+     * @return the latency in nanoseconds.
+     */
+    synchronized long getLatencyNano() {
+        return latencyNano;
+    }
+
+    /**
+     * Returns the supervision timeout.
+     * @return the supervision timeout in nanoseconds.
+     */
+    synchronized long getSupervisionTimeoutNano() {
+        return supervisionTimeoutNano;
+    }
+
+    /**
+     * Transfers a packet on the link.
+     *
+     * @param nowNano The current time in nanoseconds.
+     * @param payloadSize The size of the payload in bytes.
+     * @return the delivery time of the packet in nanoseconds, or <code>-1</code> if the link is
+     * lost.
+     */
+    synchronized long transfer(long nowNano, int payloadSize) {
+        int size = Math.max(0, payloadSize) + ATT_HEADER_SIZE;
+        long transmissionNano = (throughputBytesPerSecond > 0)?
+                ((size * 1000000000L) / throughputBytesPerSecond):(0);
+        long startNano = Math.max(nowNano, busyUntilNano);
+        // Retransmissions of lost packet
+        long retransmissionNano = 0;
+        while (lossRate > 0 && random.nextDouble() < lossRate) {
+            retransmissionCount++;
+            retransmissionNano += connectionIntervalNano + transmissionNano;
+            if (retransmissionNano > supervisionTimeoutNano) {
+                linkLossCount++;
+                busyUntilNano = startNano + retransmissionNano;
+                return -1;
+            }
+        }
+        long endNano = startNano + transmissionNano + retransmissionNano;
+        busyUntilNano = endNano;
+        // Latency and in-order delivery
+        long jitter = (jitterNano > 0)?((long) (random.nextDouble() * jitterNano)):(0);
+        long deliveryNano = Math.max(endNano + latencyNano + jitter, lastDeliveryNano);
+        lastDeliveryNano = deliveryNano;
+        // Statistics
+        long delayNano = deliveryNano - nowNano;
+        packetCount++;
+        byteCount += size;
+        totalDelayNano += delayNano;
+        if (delayNano > maxDelayNano) {
+            maxDelayNano = delayNano;
+        }
+        return deliveryNano;
+    }
+
+    /**
+     * Returns the number of delivered packets.
+     * @return the number of delivered packets.
+     */
+    public synchronized long getPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * Returns the number of delivered bytes, including the ATT headers.
+     * @return the number of delivered bytes.
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of retransmissions.
+     * @return the number of retransmissions.
+     */
+    public synchronized long getRetransmissionCount() {
+        return retransmissionCount;
+    }
+
+    /**
+     * Returns the number of link losses after a supervision timeout.
+     * @return the number of link losses.
+     */
+    public synchronized long getLinkLossCount() {
+        return linkLossCount;
+    }
+
+    /**
+     * Returns the mean delay between the transfer and the delivery of packets.
+     * @return the mean delay in milliseconds, 0 if no packet has been delivered.
+     */
+    public synchronized double getMeanDelayMs() {
+        return (packetCount == 0)?(0):((totalDelayNano / (double) packetCount) / 1000000.);
+    }
+
+    /**
+     * Returns the maximum delay between the transfer and the delivery of packets.
+     * @return the maximum delay in milliseconds.
+     */
+    public synchronized double getMaxDelayMs() {
+        return maxDelayNano / 1000000.;
+    }
+
+    /**
+     * Resets the statistics of the link.
+     */
+    public synchronized void resetStatistics() {
+        packetCount = 0;
+        byteCount = 0;
+        retransmissionCount = 0;
+        linkLossCount = 0;
+        totalDelayNano = 0;
+        maxDelayNano = 0;
+    }
+
+}
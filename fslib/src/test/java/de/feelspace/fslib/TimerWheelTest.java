@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the timer wheel, advanced by a virtual clock.
+ */
+public class TimerWheelTest {
+
+    // 8 buckets of 10 ms, one round of the wheel is 80 ms
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    private VirtualClock clock;
+    private TimerWheel wheel;
+
+    // Virtual times of the executions in milliseconds
+    private List<Long> executions;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        wheel = new TimerWheel(clock, clock, TICK_MS, WHEEL_SIZE);
+        executions = new ArrayList<>();
+    }
+
+    private void record() {
+        executions.add(TimeUnit.NANOSECONDS.toMillis(clock.nanoTime()));
+    }
+
+    private int advance(long durationMs) {
+        return clock.advanceBy(durationMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void oneShot_executedAtDeadlineTick() {
+        wheel.schedule(this::record, 35, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.getPendingCount());
+        // Single wake-up at the deadline rounded up to the next tick
+        assertEquals(0, advance(39));
+        assertTrue(executions.isEmpty());
+        assertEquals(1, advance(1));
+        assertEquals(1, executions.size());
+        assertEquals(40, (long) executions.get(0));
+        // The wheel is idle
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(0, clock.getPendingTaskCount());
+    }
+
+    @Test
+    public void multiRound_executedAfterRemainingRounds() {
+        // Same bucket, the second timeout is two rounds later
+        wheel.schedule(this::record, 90, TimeUnit.MILLISECONDS);
+        wheel.schedule(this::record, 250, TimeUnit.MILLISECONDS);
+        advance(80);
+        assertTrue(executions.isEmpty());
+        advance(10);
+        assertEquals(1, executions.size());
+        assertEquals(90, (long) executions.get(0));
+        advance(150);
+        assertEquals(1, executions.size());
+        advance(10);
+        assertEquals(2, executions.size());
+        assertEquals(250, (long) executions.get(1));
+        assertEquals(0, clock.getPendingTaskCount());
+    }
+
+    @Test
+    public void cancel_earlyWakeupThenEarliestDeadline() {
+        TimerWheel.Timeout first = wheel.schedule(this::record, 30, TimeUnit.MILLISECONDS);
+        wheel.schedule(this::record, 100, TimeUnit.MILLISECONDS);
+        assertTrue(first.cancel());
+        assertTrue(first.isCancelled());
+        assertFalse(first.cancel());
+        assertEquals(1, wheel.getPendingCount());
+        // One early wake-up at the deadline of the cancelled timeout, without execution
+        assertEquals(1, advance(30));
+        assertTrue(executions.isEmpty());
+        // Next wake-up at the remaining deadline
+        assertEquals(0, advance(69));
+        assertEquals(1, advance(1));
+        assertEquals(1, executions.size());
+        assertEquals(100, (long) executions.get(0));
+    }
+
+    @Test
+    public void cancelLast_stopsWheel() {
+        TimerWheel.Timeout timeout = wheel.schedule(this::record, 30, TimeUnit.MILLISECONDS);
+        assertEquals(1, clock.getPendingTaskCount());
+        assertTrue(timeout.cancel());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(0, clock.getPendingTaskCount());
+        assertEquals(0, advance(1000));
+        assertTrue(executions.isEmpty());
+    }
+
+    @Test
+    public void repeated_rearmedAfterExecution() {
+        TimerWheel.Timeout timeout = wheel.scheduleWithFixedDelay(this::record, 20, 50,
+                TimeUnit.MILLISECONDS);
+        advance(130);
+        assertEquals(3, executions.size());
+        assertEquals(20, (long) executions.get(0));
+        assertEquals(70, (long) executions.get(1));
+        assertEquals(120, (long) executions.get(2));
+        assertEquals(1, wheel.getPendingCount());
+        assertTrue(timeout.cancel());
+        advance(1000);
+        assertEquals(3, executions.size());
+        assertEquals(0, clock.getPendingTaskCount());
+    }
+
+    @Test
+    public void cancelDuringExecution_repeatedTaskNotRearmed() {
+        final TimerWheel.Timeout[] timeout = new TimerWheel.Timeout[1];
+        final boolean[] cancelled = new boolean[1];
+        timeout[0] = wheel.scheduleWithFixedDelay(() -> {
+            record();
+            if (executions.size() == 2) {
+                cancelled[0] = timeout[0].cancel();
+            }
+        }, 10, 10, TimeUnit.MILLISECONDS);
+        advance(1000);
+        assertTrue(cancelled[0]);
+        assertEquals(2, executions.size());
+        assertTrue(timeout[0].isCancelled());
+        assertEquals(0, wheel.getPendingCount());
+        assertEquals(0, clock.getPendingTaskCount());
+    }
+
+    @Test
+    public void cancelDuringExecution_oneShotAlreadyExecuted() {
+        final TimerWheel.Timeout[] timeout = new TimerWheel.Timeout[1];
+        final boolean[] cancelled = new boolean[] {true};
+        timeout[0] = wheel.schedule(() -> {
+            record();
+            cancelled[0] = timeout[0].cancel();
+        }, 10, TimeUnit.MILLISECONDS);
+        advance(100);
+        assertEquals(1, executions.size());
+        assertFalse(cancelled[0]);
+        assertFalse(timeout[0].isCancelled());
+    }
+
+    @Test
+    public void idleWheel_restartedFromCurrentTime() {
+        wheel.schedule(this::record, 20, TimeUnit.MILLISECONDS);
+        advance(20);
+        assertEquals(1, executions.size());
+        assertEquals(0, clock.getPendingTaskCount());
+        // Idle for many rounds, then a new timeout from the current time
+        advance(1005);
+        wheel.schedule(this::record, 30, TimeUnit.MILLISECONDS);
+        assertEquals(0, advance(29));
+        assertEquals(1, executions.size());
+        assertEquals(1, advance(1));
+        assertEquals(2, executions.size());
+        assertEquals(1055, (long) executions.get(1));
+    }
+
+}
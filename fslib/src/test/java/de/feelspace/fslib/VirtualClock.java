@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2017-2019. feelSpace GmbH. All rights reserved.
+ *
+ * More info: www.feelspace.de
+ * Developer contact: dev@feelspace.de
+ * General information contact: info@feelspace.de
+ */
+package de.feelspace.fslib;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduled executor on a virtual clock, for deterministic simulations.
+ *
+ * The tasks are not executed by a thread of the executor but by the thread that advances the
+ * clock with {@link #advanceBy(long, TimeUnit)} or {@link #runUntilIdle(long, TimeUnit)}. The
+ * clock jumps from one task to the next, so that hours of simulated time run as fast as the
+ * tasks can be executed. Tasks are executed in order of scheduled time, and in order of
+ * submission for the same time, so that a simulation driven by a single thread is reproducible.
+ *
+ * Tasks can be scheduled from any thread, but the clock must not be advanced from a task.
+ *
+ * The virtual clock is both the executor and the clock of a {@link GattController} and its
+ * {@link TimerWheel}, so that the connection, the operations and their timeouts run in simulated
+ * time.
+ */
+public class VirtualClock extends AbstractExecutorService implements ScheduledExecutorService,
+        MonotonicClock {
+    // Debug
+    @SuppressWarnings("unused")
+    private static final String DEBUG_TAG = "FeelSpace-Debug";
+    @SuppressWarnings("unused")
+    private static final boolean DEBUG = true;
+
+    // Pending tasks ordered by time and submission
+    private final @NonNull PriorityQueue<VirtualTask<?>> tasks = new PriorityQueue<>();
+
+    // Virtual time in nanoseconds
+    private long timeNano = 0;
+
+    // Sequence number of the next submission
+    private long sequence = 0;
+
+    // Flag for the execution of tasks
+    private boolean advancing = false;
+
+    // Shutdown flag
+    private boolean shutdown = false;
+
+    /**
+     * Returns the current time of a clock in nanoseconds: the virtual time if the executor is a
+     * virtual clock, or the monotonic time of the system otherwise.
+     *
+     * @param executor The executor that runs the tasks of a simulation.
+     * @return the current time in nanoseconds.
+     */
+    static long currentTimeNano(@Nullable Executor executor) {
+        if (executor instanceof VirtualClock) {
+            return ((VirtualClock) executor).nanoTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns the virtual time.
+     * @return the virtual time in nanoseconds.
+     */
+    @Override
+    public synchronized long nanoTime() {
+        return timeNano;
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     * @return the number of pending tasks.
+     */
+    public synchronized int getPendingTaskCount() {
+        return tasks.size();
+    }
+
+    /**
+     * Advances the clock and executes the tasks scheduled until the new time.
+     *
+     * @param duration The duration to advance.
+     * @param unit The unit of the duration.
+     * @return the number of executed tasks.
+     */
+    public int advanceBy(long duration, @NonNull TimeUnit unit) {
+        long targetNano;
+        synchronized (this) {
+            targetNano = timeNano + unit.toNanos(Math.max(0, duration));
+        }
+        return advance(targetNano, true);
+    }
+
+    /**
+     * Executes the pending tasks until there is no more task, or until the time limit. The clock
+     * stops at the time of the last executed task.
+     *
+     * @param maxDuration The maximum duration to advance, periodic tasks never leave the clock
+     *                    idle.
+     * @param unit The unit of the duration.
+     * @return the number of executed tasks.
+     */
+    public int runUntilIdle(long maxDuration, @NonNull TimeUnit unit) {
+        long targetNano;
+        synchronized (this) {
+            targetNano = timeNano + unit.toNanos(Math.max(0, maxDuration));
+        }
+        return advance(targetNano, false);
+    }
+
+    /**
+     * Executes the tasks in order until the target time.
+     *
+     * @param targetNano The target time.
+     * @param jumpToTarget <code>true</code> to set the clock to the target time when there is no
+     *                     more task to execute before.
+     * @return the number of executed tasks.
+     */
+    private int advance(long targetNano, boolean jumpToTarget) {
+        synchronized (this) {
+            if (advancing) {
+                Log.e(DEBUG_TAG, "VirtualClock: The clock cannot be advanced from a task.");
+                return 0;
+            }
+            advancing = true;
+        }
+        int count = 0;
+        try {
+            while (true) {
+                VirtualTask<?> task;
+                synchronized (this) {
+                    task = tasks.peek();
+                    if (task == null || task.scheduledTimeNano > targetNano) {
+                        if (jumpToTarget && targetNano > timeNano) {
+                            timeNano = targetNano;
+                        }
+                        return count;
+                    }
+                    tasks.poll();
+                    if (task.scheduledTimeNano > timeNano) {
+                        timeNano = task.scheduledTimeNano;
+                    }
+                }
+                task.run();
+                count++;
+            }
+        } finally {
+            synchronized (this) {
+                advancing = false;
+            }
+        }
+    }
+
+    /**
+     * Adds a task to the queue.
+     */
+    private synchronized <V> @NonNull VirtualTask<V> enqueue(@NonNull VirtualTask<V> task,
+                                                            long delayNano) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Virtual clock shut down.");
+        }
+        task.scheduledTimeNano = timeNano + Math.max(0, delayNano);
+        task.sequenceNumber = sequence++;
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public @NonNull ScheduledFuture<?> schedule(@NonNull Runnable command, long delay,
+                                                @NonNull TimeUnit unit) {
+        return enqueue(new VirtualTask<Void>(Executors.callable(command, null), 0),
+                unit.toNanos(delay));
+    }
+
+    @Override
+    public <V> @NonNull ScheduledFuture<V> schedule(@NonNull Callable<V> callable, long delay,
+                                                    @NonNull TimeUnit unit) {
+        return enqueue(new VirtualTask<>(callable, 0), unit.toNanos(delay));
+    }
+
+    @Override
+    public @NonNull ScheduledFuture<?> scheduleAtFixedRate(@NonNull Runnable command,
+                                                           long initialDelay, long period,
+                                                           @NonNull TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive.");
+        }
+        return enqueue(new VirtualTask<Void>(Executors.callable(command, null),
+                unit.toNanos(period)), unit.toNanos(initialDelay));
+    }
+
+    @Override
+    public @NonNull ScheduledFuture<?> scheduleWithFixedDelay(@NonNull Runnable command,
+                                                              long initialDelay, long delay,
+                                                              @NonNull TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be positive.");
+        }
+        return enqueue(new VirtualTask<Void>(Executors.callable(command, null),
+                -unit.toNanos(delay)), unit.toNanos(initialDelay));
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        schedule(command, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public synchronized @NonNull List<Runnable> shutdownNow() {
+        shutdown = true;
+        ArrayList<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+        // Tasks are only executed when the clock is advanced, there is nothing to wait for
+        return isTerminated();
+    }
+
+    /**
+     * Task scheduled on the virtual clock.
+     */
+    private class VirtualTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        // Period in nanoseconds, positive for fixed rate, negative for fixed delay, 0 for one-shot
+        private final long periodNano;
+
+        // Time of execution and order of submission
+        private long scheduledTimeNano;
+        private long sequenceNumber;
+
+        /**
+         * Creates a task.
+         *
+         * @param callable The callable to execute.
+         * @param periodNano The period of the task.
+         */
+        VirtualTask(@NonNull Callable<V> callable, long periodNano) {
+            super(callable);
+            this.periodNano = periodNano;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodNano != 0;
+        }
+
+        @Override
+        public void run() {
+            if (periodNano == 0) {
+                super.run();
+                return;
+            }
+            if (!runAndReset()) {
+                return;
+            }
+            // Schedule next execution
+            synchronized (VirtualClock.this) {
+                if (shutdown) {
+                    cancel(false);
+                    return;
+                }
+                scheduledTimeNano = (periodNano > 0)?(scheduledTimeNano + periodNano):
+                        (timeNano - periodNano);
+                sequenceNumber = sequence++;
+                tasks.add(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                synchronized (VirtualClock.this) {
+                    tasks.remove(this);
+                }
+            }
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay(@NonNull TimeUnit unit) {
+            return unit.convert(scheduledTimeNano - nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(@NonNull Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof VirtualTask) {
+                VirtualTask<?> task = (VirtualTask<?>) other;
+                if (scheduledTimeNano != task.scheduledTimeNano) {
+                    return (scheduledTimeNano < task.scheduledTimeNano)?(-1):(1);
+                }
+                return (sequenceNumber < task.sequenceNumber)?(-1):(1);
+            }
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return (diff < 0)?(-1):((diff > 0)?(1):(0));
+        }
+    }
+
+}